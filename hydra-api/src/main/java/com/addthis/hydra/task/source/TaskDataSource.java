@@ -14,6 +14,7 @@
 package com.addthis.hydra.task.source;
 
 import com.addthis.bundle.channel.DataChannelSource;
+import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.util.AutoField;
 import com.addthis.codec.annotations.FieldConfig;
 import com.addthis.codec.annotations.Pluggable;
@@ -53,4 +54,12 @@ public abstract class TaskDataSource implements Codable, DataChannelSource, Clon
     public boolean isEnabled() {
         return enabled;
     }
+
+    /**
+     * Called with a bundle that was returned by {@link #next()} once nothing
+     * references it anymore. Sources may reuse the bundle for later records.
+     * The default implementation ignores it.
+     */
+    public void recycle(Bundle bundle) {
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+
+/**
+ * Generates query result rows with a string key column, a low
+ * cardinality string category column and a numeric count column.
+ */
+public final class BundleGenerator {
+
+    public static final int KEY_COLUMN = 0;
+    public static final int CATEGORY_COLUMN = 1;
+    public static final int COUNT_COLUMN = 2;
+
+    private static final int CATEGORIES = 16;
+
+    private BundleGenerator() {
+    }
+
+    public static List<Bundle> generate(int rows, int keyRange, KeyDistribution distribution, long seed) {
+        ListBundleFormat format = new ListBundleFormat();
+        BundleField key = format.getField("key");
+        BundleField category = format.getField("category");
+        BundleField count = format.getField("count");
+        int[] keys = distribution.generate(rows, keyRange, seed);
+        Random random = new Random(seed);
+        List<Bundle> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Bundle bundle = new ListBundle(format);
+            bundle.setValue(key, ValueFactory.create("key-" + keys[i]));
+            bundle.setValue(category, ValueFactory.create("category-" + (keys[i] % CATEGORIES)));
+            bundle.setValue(count, ValueFactory.create(1 + random.nextInt(100)));
+            result.add(bundle);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distribution of the keys that a benchmark reads or writes. Every
+ * distribution is driven by an explicit seed so that a benchmark run
+ * sees the same key sequence each time it is repeated.
+ */
+public enum KeyDistribution {
+
+    /** Keys in ascending order, wrapping around at the end of the range. */
+    SEQUENTIAL {
+        @Override
+        public int[] generate(int count, int range, long seed) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = i % range;
+            }
+            return keys;
+        }
+    },
+
+    /** Every key in the range is equally likely. */
+    UNIFORM {
+        @Override
+        public int[] generate(int count, int range, long seed) {
+            Random random = new Random(seed);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(range);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Key {@code k} is chosen with a probability that is proportional to {@code 1 / (k + 1)},
+     * so that a small set of low keys receives most of the accesses.
+     */
+    ZIPF {
+        @Override
+        public int[] generate(int count, int range, long seed) {
+            double[] cumulative = new double[range];
+            double total = 0;
+            for (int i = 0; i < range; i++) {
+                total += 1.0 / (i + 1);
+                cumulative[i] = total;
+            }
+            Random random = new Random(seed);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                keys[i] = Math.min((index >= 0) ? index : (-index - 1), range - 1);
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * Returns {@code count} keys between zero (inclusive) and {@code range} (exclusive).
+     */
+    public abstract int[] generate(int count, int range, long seed);
+
+    /**
+     * Returns the distinct keys of {@link #generate} in ascending order.
+     */
+    public int[] generateSorted(int count, int range, long seed) {
+        return Arrays.stream(generate(count, range, seed)).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench;
+
+import java.io.File;
+
+import com.addthis.hydra.data.tree.TreeCommonParameters;
+import com.addthis.hydra.data.tree.concurrent.ConcurrentTree;
+import com.addthis.hydra.data.tree.concurrent.ConcurrentTreeNode;
+
+/**
+ * Creates trees for the benchmarks. The node cache and page
+ * sizes are applied through the {@link TreeCommonParameters} defaults
+ * before the tree is opened.
+ */
+public final class TreeGenerator {
+
+    private TreeGenerator() {
+    }
+
+    /**
+     * @param nodeCacheSize maximum number of nodes in the node cache
+     * @param maxCacheSize  maximum number of pages in the page cache, or zero for the store default
+     * @param maxPageSize   maximum number of nodes in a page, or zero for the store default
+     */
+    public static ConcurrentTree create(File dir, int nodeCacheSize, int maxCacheSize, int maxPageSize)
+            throws Exception {
+        TreeCommonParameters.setDefaultCleanQueueSize(nodeCacheSize);
+        TreeCommonParameters.setDefaultMaxCacheSize(maxCacheSize);
+        TreeCommonParameters.setDefaultMaxPageSize(maxPageSize);
+        return new ConcurrentTree(dir);
+    }
+
+    public static String nodeName(int key) {
+        return "node-" + key;
+    }
+
+    /**
+     * Create a child of the root for every key and {@code fanout}
+     * children below each of them.
+     */
+    public static void populate(ConcurrentTree tree, int[] keys, int fanout) {
+        ConcurrentTreeNode root = tree.getRootNode();
+        for (int key : keys) {
+            ConcurrentTreeNode node = tree.getOrCreateNode(root, nodeName(key), null);
+            for (int i = 0; i < fanout; i++) {
+                tree.getOrCreateNode(node, nodeName(i), null).release();
+            }
+            node.release();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.query;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.hydra.bench.BundleGenerator;
+import com.addthis.hydra.bench.KeyDistribution;
+import com.addthis.hydra.data.query.QueryOpProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Runs generated rows through a query op chain. The rows have the columns
+ * key, category and count (see {@link BundleGenerator}). The op chains must
+ * not modify their input rows because the same rows are sent on every invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryOpBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"gather=kis", "sort=0:s:a", "gather=kis;sort=2:n:d;limit=100"})
+    public String ops;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"10000"})
+    public int keyRange;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public KeyDistribution keyDistribution;
+
+    private List<Bundle> input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        input = BundleGenerator.generate(rows, keyRange, keyDistribution, SEED);
+    }
+
+    @Benchmark
+    public void process(Blackhole blackhole) {
+        QueryOpProcessor processor = new QueryOpProcessor.Builder(new BlackholeOutput(blackhole), ops).build();
+        for (Bundle row : input) {
+            processor.send(row);
+        }
+        processor.sendComplete();
+        processor.close();
+    }
+
+    private static final class BlackholeOutput implements DataChannelOutput {
+
+        private final ListBundleFormat format = new ListBundleFormat();
+        private final Blackhole blackhole;
+
+        BlackholeOutput(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(Bundle row) {
+            blackhole.consume(row);
+        }
+
+        @Override
+        public void send(List<Bundle> bundles) {
+            for (Bundle bundle : bundles) {
+                blackhole.consume(bundle);
+            }
+        }
+
+        @Override
+        public void sendComplete() {
+        }
+
+        @Override
+        public void sourceError(Throwable er) {
+            blackhole.consume(er);
+        }
+
+        @Override
+        public Bundle createBundle() {
+            return new ListBundle(format);
+        }
+    }
+}
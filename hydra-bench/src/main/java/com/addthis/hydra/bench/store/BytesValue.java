@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.store;
+
+import com.addthis.codec.codables.BytesCodable;
+
+/**
+ * Opaque value of a fixed number of bytes.
+ */
+public class BytesValue implements BytesCodable {
+
+    private byte[] bytes;
+
+    public BytesValue() {
+    }
+
+    public BytesValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public byte[] bytesEncode(long version) {
+        return bytes;
+    }
+
+    @Override
+    public void bytesDecode(byte[] b, long version) {
+        bytes = b;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.store;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.addthis.basis.util.LessBytes;
+
+import com.addthis.hydra.store.kv.KeyCoder;
+import com.addthis.hydra.store.kv.PageEncodeType;
+
+/**
+ * Encodes integer keys so that their byte order matches their numeric order.
+ * Keys within a page are encoded relative to the first key of the page.
+ */
+public class IntKeyCoder implements KeyCoder<Integer, BytesValue> {
+
+    @Override
+    public Integer negInfinity() {
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public byte[] encodedNegInfinity() {
+        return keyEncode(negInfinity());
+    }
+
+    @Override
+    public byte[] keyEncode(Integer key) {
+        return key != null ? LessBytes.toBytes(key.intValue() ^ Integer.MIN_VALUE) : new byte[0];
+    }
+
+    @Override
+    public byte[] keyEncode(@Nullable Integer key, @Nonnull Integer baseKey, @Nonnull PageEncodeType encodeType) {
+        if (key == null) {
+            return new byte[0];
+        }
+        return keyEncode(key - baseKey);
+    }
+
+    @Override
+    public byte[] valueEncode(BytesValue value, PageEncodeType encodeType) {
+        return value.bytesEncode(encodeType.ordinal());
+    }
+
+    @Override
+    public Integer keyDecode(byte[] key) {
+        return (key != null && key.length > 0) ? (LessBytes.toInt(key) ^ Integer.MIN_VALUE) : null;
+    }
+
+    @Override
+    public Integer keyDecode(@Nullable byte[] key, @Nonnull Integer baseKey, @Nonnull PageEncodeType encodeType) {
+        Integer offset = keyDecode(key);
+        if (offset == null) {
+            return null;
+        }
+        return offset + baseKey;
+    }
+
+    @Override
+    public BytesValue valueDecode(byte[] value, PageEncodeType encodeType) {
+        BytesValue result = new BytesValue();
+        result.bytesDecode(value, encodeType.ordinal());
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.store;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.bench.KeyDistribution;
+import com.addthis.hydra.store.common.Page;
+import com.addthis.hydra.store.common.PageFactory;
+import com.addthis.hydra.store.kv.MapDbByteStore;
+import com.addthis.hydra.store.kv.PageEncodeType;
+import com.addthis.hydra.store.skiplist.ConcurrentPage;
+import com.addthis.hydra.store.skiplist.SkipListCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Serialization of a single page with the page codec selected by {@code eps.gz.type}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageEncodeBenchmark {
+
+    private static final long SEED = 42;
+
+    /** Number of keys in the page. */
+    @Param({"64", "512"})
+    public int pageSize;
+
+    /** Number of bytes in each value. */
+    @Param({"8", "64"})
+    public int valueSize;
+
+    @Param({"SEQUENTIAL", "UNIFORM"})
+    public KeyDistribution keyDistribution;
+
+    private File dir;
+    private SkipListCache<Integer, BytesValue> cache;
+    private PageFactory<Integer, BytesValue> factory;
+    private Page<Integer, BytesValue> page;
+    private ByteBufOutputStream out;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        dir = LessFiles.createTempDir();
+        factory = ConcurrentPage.ConcurrentPageFactory.singleton;
+        cache = new SkipListCache.Builder<>(new IntKeyCoder(), new MapDbByteStore(dir, "bench"), pageSize)
+                .pageFactory(factory).build();
+        int[] keys = keyDistribution.generateSorted(pageSize, pageSize * 8, SEED);
+        Random random = new Random(SEED);
+        ArrayList<Integer> pageKeys = new ArrayList<>(keys.length);
+        ArrayList<BytesValue> pageValues = new ArrayList<>(keys.length);
+        ArrayList<byte[]> rawValues = new ArrayList<>(keys.length);
+        for (int key : keys) {
+            byte[] value = new byte[valueSize];
+            random.nextBytes(value);
+            pageKeys.add(key);
+            pageValues.add(new BytesValue(value));
+            rawValues.add(null);
+        }
+        page = factory.generateSiblingPage(cache, keys[0], null, keys.length, pageKeys, pageValues, rawValues,
+                                           PageEncodeType.defaultType());
+        out = new ByteBufOutputStream(Unpooled.buffer());
+        encoded = page.encode(out, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        LessFiles.deleteDir(dir);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return page.encode(out, false);
+    }
+
+    @Benchmark
+    public Page<Integer, BytesValue> decode() {
+        Page<Integer, BytesValue> target = factory.generateEmptyPage(cache, page.getFirstKey(),
+                                                                     PageEncodeType.defaultType());
+        target.decode(encoded);
+        return target;
+    }
+}
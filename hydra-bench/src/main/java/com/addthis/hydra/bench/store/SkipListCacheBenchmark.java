@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.store;
+
+import java.io.File;
+
+import java.util.concurrent.TimeUnit;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.bench.KeyDistribution;
+import com.addthis.hydra.store.kv.MapDbByteStore;
+import com.addthis.hydra.store.skiplist.SkipListCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Point reads and writes against a page cache that is backed by a MapDB
+ * byte store. When {@code maxPages} is smaller than the number of pages
+ * that the key range occupies the accesses include page eviction and loading.
+ * Run with {@code -t} to measure contention between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkipListCacheBenchmark {
+
+    private static final long SEED = 42;
+
+    /** Length of the key sequence that each thread cycles through. */
+    private static final int ACCESSES = 1 << 16;
+
+    /** Maximum number of keys in a page. */
+    @Param({"128"})
+    public int pageSize;
+
+    /** Maximum number of pages held in memory. */
+    @Param({"100", "10000"})
+    public int maxPages;
+
+    @Param({"100000"})
+    public int keyRange;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public KeyDistribution keyDistribution;
+
+    private File dir;
+    private SkipListCache<Integer, BytesValue> cache;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = LessFiles.createTempDir();
+        cache = new SkipListCache.Builder<>(new IntKeyCoder(), new MapDbByteStore(dir, "bench"), pageSize)
+                .maxPages(maxPages).build();
+        for (int i = 0; i < keyRange; i++) {
+            cache.put(i, new BytesValue(new byte[8]));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        LessFiles.deleteDir(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int[] keys;
+        int position;
+        final BytesValue value = new BytesValue(new byte[8]);
+
+        @Setup(Level.Trial)
+        public void setup(SkipListCacheBenchmark benchmark, ThreadParams threadParams) {
+            keys = benchmark.keyDistribution.generate(ACCESSES, benchmark.keyRange,
+                                                      SEED + threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int key = keys[position];
+            position = (position + 1) & (ACCESSES - 1);
+            return key;
+        }
+    }
+
+    @Benchmark
+    public BytesValue get(Cursor cursor) {
+        return cache.get(cursor.next());
+    }
+
+    @Benchmark
+    public BytesValue put(Cursor cursor) {
+        return cache.put(cursor.next(), cursor.value);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.store;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.addthis.hydra.store.kv.PageEncodeType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Node identifier encoding of the {@link PageEncodeType} variants. The
+ * identifiers have a random number of significant bits so that every
+ * varint length occurs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarintBenchmark {
+
+    private static final int COUNT = 1024;
+
+    @Param({"SPARSE", "LONGIDS"})
+    public PageEncodeType encodeType;
+
+    private final long[] ids = new long[COUNT];
+    private ByteBuf buffer;
+    private long version;
+
+    @Setup
+    public void setup() {
+        version = encodeType.ordinal();
+        Random random = new Random(42);
+        boolean longIds = (encodeType == PageEncodeType.LONGIDS);
+        long max = longIds ? Long.MAX_VALUE : Integer.MAX_VALUE;
+        int bits = longIds ? 63 : 31;
+        for (int i = 0; i < COUNT; i++) {
+            ids[i] = (random.nextLong() & max) >>> random.nextInt(bits);
+        }
+        buffer = Unpooled.buffer(COUNT * 10);
+        for (long id : ids) {
+            PageEncodeType.writeNodeId(buffer, version, id);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public ByteBuf write() {
+        buffer.clear();
+        for (long id : ids) {
+            PageEncodeType.writeNodeId(buffer, version, id);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long read() {
+        buffer.readerIndex(0);
+        long sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += PageEncodeType.readNodeId(buffer, version);
+        }
+        return sum;
+    }
+}
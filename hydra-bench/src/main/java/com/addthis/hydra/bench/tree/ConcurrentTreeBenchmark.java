@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.bench.tree;
+
+import java.io.File;
+
+import java.util.concurrent.TimeUnit;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.bench.KeyDistribution;
+import com.addthis.hydra.bench.TreeGenerator;
+import com.addthis.hydra.data.tree.concurrent.ConcurrentTree;
+import com.addthis.hydra.data.tree.concurrent.ConcurrentTreeNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Child lookups below the root of a tree with {@code keyRange} children.
+ * A node cache smaller than the key range makes the lookups go through
+ * the page cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTreeBenchmark {
+
+    private static final long SEED = 42;
+
+    private static final int ACCESSES = 1 << 16;
+
+    /** Maximum number of nodes in the node cache. */
+    @Param({"1000", "100000"})
+    public int nodeCacheSize;
+
+    /** Maximum number of pages in the page cache. Zero selects the store default. */
+    @Param({"0"})
+    public int maxCacheSize;
+
+    /** Maximum number of nodes in a page. Zero selects the store default. */
+    @Param({"0"})
+    public int maxPageSize;
+
+    @Param({"100000"})
+    public int keyRange;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public KeyDistribution keyDistribution;
+
+    private File dir;
+    private ConcurrentTree tree;
+    private ConcurrentTreeNode root;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = LessFiles.createTempDir();
+        tree = TreeGenerator.create(dir, nodeCacheSize, maxCacheSize, maxPageSize);
+        TreeGenerator.populate(tree, KeyDistribution.SEQUENTIAL.generate(keyRange, keyRange, SEED), 0);
+        root = tree.getRootNode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tree.close();
+        LessFiles.deleteDir(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        String[] names;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setup(ConcurrentTreeBenchmark benchmark, ThreadParams threadParams) {
+            int[] keys = benchmark.keyDistribution.generate(ACCESSES, benchmark.keyRange,
+                                                            SEED + threadParams.getThreadIndex());
+            names = new String[ACCESSES];
+            for (int i = 0; i < ACCESSES; i++) {
+                names[i] = TreeGenerator.nodeName(keys[i]);
+            }
+        }
+
+        String next() {
+            String name = names[position];
+            position = (position + 1) & (ACCESSES - 1);
+            return name;
+        }
+    }
+
+    @Benchmark
+    public ConcurrentTreeNode getOrCreateNode(Cursor cursor) {
+        ConcurrentTreeNode node = tree.getOrCreateNode(root, cursor.next(), null);
+        node.release();
+        return node;
+    }
+
+    @Benchmark
+    public ConcurrentTreeNode getNode(Cursor cursor) {
+        ConcurrentTreeNode node = tree.getNode(root, cursor.next(), true);
+        if (node != null) {
+            node.release();
+        }
+        return node;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.Varint;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleFactory;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.BundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+import com.addthis.bundle.value.ValueObject;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.FLAG_LZ4;
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.TAG_DOUBLE;
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.TAG_LONG;
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.TAG_NULL;
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.TAG_STRING;
+import static com.addthis.hydra.data.query.ColumnarFrameWriter.TAG_STRING_REF;
+
+/**
+ * Decoded columns of a frame written by {@link ColumnarFrameWriter}.
+ * The frame is decoded once into arrays of values. Dictionary encoded
+ * strings are decoded once per frame and the value objects are shared
+ * by all rows that reference them. Rows are assembled on demand.
+ */
+final class ColumnarFrameReader {
+
+    private static final LZ4FastDecompressor lz4Decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final BundleField[] fields;
+    private final ValueObject[][] columns;
+    private final int rows;
+
+    private int next;
+
+    private ColumnarFrameReader(BundleField[] fields, ValueObject[][] columns, int rows) {
+        this.fields = fields;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Read a frame that follows the frame type byte.
+     *
+     * @param format fields are resolved against the format of the bundles that are produced
+     */
+    static ColumnarFrameReader read(InputStream in, BundleFormat format) throws IOException {
+        DataInputStream frame = new DataInputStream(in);
+        int flags = frame.readUnsignedByte();
+        int length = Varint.readUnsignedVarInt(frame);
+        byte[] payload = new byte[length];
+        if ((flags & FLAG_LZ4) != 0) {
+            byte[] compressed = new byte[Varint.readUnsignedVarInt(frame)];
+            frame.readFully(compressed);
+            lz4Decompressor.decompress(compressed, 0, payload, 0, length);
+        } else {
+            frame.readFully(payload);
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        int rows = Varint.readUnsignedVarInt(input);
+        int columnCount = Varint.readUnsignedVarInt(input);
+        BundleField[] fields = new BundleField[columnCount];
+        ValueObject[][] columns = new ValueObject[columnCount][];
+        List<ValueObject> dictionary = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            fields[i] = format.getField(readString(input));
+            columns[i] = readColumn(input, rows, dictionary);
+            dictionary.clear();
+        }
+        return new ColumnarFrameReader(fields, columns, rows);
+    }
+
+    private static ValueObject[] readColumn(DataInput input, int rows,
+                                            List<ValueObject> dictionary) throws IOException {
+        ValueObject[] column = new ValueObject[rows];
+        for (int i = 0; i < rows; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case TAG_NULL:
+                    break;
+                case TAG_STRING:
+                    ValueObject string = ValueFactory.create(readString(input));
+                    dictionary.add(string);
+                    column[i] = string;
+                    break;
+                case TAG_STRING_REF:
+                    column[i] = dictionary.get(Varint.readUnsignedVarInt(input));
+                    break;
+                case TAG_LONG:
+                    long zigzag = Varint.readUnsignedVarLong(input);
+                    column[i] = ValueFactory.create((zigzag >>> 1) ^ -(zigzag & 1));
+                    break;
+                case TAG_DOUBLE:
+                    column[i] = ValueFactory.create(input.readDouble());
+                    break;
+                default:
+                    throw new IOException("invalid columnar cell tag: " + tag);
+            }
+        }
+        return column;
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[Varint.readUnsignedVarInt(input)];
+        input.readFully(bytes);
+        return LessBytes.toString(bytes);
+    }
+
+    boolean hasNext() {
+        return next < rows;
+    }
+
+    Bundle next(BundleFactory factory) {
+        Bundle bundle = factory.createBundle();
+        for (int i = 0; i < fields.length; i++) {
+            ValueObject value = columns[i][next];
+            if (value != null) {
+                bundle.setValue(fields[i], value);
+            }
+        }
+        next++;
+        return bundle;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.Varint;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.value.ValueObject;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Accumulates result rows into a single columnar frame. Each column is
+ * a sequence of tagged cells. Strings are dictionary encoded per column
+ * within the frame and integers are written as zigzag varints. Rows that
+ * contain values other than strings, integers and floating point numbers
+ * are rejected by {@link #add(Bundle)} and must be sent as row frames.
+ * <p/>
+ * Frame layout following the {@link FramedDataChannelReader#FRAME_BATCH} byte:
+ * <pre>
+ * flags : byte (FLAG_LZ4)
+ * length : varint (uncompressed payload length)
+ * [compressed length : varint] if FLAG_LZ4
+ * payload : rows varint, columns varint, then per column the name and one cell per row
+ * </pre>
+ */
+public final class ColumnarFrameWriter {
+
+    /**
+     * Query option that the master sets to request columnar frames.
+     */
+    public static final String OPTION = "frames";
+    public static final String COLUMNAR = "columnar";
+    public static final String COLUMNAR_LZ4 = "columnar-lz4";
+
+    static final int FLAG_LZ4 = 1;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_STRING = 1;
+    static final int TAG_STRING_REF = 2;
+    static final int TAG_LONG = 3;
+    static final int TAG_DOUBLE = 4;
+
+    private static final LZ4Compressor lz4Compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private final boolean compress;
+    private final Map<String, Column> columnsByName = new HashMap<>();
+    private final List<Column> columns = new ArrayList<>();
+
+    private int rows;
+    private int size;
+
+    private static final class Column {
+
+        final String name;
+        final ByteBuf data = Unpooled.buffer();
+        final Map<String, Integer> dictionary = new HashMap<>();
+
+        int cells;
+
+        Column(String name) {
+            this.name = name;
+        }
+    }
+
+    public ColumnarFrameWriter(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Returns the writer requested by the query options, or null if the
+     * master did not ask for columnar frames.
+     */
+    public static ColumnarFrameWriter fromOptions(Map<String, String> options) {
+        String frames = (options != null) ? options.get(OPTION) : null;
+        if (COLUMNAR.equals(frames)) {
+            return new ColumnarFrameWriter(false);
+        } else if (COLUMNAR_LZ4.equals(frames)) {
+            return new ColumnarFrameWriter(true);
+        } else {
+            return null;
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Approximate size of the frame in bytes before compression.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append the row to the frame.
+     *
+     * @return false if the row contains values that cannot be encoded in columns
+     */
+    public boolean add(Bundle row) {
+        for (BundleField field : row.getFormat()) {
+            ValueObject value = row.getValue(field);
+            if ((value != null) && !isColumnar(value.getObjectType())) {
+                return false;
+            }
+        }
+        for (BundleField field : row.getFormat()) {
+            Column column = column(field.getName());
+            if (column.cells <= rows) {
+                writeCell(column, row.getValue(field));
+            }
+        }
+        rows++;
+        for (Column column : columns) {
+            if (column.cells < rows) {
+                column.data.writeByte(TAG_NULL);
+                column.cells++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isColumnar(ValueObject.TYPE type) {
+        return (type == ValueObject.TYPE.STRING) || (type == ValueObject.TYPE.INT) ||
+               (type == ValueObject.TYPE.FLOAT);
+    }
+
+    private Column column(String name) {
+        Column column = columnsByName.get(name);
+        if (column == null) {
+            column = new Column(name);
+            for (int i = 0; i < rows; i++) {
+                column.data.writeByte(TAG_NULL);
+            }
+            column.cells = rows;
+            columnsByName.put(name, column);
+            columns.add(column);
+        }
+        return column;
+    }
+
+    private void writeCell(Column column, ValueObject value) {
+        ByteBuf data = column.data;
+        int start = data.writerIndex();
+        if (value == null) {
+            data.writeByte(TAG_NULL);
+        } else {
+            switch (value.getObjectType()) {
+                case STRING:
+                    String string = value.asString().asNative();
+                    Integer index = column.dictionary.get(string);
+                    if (index != null) {
+                        data.writeByte(TAG_STRING_REF);
+                        Varint.writeUnsignedVarInt(index, data);
+                    } else {
+                        column.dictionary.put(string, column.dictionary.size());
+                        byte[] bytes = LessBytes.toBytes(string);
+                        data.writeByte(TAG_STRING);
+                        Varint.writeUnsignedVarInt(bytes.length, data);
+                        data.writeBytes(bytes);
+                    }
+                    break;
+                case INT:
+                    long longValue = value.asLong().getLong();
+                    data.writeByte(TAG_LONG);
+                    Varint.writeUnsignedVarLong((longValue << 1) ^ (longValue >> 63), data);
+                    break;
+                case FLOAT:
+                    data.writeByte(TAG_DOUBLE);
+                    data.writeDouble(value.asDouble().getDouble());
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected value type " + value.getObjectType());
+            }
+        }
+        column.cells++;
+        size += data.writerIndex() - start;
+    }
+
+    /**
+     * Write the frame to the output stream and reset the writer. Does
+     * nothing if no rows have been added since the last frame.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        ByteBuf payload = Unpooled.buffer(size + 16 * (columns.size() + 1));
+        Varint.writeUnsignedVarInt(rows, payload);
+        Varint.writeUnsignedVarInt(columns.size(), payload);
+        for (Column column : columns) {
+            byte[] name = LessBytes.toBytes(column.name);
+            Varint.writeUnsignedVarInt(name.length, payload);
+            payload.writeBytes(name);
+            payload.writeBytes(column.data);
+        }
+        int length = payload.readableBytes();
+        ByteBuf header = Unpooled.buffer(16);
+        header.writeByte(FramedDataChannelReader.FRAME_BATCH);
+        if (compress) {
+            byte[] compressed = new byte[lz4Compressor.maxCompressedLength(length)];
+            int compressedLength = lz4Compressor.compress(payload.array(), payload.arrayOffset() + payload.readerIndex(),
+                                                          length, compressed, 0, compressed.length);
+            header.writeByte(FLAG_LZ4);
+            Varint.writeUnsignedVarInt(length, header);
+            Varint.writeUnsignedVarInt(compressedLength, header);
+            header.readBytes(out, header.readableBytes());
+            out.write(compressed, 0, compressedLength);
+        } else {
+            header.writeByte(0);
+            Varint.writeUnsignedVarInt(length, header);
+            header.readBytes(out, header.readableBytes());
+            payload.readBytes(out, length);
+        }
+        reset();
+    }
+
+    private void reset() {
+        columns.clear();
+        columnsByName.clear();
+        rows = 0;
+        size = 0;
+    }
+}
@@ -64,6 +64,16 @@ public class FieldValueList implements BundleFormatted {
         }
     }
 
+    /**
+     * Returns an independent list with the same field values.
+     */
+    public FieldValueList copy() {
+        FieldValueList copy = new FieldValueList(bundleFormat);
+        copy.list.addAll(list);
+        copy.lastCommit = lastCommit;
+        return copy;
+    }
+
     public void commit() {
         lastCommit = list.size();
     }
@@ -48,6 +48,11 @@ public class FramedDataChannelReader implements BundleReader {
     public static final int FRAME_EOF = 1;
     public static final int FRAME_ERROR = 2;
     public static final int FRAME_BUSY = 3;
+    /**
+     * Many rows encoded in columns by {@link ColumnarFrameWriter}. Only
+     * sent by workers when the master requests it in the query options.
+     */
+    public static final int FRAME_BATCH = 4;
 
     private final StreamSource streamSource;
     private final DataChannelCodec.ClassIndexMap classMap;
@@ -57,6 +62,7 @@ public class FramedDataChannelReader implements BundleReader {
     private final int pollWaitTime;
 
     private ByteArrayInputStream bis;
+    private ColumnarFrameReader batch;
     private DataChannelError err;
     private boolean eof;
 
@@ -87,6 +93,12 @@ public class FramedDataChannelReader implements BundleReader {
         if (eof) {
             return null;
         }
+        if (batch != null) {
+            if (batch.hasNext()) {
+                return batch.next(factory);
+            }
+            batch = null;
+        }
         if ((bis == null) || (bis.available() == 0)) {
             byte[] data;
             try {
@@ -114,6 +126,14 @@ public class FramedDataChannelReader implements BundleReader {
                 throw err;
             case FRAME_MORE:
                 return DataChannelCodec.decodeBundle(factory.createBundle(), LessBytes.readBytes(bis), fieldMap, classMap);
+            case FRAME_BATCH:
+                batch = ColumnarFrameReader.read(bis, factory.createBundle().getFormat());
+                if (batch.hasNext()) {
+                    return batch.next(factory);
+                }
+                // an empty batch is never written but is harmless
+                batch = null;
+                return null;
             case FRAME_EOF:
                 close();
                 return null;
@@ -137,7 +137,7 @@ enum Op {
         QueryOp build(QueryOpProcessor processor,
                       String args,
                       ChannelProgressivePromise opPromise) {
-            return new OpDiskSort(args, processor.tempDir(), opPromise);
+            return new OpDiskSort(args, processor.tempDir(), processor.memTracker(), opPromise);
         }
     },
     FILL {
@@ -402,7 +402,7 @@ enum Op {
         QueryOp build(QueryOpProcessor processor,
                       String args,
                       ChannelProgressivePromise opPromise) {
-            return new OpDiskSort(args, processor.tempDir(), opPromise);
+            return new OpDiskSort(args, processor.tempDir(), processor.memTracker(), opPromise);
         }
     },
     STR {
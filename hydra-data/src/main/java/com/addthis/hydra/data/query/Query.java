@@ -197,6 +197,15 @@ public class Query implements Codable {
         return newQuery;
     }
 
+    /**
+     * @return a copy of this query with no ops, for results that have already been processed
+     */
+    public Query withoutOps() {
+        Query newQuery = cloneTo(new Query());
+        newQuery.ops = null;
+        return newQuery;
+    }
+
     private Query cloneTo(Query q) {
         q.paths = paths;
         q.ops = ops;
@@ -143,6 +143,10 @@ public class QueryOpProcessor implements DataChannelOutput, QueryMemTracker, Clo
         return memTip;
     }
 
+    @Nullable public QueryMemTracker memTracker() {
+        return memTracker;
+    }
+
     public String printOps() {
         return firstOp.toString();
     }
@@ -15,17 +15,27 @@ package com.addthis.hydra.data.query.engine;
 
 import java.io.IOException;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.addthis.basis.util.ClosableIterator;
+import com.addthis.basis.util.Parameter;
 
 import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.core.kvp.KVBundleFormat;
 import com.addthis.hydra.data.query.FieldValueList;
 import com.addthis.hydra.data.query.Query;
@@ -49,6 +59,32 @@ public class QueryEngine {
 
     private static final Logger log = LoggerFactory.getLogger(QueryEngine.class);
 
+    /**
+     * If true then queries search the children of wide nodes in parallel unless
+     * the query sets the {@code parallel} parameter to false. Otherwise parallel
+     * search must be requested with the {@code parallel} query parameter.
+     */
+    private static final boolean defaultParallel = Parameter.boolValue("qe.search.parallel", false);
+
+    /**
+     * Number of threads shared by the parallel searches of all queries on this host.
+     */
+    private static final int searchThreads = Parameter.intValue("qe.search.threads",
+                                                                Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Maximum number of subtree searches of a single node that are in flight
+     * at once, per search thread. Bounds the results that are buffered while
+     * waiting for earlier subtrees to complete.
+     */
+    private static final int searchWindow = Parameter.intValue("qe.search.window", 4);
+
+    private static final ForkJoinPool searchPool = new ForkJoinPool(searchThreads, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("query-search-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
     protected final DataTree tree;
     private final AtomicInteger used;
     private final AtomicBoolean isOpen;
@@ -188,9 +224,10 @@ public class QueryEngine {
      */
     public void search(Query query, DataChannelOutput result,
             ChannelProgressivePromise queryPromise) throws QueryException {
+        SearchContext context = SearchContext.forParameter(query.getParameter("parallel"));
         for (QueryElement[] path : query.getQueryPaths()) {
             if (!(queryPromise.isDone())) {
-                search(path, result, queryPromise);
+                search(path, result, queryPromise, context);
             }
         }
     }
@@ -228,6 +265,11 @@ public class QueryEngine {
      */
     public void search(QueryElement[] path, DataChannelOutput result,
             ChannelProgressivePromise queryPromise) throws QueryException {
+        search(path, result, queryPromise, SearchContext.forParameter(null));
+    }
+
+    private void search(QueryElement[] path, DataChannelOutput result,
+            ChannelProgressivePromise queryPromise, SearchContext context) throws QueryException {
         init();
         Thread thread = Thread.currentThread();
         synchronized (active) {
@@ -238,7 +280,7 @@ public class QueryEngine {
         try {
             LinkedList<DataTreeNode> stack = new LinkedList<>();
             stack.push(tree);
-            tableSearch(stack, new FieldValueList(new KVBundleFormat()), path, 0, result, 0, queryPromise);
+            tableSearch(stack, new FieldValueList(new KVBundleFormat()), path, 0, result, 0, queryPromise, context);
         } catch (QueryException | CancellationException ex) {
             log.debug("", ex);
         } catch (RuntimeException ex)  {
@@ -275,9 +317,9 @@ public class QueryEngine {
      */
     private void tableSearch(LinkedList<DataTreeNode> stack, DataTreeNode root, FieldValueList prefix, QueryElement[] path,
             int pathIndex, DataChannelOutput result, int collect,
-            ChannelProgressivePromise queryPromise) throws QueryException {
+            ChannelProgressivePromise queryPromise, SearchContext context) throws QueryException {
         stack.push(root);
-        tableSearch(stack, prefix, path, pathIndex, result, collect, queryPromise);
+        tableSearch(stack, prefix, path, pathIndex, result, collect, queryPromise, context);
         stack.pop();
     }
 
@@ -304,7 +346,10 @@ public class QueryEngine {
      */
     private void tableSearch(LinkedList<DataTreeNode> stack, FieldValueList prefix, QueryElement[] path,
             int pathIndex, DataChannelOutput sink, int collect,
-            ChannelProgressivePromise queryPromise) throws QueryException {
+            ChannelProgressivePromise queryPromise, SearchContext context) throws QueryException {
+        if (context.aborted.get()) {
+            throw new QueryException("Parallel search aborted");
+        }
         if (queryPromise.isDone()) {
             log.debug("Query promise completed during processing");
             if (queryPromise.isCancelled()) {
@@ -374,11 +419,16 @@ public class QueryEngine {
                     }
                 }
                 if (!queryPromise.isDone()) {
-                    tableSearch(null, prefix, path, pathIndex + 1, sink, collect + count, queryPromise);
+                    tableSearch(null, prefix, path, pathIndex + 1, sink, collect + count, queryPromise, context);
                 }
                 prefix.pop(count);
                 return;
             }
+            if (context.parallel && (pathIndex + 1) < path.length) {
+                parallelTableSearch(stack, root, iter, next, prefix, path, pathIndex, sink, collect,
+                                    queryPromise, context);
+                return;
+            }
             while (iter.hasNext() && (next.limit() == 0 || limit > 0)) {
                 // Check for interruptions or cancellations
                 if (Thread.currentThread().isInterrupted()) {
@@ -413,7 +463,8 @@ public class QueryEngine {
                     int count = next.update(prefix, tn);
                     if (count > 0) {
                         if (!queryPromise.isDone()) {
-                            tableSearch(stack, tn, prefix, path, pathIndex + 1, sink, collect + count, queryPromise);
+                            tableSearch(stack, tn, prefix, path, pathIndex + 1, sink, collect + count, queryPromise,
+                                        context);
                         }
                         prefix.pop(count);
                         limit--;
@@ -424,7 +475,7 @@ public class QueryEngine {
                         continue;
                     }
                     if (!queryPromise.isDone()) {
-                        tableSearch(stack, tn, prefix, path, pathIndex + 1, sink, collect, queryPromise);
+                        tableSearch(stack, tn, prefix, path, pathIndex + 1, sink, collect, queryPromise, context);
                     }
                     limit--;
                 }
@@ -441,4 +492,256 @@ public class QueryEngine {
         }
     }
 
+    /**
+     * Parallel version of the non-flattening loop of {@link #tableSearch}. The subtree of
+     * each matching child is searched sequentially on the shared search pool into a buffer,
+     * and the buffers are written to the sink by the calling thread either in the order of
+     * the children or, for unordered searches, in the order in which they complete. The
+     * descent stays parallel as long as a node has a single matching child so that the
+     * fan out happens at the first wide node of the path.
+     */
+    private void parallelTableSearch(LinkedList<DataTreeNode> stack, DataTreeNode root, Iterator<DataTreeNode> iter,
+            QueryElement next, FieldValueList prefix, QueryElement[] path, int pathIndex,
+            DataChannelOutput sink, int collect, ChannelProgressivePromise queryPromise,
+            SearchContext context) throws QueryException {
+        int skip = next.skip();
+        int limit = next.limit();
+        int maxInFlight = Math.max(1, searchThreads * searchWindow);
+        ArrayDeque<ForkJoinTask<List<Bundle>>> inFlight = new ArrayDeque<>();
+        SubtreeSearch first = null;
+        boolean forked = false;
+        boolean complete = false;
+        try {
+            while (iter.hasNext() && (next.limit() == 0 || limit > 0)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    QueryException exception = new QueryException("query interrupted");
+                    log.warn("Query closed due to thread interruption", exception);
+                    throw exception;
+                }
+                if (queryPromise.isDone()) {
+                    break;
+                }
+                DataTreeNode tn = iter.next();
+                int count = 0;
+                if (next.hasData()) {
+                    if (tn == null && !next.emptyok()) {
+                        break;
+                    }
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    count = next.update(prefix, tn);
+                    if (count <= 0) {
+                        continue;
+                    }
+                } else if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                SubtreeSearch search = new SubtreeSearch(new LinkedList<>(stack), tn, prefix.copy(), path,
+                                                         pathIndex + 1, sink, collect + count, queryPromise,
+                                                         context.sequential());
+                prefix.pop(count);
+                limit--;
+                if (first == null) {
+                    first = search;
+                    continue;
+                }
+                if (!forked) {
+                    forked = true;
+                    inFlight.add(searchPool.submit(first));
+                }
+                inFlight.add(searchPool.submit(search));
+                emitResults(inFlight, sink, queryPromise, context, maxInFlight - 1);
+            }
+            if (first != null && !forked) {
+                // a single matching child: keep descending on this thread
+                tableSearch(first.stack, first.node, first.prefix, path, pathIndex + 1, sink, first.collect,
+                            queryPromise, context);
+            } else {
+                emitResults(inFlight, sink, queryPromise, context, 0);
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                context.aborted.set(true);
+                for (ForkJoinTask<List<Bundle>> task : inFlight) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the results of completed subtree searches to the sink until
+     * at most {@code remaining} searches are still in flight.
+     */
+    private static void emitResults(ArrayDeque<ForkJoinTask<List<Bundle>>> inFlight, DataChannelOutput sink,
+            ChannelProgressivePromise queryPromise, SearchContext context, int remaining) throws QueryException {
+        if (!context.ordered) {
+            Iterator<ForkJoinTask<List<Bundle>>> iterator = inFlight.iterator();
+            while (iterator.hasNext()) {
+                ForkJoinTask<List<Bundle>> task = iterator.next();
+                if (task.isDone()) {
+                    iterator.remove();
+                    emit(task, sink, queryPromise);
+                }
+            }
+        }
+        while (inFlight.size() > remaining) {
+            emit(inFlight.poll(), sink, queryPromise);
+        }
+    }
+
+    private static void emit(ForkJoinTask<List<Bundle>> task, DataChannelOutput sink,
+            ChannelProgressivePromise queryPromise) throws QueryException {
+        List<Bundle> bundles;
+        try {
+            bundles = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("query interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof QueryException) {
+                throw (QueryException) cause;
+            } else if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new QueryException(cause);
+        }
+        synchronized (sink) {
+            for (Bundle bundle : bundles) {
+                if (queryPromise.isDone()) {
+                    return;
+                }
+                sink.send(bundle);
+            }
+        }
+    }
+
+    /**
+     * Options of a single search. The abort flag is shared by all of the
+     * subtree searches that were forked from the same search.
+     */
+    private static final class SearchContext {
+
+        final boolean parallel;
+        final boolean ordered;
+        final AtomicBoolean aborted;
+
+        SearchContext(boolean parallel, boolean ordered, AtomicBoolean aborted) {
+            this.parallel = parallel;
+            this.ordered = ordered;
+            this.aborted = aborted;
+        }
+
+        /**
+         * Parse the {@code parallel} query parameter: "true" or "ordered" search in parallel and
+         * write the results in tree order, "unordered" writes the results of each subtree as soon
+         * as it is complete and "false" searches on the calling thread.
+         */
+        static SearchContext forParameter(String value) {
+            boolean parallel = defaultParallel;
+            boolean ordered = true;
+            if (value != null) {
+                switch (value.toLowerCase()) {
+                    case "true":
+                    case "ordered":
+                        parallel = true;
+                        break;
+                    case "unordered":
+                        parallel = true;
+                        ordered = false;
+                        break;
+                    default:
+                        parallel = false;
+                }
+            }
+            return new SearchContext(parallel && (searchThreads > 1), ordered, new AtomicBoolean());
+        }
+
+        SearchContext sequential() {
+            return new SearchContext(false, ordered, aborted);
+        }
+    }
+
+    /**
+     * Searches the subtree below one child into a buffer.
+     */
+    private final class SubtreeSearch implements Callable<List<Bundle>> {
+
+        final LinkedList<DataTreeNode> stack;
+        final DataTreeNode node;
+        final FieldValueList prefix;
+        final QueryElement[] path;
+        final int pathIndex;
+        final int collect;
+        final ChannelProgressivePromise queryPromise;
+        final SearchContext context;
+        final BufferedOutput output;
+
+        SubtreeSearch(LinkedList<DataTreeNode> stack, DataTreeNode node, FieldValueList prefix, QueryElement[] path,
+                      int pathIndex, DataChannelOutput sink, int collect, ChannelProgressivePromise queryPromise,
+                      SearchContext context) {
+            this.stack = stack;
+            this.node = node;
+            this.prefix = prefix;
+            this.path = path;
+            this.pathIndex = pathIndex;
+            this.collect = collect;
+            this.queryPromise = queryPromise;
+            this.context = context;
+            this.output = new BufferedOutput(sink);
+        }
+
+        @Override
+        public List<Bundle> call() throws QueryException {
+            tableSearch(stack, node, prefix, path, pathIndex, output, collect, queryPromise, context);
+            return output.bundles;
+        }
+    }
+
+    /**
+     * Collects the bundles of a subtree search. Bundles are created by the
+     * real sink so that they share its format.
+     */
+    private static final class BufferedOutput implements DataChannelOutput {
+
+        final DataChannelOutput sink;
+        final List<Bundle> bundles = new ArrayList<>();
+
+        BufferedOutput(DataChannelOutput sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void send(Bundle bundle) {
+            bundles.add(bundle);
+        }
+
+        @Override
+        public void send(List<Bundle> list) {
+            bundles.addAll(list);
+        }
+
+        @Override
+        public void sendComplete() {
+        }
+
+        @Override
+        public void sourceError(Throwable throwable) {
+        }
+
+        @Override
+        public Bundle createBundle() {
+            synchronized (sink) {
+                return sink.createBundle();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,504 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.op;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.MemoryCounter;
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleFactory;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.io.DataChannelCodec;
+import com.addthis.bundle.util.BundleColumnBinder;
+import com.addthis.hydra.data.query.QueryMemTracker;
+
+import com.google.common.base.Throwables;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelProgressivePromise;
+
+/**
+ * External merge sort used by {@link OpDiskSort}. Rows are buffered until
+ * their estimated size reaches {@code op.disksort.run.bytes} and the buffered
+ * run is then handed to a shared worker pool, which encodes the normalized
+ * sort key of every row (see {@link SortKeyEncoder}), sorts the run and
+ * writes it to a run file. The buffered rows are registered with the
+ * {@link QueryMemTracker} of the query until their run has been written.
+ * <p/>
+ * A run file is a sequence of records that each hold the sort key followed
+ * by the row encoded against the field dictionary of the run, terminated by
+ * an empty key. Runs are merged with a {@link LoserTree}. When there are more
+ * than {@code op.disksort.merge.width} runs then groups of consecutive runs
+ * are first merged into larger runs in parallel.
+ * <p/>
+ * Methods other than {@link #close()} must be called by the query thread.
+ * {@link #close()} does not return until no worker is writing to the
+ * temporary directory.
+ */
+class ExternalSorter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExternalSorter.class);
+
+    private static final long RUN_BYTES = Parameter.longValue("op.disksort.run.bytes", 64 * 1024 * 1024);
+    private static final int MERGE_WIDTH = Parameter.intValue("op.disksort.merge.width", 128);
+    private static final int PENDING_RUNS = Parameter.intValue("op.disksort.pending.runs", 2);
+    private static final int SORT_THREADS = Parameter.intValue("op.disksort.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final ExecutorService sortPool = Executors.newFixedThreadPool(SORT_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("querySort-%d").setDaemon(true).build());
+
+    private static final Comparator<byte[]> keyComparator = UnsignedBytes.lexicographicalComparator();
+
+    private static final byte[] END_OF_RUN = new byte[0];
+
+    private final Path tempDir;
+    private final String[] cols;
+    private final char[] type;
+    private final char[] dir;
+    @Nullable private final QueryMemTracker memTracker;
+    private final long runBytes;
+    private final int mergeWidth;
+    private final BundleFactory factory = new ListBundle();
+    private final List<Run> runs = new ArrayList<>();
+
+    /**
+     * Tasks submitted to the worker pool. Guarded by this sorter along
+     * with {@link #activeTasks} and {@link #closed}.
+     */
+    private final List<Future<Path>> tasks = new ArrayList<>();
+    private int activeTasks;
+    private boolean closed;
+
+    private BundleField[] fields;
+    private List<Bundle> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private int fileCounter;
+
+    ExternalSorter(Path tempDir, String[] cols, char[] type, char[] dir, @Nullable QueryMemTracker memTracker) {
+        this(tempDir, cols, type, dir, memTracker, RUN_BYTES, MERGE_WIDTH);
+    }
+
+    ExternalSorter(Path tempDir, String[] cols, char[] type, char[] dir,
+                   @Nullable QueryMemTracker memTracker, long runBytes, int mergeWidth) {
+        this.tempDir = tempDir;
+        this.cols = cols;
+        this.type = type;
+        this.dir = dir;
+        this.memTracker = memTracker;
+        this.runBytes = runBytes;
+        this.mergeWidth = Math.max(mergeWidth, 2);
+    }
+
+    public void add(Bundle row) {
+        if (fields == null) {
+            fields = new BundleColumnBinder(row, cols).getFields();
+        }
+        if (memTracker != null) {
+            memTracker.trackBundle(row);
+        }
+        buffer.add(row);
+        bufferBytes += MemoryCounter.estimateSize(row);
+        if (bufferBytes >= runBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Send the sorted rows to the consumer. Stops early if the query promise is completed.
+     */
+    public void finish(Consumer<Bundle> consumer, ChannelProgressivePromise queryPromise) {
+        if (runs.isEmpty()) {
+            // optimization for when the buffer has not spilled
+            Entry[] entries = sortRun(buffer, fields, type, dir);
+            for (Entry entry : entries) {
+                if (queryPromise.isDone()) {
+                    break;
+                }
+                consumer.accept(entry.row);
+            }
+            release(buffer);
+            buffer = new ArrayList<>();
+            return;
+        }
+        spill();
+        List<Path> files = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            files.add(retire(run));
+        }
+        while (files.size() > mergeWidth && !queryPromise.isDone()) {
+            files = mergeLevel(files);
+        }
+        if (queryPromise.isDone()) {
+            return;
+        }
+        try (Merger merger = new Merger(files, factory)) {
+            Bundle next;
+            while (!queryPromise.isDone() && ((next = merger.next()) != null)) {
+                consumer.accept(next);
+            }
+        } catch (IOException ex) {
+            throw Throwables.propagate(ex);
+        }
+    }
+
+    private void spill() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final List<Bundle> rows = buffer;
+        final Path file = tempDir.resolve("run-" + (fileCounter++));
+        final BundleField[] runFields = fields;
+        log.debug("spill rows={} bytes={} file={}", rows.size(), bufferBytes, file);
+        Run run = new Run(rows, submit(() -> writeRun(sortRun(rows, runFields, type, dir), file)));
+        runs.add(run);
+        buffer = new ArrayList<>();
+        bufferBytes = 0;
+        // bound the number of rows that are held in memory by runs waiting to be written
+        int pending = 0;
+        for (Run previous : runs) {
+            if (previous.rows != null) {
+                if (previous.file.isDone()) {
+                    retire(previous);
+                } else {
+                    pending++;
+                }
+            }
+        }
+        for (Run previous : runs) {
+            if (pending <= PENDING_RUNS) {
+                break;
+            } else if (previous.rows != null) {
+                retire(previous);
+                pending--;
+            }
+        }
+    }
+
+    private Path retire(Run run) {
+        Path file = await(run.file);
+        if (run.rows != null) {
+            release(run.rows);
+            run.rows = null;
+        }
+        return file;
+    }
+
+    private void release(List<Bundle> rows) {
+        if (memTracker != null) {
+            for (Bundle row : rows) {
+                memTracker.untrackBundle(row);
+            }
+        }
+    }
+
+    /**
+     * Merge groups of consecutive runs on the worker pool.
+     */
+    private List<Path> mergeLevel(List<Path> files) {
+        List<Future<Path>> merges = new ArrayList<>();
+        for (int start = 0; start < files.size(); start += mergeWidth) {
+            final List<Path> group = files.subList(start, Math.min(start + mergeWidth, files.size()));
+            final Path file = tempDir.resolve("run-" + (fileCounter++));
+            merges.add(submit(() -> mergeRuns(group, file)));
+        }
+        List<Path> result = new ArrayList<>(merges.size());
+        for (Future<Path> merge : merges) {
+            result.add(await(merge));
+        }
+        log.debug("merged {} runs into {} runs", files.size(), result.size());
+        return result;
+    }
+
+    private synchronized Future<Path> submit(Callable<Path> task) {
+        if (closed) {
+            throw new CancellationException("disk sort has been closed");
+        }
+        tasks.removeIf(Future::isDone);
+        Future<Path> future = sortPool.submit(() -> runTask(task));
+        tasks.add(future);
+        return future;
+    }
+
+    private Path runTask(Callable<Path> task) throws Exception {
+        synchronized (this) {
+            if (closed) {
+                throw new CancellationException("disk sort has been closed");
+            }
+            activeTasks++;
+        }
+        try {
+            return task.call();
+        } finally {
+            synchronized (this) {
+                activeTasks--;
+                notifyAll();
+            }
+        }
+    }
+
+    private static Path mergeRuns(List<Path> inputs, Path output) throws IOException {
+        try (Merger merger = new Merger(inputs, new ListBundle());
+             RunWriter writer = new RunWriter(output)) {
+            RunReader winner;
+            while ((winner = merger.winner()) != null) {
+                byte[] key = winner.key();
+                writer.write(key, merger.next());
+            }
+        }
+        for (Path input : inputs) {
+            Files.deleteIfExists(input);
+        }
+        return output;
+    }
+
+    private static Entry[] sortRun(List<Bundle> rows, BundleField[] fields, char[] type, char[] dir) {
+        Entry[] entries = new Entry[rows.size()];
+        if (entries.length == 0) {
+            return entries;
+        }
+        SortKeyEncoder encoder = new SortKeyEncoder(fields, type, dir);
+        for (int i = 0; i < entries.length; i++) {
+            Bundle row = rows.get(i);
+            entries[i] = new Entry(encoder.encode(row), row);
+        }
+        // stable so that rows with equal keys keep their input order
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    private static Path writeRun(Entry[] entries, Path file) throws IOException {
+        try (RunWriter writer = new RunWriter(file)) {
+            for (Entry entry : entries) {
+                writer.write(entry.key, entry.row);
+            }
+        }
+        return file;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(ex);
+        } catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    /**
+     * Cancels the tasks that have not started, interrupts the running tasks
+     * and waits for them to exit. Run files are deleted along with the
+     * temporary directory of the operation once this method returns.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Future<Path> task : tasks) {
+            task.cancel(true);
+        }
+        boolean interrupted = false;
+        while (activeTasks > 0) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Run {
+
+        final Future<Path> file;
+
+        /**
+         * Rows of the run until the run file has been written.
+         */
+        @Nullable List<Bundle> rows;
+
+        Run(List<Bundle> rows, Future<Path> file) {
+            this.rows = rows;
+            this.file = file;
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final byte[] key;
+        final Bundle row;
+
+        Entry(byte[] key, Bundle row) {
+            this.key = key;
+            this.row = row;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return keyComparator.compare(key, other.key);
+        }
+    }
+
+    private static final class RunWriter implements Closeable {
+
+        private final DataChannelCodec.ClassIndexMap classMap = DataChannelCodec.createClassIndexMap();
+        private final DataChannelCodec.FieldIndexMap fieldMap = DataChannelCodec.createFieldIndexMap();
+        private final OutputStream out;
+
+        RunWriter(Path file) throws IOException {
+            out = new BufferedOutputStream(OpDiskSort.wrapOutputStream(Files.newOutputStream(file)), 65536);
+        }
+
+        void write(byte[] key, Bundle row) throws IOException {
+            LessBytes.writeBytes(key, out);
+            LessBytes.writeBytes(DataChannelCodec.encodeBundle(row, fieldMap, classMap), out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                LessBytes.writeBytes(END_OF_RUN, out);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static final class RunReader implements LoserTree.Source, Closeable {
+
+        private final DataChannelCodec.ClassIndexMap classMap = DataChannelCodec.createClassIndexMap();
+        private final DataChannelCodec.FieldIndexMap fieldMap = DataChannelCodec.createFieldIndexMap();
+        private final InputStream in;
+
+        private byte[] key;
+        private byte[] row;
+
+        RunReader(Path file) throws IOException {
+            in = new BufferedInputStream(OpDiskSort.wrapInputStream(Files.newInputStream(file)), 65536);
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        /**
+         * Decode the current row. Must be called exactly once for
+         * every record because the field dictionary is incremental.
+         */
+        Bundle row(BundleFactory factory) throws IOException {
+            return DataChannelCodec.decodeBundle(factory.createBundle(), row, fieldMap, classMap);
+        }
+
+        void advance() throws IOException {
+            key = LessBytes.readBytes(in);
+            if (key.length == 0) {
+                key = null;
+                row = null;
+                in.close();
+            } else {
+                row = LessBytes.readBytes(in);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class Merger implements Closeable {
+
+        private final RunReader[] readers;
+        private final LoserTree tree;
+        private final BundleFactory factory;
+
+        Merger(List<Path> files, BundleFactory factory) throws IOException {
+            this.factory = factory;
+            this.readers = new RunReader[files.size()];
+            try {
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i] = new RunReader(files.get(i));
+                    readers[i].advance();
+                }
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            }
+            this.tree = new LoserTree(readers);
+        }
+
+        @Nullable RunReader winner() {
+            int winner = tree.winner();
+            return (winner < 0) ? null : readers[winner];
+        }
+
+        @Nullable Bundle next() throws IOException {
+            int winner = tree.winner();
+            if (winner < 0) {
+                return null;
+            }
+            Bundle row = readers[winner].row(factory);
+            readers[winner].advance();
+            tree.replay();
+            return row;
+        }
+
+        @Override
+        public void close() {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException ex) {
+                        log.warn("exception while trying to close disk sort readers", ex);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.op;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.LessFiles;
+import com.addthis.basis.util.MemoryCounter;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.io.DataChannelCodec;
+import com.addthis.bundle.value.ValueObject;
+import com.addthis.hydra.data.query.QueryOp;
+import com.addthis.hydra.data.query.op.merge.MergedValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelProgressivePromise;
+
+/**
+ * Spill partitions of a grace hash aggregation for {@link OpGather}. After the
+ * gather has passed its memory budget the rows of keys that are not already
+ * resident in memory are appended to one of {@code partitions} spill files
+ * chosen by the hash of the key. Each key therefore lives either in the
+ * resident table or in exactly one partition.
+ * <p/>
+ * Once the input is complete each partition is aggregated in memory on its
+ * own. A partition that again passes the budget spills the rows of its new
+ * keys into a nested set of partitions using a different hash seed, up to
+ * {@code maxDepth} levels, beyond which the partition is aggregated in memory.
+ * <p/>
+ * Only the input values of the merged columns are spilled. Rows are rebuilt
+ * from a template row of the same format so that the field bindings of the
+ * merge configuration remain valid.
+ */
+class GatherSpill implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GatherSpill.class);
+
+    private final File dir;
+    private final MergedValue[] conf;
+    private final ListBundleFormat format;
+    private final Bundle template;
+    private final long tipMem;
+    private final long tipRow;
+    private final int depth;
+    private final int maxDepth;
+    private final Partition[] partitions;
+
+    GatherSpill(File parent, MergedValue[] conf, ListBundleFormat format, Bundle template,
+                long tipMem, long tipRow, int partitions, int depth, int maxDepth) throws IOException {
+        this.dir = new File(parent, String.valueOf(UUID.randomUUID()));
+        this.conf = conf;
+        this.format = format;
+        this.template = template;
+        this.tipMem = tipMem;
+        this.tipRow = tipRow;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.partitions = new Partition[partitions];
+        LessFiles.initDirectory(dir);
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(new File(dir, "p" + i));
+        }
+        OpGather.diskTipPartitions.mark(partitions);
+    }
+
+    private static int hash(String key, int depth) {
+        int h = key.hashCode() ^ (depth * 0x9e3779b9);
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        h *= 0xc2b2ae35;
+        h ^= (h >>> 16);
+        return h;
+    }
+
+    public void add(String key, Bundle row) {
+        Partition partition = partitions[Math.floorMod(hash(key, depth), partitions.length)];
+        try {
+            partition.write(key, row);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Aggregate each partition and send the merged rows. Stops early if the query promise is completed.
+     */
+    public void emit(QueryOp next, ChannelProgressivePromise opPromise) {
+        try {
+            for (Partition partition : partitions) {
+                partition.finishWrite();
+            }
+            for (Partition partition : partitions) {
+                if (opPromise.isDone()) {
+                    return;
+                }
+                aggregate(partition, next, opPromise);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            close();
+        }
+    }
+
+    private void aggregate(Partition partition, QueryOp next, ChannelProgressivePromise opPromise)
+            throws IOException {
+        if (partition.rows == 0) {
+            return;
+        }
+        Map<String, MergedRow> table = new HashMap<>();
+        GatherSpill nested = null;
+        long totalMem = 0;
+        try {
+            try (PartitionReader reader = new PartitionReader(partition)) {
+                for (long i = 0; i < partition.rows; i++) {
+                    String key = reader.readKey();
+                    Bundle row = reader.readRow();
+                    MergedRow merge = table.get(key);
+                    if (merge == null) {
+                        if (nested != null) {
+                            nested.add(key, row);
+                            continue;
+                        }
+                        merge = new MergedRow(conf, new ListBundle(format));
+                        table.put(key, merge);
+                    } else {
+                        totalMem -= MemoryCounter.estimateSize(merge);
+                    }
+                    // re-estimate after every merge as in OpGather so that the budget bounds the table
+                    merge.merge(row);
+                    totalMem += MemoryCounter.estimateSize(merge);
+                    if ((nested == null) && (depth < maxDepth) &&
+                        ((tipMem > 0 && totalMem > tipMem) || (tipRow > 0 && table.size() > tipRow))) {
+                        OpGather.diskTips.mark();
+                        nested = new GatherSpill(dir, conf, format, template, tipMem, tipRow,
+                                                 partitions.length, depth + 1, maxDepth);
+                    }
+                }
+            }
+            partition.delete();
+            log.debug("aggregated partition depth={} rows={} keys={} nested={}",
+                      depth, partition.rows, table.size(), nested != null);
+            for (MergedRow mergedRow : table.values()) {
+                if (opPromise.isDone()) {
+                    break;
+                }
+                next.send(mergedRow.emit());
+            }
+            if (nested != null) {
+                nested.emit(next, opPromise);
+            }
+        } finally {
+            // emit closes the nested spill as well but it may not have been reached
+            if (nested != null) {
+                nested.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+        LessFiles.deleteDir(dir);
+    }
+
+    private final class Partition {
+
+        private final File file;
+        private final DataChannelCodec.ClassIndexMap classMap = DataChannelCodec.createClassIndexMap();
+        private final DataChannelCodec.FieldIndexMap fieldMap = DataChannelCodec.createFieldIndexMap();
+        private final ListBundleFormat valueFormat = new ListBundleFormat();
+        private OutputStream out;
+        private long rows;
+
+        Partition(File file) {
+            this.file = file;
+        }
+
+        void write(String key, Bundle row) throws IOException {
+            if (out == null) {
+                out = new BufferedOutputStream(new FileOutputStream(file), 16384);
+            }
+            ListBundle values = new ListBundle(valueFormat);
+            for (int i = 0; i < conf.length; i++) {
+                MergedValue map = conf[i];
+                if ((map != null) && (map.getFrom() != null)) {
+                    values.setValue(valueFormat.getField(Integer.toString(i)), row.getValue(map.getFrom()));
+                }
+            }
+            byte[] keyBytes = LessBytes.toBytes(key);
+            byte[] valueBytes = DataChannelCodec.encodeBundle(values, fieldMap, classMap);
+            LessBytes.writeBytes(keyBytes, out);
+            LessBytes.writeBytes(valueBytes, out);
+            rows++;
+            OpGather.diskTipBytes.mark(keyBytes.length + valueBytes.length);
+        }
+
+        void finishWrite() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+
+        void close() {
+            try {
+                finishWrite();
+            } catch (IOException ex) {
+                log.warn("exception while closing gather spill partition {}", file, ex);
+            }
+        }
+
+        void delete() {
+            if (!file.delete()) {
+                log.warn("unable to delete gather spill partition {}", file);
+            }
+        }
+    }
+
+    private final class PartitionReader implements Closeable {
+
+        private final DataChannelCodec.ClassIndexMap classMap = DataChannelCodec.createClassIndexMap();
+        private final DataChannelCodec.FieldIndexMap fieldMap = DataChannelCodec.createFieldIndexMap();
+        private final ListBundleFormat valueFormat = new ListBundleFormat();
+        private final BundleField[] valueFields = new BundleField[conf.length];
+        private final InputStream in;
+
+        PartitionReader(Partition partition) throws IOException {
+            in = new BufferedInputStream(new FileInputStream(partition.file), 65536);
+            for (int i = 0; i < conf.length; i++) {
+                valueFields[i] = valueFormat.getField(Integer.toString(i));
+            }
+        }
+
+        String readKey() throws IOException {
+            return LessBytes.toString(LessBytes.readBytes(in));
+        }
+
+        Bundle readRow() throws IOException {
+            Bundle values = DataChannelCodec.decodeBundle(new ListBundle(valueFormat),
+                                                          LessBytes.readBytes(in), fieldMap, classMap);
+            Bundle row = template.createBundle();
+            for (int i = 0; i < conf.length; i++) {
+                MergedValue map = conf[i];
+                if ((map != null) && (map.getFrom() != null)) {
+                    ValueObject value = values.getValue(valueFields[i]);
+                    if (value != null) {
+                        row.setValue(map.getFrom(), value);
+                    }
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.op;
+
+import java.util.Comparator;
+
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Tournament tree of losers for a k-way merge of sources that are
+ * ordered by normalized byte keys. Selecting the next record costs
+ * log2(k) key comparisons. Equal keys are won by the source with the
+ * lower index so that merging consecutive runs is stable.
+ */
+final class LoserTree {
+
+    interface Source {
+
+        /**
+         * Returns the key of the current record or null if the source is exhausted.
+         */
+        byte[] key();
+    }
+
+    private static final Comparator<byte[]> comparator = UnsignedBytes.lexicographicalComparator();
+
+    private final Source[] sources;
+
+    /**
+     * Element zero holds the overall winner and
+     * elements one through k - 1 hold the losers
+     * of the internal nodes. Source i is the leaf
+     * at position k + i.
+     */
+    private final int[] tree;
+
+    LoserTree(Source[] sources) {
+        this.sources = sources;
+        this.tree = new int[Math.max(sources.length, 1)];
+        if (sources.length > 1) {
+            tree[0] = initialize(1);
+        }
+    }
+
+    private int initialize(int node) {
+        if (node >= sources.length) {
+            return node - sources.length;
+        }
+        int left = initialize(2 * node);
+        int right = initialize(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        } else {
+            tree[node] = left;
+            return right;
+        }
+    }
+
+    /**
+     * Returns the index of the source with the smallest key or -1 if all sources are exhausted.
+     */
+    public int winner() {
+        if (sources.length == 0 || sources[tree[0]].key() == null) {
+            return -1;
+        }
+        return tree[0];
+    }
+
+    /**
+     * Must be called after the winning source has moved to its next record.
+     */
+    public void replay() {
+        int winner = tree[0];
+        for (int node = (winner + sources.length) >>> 1; node >= 1; node >>>= 1) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(int a, int b) {
+        byte[] keyA = sources[a].key();
+        byte[] keyB = sources[b].key();
+        if (keyA == null) {
+            return false;
+        } else if (keyB == null) {
+            return true;
+        }
+        int cmp = comparator.compare(keyA, keyB);
+        return (cmp < 0) || ((cmp == 0) && (a < b));
+    }
+}
@@ -13,6 +13,8 @@
  */
 package com.addthis.hydra.data.query.op;
 
+import javax.annotation.Nullable;
+
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
@@ -45,6 +47,7 @@ import com.addthis.bundle.util.BundleColumnBinder;
 import com.addthis.bundle.util.ValueUtil;
 import com.addthis.bundle.value.ValueObject;
 import com.addthis.hydra.data.query.AbstractRowOp;
+import com.addthis.hydra.data.query.QueryMemTracker;
 import com.addthis.muxy.WritableMuxFile;
 import com.addthis.muxy.MuxFileDirectory;
 import com.addthis.muxy.MuxyEventListener;
@@ -84,6 +87,10 @@ import io.netty.channel.ChannelProgressivePromise;
  * 1 B 2
  * 1 A 1
  * </pre>
+ * <p/>
+ * <p>When {@code op.disksort.parallel} is enabled the rows are sorted by
+ * an {@link ExternalSorter} that sizes runs by memory rather than by row count
+ * and sorts and writes them on a shared worker pool.</p>
  *
  * @user-reference
  * @hydra-name dsort
@@ -94,11 +101,13 @@ public class OpDiskSort extends AbstractRowOp {
     private static final int CHUNK_ROWS = Parameter.intValue("op.disksort.chunk.rows", 5000);
     private static final int CHUNK_MERGES = Parameter.intValue("op.disksort.chunk.merges", 1000);
     private static final int GZTYPE = Parameter.intValue("op.disksort.gz.type", 0);
+    private static final boolean PARALLEL = Parameter.boolValue("op.disksort.parallel", false);
     private static final MuxyEventListener DISCARDER = new SingleDirMuxyEventListener();
 
     private final Bundle[] buffer = new Bundle[CHUNK_ROWS + 1];
     private final BundleFactory factory = new ListBundle();
     private final ChannelProgressivePromise queryPromise;
+    @Nullable private final QueryMemTracker memTracker;
 
     private Path tempDir;
     private String[] cols;
@@ -109,17 +118,25 @@ public class OpDiskSort extends AbstractRowOp {
     private BundleComparator comparator;
     private BundleComparator comparatorSS;
     private int chunk = 0;
+    private ExternalSorter sorter;
 
     public OpDiskSort(String args, String tempDirString, ChannelProgressivePromise queryPromise) {
         super(queryPromise);
         this.queryPromise = queryPromise;
+        this.memTracker = null;
         this.tempDir = Paths.get(tempDirString, String.valueOf(UUID.randomUUID()));
         init(args);
     }
 
     public OpDiskSort(String args, Path tempDir, ChannelProgressivePromise queryPromise) {
+        this(args, tempDir, null, queryPromise);
+    }
+
+    public OpDiskSort(String args, Path tempDir, @Nullable QueryMemTracker memTracker,
+                      ChannelProgressivePromise queryPromise) {
         super(queryPromise);
         this.queryPromise = queryPromise;
+        this.memTracker = memTracker;
         this.tempDir = tempDir.resolve(String.valueOf(UUID.randomUUID()));
         init(args);
     }
@@ -127,8 +144,10 @@ public class OpDiskSort extends AbstractRowOp {
     private void init(String args) {
         try {
             Files.createDirectories(tempDir);
-            mfm = new MuxFileDirectory(tempDir, DISCARDER);
-            mfm.setDeleteFreed(true);
+            if (!PARALLEL) {
+                mfm = new MuxFileDirectory(tempDir, DISCARDER);
+                mfm.setDeleteFreed(true);
+            }
             log.debug("tempDir={} mfm={}", tempDir, mfm);
         } catch (Exception ex) {
             throw new RuntimeException(ex);
@@ -151,12 +170,19 @@ public class OpDiskSort extends AbstractRowOp {
 
         comparator = new BundleComparator();
         comparatorSS = new BundleComparator();
+        if (PARALLEL) {
+            sorter = new ExternalSorter(tempDir, cols, type, dir, memTracker);
+        }
     }
 
     @Override
     public void close() throws IOException {
         try {
-            mfm.waitForWriteClosure(0);
+            if (sorter != null) {
+                sorter.close();
+            } else {
+                mfm.waitForWriteClosure(0);
+            }
         } finally {
             if (Files.exists(tempDir)) {
                 boolean success = LessFiles.deleteDir(tempDir.toFile());
@@ -169,6 +195,10 @@ public class OpDiskSort extends AbstractRowOp {
 
     @Override
     public Bundle rowOp(Bundle row) {
+        if (sorter != null) {
+            sorter.add(row);
+            return null;
+        }
         if (bufferIndex > CHUNK_ROWS) {
             dumpBufferToMFM();
         }
@@ -198,7 +228,7 @@ public class OpDiskSort extends AbstractRowOp {
     }
 
     // TODO: We really need a canonical library place for this kind of logic
-    private static OutputStream wrapOutputStream(OutputStream outputStream) throws IOException {
+    static OutputStream wrapOutputStream(OutputStream outputStream) throws IOException {
 
         switch (GZTYPE) {
             case 0:
@@ -218,6 +248,11 @@ public class OpDiskSort extends AbstractRowOp {
     // TODO disk cleanup
     @Override
     public void sendComplete() {
+        if (sorter != null) {
+            sorter.finish(getNext()::send, queryPromise);
+            super.sendComplete();
+            return;
+        }
         /** optimization for when buffer hasn't yet spilled */
         if (chunk == 0) {
             Arrays.sort(buffer, 0, bufferIndex, comparator);
@@ -367,7 +402,7 @@ public class OpDiskSort extends AbstractRowOp {
         return s1.toString().compareTo(s2.toString());
     }
 
-    private static InputStream wrapInputStream(InputStream inputStream) throws IOException {
+    static InputStream wrapInputStream(InputStream inputStream) throws IOException {
 
         switch (GZTYPE) {
             case 0:
@@ -14,6 +14,7 @@
 package com.addthis.hydra.data.query.op;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 
 import java.util.HashMap;
@@ -51,6 +52,10 @@ import io.netty.channel.ChannelProgressivePromise;
  * It is an in-memory operation that spill over to disk when necessary. If the key
  * columns are already sorted then the {@link OpMerge merge} operation is
  * a much cheaper alternative.</p>
+ * <p>When {@code opgather.partitions} is positive the rows of keys that arrive after
+ * the memory budget has been reached are partitioned by key hash into spill files
+ * and each partition is aggregated separately once the input is complete. Gathers with
+ * a key topper always spill to a disk backed map.</p>
  * <p>The syntax for this operation is "gather=[column parameters] where
  * column parameters is a sequence of one or more of the following letters:
  * <ul>
@@ -114,9 +119,22 @@ public class OpGather extends AbstractQueryOp {
 
     private boolean tippedToDisk = false;
     private boolean tipToDisk = Parameter.boolValue("opgather.tiptodisk", false);
+    private GatherSpill spill;
 
+    /**
+     * Number of spill partitions for grace hash aggregation. Zero spills to a {@link DiskBackedMap}.
+     */
+    private final int spillPartitions = Parameter.intValue("opgather.partitions", 0);
 
-    private static final Meter diskTips = Metrics.newMeter(OpGather.class, "diskTips", "diskTips", TimeUnit.SECONDS);
+    /**
+     * Maximum number of times that a partition is partitioned again.
+     */
+    private final int spillDepth = Parameter.intValue("opgather.partitions.depth", 3);
+
+    static final Meter diskTips = Metrics.newMeter(OpGather.class, "diskTips", "diskTips", TimeUnit.SECONDS);
+    static final Meter diskTipBytes = Metrics.newMeter(OpGather.class, "diskTipBytes", "bytes", TimeUnit.SECONDS);
+    static final Meter diskTipPartitions =
+            Metrics.newMeter(OpGather.class, "diskTipPartitions", "partitions", TimeUnit.SECONDS);
 
     public OpGather(String args, long tipMem, long tipRow, String tmpDir, ChannelProgressivePromise queryPromise) {
         super(queryPromise);
@@ -139,6 +157,15 @@ public class OpGather extends AbstractQueryOp {
         }
         String key = mergeConfig.handleBindAndGetKey(row, format);
         MergedRow merge = resultTable.get(key);
+        if (spill != null) {
+            // keys that are resident in memory continue to be merged in memory
+            if (merge == null) {
+                spill.add(key, row);
+            } else {
+                merge.merge(row);
+            }
+            return;
+        }
         if (merge == null) {
             merge = new MergedRow(conf, new ListBundle(format));
             resultTable.put(key, merge);
@@ -192,6 +219,16 @@ public class OpGather extends AbstractQueryOp {
                 tippedToDisk = true;
                 diskTips.mark();
 
+                if (spillPartitions > 0 && topColumn < 0) {
+                    try {
+                        spill = new GatherSpill(new File(tmpDir), conf, format, row, tipMem, tipRow,
+                                                spillPartitions, 0, spillDepth);
+                    } catch (IOException ex) {
+                        throw new DataChannelError(ex);
+                    }
+                    return;
+                }
+
                 // Use the smaller amount of memory for the JE cache environment
                 long memToUse = totalMem;
                 if (memToUse > tipMem) {
@@ -217,11 +254,17 @@ public class OpGather extends AbstractQueryOp {
                 break;
             }
         }
+        if (spill != null) {
+            spill.emit(next, opPromise);
+        }
         next.sendComplete();
     }
 
     @Override
     public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
         if (resultTable instanceof Closeable) {
             ((Closeable) resultTable).close();
         }
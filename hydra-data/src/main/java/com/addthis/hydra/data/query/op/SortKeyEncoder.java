@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.op;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.util.ValueUtil;
+import com.addthis.bundle.value.ValueObject;
+
+/**
+ * Encodes the sort columns of a row into a normalized key. Comparing two
+ * keys as unsigned bytes yields the same order as the {@link OpDiskSort}
+ * comparator, so sorted runs and merges never have to inspect the rows.
+ * <p/>
+ * Every column begins with a tag byte that orders the {@link OpPivot#MIN}
+ * marker, values, missing values and the {@link OpPivot#MAX} marker.
+ * Numbers are written as eight byte big endian integers with the sign bit
+ * flipped. Strings are written one code unit at a time as the UTF-8 encoding
+ * of the unit plus one so that the encoding never contains a zero byte and
+ * can be terminated by one. Descending columns have their bytes inverted.
+ * <p/>
+ * Instances reuse an internal buffer and are not thread safe.
+ */
+final class SortKeyEncoder {
+
+    private static final int TAG_MIN = 0x00;
+    private static final int TAG_VALUE = 0x01;
+    private static final int TAG_NULL = 0x02;
+    private static final int TAG_MAX = 0x03;
+
+    private final BundleField[] fields;
+    private final char[] type;
+    private final char[] dir;
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    SortKeyEncoder(BundleField[] fields, char[] type, char[] dir) {
+        this.fields = fields;
+        this.type = type;
+        this.dir = dir;
+    }
+
+    public byte[] encode(Bundle row) {
+        length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            int start = length;
+            ValueObject value = row.getValue(fields[i]);
+            switch (type[i]) {
+                case 'i': // int
+                case 'l': // long
+                case 'n': // legacy "number"
+                    if (value == null) {
+                        put(TAG_NULL);
+                    } else {
+                        put(TAG_VALUE);
+                        putLong(ValueUtil.asNumberOrParseLong(value, 10).asLong().getLong() ^ Long.MIN_VALUE);
+                    }
+                    break;
+                case 'd': // double
+                case 'f': // float
+                    if (value == null) {
+                        put(TAG_NULL);
+                    } else {
+                        put(TAG_VALUE);
+                        long bits = Double.doubleToLongBits(
+                                ValueUtil.asNumberOrParseDouble(value).asDouble().getDouble());
+                        putLong(bits ^ ((bits < 0) ? -1L : Long.MIN_VALUE));
+                    }
+                    break;
+                case 's': // string
+                default:
+                    putString(value);
+                    break;
+            }
+            if (dir[i] == 'd') {
+                for (int j = start; j < length; j++) {
+                    buffer[j] = (byte) ~buffer[j];
+                }
+            }
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    private void putString(ValueObject value) {
+        if (value == OpPivot.MIN) {
+            put(TAG_MIN);
+        } else if (value == OpPivot.MAX) {
+            put(TAG_MAX);
+        } else if (value == null) {
+            put(TAG_NULL);
+        } else {
+            put(TAG_VALUE);
+            String string = value.toString();
+            for (int i = 0; i < string.length(); i++) {
+                int unit = string.charAt(i) + 1;
+                if (unit < 0x80) {
+                    put(unit);
+                } else if (unit < 0x800) {
+                    put(0xc0 | (unit >>> 6));
+                    put(0x80 | (unit & 0x3f));
+                } else if (unit < 0x10000) {
+                    put(0xe0 | (unit >>> 12));
+                    put(0x80 | ((unit >>> 6) & 0x3f));
+                    put(0x80 | (unit & 0x3f));
+                } else {
+                    put(0xf0 | (unit >>> 18));
+                    put(0x80 | ((unit >>> 12) & 0x3f));
+                    put(0x80 | ((unit >>> 6) & 0x3f));
+                    put(0x80 | (unit & 0x3f));
+                }
+            }
+            put(0);
+        }
+    }
+
+    private void putLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            put((int) (value >>> shift));
+        }
+    }
+
+    private void put(int value) {
+        if (length == buffer.length) {
+            byte[] next = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, next, 0, length);
+            buffer = next;
+        }
+        buffer[length++] = (byte) value;
+    }
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +37,7 @@ import com.addthis.bundle.core.BundleFormatted;
 import com.addthis.bundle.core.list.ListBundle;
 import com.addthis.bundle.core.list.ListBundleFormat;
 import com.addthis.bundle.io.DataChannelWriter;
+import com.addthis.hydra.data.query.ColumnarFrameWriter;
 import com.addthis.hydra.data.query.FieldValueList;
 import com.addthis.hydra.data.query.FramedDataChannelReader;
 import com.addthis.hydra.data.query.QueryElement;
@@ -59,11 +61,16 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
     private static final int outputQueueSize = Parameter.intValue("meshQuerySource.outputQueueSize", 1000);
     private static final int outputBufferSize = Parameter.intValue("meshQuerySource.outputBufferSize", 64000);
     private static final int queueAttemptLimit = Parameter.intValue("meshQuerySource.queueAttemptLimit", 100);
+    private static final int outputFrameRows = Parameter.intValue("meshQuerySource.outputFrameRows", 1024);
 
     private final ListBundleFormat format = new ListBundleFormat();
     private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(outputQueueSize);
     private final DataChannelWriter writer;
     private final ByteArrayOutputStream out;
+    /**
+     * Batches rows into columnar frames if the master requested them. Null otherwise.
+     */
+    private final ColumnarFrameWriter batch;
     /**
      * A wrapper for a boolean flag that gets set if close is called. This observer object will be passed all
      * the way down to {@link QueryEngine#tableSearch(LinkedList,
@@ -93,9 +100,17 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
      * @param queryPromise
      */
     DataChannelToInputStream(ChannelProgressivePromise queryPromise) throws Exception {
+        this(queryPromise, null);
+    }
+
+    /**
+     * @param options query options sent by the master, used to negotiate the frame format
+     */
+    DataChannelToInputStream(ChannelProgressivePromise queryPromise, Map<String, String> options) throws Exception {
         this.queryPromise = queryPromise;
         out = new ByteArrayOutputStream();
         writer = new DataChannelWriter(out);
+        batch = ColumnarFrameWriter.fromOptions(options);
     }
 
     /**
@@ -121,6 +136,7 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
         }
         if (data == null) {
             synchronized (out) {
+                flushBatch();
                 if (out.size() > 0) {
                     emitChunks();
                 }
@@ -161,6 +177,21 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
         }
     }
 
+    /**
+     * Write any rows in the current columnar frame to the output stream.
+     * Must only be called while synchronized on out
+     */
+    @GuardedBy("out")
+    private void flushBatch() {
+        if (batch != null) {
+            try {
+                batch.writeTo(out);
+            } catch (IOException ex) {
+                throw new DataChannelError(ex);
+            }
+        }
+    }
+
     /**
      * Returns true if the eof flag is set and there is no data queued in the stream to be sent.
      *
@@ -210,6 +241,18 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
         }
         try {
             synchronized (out) {
+                if (batch != null) {
+                    if (batch.add(bundle)) {
+                        if ((batch.rows() >= outputFrameRows) || (batch.size() > outputBufferSize)) {
+                            flushBatch();
+                            emitChunks();
+                        }
+                        rows++;
+                        return;
+                    }
+                    // rows with complex values are sent on their own after the rows before them
+                    flushBatch();
+                }
                 out.write(FramedDataChannelReader.FRAME_MORE);
                 writer.write(bundle);
                 if (out.size() > outputBufferSize) {
@@ -233,6 +276,7 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
             throw new CancellationException("master cancelled query");
         }
         synchronized (out) {
+            flushBatch();
             out.write(FramedDataChannelReader.FRAME_EOF);
             emitChunks();
             eof = true;
@@ -254,6 +298,7 @@ class DataChannelToInputStream implements DataChannelOutput, VirtualFileInput, B
             // if we know writer is closed, don't try to write to it.
             if (!writer.isClosed()) {
                 synchronized (out) {
+                    flushBatch();
                     out.write(FramedDataChannelReader.FRAME_ERROR);
                     LessBytes.writeString(er.getClass().getCanonicalName(), out);
                     LessBytes.writeString(er.getMessage(), out);
@@ -110,7 +110,7 @@ class QueryReference implements VirtualFileReference {
             // ideally the channel here would be some kind of meshy construct, but null should
             // be fine for now -- we never call await/sync etc in the worker
             final DataChannelToInputStream bridge = new DataChannelToInputStream(
-                    new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE));
+                    new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE), options);
             if (options == null) {
                 log.warn("Invalid request to getInput.  Options cannot be null");
                 return null;
@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree;
+
+/**
+ * Implemented by data attachments whose child updates commute. A tree
+ * may apply the updates of several threads to separate stripes of the
+ * attachment, which are instances created by the same {@link TreeDataParameters},
+ * and later fold each stripe into the attachment that is stored on the node.
+ * The result must be the same as if every update had been applied to the
+ * stored attachment directly.
+ */
+public interface CommutativeTreeNodeData<D extends TreeNodeData<?>> {
+
+    /**
+     * Fold the updates that were applied to {@code stripe} into this attachment.
+     * The stripe is discarded afterwards.
+     */
+    public void mergeStripe(D stripe);
+}
@@ -27,6 +27,16 @@ public class TreeCommonParameters {
     // max memory for a given page
     public static int maxPageMem = Parameter.intValue("hydra.tree.page.maxMem", 0);
     public static int memSample = Parameter.intValue("hydra.tree.mem.sample", 0);
+    // compression codec for pages (none, deflate, gzip, lzf, snappy, lz4, zstd). null uses eps.gz.type
+    public static String pageCodec = Parameter.value("hydra.tree.page.codec");
+    // compress pages against a zstd dictionary trained from existing pages
+    public static boolean pageDictionary = Parameter.boolValue("hydra.tree.page.dictionary", false);
+    // write a memory mapped read only snapshot of the tree for queries when the tree is closed
+    public static boolean snapshot = Parameter.boolValue("hydra.tree.snapshot", false);
+    // hold the values of clean pages in pooled direct buffers
+    public static boolean offHeapPages = Parameter.boolValue("hydra.tree.cache.offHeap", false);
+    // page cache eviction policy (fifo, tinylfu). null uses eps.cache.eviction.policy
+    public static String evictionPolicy = Parameter.value("hydra.tree.cache.evictionPolicy");
     public static int meterLogging = Parameter.intValue("hydra.tree.meterlog", 0);
     public static final int meterLogLines = Parameter.intValue("hydra.tree.loglines", 100000);
     public static int cacheShards = Parameter.intValue("hydra.tree.shards", Runtime.getRuntime().availableProcessors() * 8);
@@ -57,6 +67,22 @@ public class TreeCommonParameters {
         memSample = sample;
     }
 
+    public static void setDefaultPageCodec(String codec) {
+        pageCodec = codec;
+    }
+
+    public static void setDefaultPageDictionary(boolean dictionary) {
+        pageDictionary = dictionary;
+    }
+
+    public static void setDefaultOffHeapPages(boolean offHeap) {
+        offHeapPages = offHeap;
+    }
+
+    public static void setDefaultEvictionPolicy(String policy) {
+        evictionPolicy = policy;
+    }
+
     public static void setDefaultMeterLogging(int meter) {
         meterLogging = meter;
     }
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree.concurrent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
+import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
+import com.addthis.hydra.data.tree.TreeDataParameters;
+import com.addthis.hydra.data.tree.TreeDataParent;
+import com.addthis.hydra.data.tree.TreeNodeData;
+
+/**
+ * Per-thread accumulators for the commutative data attachments of a
+ * {@link ConcurrentTreeNode}. Threads that update the node are spread across
+ * the stripes by thread id and each stripe is guarded by its own monitor, so
+ * updates do not take the node lock and rarely contend with each other.
+ * The owning node folds the stripes into its attachments and hit count
+ * while it holds its write lock, before it is encoded or read.
+ */
+final class AttachmentStripes {
+
+    private static final int numStripes = Integer.highestOneBit(
+            Math.max(1, Parameter.intValue("hydra.tree.data.stripes",
+                                           Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+    private static final class Stripe {
+
+        final Map<String, TreeNodeData> data = new HashMap<>();
+        long hits;
+        volatile boolean dirty;
+    }
+
+    /**
+     * Attachments that may be updated through the stripes.
+     */
+    private final Set<String> keys;
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(numStripes);
+
+    AttachmentStripes(Set<String> keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Returns true if every attachment of the path can be updated through the stripes.
+     */
+    boolean covers(Map<String, TreeDataParameters> dataconf) {
+        return keys.containsAll(dataconf.keySet());
+    }
+
+    private Stripe stripeForCurrentThread() {
+        long id = Thread.currentThread().getId();
+        int index = (int) (id ^ (id >>> 16)) & (numStripes - 1);
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            Stripe created = new Stripe();
+            stripe = stripes.compareAndSet(index, null, created) ? created : stripes.get(index);
+        }
+        return stripe;
+    }
+
+    @SuppressWarnings("unchecked")
+    void update(DataTreeNodeUpdater state, ConcurrentTreeNode node, TreeDataParent path,
+                Map<String, TreeDataParameters> dataconf) {
+        Stripe stripe = stripeForCurrentThread();
+        synchronized (stripe) {
+            if (path.countHits()) {
+                stripe.hits += state.getCountValue();
+            }
+            for (Map.Entry<String, TreeDataParameters> el : dataconf.entrySet()) {
+                TreeNodeData tnd = stripe.data.get(el.getKey());
+                if (tnd == null) {
+                    tnd = el.getValue().newInstance();
+                    stripe.data.put(el.getKey(), tnd);
+                }
+                tnd.updateChildData(state, node, el.getValue());
+            }
+            if (!stripe.dirty) {
+                stripe.dirty = true;
+            }
+        }
+    }
+
+    boolean hasPending() {
+        for (int i = 0; i < numStripes; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null && stripe.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hits that have not yet been folded into the node.
+     */
+    long pendingHits() {
+        long result = 0;
+        for (int i = 0; i < numStripes; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null) {
+                synchronized (stripe) {
+                    result += stripe.hits;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge the stripes into the attachments of the node and reset them.
+     * Must be called with the node write lock held.
+     *
+     * @return the number of hits that were folded
+     */
+    @SuppressWarnings("unchecked")
+    long fold(Map<String, TreeNodeData> data) {
+        long hits = 0;
+        for (int i = 0; i < numStripes; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe == null || !stripe.dirty) {
+                continue;
+            }
+            synchronized (stripe) {
+                hits += stripe.hits;
+                stripe.hits = 0;
+                for (Map.Entry<String, TreeNodeData> entry : stripe.data.entrySet()) {
+                    ((CommutativeTreeNodeData) data.get(entry.getKey())).mergeStripe(entry.getValue());
+                }
+                stripe.data.clear();
+                stripe.dirty = false;
+            }
+        }
+        return hits;
+    }
+}
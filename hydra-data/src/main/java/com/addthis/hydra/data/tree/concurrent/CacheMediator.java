@@ -13,13 +13,10 @@
  */
 package com.addthis.hydra.data.tree.concurrent;
 
-import com.addthis.basis.concurrentlinkedhashmap.EvictionMediator;
-
-import com.addthis.hydra.data.tree.CacheKey;
 import com.addthis.hydra.store.db.DBKey;
 import com.addthis.hydra.store.db.IPageDB;
 
-class CacheMediator implements EvictionMediator<CacheKey, ConcurrentTreeNode> {
+class CacheMediator {
 
     private final IPageDB<DBKey, ConcurrentTreeNode> source;
 
@@ -27,18 +24,26 @@ class CacheMediator implements EvictionMediator<CacheKey, ConcurrentTreeNode> {
         this.source = source;
     }
 
-    @Override
-    public boolean onEviction(CacheKey key, ConcurrentTreeNode value) {
-        boolean evict = value.trySetEviction();
-        if (evict) {
-            try {
-                if (!value.isDeleted() && value.isChanged()) {
-                    source.put(key.dbkey(), value);
-                }
-            } finally {
-                value.evictionComplete();
+    /**
+     * Move the node into the evicting state.
+     *
+     * @return true if the node can be removed from the cache
+     */
+    public boolean tryEviction(ConcurrentTreeNode value) {
+        return value.trySetEviction();
+    }
+
+    /**
+     * Write a node that was accepted by {@link #tryEviction(ConcurrentTreeNode)}
+     * to the backing store if it has changed.
+     */
+    public void onEviction(ConcurrentTreeNode value) {
+        try {
+            if (!value.isDeleted() && value.isChanged()) {
+                source.put(value.getDbkey(), value);
             }
+        } finally {
+            value.evictionComplete();
         }
-        return evict;
     }
 }
@@ -22,7 +22,6 @@ import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -31,7 +30,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BooleanSupplier;
 
-import com.addthis.basis.concurrentlinkedhashmap.MediatedEvictionConcurrentHashMap;
 import com.addthis.basis.util.LessBytes;
 import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.LessFiles;
@@ -39,7 +37,6 @@ import com.addthis.basis.util.Meter;
 import com.addthis.basis.util.Parameter;
 
 import com.addthis.hydra.common.Configuration;
-import com.addthis.hydra.data.tree.CacheKey;
 import com.addthis.hydra.data.tree.DataTree;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeActor;
@@ -52,6 +49,7 @@ import com.addthis.hydra.store.db.CloseOperation;
 import com.addthis.hydra.store.db.DBKey;
 import com.addthis.hydra.store.db.IPageDB;
 import com.addthis.hydra.store.db.PageDB;
+import com.addthis.hydra.store.db.ReadPageDB;
 import com.addthis.hydra.store.kv.PagedKeyValueStore;
 import com.addthis.hydra.store.skiplist.ConcurrentPage;
 import com.addthis.hydra.store.common.PageFactory;
@@ -111,7 +109,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
     private final Meter<METERTREE> meter;
     private final MeterFileLogger logger;
     private final AtomicDouble cacheHitRate = new AtomicDouble(0.0);
-    private final MediatedEvictionConcurrentHashMap<CacheKey, ConcurrentTreeNode> cache;
+    private final NodeCache cache;
     private final ScheduledExecutorService deletionThreadPool;
 
     @GuardedBy("treeTrashNode")
@@ -157,15 +155,16 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
             logger = null;
         }
         source = new PageDB.Builder<>(root, ConcurrentTreeNode.class, maxPageSize, maxCacheSize)
-                .pageFactory(factory).build();
+                .pageFactory(factory)
+                .pageCodec(TreeCommonParameters.pageCodec)
+                .pageDictionary(TreeCommonParameters.pageDictionary)
+                .evictionPolicy(TreeCommonParameters.evictionPolicy).build();
         source.setCacheMem(TreeCommonParameters.maxCacheMem);
         source.setPageMem(TreeCommonParameters.maxPageMem);
         source.setMemSampleInterval(TreeCommonParameters.memSample);
+        source.setOffHeapPages(TreeCommonParameters.offHeapPages);
         // create cache
-        cache = new MediatedEvictionConcurrentHashMap.
-                Builder<CacheKey, ConcurrentTreeNode>().
-                mediator(new CacheMediator(source)).
-                maximumWeightedCapacity(cleanQSize).build();
+        cache = new NodeCache(cleanQSize, TreeCommonParameters.cacheShards, new CacheMediator(source));
 
         // get stored next db id
         idFile = new File(root, "nextID");
@@ -237,8 +236,6 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
             log.trace("[node.get] {} --> {} NOMAP --> null", parent, child);
             return null;
         }
-        CacheKey key = new CacheKey(nodedb, child);
-
         /**
          * (1) First check the cache for the (key, value) pair. If the value
          * is found and the value is successfully leased then return it.
@@ -250,16 +247,16 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
          */
 
         while (true) {
-            ConcurrentTreeNode node = cache.get(key);
+            ConcurrentTreeNode node = cache.get(nodedb, child);
             if (node != null) {
                 if (node.isDeleted()) {
-                    cache.remove(key, node);
+                    cache.remove(nodedb, child, node);
                 } else if (setLease(node, lease)) {
                     reportCacheHit();
                     return node; // (1)
                 }
             } else {// (2)
-                DBKey dbkey = key.dbkey();
+                DBKey dbkey = new DBKey(nodedb, Raw.get(child));
                 reportCacheMiss();
                 node = source.get(dbkey);
 
@@ -271,9 +268,9 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
                 if (node.isDeleted()) {
                     source.remove(dbkey);
                 } else {
-                    node.initIfDecoded(this, dbkey, key.name);
+                    node.initIfDecoded(this, dbkey, child);
 
-                    ConcurrentTreeNode prev = cache.putIfAbsent(key, node);
+                    ConcurrentTreeNode prev = cache.putIfAbsent(nodedb, child, node);
                     if (prev == null) {
                         node.reactivate();
                         if (setLease(node, lease)) {
@@ -288,20 +285,20 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
     public ConcurrentTreeNode getOrCreateNode(final ConcurrentTreeNode parent, final String child,
                                               final DataTreeNodeInitializer creator) {
         parent.requireNodeDB();
-        CacheKey key = new CacheKey(parent.nodeDB(), child);
+        long nodedb = parent.nodeDB();
         ConcurrentTreeNode newNode = null;
 
         while (true) {
-            ConcurrentTreeNode node = cache.get(key);
+            ConcurrentTreeNode node = cache.get(nodedb, child);
             if (node != null) {
                 if (node.isDeleted()) {
-                    cache.remove(key, node);
+                    cache.remove(nodedb, child, node);
                 } else if (setLease(node, true)) {
                     reportCacheHit();
                     return node;
                 }
             } else {
-                DBKey dbkey = key.dbkey();
+                DBKey dbkey = new DBKey(nodedb, Raw.get(child));
                 reportCacheMiss();
                 node = source.get(dbkey);
 
@@ -309,8 +306,8 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
                     if (node.isDeleted()) {
                         source.remove(dbkey);
                     } else {
-                        node.initIfDecoded(this, dbkey, key.name);
-                        ConcurrentTreeNode prev = cache.putIfAbsent(key, node);
+                        node.initIfDecoded(this, dbkey, child);
+                        ConcurrentTreeNode prev = cache.putIfAbsent(nodedb, child, node);
                         if (prev == null) {
                             node.reactivate();
                             if (setLease(node, true)) {
@@ -321,7 +318,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
                 } else { // create a new node
                     if (newNode == null) {
                         newNode = new ConcurrentTreeNode();
-                        newNode.init(this, dbkey, key.name);
+                        newNode.init(this, dbkey, child);
                         newNode.tryLease();
                         newNode.markChanged();
                         if (creator != null) {
@@ -329,7 +326,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
                         }
                     }
                     node = newNode;
-                    if (cache.putIfAbsent(key, node) == null) {
+                    if (cache.putIfAbsent(nodedb, child, node) == null) {
                         /**
                          * We must insert the new node into the external storage
                          * because our iterators traverse this data
@@ -351,12 +348,11 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
             log.debug("parent has no children on delete : {} --> {}", parent, child);
             return false;
         }
-        CacheKey key = new CacheKey(nodedb, child);
         // lease node to prevent eviction from cache and thereby disrupting our {@code source.remove()}
         ConcurrentTreeNode node = getNode(parent, child, true);
         if (node != null) {
             // first ensure no one can rehydrate into a different instance
-            source.remove(key.dbkey());
+            source.remove(node.getDbkey());
             // "markDeleted" causes other threads to remove the node at will, so it is semantically the same
             // as removing it from the cache ourselves. Since this is the last and only instance, we can safely
             // coordinate concurrent deletion attempts with the lease count (-2 is used as a special flag) even
@@ -364,7 +360,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
             if (node.markDeleted()) {
                 // node could have already been dropped from the cache, and then re-created (sharing the same cache
                 // key equality). That is a fresh node that needs its own deletion, so only try to remove our instance.
-                cache.remove(key, node);
+                cache.remove(nodedb, child, node);
                 parent.updateNodeCount(-1);
                 if (node.hasNodes() && !node.isAlias()) {
                     markForChildDeletion(node);
@@ -425,7 +421,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
      * Package-level visibility is for testing purposes only.
      */
     @VisibleForTesting
-    ConcurrentMap<CacheKey, ConcurrentTreeNode> getCache() {
+    NodeCache getCache() {
         return cache;
     }
 
@@ -522,6 +518,14 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
             if (status != 0) {
                 throw new RuntimeException("page db close returned a non-zero exit code : " + status);
             }
+            if (TreeCommonParameters.snapshot) {
+                try {
+                    ReadPageDB.writeSnapshot(root);
+                } catch (IOException | RuntimeException ex) {
+                    // the snapshot only speeds up queries so the tree is closed without it
+                    log.warn("unable to write a snapshot of {}", root, ex);
+                }
+            }
         }
         if (logger != null) {
             logger.terminate();
@@ -712,8 +716,7 @@ public final class ConcurrentTree implements DataTree, MeterDataSource {
                     deleteSubTree(next, totalCount, nodeCount, terminationCondition, deletionLogger);
                 }
                 String name = entry.getKey().rawKey().toString();
-                CacheKey key = new CacheKey(nodeDB, name);
-                ConcurrentTreeNode cacheNode = cache.remove(key);
+                ConcurrentTreeNode cacheNode = cache.remove(nodeDB, name);
                 /* Mark the node as deleted so that it will not be
                  * pushed to disk when removed from the eviction queue.
                  */
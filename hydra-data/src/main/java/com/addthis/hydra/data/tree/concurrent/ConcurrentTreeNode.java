@@ -16,6 +16,7 @@ package com.addthis.hydra.data.tree.concurrent;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -28,8 +29,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.MemoryCounter.Mem;
+import com.addthis.basis.util.Parameter;
 
 import com.addthis.hydra.data.tree.AbstractTreeNode;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeActor;
 import com.addthis.hydra.data.tree.DataTreeNodeInitializer;
@@ -41,6 +44,8 @@ import com.addthis.hydra.data.tree.TreeNodeDataDeferredOperation;
 import com.addthis.hydra.store.db.DBKey;
 import com.addthis.hydra.store.db.IPageDB.Range;
 
+import com.google.common.annotations.VisibleForTesting;
+
 
 /**
  * Each instance has an AtomicInteger 'lease' that records the current
@@ -59,6 +64,14 @@ import com.addthis.hydra.store.db.IPageDB.Range;
  */
 public class ConcurrentTreeNode extends AbstractTreeNode {
 
+    /**
+     * If true then nodes whose write lock is contended apply updates to
+     * {@link CommutativeTreeNodeData commutative} attachments through
+     * per-thread {@link AttachmentStripes stripes} instead of the write lock.
+     */
+    @VisibleForTesting
+    static boolean stripedUpdates = Parameter.boolValue("hydra.tree.data.striped", false);
+
     public static ConcurrentTreeNode getTreeRoot(ConcurrentTree tree) {
         ConcurrentTreeNode node = new ConcurrentTreeNode() {
             @Override
@@ -105,6 +118,8 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
     private AtomicBoolean changed = new AtomicBoolean(false);
     @Mem(estimate = false, size = 64)
     private ReadWriteLock lock = new ReentrantReadWriteLock();
+    @Mem(estimate = false, size = 64)
+    private volatile AttachmentStripes stripes;
 
     private AtomicBoolean decoded = new AtomicBoolean(false);
     private AtomicBoolean initOnce = new AtomicBoolean(false);
@@ -128,6 +143,7 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
 
     @Override @SuppressWarnings("unchecked")
     public Map<String, TreeNodeData> getDataMap() {
+        tryFoldStripes();
         return data;
     }
 
@@ -391,7 +407,19 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
         requireEditable();
         boolean updated = false;
         HashMap<String, TreeDataParameters> dataconf = path.dataConfig();
-        lock.writeLock().lock();
+        AttachmentStripes currentStripes = stripes;
+        if ((currentStripes != null) && (dataconf != null) && !path.assignHits() && currentStripes.covers(dataconf)) {
+            currentStripes.update(state, this, path, dataconf);
+            if (!changed.get()) {
+                changed.set(true);
+            }
+            return;
+        }
+        boolean contended = false;
+        if (!lock.writeLock().tryLock()) {
+            contended = true;
+            lock.writeLock().lock();
+        }
         try {
             if (path.assignHits()) {
                 hits = state.getAssignmentValue();
@@ -415,6 +443,9 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
                         updated = true;
                     }
                 }
+                if (contended && stripedUpdates && (stripes == null) && isCommutative(dataconf)) {
+                    stripes = new AttachmentStripes(new HashSet<>(dataconf.keySet()));
+                }
             }
         } finally {
             lock.writeLock().unlock();
@@ -424,6 +455,47 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
         }
     }
 
+    /**
+     * Returns true if every attachment of the path is commutative.
+     * Must be called with the write lock held.
+     */
+    private boolean isCommutative(Map<String, TreeDataParameters> dataconf) {
+        for (String key : dataconf.keySet()) {
+            if (!(data.get(key) instanceof CommutativeTreeNodeData)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fold the attachment stripes into the node. Must be called with the write lock held.
+     */
+    private void foldStripes() {
+        AttachmentStripes currentStripes = stripes;
+        if ((currentStripes != null) && currentStripes.hasPending()) {
+            synchronized (this) {
+                hits += currentStripes.fold(data);
+            }
+        }
+    }
+
+    /**
+     * Fold the attachment stripes into the node if the write lock is available.
+     * Readers do not wait for the write lock because they may be holding the
+     * lock of another node.
+     */
+    private void tryFoldStripes() {
+        AttachmentStripes currentStripes = stripes;
+        if ((currentStripes != null) && currentStripes.hasPending() && lock.writeLock().tryLock()) {
+            try {
+                foldStripes();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
     /**
      * @return true if data was changed
      */
@@ -456,6 +528,7 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
     // TODO concurrent broken -- data classes should be responsible for their
     // own get/update sync
     @Override public DataTreeNodeActor getData(String key) {
+        tryFoldStripes();
         lock.readLock().lock();
         try {
             return data != null ? data.get(key) : null;
@@ -557,7 +630,19 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
 
     @Override
     public void encodeLock() {
-        lock.readLock().lock();
+        AttachmentStripes currentStripes = stripes;
+        if ((currentStripes != null) && currentStripes.hasPending()) {
+            // fold the stripes and downgrade to the read lock
+            lock.writeLock().lock();
+            try {
+                foldStripes();
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } else {
+            lock.readLock().lock();
+        }
     }
 
     @Override
@@ -617,7 +702,8 @@ public class ConcurrentTreeNode extends AbstractTreeNode {
 
     @Override
     public synchronized long getCounter() {
-        return hits;
+        AttachmentStripes currentStripes = stripes;
+        return (currentStripes != null) ? (hits + currentStripes.pendingHits()) : hits;
     }
 
     @Override
@@ -0,0 +1,362 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache of the active nodes of a {@link ConcurrentTree} keyed by
+ * (parent node db, child name). Lookups do not allocate: each segment is an
+ * open addressing table over primitive arrays that holds the parent db and
+ * the hash of the child name next to the node, and the child name is compared
+ * against the name of the cached node. Reads are optimistic and only fall
+ * back to the segment read lock if they raced with a writer.
+ * <p/>
+ * The cache holds at most {@code capacity} nodes. When an insertion exceeds
+ * the capacity the inserting thread evicts nodes with a clock sweep across
+ * the segments. Nodes that were accessed since the last sweep get a second
+ * chance and nodes that refuse eviction through the {@link CacheMediator}
+ * are skipped.
+ */
+class NodeCache {
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    private final int capacity;
+
+    private final CacheMediator mediator;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger evictionSegment = new AtomicInteger();
+
+    NodeCache(int capacity, int concurrency, CacheMediator mediator) {
+        int numSegments = Integer.highestOneBit(Math.max(concurrency, 1) - 1) << 1;
+        if (numSegments == 0) {
+            numSegments = 1;
+        }
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(numSegments);
+        this.capacity = capacity;
+        this.mediator = mediator;
+    }
+
+    static int hash(long db, String name) {
+        int h = Long.hashCode(db) * 31 + name.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        // zero marks an empty slot
+        return (h == 0) ? 1 : h;
+    }
+
+    private Segment segmentFor(int hash) {
+        return (segmentShift == 32) ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    public ConcurrentTreeNode get(long db, String name) {
+        int hash = hash(db, name);
+        return segmentFor(hash).get(db, name, hash);
+    }
+
+    /**
+     * Insert the node unless a node is already cached for the key.
+     * May evict other nodes before returning.
+     *
+     * @return the previously cached node or null if the node was inserted
+     */
+    public ConcurrentTreeNode putIfAbsent(long db, String name, ConcurrentTreeNode node) {
+        int hash = hash(db, name);
+        ConcurrentTreeNode prev = segmentFor(hash).putIfAbsent(db, name, hash, node);
+        if (prev == null && size.incrementAndGet() > capacity) {
+            evict();
+        }
+        return prev;
+    }
+
+    public ConcurrentTreeNode remove(long db, String name) {
+        int hash = hash(db, name);
+        ConcurrentTreeNode prev = segmentFor(hash).remove(db, name, hash, null);
+        if (prev != null) {
+            size.decrementAndGet();
+        }
+        return prev;
+    }
+
+    /**
+     * Remove the key only if it is mapped to {@code node}.
+     */
+    public boolean remove(long db, String name, ConcurrentTreeNode node) {
+        int hash = hash(db, name);
+        if (segmentFor(hash).remove(db, name, hash, node) != null) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns a snapshot of the cached nodes.
+     */
+    public List<ConcurrentTreeNode> values() {
+        List<ConcurrentTreeNode> result = new ArrayList<>(size());
+        for (Segment segment : segments) {
+            segment.values(result);
+        }
+        return result;
+    }
+
+    private void evict() {
+        int attempts = 0;
+        while (size.get() > capacity && attempts < segments.length) {
+            Segment segment = segments[evictionSegment.getAndIncrement() & (segments.length - 1)];
+            if (segment.evictOne()) {
+                size.decrementAndGet();
+                attempts = 0;
+            } else {
+                attempts++;
+            }
+        }
+    }
+
+    private static final class Table {
+
+        final long[] dbs;
+        final int[] hashes;
+        final ConcurrentTreeNode[] nodes;
+        final boolean[] referenced;
+
+        Table(int length) {
+            dbs = new long[length];
+            hashes = new int[length];
+            nodes = new ConcurrentTreeNode[length];
+            referenced = new boolean[length];
+        }
+
+        int find(long db, String name, int hash) {
+            int mask = hashes.length - 1;
+            int index = hash & mask;
+            int h;
+            while ((h = hashes[index]) != 0) {
+                if (h == hash && dbs[index] == db) {
+                    ConcurrentTreeNode node = nodes[index];
+                    if (node != null && name.equals(node.getName())) {
+                        return index;
+                    }
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private final class Segment extends StampedLock {
+
+        /**
+         * Number of live entries and removed entries that still occupy a slot.
+         */
+        private int used;
+
+        private int live;
+
+        private int clockHand;
+
+        private Table table = new Table(MIN_TABLE_SIZE);
+
+        ConcurrentTreeNode get(long db, String name, int hash) {
+            long stamp = tryOptimisticRead();
+            Table current = table;
+            int index = current.find(db, name, hash);
+            ConcurrentTreeNode node = (index >= 0) ? current.nodes[index] : null;
+            if (!validate(stamp)) {
+                stamp = readLock();
+                try {
+                    current = table;
+                    index = current.find(db, name, hash);
+                    node = (index >= 0) ? current.nodes[index] : null;
+                } finally {
+                    unlockRead(stamp);
+                }
+            }
+            if (node != null) {
+                current.referenced[index] = true;
+            }
+            return node;
+        }
+
+        ConcurrentTreeNode putIfAbsent(long db, String name, int hash, ConcurrentTreeNode node) {
+            long stamp = writeLock();
+            try {
+                int index = table.find(db, name, hash);
+                if (index >= 0) {
+                    return table.nodes[index];
+                }
+                if ((used + 1) * 2 > table.hashes.length) {
+                    resize();
+                }
+                int mask = table.hashes.length - 1;
+                index = hash & mask;
+                while (table.hashes[index] != 0 && table.nodes[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                if (table.hashes[index] == 0) {
+                    used++;
+                }
+                table.dbs[index] = db;
+                table.hashes[index] = hash;
+                table.nodes[index] = node;
+                table.referenced[index] = false;
+                live++;
+                return null;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        ConcurrentTreeNode remove(long db, String name, int hash, ConcurrentTreeNode expected) {
+            long stamp = writeLock();
+            try {
+                int index = table.find(db, name, hash);
+                if (index < 0) {
+                    return null;
+                }
+                ConcurrentTreeNode node = table.nodes[index];
+                if (expected != null && node != expected) {
+                    return null;
+                }
+                removeAt(index);
+                return node;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Leaves the hash in place so that probe sequences continue past the removed slot.
+         */
+        private void removeAt(int index) {
+            table.nodes[index] = null;
+            table.referenced[index] = false;
+            live--;
+        }
+
+        /**
+         * Rebuild the table without removed entries, growing it if it is more than a quarter full.
+         */
+        private void resize() {
+            Table previous = table;
+            int length = previous.hashes.length;
+            if (live * 4 > length) {
+                length <<= 1;
+            }
+            Table next = new Table(length);
+            int mask = length - 1;
+            for (int i = 0; i < previous.hashes.length; i++) {
+                ConcurrentTreeNode node = previous.nodes[i];
+                if (node != null) {
+                    int index = previous.hashes[i] & mask;
+                    while (next.hashes[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    next.dbs[index] = previous.dbs[i];
+                    next.hashes[index] = previous.hashes[i];
+                    next.nodes[index] = node;
+                    next.referenced[index] = previous.referenced[i];
+                }
+            }
+            table = next;
+            used = live;
+            clockHand = 0;
+        }
+
+        /**
+         * Advance the clock hand until a node has been evicted. Every slot
+         * is visited at most twice so that the sweep terminates when all
+         * nodes in the segment are leased. The victim is written back to the
+         * backing store without holding the segment lock. It stays in the
+         * table until the write has completed so that no other thread can
+         * load a stale copy, and it is removed afterwards unless another
+         * thread has removed it in the meantime.
+         */
+        boolean evictOne() {
+            ConcurrentTreeNode victim = null;
+            long db = 0;
+            int hash = 0;
+            long stamp = writeLock();
+            try {
+                int length = table.hashes.length;
+                for (int i = 0; i < 2 * length && live > 0; i++) {
+                    int index = clockHand;
+                    clockHand = (clockHand + 1) & (length - 1);
+                    ConcurrentTreeNode node = table.nodes[index];
+                    if (node == null) {
+                        continue;
+                    }
+                    if (table.referenced[index]) {
+                        table.referenced[index] = false;
+                    } else if (mediator.tryEviction(node)) {
+                        victim = node;
+                        db = table.dbs[index];
+                        hash = table.hashes[index];
+                        break;
+                    }
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+            if (victim == null) {
+                return false;
+            }
+            mediator.onEviction(victim);
+            stamp = writeLock();
+            try {
+                int index = table.find(db, victim.getName(), hash);
+                if (index >= 0 && table.nodes[index] == victim) {
+                    removeAt(index);
+                    return true;
+                }
+                return false;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        void values(List<ConcurrentTreeNode> result) {
+            long stamp = readLock();
+            try {
+                for (ConcurrentTreeNode node : table.nodes) {
+                    if (node != null) {
+                        result.add(node);
+                    }
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+    }
+}
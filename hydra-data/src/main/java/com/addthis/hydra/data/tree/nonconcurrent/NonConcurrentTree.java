@@ -35,6 +35,7 @@ import com.addthis.hydra.store.db.CloseOperation;
 import com.addthis.hydra.store.db.DBKey;
 import com.addthis.hydra.store.db.IPageDB;
 import com.addthis.hydra.store.db.PageDB;
+import com.addthis.hydra.store.db.ReadPageDB;
 import com.addthis.hydra.store.nonconcurrent.NonConcurrentPage;
 import com.addthis.hydra.store.util.MeterFileLogger;
 import com.addthis.hydra.store.util.MeterFileLogger.MeterDataSource;
@@ -114,10 +115,14 @@ public final class NonConcurrentTree implements DataTree, MeterDataSource {
             logger = null;
         }
         source = new PageDB.Builder<>(root, NonConcurrentTreeNode.class, maxPageSize, maxCacheSize)
-                .pageFactory(factory).build();
+                .pageFactory(factory)
+                .pageCodec(TreeCommonParameters.pageCodec)
+                .pageDictionary(TreeCommonParameters.pageDictionary)
+                .evictionPolicy(TreeCommonParameters.evictionPolicy).build();
         source.setCacheMem(TreeCommonParameters.maxCacheMem);
         source.setPageMem(TreeCommonParameters.maxPageMem);
         source.setMemSampleInterval(TreeCommonParameters.memSample);
+        source.setOffHeapPages(TreeCommonParameters.offHeapPages);
 
         // get stored next db id
         File idFile = new File(root, "nextID");
@@ -317,6 +322,14 @@ public final class NonConcurrentTree implements DataTree, MeterDataSource {
             if (status != 0) {
                 throw new RuntimeException("page db close returned a non-zero exit code : " + status);
             }
+            if (TreeCommonParameters.snapshot) {
+                try {
+                    ReadPageDB.writeSnapshot(root);
+                } catch (IOException | RuntimeException ex) {
+                    // the snapshot only speeds up queries so the tree is closed without it
+                    log.warn("unable to write a snapshot of {}", root, ex);
+                }
+            }
         }
         if (logger != null) {
             logger.terminate();
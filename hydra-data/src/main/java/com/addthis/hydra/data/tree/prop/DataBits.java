@@ -19,12 +19,13 @@ import com.addthis.bundle.util.ValueUtil;
 import com.addthis.bundle.value.ValueFactory;
 import com.addthis.bundle.value.ValueObject;
 import com.addthis.codec.annotations.FieldConfig;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
 import com.addthis.hydra.data.tree.TreeDataParameters;
 import com.addthis.hydra.data.tree.TreeNodeData;
 
-public class DataBits extends TreeNodeData<DataBits.Config> {
+public class DataBits extends TreeNodeData<DataBits.Config> implements CommutativeTreeNodeData<DataBits> {
 
     /**
      * <p>This data attachment <span class="hydra-summary">counts data frequency by individual bits</span>.
@@ -123,6 +124,14 @@ public class DataBits extends TreeNodeData<DataBits.Config> {
         return true;
     }
 
+    @Override
+    public void mergeStripe(DataBits stripe) {
+        int length = Math.min(bits.length, stripe.bits.length);
+        for (int i = 0; i < length; i++) {
+            bits[i] += stripe.bits[i];
+        }
+    }
+
     @Override
     public ValueObject getValue(String key) {
         return ValueFactory.create(bits[Integer.parseInt(key)]);
@@ -26,6 +26,7 @@ import com.addthis.bundle.value.ValueObject;
 import com.addthis.bundle.value.ValueTranslationException;
 import com.addthis.codec.annotations.FieldConfig;
 import com.addthis.codec.codables.SuperCodable;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
 import com.addthis.hydra.data.tree.TreeDataParameters;
@@ -34,7 +35,8 @@ import com.addthis.hydra.data.tree.TreeNodeData;
 import com.clearspring.analytics.stream.frequency.CountMinSketch;
 
 public class DataCountMinSketch extends TreeNodeData<DataCountMinSketch.Config> implements
-                                                                                SuperCodable {
+                                                                                SuperCodable,
+                                                                                CommutativeTreeNodeData<DataCountMinSketch> {
 
     /**
      * <p>This data attachment is a <span class="hydra-summary">count-min sketch attached to a node</span>.
@@ -235,6 +237,15 @@ public class DataCountMinSketch extends TreeNodeData<DataCountMinSketch.Config>
         sketch.add(val, count);
     }
 
+    @Override
+    public void mergeStripe(DataCountMinSketch stripe) {
+        try {
+            sketch = CountMinSketch.merge(sketch, stripe.sketch);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     long estimateCount(String item) {
         return sketch.estimateCount(item);
     }
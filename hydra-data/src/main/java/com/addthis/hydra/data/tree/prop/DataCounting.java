@@ -35,6 +35,7 @@ import com.addthis.bundle.value.ValueString;
 import com.addthis.bundle.value.ValueTranslationException;
 import com.addthis.codec.annotations.FieldConfig;
 import com.addthis.codec.codables.SuperCodable;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
 import com.addthis.hydra.data.tree.TreeDataParameters;
@@ -53,7 +54,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
-public class DataCounting extends TreeNodeData<DataCounting.Config> implements SuperCodable {
+public class DataCounting extends TreeNodeData<DataCounting.Config>
+        implements SuperCodable, CommutativeTreeNodeData<DataCounting> {
 
     private static final int VER_LOG = 0;
     private static final int VER_LINEAR = 1;
@@ -276,6 +278,11 @@ public class DataCounting extends TreeNodeData<DataCounting.Config> implements S
         }
     }
 
+    @Override
+    public void mergeStripe(DataCounting stripe) {
+        merge(stripe);
+    }
+
     // for DataKeySieve
     void offer(Object o) {
         ic.offer(o);
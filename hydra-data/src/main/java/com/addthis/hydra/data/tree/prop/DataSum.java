@@ -18,6 +18,7 @@ import com.addthis.bundle.util.ValueUtil;
 import com.addthis.bundle.value.ValueFactory;
 import com.addthis.bundle.value.ValueObject;
 import com.addthis.codec.annotations.FieldConfig;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
 import com.addthis.hydra.data.tree.TreeDataParameters;
@@ -25,7 +26,7 @@ import com.addthis.hydra.data.tree.TreeNodeData;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-public class DataSum extends TreeNodeData<DataSum.Config> {
+public class DataSum extends TreeNodeData<DataSum.Config> implements CommutativeTreeNodeData<DataSum> {
 
     private static final Logger log = LoggerFactory.getLogger(DataSum.class);
 
@@ -141,6 +142,12 @@ public class DataSum extends TreeNodeData<DataSum.Config> {
         return true;
     }
 
+    @Override
+    public void mergeStripe(DataSum stripe) {
+        sum += stripe.sum;
+        num += stripe.num;
+    }
+
     @Override
     public ValueObject getValue(String key) {
         if (key == null) {
@@ -38,6 +38,7 @@ import com.addthis.bundle.value.ValueString;
 import com.addthis.bundle.value.ValueTranslationException;
 import com.addthis.codec.annotations.FieldConfig;
 import com.addthis.codec.codables.SuperCodable;
+import com.addthis.hydra.data.tree.CommutativeTreeNodeData;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
 import com.addthis.hydra.data.tree.TreeDataParameters;
@@ -45,7 +46,8 @@ import com.addthis.hydra.data.tree.TreeNodeData;
 
 import com.clearspring.analytics.stream.quantile.TDigest;
 
-public class DataTDigest extends TreeNodeData<DataTDigest.Config> implements SuperCodable {
+public class DataTDigest extends TreeNodeData<DataTDigest.Config>
+        implements SuperCodable, CommutativeTreeNodeData<DataTDigest> {
 
     /**
      * <p>This data attachment is a <span class="hydra-summary">TDigest attached to a node</span></p>
@@ -163,6 +165,11 @@ public class DataTDigest extends TreeNodeData<DataTDigest.Config> implements Sup
         return false;
     }
 
+    @Override
+    public void mergeStripe(DataTDigest stripe) {
+        filter = TDigest.merge(filter.compression(), Arrays.asList(filter, stripe.filter));
+    }
+
     @Override
     public void postDecode() {
         filter = TDigest.fromBytes(ByteBuffer.wrap(raw));
@@ -20,13 +20,15 @@ import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
+import com.addthis.basis.util.Parameter;
 import com.addthis.basis.util.Varint;
 
 import com.addthis.codec.annotations.FieldConfig;
 import com.addthis.codec.codables.BytesCodable;
-import com.addthis.codec.codables.Codable;
+import com.addthis.codec.codables.SuperCodable;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -38,11 +40,18 @@ import io.netty.buffer.Unpooled;
 
 /**
  * Class that helps maintain a top N list for any String Map.
+ * <p/>
+ * When {@code hydra.keytopper.streamsummary} is enabled the counts are held
+ * in a {@link StreamSummary} instead of a hash map. Updates and eviction of
+ * the minimum key then no longer scan the map and the sorted entries are read
+ * without sorting. Both representations have the same serialized forms.
  */
-public final class KeyTopper implements Codable, BytesCodable {
+public final class KeyTopper implements SuperCodable, BytesCodable {
 
     private static final byte[] EMPTY = new byte[0];
 
+    private static final boolean useStreamSummary = Parameter.boolValue("hydra.keytopper.streamsummary", false);
+
     public KeyTopper() {
     }
 
@@ -72,16 +81,51 @@ public final class KeyTopper implements Codable, BytesCodable {
     @FieldConfig(codable = false)
     private HashMap<String, Long> errors;
 
+    /**
+     * Replaces {@link #map} when the stream summary
+     * representation is enabled. The map is then
+     * only populated for codable serialization.
+     */
+    @FieldConfig(codable = false)
+    private StreamSummary summary;
+
     @Override
     public String toString() {
+        if (summary != null) {
+            return "topper(min:" + summary.minKey() + "=" + summary.minCount() + "->" + summary + ",lossy:" +
+                   lossy + ")";
+        }
         return "topper(min:" + minKey + "=" + minVal + "->" + map.toString() + ",lossy:" + lossy + ")";
     }
 
     public KeyTopper init() {
-        map = new HashMap<>();
+        if (useStreamSummary) {
+            summary = new StreamSummary();
+            map = null;
+        } else {
+            map = new HashMap<>();
+        }
         return this;
     }
 
+    @Override
+    public void preEncode() {
+        if (summary != null) {
+            map = summary.toHashMap();
+        }
+    }
+
+    @Override
+    public void postDecode() {
+        if (useStreamSummary && (map != null)) {
+            summary = new StreamSummary(map.size());
+            for (Map.Entry<String, Long> entry : map.entrySet()) {
+                summary.put(entry.getKey(), entry.getValue());
+            }
+            map = null;
+        }
+    }
+
     public KeyTopper setLossy(boolean isLossy) {
         lossy = isLossy;
         return this;
@@ -105,11 +149,11 @@ public final class KeyTopper implements Codable, BytesCodable {
     }
 
     public int size() {
-        return map.size();
+        return (summary != null) ? summary.size() : map.size();
     }
 
     public Long get(@Nonnull String key) {
-        return map.get(key);
+        return (summary != null) ? summary.get(key) : map.get(key);
     }
 
     /**
@@ -140,6 +184,14 @@ public final class KeyTopper implements Codable, BytesCodable {
      */
     @SuppressWarnings("unchecked")
     public Map.Entry<String, Long>[] getSortedEntries() {
+        if (summary != null) {
+            Map.Entry<String, Long>[] e = new Map.Entry[summary.size()];
+            Iterator<Map.Entry<String, Long>> iterator = summary.descendingIterator();
+            for (int i = 0; i < e.length; i++) {
+                e[i] = iterator.next();
+            }
+            return e;
+        }
         Map.Entry<String,Long>[] e = new Map.Entry[map.size()];
         e = map.entrySet().toArray(e);
         Arrays.sort(e, ENTRIES_COMPARATOR);
@@ -194,6 +246,13 @@ public final class KeyTopper implements Codable, BytesCodable {
      *         drops
      */
     public String increment(@Nonnull String id, int weight, int maxsize) {
+        if (summary != null) {
+            Long count = summary.get(id);
+            if (count == null) {
+                count = (lossy && summary.size() >= maxsize) ? summary.minCount() : 0L;
+            }
+            return updateSummary(id, count + weight, maxsize);
+        }
         Long count = map.get(id);
         if (count == null) {
             if (lossy && map.size() >= maxsize) {
@@ -216,6 +275,9 @@ public final class KeyTopper implements Codable, BytesCodable {
      * @return whether the element was in the map
      */
     public boolean incrementExisting(@Nonnull String id) {
+        if (summary != null) {
+            return summary.increment(id, 1L);
+        }
         Long value = map.get(id);
         if (value != null) {
             map.put(id, value + 1L);
@@ -240,6 +302,9 @@ public final class KeyTopper implements Codable, BytesCodable {
     public String update(@Nonnull String id, long value, int maxsize) {
         Preconditions.checkArgument(value >= 0, "Argument was %s but expected nonnegative", value);
         Preconditions.checkArgument(maxsize > 0, "Argument was %s but expected positive integer", maxsize);
+        if (summary != null) {
+            return updateSummary(id, value, maxsize);
+        }
         /** There is guaranteed capacity to update or insert value */
         if (map.size() < maxsize) {
             map.put(id, value);
@@ -282,6 +347,31 @@ public final class KeyTopper implements Codable, BytesCodable {
         }
     }
 
+    /**
+     * Same behavior as {@link #update(String, long, int)} for the stream summary representation.
+     */
+    private String updateSummary(String id, long value, int maxsize) {
+        if (summary.size() < maxsize) {
+            summary.put(id, value);
+            return null;
+        }
+        long min = summary.minCount();
+        if (value >= min) {
+            String result = null;
+            if (!summary.containsKey(id)) {
+                result = summary.removeMin();
+                if (hasErrors()) {
+                    errors.remove(result);
+                    errors.put(id, min);
+                }
+            }
+            summary.put(id, value);
+            return result;
+        } else {
+            return id;
+        }
+    }
+
     /**
      * Encode the data structure into a serialized representation.
      * Encode the number of elements followed by each (key, value)
@@ -292,7 +382,7 @@ public final class KeyTopper implements Codable, BytesCodable {
      * @return
      */
     @Override public byte[] bytesEncode(long version) {
-        if (map.size() == 0) {
+        if (size() == 0) {
             return EMPTY;
         }
         byte[] retBytes = null;
@@ -301,8 +391,11 @@ public final class KeyTopper implements Codable, BytesCodable {
             if (hasErrors()) {
                 byteBuf.writeByte(0);
             }
-            Varint.writeUnsignedVarInt(map.size(), byteBuf);
-            for (Map.Entry<String, Long> mapEntry : map.entrySet()) {
+            Varint.writeUnsignedVarInt(size(), byteBuf);
+            Iterator<Map.Entry<String, Long>> entries =
+                    (summary != null) ? summary.descendingIterator() : map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Long> mapEntry = entries.next();
                 String key = mapEntry.getKey();
                 if (key == null) {
                     throw new NullPointerException("KeyTopper decoded null key");
@@ -332,7 +425,13 @@ public final class KeyTopper implements Codable, BytesCodable {
 
     @Override
     public void bytesDecode(byte[] b, long version) {
-        map = new HashMap<>();
+        if (useStreamSummary) {
+            summary = new StreamSummary();
+            map = null;
+        } else {
+            summary = null;
+            map = new HashMap<>();
+        }
         errors = null;
         if (b.length == 0) {
             return;
@@ -347,6 +446,8 @@ public final class KeyTopper implements Codable, BytesCodable {
             }
             int mapSize = Varint.readUnsignedVarInt(byteBuf);
             try {
+                String[] keys = (summary != null) ? new String[mapSize] : null;
+                long[] values = (summary != null) ? new long[mapSize] : null;
                 if (mapSize > 0) {
                     for (int i = 0; i < mapSize; i++) {
                         int keyLength = Varint.readUnsignedVarInt(byteBuf);
@@ -354,7 +455,12 @@ public final class KeyTopper implements Codable, BytesCodable {
                         byteBuf.readBytes(keybytes);
                         String k = new String(keybytes, "UTF-8");
                         long value = Varint.readUnsignedVarLong(byteBuf);
-                        map.put(k, value);
+                        if (summary != null) {
+                            keys[i] = k;
+                            values[i] = value;
+                        } else {
+                            map.put(k, value);
+                        }
                         if (hasErrors()) {
                             long error = Varint.readUnsignedVarLong(byteBuf);
                             if (error != 0) {
@@ -363,6 +469,9 @@ public final class KeyTopper implements Codable, BytesCodable {
                         }
                     }
                 }
+                if (summary != null) {
+                    loadSummary(keys, values);
+                }
             } catch (Exception e) {
                 throw Throwables.propagate(e);
             }
@@ -371,11 +480,37 @@ public final class KeyTopper implements Codable, BytesCodable {
         }
     }
 
+    /**
+     * Insert the decoded entries in descending order of count so that every
+     * insertion lands at the low end of the stream summary. Entries that
+     * were encoded from a stream summary are already in this order.
+     */
+    private void loadSummary(String[] keys, long[] values) {
+        boolean descending = true;
+        for (int i = 1; i < values.length && descending; i++) {
+            descending = values[i - 1] >= values[i];
+        }
+        if (descending) {
+            for (int i = 0; i < keys.length; i++) {
+                summary.put(keys[i], values[i]);
+            }
+        } else {
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(values[b], values[a]));
+            for (Integer index : order) {
+                summary.put(keys[index], values[index]);
+            }
+        }
+    }
+
     public long getMinVal() {
-        return minVal;
+        return (summary != null) ? summary.minCount() : minVal;
     }
 
     public String getMinKey() {
-        return minKey;
+        return (summary != null) ? summary.minKey() : minKey;
     }
 }
@@ -0,0 +1,299 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.util;
+
+import javax.annotation.Nonnull;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Stream-Summary structure of the Space-Saving algorithm. Keys are
+ * grouped into buckets of equal count and the buckets form a doubly
+ * linked list in ascending order of count. Incrementing a key moves it
+ * into a neighbouring bucket, so unit increments and removal of a minimum
+ * key take constant time, and the keys can be iterated in descending
+ * order of count without sorting.
+ * <p/>
+ * Updates with larger weights walk the bucket list from the current
+ * bucket of the key. Not thread safe.
+ */
+public final class StreamSummary {
+
+    private static final class Bucket {
+
+        final long count;
+        Bucket prev;
+        Bucket next;
+        Counter head;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Counter {
+
+        final String key;
+        Bucket bucket;
+        Counter prev;
+        Counter next;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private final HashMap<String, Counter> counters;
+
+    /**
+     * Bucket with the smallest count.
+     */
+    private Bucket min;
+
+    /**
+     * Bucket with the largest count.
+     */
+    private Bucket max;
+
+    public StreamSummary() {
+        counters = new HashMap<>();
+    }
+
+    public StreamSummary(int expectedSize) {
+        counters = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public boolean containsKey(@Nonnull String key) {
+        return counters.containsKey(key);
+    }
+
+    /**
+     * Returns the count of the key or null if the key is not present.
+     */
+    public Long get(@Nonnull String key) {
+        Counter counter = counters.get(key);
+        return (counter == null) ? null : counter.bucket.count;
+    }
+
+    /**
+     * Set the count of a key, inserting the key if it is not present.
+     */
+    public void put(@Nonnull String key, long count) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter(key);
+            counters.put(key, counter);
+            insert(counter, count, ((max != null) && (count >= max.count)) ? max : min);
+        } else if (counter.bucket.count != count) {
+            insert(counter, count, detach(counter));
+        }
+    }
+
+    /**
+     * Add to the count of a key that is present.
+     *
+     * @return false if the key is not present
+     */
+    public boolean increment(@Nonnull String key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            return false;
+        }
+        if (weight != 0) {
+            long count = counter.bucket.count + weight;
+            insert(counter, count, detach(counter));
+        }
+        return true;
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @return false if the key is not present
+     */
+    public boolean remove(@Nonnull String key) {
+        Counter counter = counters.remove(key);
+        if (counter == null) {
+            return false;
+        }
+        detach(counter);
+        return true;
+    }
+
+    /**
+     * Returns a key with the smallest count or null if the summary is empty.
+     */
+    public String minKey() {
+        return (min == null) ? null : min.head.key;
+    }
+
+    /**
+     * Returns the smallest count or zero if the summary is empty.
+     */
+    public long minCount() {
+        return (min == null) ? 0 : min.count;
+    }
+
+    /**
+     * Remove a key with the smallest count.
+     *
+     * @return the key that was removed or null if the summary is empty
+     */
+    public String removeMin() {
+        if (min == null) {
+            return null;
+        }
+        String key = min.head.key;
+        remove(key);
+        return key;
+    }
+
+    /**
+     * Iterates over the entries from the greatest to the least count.
+     * The summary must not be modified during iteration.
+     */
+    public Iterator<Map.Entry<String, Long>> descendingIterator() {
+        return new Iterator<Map.Entry<String, Long>>() {
+            private Bucket bucket = max;
+            private Counter counter = (max == null) ? null : max.head;
+
+            @Override
+            public boolean hasNext() {
+                return counter != null;
+            }
+
+            @Override
+            public Map.Entry<String, Long> next() {
+                if (counter == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, Long> entry = new AbstractMap.SimpleImmutableEntry<>(counter.key, bucket.count);
+                counter = counter.next;
+                if (counter == null) {
+                    bucket = bucket.prev;
+                    counter = (bucket == null) ? null : bucket.head;
+                }
+                return entry;
+            }
+        };
+    }
+
+    public HashMap<String, Long> toHashMap() {
+        HashMap<String, Long> result = new HashMap<>(counters.size() * 2);
+        for (Bucket bucket = min; bucket != null; bucket = bucket.next) {
+            for (Counter counter = bucket.head; counter != null; counter = counter.next) {
+                result.put(counter.key, bucket.count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unlink the counter from its bucket and remove the bucket if it
+     * becomes empty. Returns a bucket that is still linked and is adjacent
+     * to the position of the old bucket, or null if no bucket remains.
+     */
+    private Bucket detach(Counter counter) {
+        Bucket bucket = counter.bucket;
+        if (counter.prev == null) {
+            bucket.head = counter.next;
+        } else {
+            counter.prev.next = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.prev = counter.prev;
+        }
+        counter.prev = null;
+        counter.next = null;
+        counter.bucket = null;
+        if (bucket.head != null) {
+            return bucket;
+        }
+        if (bucket.prev == null) {
+            min = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            max = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+        return (bucket.next != null) ? bucket.next : bucket.prev;
+    }
+
+    /**
+     * Link the counter into the bucket for {@code count}, searching
+     * from {@code start} and creating the bucket if necessary.
+     */
+    private void insert(Counter counter, long count, Bucket start) {
+        Bucket prev;
+        Bucket next;
+        if (start == null) {
+            prev = null;
+            next = min;
+        } else if (start.count <= count) {
+            prev = start;
+            next = start.next;
+        } else {
+            prev = start.prev;
+            next = start;
+        }
+        while ((next != null) && (next.count <= count)) {
+            prev = next;
+            next = next.next;
+        }
+        while ((prev != null) && (prev.count > count)) {
+            next = prev;
+            prev = prev.prev;
+        }
+        Bucket bucket;
+        if ((prev != null) && (prev.count == count)) {
+            bucket = prev;
+        } else {
+            bucket = new Bucket(count);
+            bucket.prev = prev;
+            bucket.next = next;
+            if (prev == null) {
+                min = bucket;
+            } else {
+                prev.next = bucket;
+            }
+            if (next == null) {
+                max = bucket;
+            } else {
+                next.prev = bucket;
+            }
+        }
+        counter.bucket = bucket;
+        counter.next = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.prev = counter;
+        }
+        bucket.head = counter;
+    }
+
+    @Override
+    public String toString() {
+        return toHashMap().toString();
+    }
+}
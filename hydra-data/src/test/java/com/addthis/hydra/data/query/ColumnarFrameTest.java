@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Collections;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueArray;
+import com.addthis.bundle.value.ValueFactory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarFrameTest {
+
+    private static Bundle row(ListBundleFormat format, Object... pairs) {
+        Bundle bundle = new ListBundle(format);
+        for (int i = 0; i < pairs.length; i += 2) {
+            Object value = pairs[i + 1];
+            if (value instanceof String) {
+                bundle.setValue(format.getField((String) pairs[i]), ValueFactory.create((String) value));
+            } else if (value instanceof Long) {
+                bundle.setValue(format.getField((String) pairs[i]), ValueFactory.create((Long) value));
+            } else if (value instanceof Double) {
+                bundle.setValue(format.getField((String) pairs[i]), ValueFactory.create((Double) value));
+            }
+        }
+        return bundle;
+    }
+
+    private static ColumnarFrameReader roundTrip(ColumnarFrameWriter writer, ListBundleFormat format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals(0, writer.rows());
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(FramedDataChannelReader.FRAME_BATCH, in.read());
+        ColumnarFrameReader reader = ColumnarFrameReader.read(in, format);
+        assertEquals(-1, in.read());
+        return reader;
+    }
+
+    private void roundTrip(boolean compress) throws IOException {
+        ListBundleFormat format = new ListBundleFormat();
+        ColumnarFrameWriter writer = new ColumnarFrameWriter(compress);
+        assertTrue(writer.add(row(format, "a", "foo", "b", 1L)));
+        assertTrue(writer.add(row(format, "a", "foo", "b", -5L, "c", 2.5)));
+        assertTrue(writer.add(row(format, "a", "bar", "c", -0.5)));
+        assertTrue(writer.add(row(format, "b", Long.MIN_VALUE)));
+        assertEquals(4, writer.rows());
+
+        ListBundleFormat target = new ListBundleFormat();
+        ColumnarFrameReader reader = roundTrip(writer, target);
+        ListBundle factory = new ListBundle(target);
+        Bundle first = reader.next(factory);
+        Bundle second = reader.next(factory);
+        Bundle third = reader.next(factory);
+        Bundle fourth = reader.next(factory);
+        assertFalse(reader.hasNext());
+
+        assertEquals("foo", first.getValue(target.getField("a")).asString().asNative());
+        assertEquals(1L, first.getValue(target.getField("b")).asLong().getLong());
+        assertNull(first.getValue(target.getField("c")));
+        // dictionary encoded strings are decoded once per frame
+        assertSame(first.getValue(target.getField("a")), second.getValue(target.getField("a")));
+        assertEquals(-5L, second.getValue(target.getField("b")).asLong().getLong());
+        assertEquals(2.5, second.getValue(target.getField("c")).asDouble().getDouble(), 0);
+        assertEquals("bar", third.getValue(target.getField("a")).asString().asNative());
+        assertNull(third.getValue(target.getField("b")));
+        assertEquals(-0.5, third.getValue(target.getField("c")).asDouble().getDouble(), 0);
+        assertNull(fourth.getValue(target.getField("a")));
+        assertEquals(Long.MIN_VALUE, fourth.getValue(target.getField("b")).asLong().getLong());
+    }
+
+    @Test
+    public void uncompressed() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void compressed() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void rejectsComplexValues() throws IOException {
+        ListBundleFormat format = new ListBundleFormat();
+        ColumnarFrameWriter writer = new ColumnarFrameWriter(false);
+        Bundle bundle = row(format, "a", "foo");
+        ValueArray array = ValueFactory.createArray(1);
+        array.add(ValueFactory.create("bar"));
+        bundle.setValue(format.getField("b"), array);
+        assertFalse(writer.add(bundle));
+        assertEquals(0, writer.rows());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void fromOptions() {
+        assertNull(ColumnarFrameWriter.fromOptions(null));
+        assertNull(ColumnarFrameWriter.fromOptions(Collections.<String, String>emptyMap()));
+        assertEquals(0, ColumnarFrameWriter.fromOptions(
+                Collections.singletonMap(ColumnarFrameWriter.OPTION, ColumnarFrameWriter.COLUMNAR)).rows());
+    }
+}
@@ -193,4 +193,27 @@ public class TestOpGather extends TestOp {
 
         System.out.println("InMemoryTime:" + inMemoryTime + " onDiskTime:" + onDiskTime);
     }
+
+    @Test
+    public void testPartitionedSpill() throws Exception {
+        System.setProperty("opgather.tiptodisk", "true");
+        System.setProperty("opgather.partitions", "2");
+        try {
+            DataTableHelper input = new DataTableHelper();
+            for (int i = 0; i < 4; i++) {
+                for (String key : new String[]{"a", "b", "c", "d", "e"}) {
+                    input.tr().td(key, "1", Integer.toString(i));
+                }
+            }
+            doOpTest(input, "gather=kssu;sort", new DataTableHelper().
+                    tr().td("a", "4", "6", "4").
+                    tr().td("b", "4", "6", "4").
+                    tr().td("c", "4", "6", "4").
+                    tr().td("d", "4", "6", "4").
+                    tr().td("e", "4", "6", "4"), 1, 0);
+        } finally {
+            System.clearProperty("opgather.tiptodisk");
+            System.clearProperty("opgather.partitions");
+        }
+    }
 }
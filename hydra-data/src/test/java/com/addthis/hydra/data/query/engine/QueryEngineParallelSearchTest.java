@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.engine;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.hydra.data.query.Query;
+import com.addthis.hydra.data.tree.DataTreeNode;
+import com.addthis.hydra.data.tree.concurrent.ConcurrentTree;
+import com.addthis.hydra.store.db.CloseOperation;
+
+import org.junit.Test;
+
+import io.netty.channel.DefaultChannelProgressivePromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryEngineParallelSearchTest {
+
+    private static class CollectingOutput implements DataChannelOutput {
+
+        final ListBundleFormat format = new ListBundleFormat();
+        final List<String> rows = new ArrayList<>();
+
+        @Override
+        public void send(Bundle row) {
+            StringBuilder builder = new StringBuilder();
+            for (BundleField field : row) {
+                builder.append(row.getValue(field)).append('/');
+            }
+            rows.add(builder.toString());
+        }
+
+        @Override
+        public void send(List<Bundle> bundles) {
+            bundles.forEach(this::send);
+        }
+
+        @Override
+        public void sendComplete() {
+        }
+
+        @Override
+        public void sourceError(Throwable er) {
+        }
+
+        @Override
+        public Bundle createBundle() {
+            return new ListBundle(format);
+        }
+    }
+
+    private static List<String> search(QueryEngine engine, String path, String parallel) throws Exception {
+        Query query = new Query("job", new String[]{path}, null);
+        query.setParameter("parallel", parallel);
+        CollectingOutput output = new CollectingOutput();
+        engine.search(query, output, new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE));
+        return output.rows;
+    }
+
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        File dir = LessFiles.createTempDir();
+        try {
+            ConcurrentTree tree = new ConcurrentTree(dir);
+            DataTreeNode parent = tree.getOrCreateNode(tree.getRootNode(), "p", null);
+            for (int i = 0; i < 50; i++) {
+                DataTreeNode child = parent.getOrCreateNode(String.format("%03d", i), null);
+                for (int j = 0; j < 20; j++) {
+                    child.getOrCreateNode(String.format("%03d", j), null).release();
+                }
+                child.release();
+            }
+            parent.release();
+            QueryEngine engine = new QueryEngine(tree);
+            List<String> sequential = search(engine, "p/+/+", "false");
+            assertEquals(1000, sequential.size());
+            assertEquals(sequential, search(engine, "p/+/+", "ordered"));
+            List<String> unordered = search(engine, "p/+/+", "unordered");
+            assertEquals(1000, unordered.size());
+            assertEquals(new HashSet<>(sequential), new HashSet<>(unordered));
+            tree.close(false, CloseOperation.NONE);
+        } finally {
+            LessFiles.deleteDir(dir);
+        }
+    }
+}
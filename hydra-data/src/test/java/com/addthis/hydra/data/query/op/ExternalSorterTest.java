@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.query.op;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import org.junit.Test;
+
+import io.netty.channel.DefaultChannelProgressivePromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalSorterTest {
+
+    private static final String[] COLS = {"num", "str"};
+    private static final char[] TYPE = {'n', 's'};
+    private static final char[] DIR = {'a', 'd'};
+
+    private final ListBundleFormat format = new ListBundleFormat();
+    private final BundleField num = format.getField("num");
+    private final BundleField str = format.getField("str");
+    private final BundleField seq = format.getField("seq");
+
+    private Bundle row(Long numValue, String strValue, long seqValue) {
+        Bundle row = new ListBundle(format);
+        row.setValue(num, (numValue == null) ? null : ValueFactory.create(numValue));
+        row.setValue(str, (strValue == null) ? null : ValueFactory.create(strValue));
+        row.setValue(seq, ValueFactory.create(seqValue));
+        return row;
+    }
+
+    @Test
+    public void normalizedKeyOrder() {
+        SortKeyEncoder encoder = new SortKeyEncoder(new BundleField[]{num, str}, TYPE, DIR);
+        Comparator<byte[]> comparator = UnsignedBytes.lexicographicalComparator();
+        Bundle[] ordered = {
+                row(Long.MIN_VALUE, "z", 0),
+                row(-5L, null, 0),
+                row(-5L, "b", 0),
+                row(-5L, "ab", 0),
+                row(-5L, "a\u0000", 0),
+                row(-5L, "a", 0),
+                row(0L, "\u00e9", 0),
+                row(0L, "e", 0),
+                row(7L, "\uffff", 0),
+                row(7L, "\u0800", 0),
+                row(Long.MAX_VALUE, "", 0),
+                row(null, "a", 0)
+        };
+        for (int i = 1; i < ordered.length; i++) {
+            byte[] previous = encoder.encode(ordered[i - 1]);
+            byte[] current = encoder.encode(ordered[i]);
+            assertTrue(ordered[i - 1] + " < " + ordered[i], comparator.compare(previous, current) < 0);
+        }
+    }
+
+    @Test
+    public void parallelMergeSort() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            Random random = new Random(42);
+            List<Bundle> input = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                input.add(row((long) random.nextInt(50) - 25, "s" + random.nextInt(20), i));
+            }
+            // small runs and a narrow merge force intermediate merge levels
+            ExternalSorter sorter = new ExternalSorter(tempDir.toPath(), COLS, TYPE, DIR, null, 16 * 1024, 3);
+            for (Bundle row : input) {
+                sorter.add(row);
+            }
+            List<Bundle> output = new ArrayList<>();
+            sorter.finish(output::add, new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE));
+            sorter.close();
+
+            assertEquals(input.size(), output.size());
+            for (int i = 1; i < output.size(); i++) {
+                Bundle previous = output.get(i - 1);
+                Bundle current = output.get(i);
+                long prevNum = Long.parseLong(previous.getValue(previous.getFormat().getField("num")).toString());
+                long curNum = Long.parseLong(current.getValue(current.getFormat().getField("num")).toString());
+                assertTrue(prevNum <= curNum);
+                if (prevNum == curNum) {
+                    String prevStr = previous.getValue(previous.getFormat().getField("str")).toString();
+                    String curStr = current.getValue(current.getFormat().getField("str")).toString();
+                    assertTrue(prevStr.compareTo(curStr) >= 0);
+                    if (prevStr.equals(curStr)) {
+                        // the sort is stable
+                        long prevSeq = Long.parseLong(previous.getValue(previous.getFormat().getField("seq")).toString());
+                        long curSeq = Long.parseLong(current.getValue(current.getFormat().getField("seq")).toString());
+                        assertTrue(prevSeq < curSeq);
+                    }
+                }
+            }
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+
+    private static Map<String, Long> listFiles(File dir) {
+        Map<String, Long> files = new TreeMap<>();
+        File[] list = dir.listFiles();
+        if (list != null) {
+            for (File file : list) {
+                files.put(file.getName(), file.length());
+            }
+        }
+        return files;
+    }
+
+    @Test
+    public void closeWaitsForRuns() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            Random random = new Random(42);
+            ExternalSorter sorter = new ExternalSorter(tempDir.toPath(), COLS, TYPE, DIR, null, 4 * 1024, 3);
+            for (int i = 0; i < 20000; i++) {
+                sorter.add(row((long) random.nextInt(50) - 25, "s" + random.nextInt(20), i));
+            }
+            sorter.close();
+            // no run may be created or written to once the sorter is closed
+            Map<String, Long> files = listFiles(tempDir);
+            Thread.sleep(200);
+            assertEquals(files, listFiles(tempDir));
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree.concurrent;
+
+import java.util.HashMap;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+import com.addthis.codec.config.Configs;
+
+import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
+import com.addthis.hydra.data.tree.TreeDataParameters;
+import com.addthis.hydra.data.tree.TreeDataParent;
+import com.addthis.hydra.data.tree.prop.DataSum;
+import com.addthis.hydra.store.kv.PageEncodeType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestConcurrentTreeNode {
+
+    private static final int numThreads = 8;
+    private static final int numUpdates = 1000;
+
+    private boolean stripedUpdates;
+
+    @Before
+    public void enableStripes() {
+        stripedUpdates = ConcurrentTreeNode.stripedUpdates;
+        ConcurrentTreeNode.stripedUpdates = true;
+    }
+
+    @After
+    public void restoreStripes() {
+        ConcurrentTreeNode.stripedUpdates = stripedUpdates;
+    }
+
+    private static TreeDataParent sumPath() throws Exception {
+        HashMap<String, TreeDataParameters> dataconf = new HashMap<>();
+        dataconf.put("sum", Configs.decodeObject(DataSum.Config.class, "key = x"));
+        return new TreeDataParent() {
+            @Override
+            public HashMap<String, TreeDataParameters> dataConfig() {
+                return dataconf;
+            }
+
+            @Override
+            public boolean countHits() {
+                return true;
+            }
+
+            @Override
+            public boolean assignHits() {
+                return false;
+            }
+        };
+    }
+
+    private static DataTreeNodeUpdater updater(Bundle bundle) {
+        return new DataTreeNodeUpdater() {
+            @Override
+            public Bundle getBundle() {
+                return bundle;
+            }
+
+            @Override
+            public int getCountValue() {
+                return 1;
+            }
+
+            @Override
+            public long getAssignmentValue() {
+                return 0;
+            }
+        };
+    }
+
+    private static Thread updateThread(ConcurrentTreeNode node, TreeDataParent path,
+                                       ListBundleFormat format, int updates) {
+        Bundle bundle = format.createBundle();
+        bundle.setValue(format.getField("x"), ValueFactory.create(1));
+        DataTreeNodeUpdater state = updater(bundle);
+        return new Thread(() -> {
+            for (int i = 0; i < updates; i++) {
+                node.updateChildData(state, path);
+            }
+        });
+    }
+
+    private static long sum(ConcurrentTreeNode node) {
+        return ((DataSum) node.getDataMap().get("sum")).getValue("sum").asLong().getLong();
+    }
+
+    @Test
+    public void stripedUpdates() throws Exception {
+        ListBundleFormat format = new ListBundleFormat();
+        TreeDataParent path = sumPath();
+        ConcurrentTreeNode node = new ConcurrentTreeNode();
+        assertTrue(node.tryLease());
+
+        // contend for the write lock so that the node allocates stripes
+        node.writeLock();
+        Thread first = updateThread(node, path, format, 1);
+        first.start();
+        while (first.isAlive() && (first.getState() != Thread.State.WAITING)) {
+            Thread.sleep(1);
+        }
+        node.writeUnlock();
+        first.join();
+
+        // with stripes in place the updates no longer need the write lock
+        Thread[] threads = new Thread[numThreads];
+        node.writeLock();
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                threads[i] = updateThread(node, path, format, numUpdates);
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join(60000);
+                assertFalse(thread.isAlive());
+            }
+            assertEquals(1 + numThreads * numUpdates, node.getCounter());
+        } finally {
+            node.writeUnlock();
+        }
+
+        // encoding folds the stripes into the node
+        long version = PageEncodeType.defaultType().ordinal();
+        ConcurrentTreeNode decoded = new ConcurrentTreeNode();
+        decoded.bytesDecode(node.bytesEncode(version), version);
+        assertEquals(1 + numThreads * numUpdates, decoded.getCounter());
+        assertEquals(1 + numThreads * numUpdates, sum(decoded));
+
+        // reads fold the stripes when the write lock is available
+        Thread last = updateThread(node, path, format, numUpdates);
+        last.start();
+        last.join();
+        assertEquals(1 + (numThreads + 1) * numUpdates, node.getCounter());
+        assertEquals(1 + (numThreads + 1) * numUpdates, sum(node));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.addthis.hydra.store.db.DBKey;
+import com.addthis.hydra.store.util.Raw;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestNodeCache {
+
+    private static ConcurrentTreeNode createNode(long db, String name) {
+        ConcurrentTreeNode node = new ConcurrentTreeNode();
+        node.init(null, new DBKey(db, Raw.get(name)), name);
+        return node;
+    }
+
+    @Test
+    public void getPutRemove() {
+        NodeCache cache = new NodeCache(1000, 4, new CacheMediator(null));
+        List<ConcurrentTreeNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ConcurrentTreeNode node = createNode(i % 7, Integer.toString(i));
+            nodes.add(node);
+            assertNull(cache.putIfAbsent(i % 7, Integer.toString(i), node));
+        }
+        assertEquals(500, cache.size());
+        for (int i = 0; i < 500; i++) {
+            assertSame(nodes.get(i), cache.get(i % 7, Integer.toString(i)));
+            assertNull(cache.get((i % 7) + 1, Integer.toString(i)));
+        }
+        ConcurrentTreeNode other = createNode(0, "0");
+        assertSame(nodes.get(0), cache.putIfAbsent(0, "0", other));
+        assertFalse(cache.remove(0, "0", other));
+        assertTrue(cache.remove(0, "0", nodes.get(0)));
+        assertNull(cache.get(0, "0"));
+        for (int i = 1; i < 500; i += 2) {
+            assertSame(nodes.get(i), cache.remove(i % 7, Integer.toString(i)));
+        }
+        assertEquals(249, cache.size());
+        assertEquals(249, cache.values().size());
+        for (int i = 2; i < 500; i += 2) {
+            assertSame(nodes.get(i), cache.get(i % 7, Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void evictionSkipsLeasedNodes() {
+        NodeCache cache = new NodeCache(10, 2, new CacheMediator(null));
+        ConcurrentTreeNode leased = createNode(1, "leased");
+        assertTrue(leased.tryLease());
+        cache.putIfAbsent(1, "leased", leased);
+        for (int i = 0; i < 100; i++) {
+            cache.putIfAbsent(2, Integer.toString(i), createNode(2, Integer.toString(i)));
+        }
+        assertEquals(10, cache.size());
+        assertSame(leased, cache.get(1, "leased"));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.tree.prop;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+import com.addthis.codec.config.Configs;
+
+import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommutativeMergeTest {
+
+    @Test
+    public void sumStripes() throws Exception {
+        DataSum.Config config = Configs.decodeObject(DataSum.Config.class, "key = x");
+        DataSum primary = config.newInstance();
+        DataSum stripe = config.newInstance();
+        primary.mergeStripe(stripe);
+        assertEquals(0, primary.getValue("sum").asLong().getLong());
+        stripe.sum = 5;
+        stripe.num = 2;
+        primary.sum = 3;
+        primary.num = 1;
+        primary.mergeStripe(stripe);
+        assertEquals(8, primary.getValue("sum").asLong().getLong());
+        assertEquals(3, primary.getValue("num").asLong().getLong());
+    }
+
+    @Test
+    public void bitsStripes() throws Exception {
+        DataBits.Config config = Configs.decodeObject(DataBits.Config.class, "key = x, bits = 4");
+        DataBits primary = config.newInstance();
+        DataBits stripe = config.newInstance();
+        stripe.bits[1] = 2;
+        primary.bits[1] = 1;
+        primary.bits[3] = 7;
+        primary.mergeStripe(stripe);
+        assertEquals(3, primary.getValue("1").asLong().getLong());
+        assertEquals(7, primary.getValue("3").asLong().getLong());
+    }
+
+    @Test
+    public void countingStripes() throws Exception {
+        DataCounting.Config config = Configs.decodeObject(DataCounting.Config.class, "key = x, ver = hllp");
+        DataCounting primary = config.newInstance();
+        DataCounting stripe = config.newInstance();
+        primary.offer("a");
+        primary.offer("b");
+        stripe.offer("b");
+        stripe.offer("c");
+        primary.mergeStripe(stripe);
+        assertEquals(3, primary.count());
+    }
+
+    @Test
+    public void countMinSketchStripes() throws Exception {
+        DataCountMinSketch.Config config = Configs.decodeObject(DataCountMinSketch.Config.class,
+                                                                "key = x, width = 1000");
+        DataCountMinSketch primary = config.newInstance();
+        DataCountMinSketch stripe = config.newInstance();
+        primary.add("a", 5);
+        primary.add("b", 1);
+        stripe.add("a", 2);
+        stripe.add("c", 3);
+        primary.mergeStripe(stripe);
+        assertEquals(7, primary.estimateCount("a"));
+        assertEquals(1, primary.estimateCount("b"));
+        assertEquals(3, primary.estimateCount("c"));
+    }
+
+    @Test
+    public void tdigestStripes() throws Exception {
+        DataTDigest.Config config = Configs.decodeObject(DataTDigest.Config.class, "key = x");
+        DataTDigest primary = config.newInstance();
+        DataTDigest stripe = config.newInstance();
+        ListBundleFormat format = new ListBundleFormat();
+        Bundle bundle = format.createBundle();
+        DataTreeNodeUpdater state = updater(bundle);
+        for (int i = 1; i <= 100; i++) {
+            bundle.setValue(format.getField("x"), ValueFactory.create(i));
+            assertTrue((i <= 50 ? primary : stripe).updateChildData(state, null, config));
+        }
+        primary.mergeStripe(stripe);
+        double median = primary.getValue("quantile(0.5)").asDouble().getDouble();
+        assertEquals(50.5, median, 2.0);
+    }
+
+    private static DataTreeNodeUpdater updater(Bundle bundle) {
+        return new DataTreeNodeUpdater() {
+            @Override
+            public Bundle getBundle() {
+                return bundle;
+            }
+
+            @Override
+            public int getCountValue() {
+                return 1;
+            }
+
+            @Override
+            public long getAssignmentValue() {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.util;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestByteTokenizer {
+
+    private static final String ALPHABET = "ab ,;|\t'[]{}\"\\\u00e9\u4e2d";
+
+    private static void assertSameTokens(Tokenizer tokenizer, String line) {
+        ByteTokenizer byteTokenizer = new ByteTokenizer(tokenizer, StandardCharsets.UTF_8);
+        byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        int length = line.getBytes(StandardCharsets.UTF_8).length;
+        String[] tokens = new String[64];
+        int count = byteTokenizer.tokenize(bytes, 2, length, tokens);
+        List<String> expected = tokenizer.tokenize(line);
+        if (expected == null) {
+            assertEquals(line, -1, count);
+        } else {
+            assertEquals(line, expected, Arrays.asList(tokens).subList(0, count));
+        }
+    }
+
+    @Test
+    public void matchesTokenizer() {
+        Tokenizer[] tokenizers = {
+                new Tokenizer().setSeparator(",;").setGrouping(new String[]{"'", "[]", "{}"}).setPacking(false),
+                new Tokenizer().setSeparator(",").setGrouping(new String[]{"'", "[]", "{}"}).setPacking(true),
+                new Tokenizer().setSeparator("|\t").setGrouping(new String[]{"[]", "\""}).setPacking(false),
+                new Tokenizer().setSeparator("\t").setPacking(false),
+        };
+        Random random = new Random(0);
+        for (Tokenizer tokenizer : tokenizers) {
+            assertSameTokens(tokenizer, "   ");
+            assertSameTokens(tokenizer, "a1,,c1;");
+            assertSameTokens(tokenizer, ";\\';abc def; ghi");
+            assertSameTokens(tokenizer, "[a b c],def,{g,[h] i},jkl");
+            for (int i = 0; i < 10000; i++) {
+                StringBuilder line = new StringBuilder();
+                int length = random.nextInt(30);
+                for (int j = 0; j < length; j++) {
+                    line.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                assertSameTokens(tokenizer, line.toString());
+            }
+        }
+    }
+
+    @Test
+    public void decodesRequestedTokens() {
+        Tokenizer tokenizer = new Tokenizer().setSeparator("\t").setPacking(false);
+        byte[] line = "a\tb\tc\td".getBytes(StandardCharsets.UTF_8);
+        String[] tokens = new String[2];
+        assertEquals(4, new ByteTokenizer(tokenizer, StandardCharsets.UTF_8).tokenize(line, 0, line.length, tokens));
+        assertEquals("a", tokens[0]);
+        assertEquals("b", tokens[1]);
+    }
+
+    @Test
+    public void supports() {
+        Tokenizer tokenizer = new Tokenizer().setSeparator("\t");
+        assertTrue(ByteTokenizer.supports(tokenizer, StandardCharsets.UTF_8));
+        assertFalse(ByteTokenizer.supports(tokenizer, StandardCharsets.UTF_16));
+        assertFalse(ByteTokenizer.supports(new Tokenizer().setSeparator("\u00a7"), StandardCharsets.UTF_8));
+        assertFalse(ByteTokenizer.supports(new Tokenizer() {
+            @Override
+            public String filterValue(String value) {
+                return value.trim();
+            }
+        }.setSeparator("\t"), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestStreamSummary {
+
+    private static void verify(Map<String, Long> expected, StreamSummary summary) {
+        assertEquals(expected.size(), summary.size());
+        assertEquals(expected, summary.toHashMap());
+        long previous = Long.MAX_VALUE;
+        int count = 0;
+        Iterator<Map.Entry<String, Long>> iterator = summary.descendingIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            assertTrue(entry.getValue() <= previous);
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            previous = entry.getValue();
+            count++;
+        }
+        assertEquals(expected.size(), count);
+        if (expected.isEmpty()) {
+            assertNull(summary.minKey());
+        } else {
+            assertEquals(previous, summary.minCount());
+            assertEquals(Long.valueOf(previous), expected.get(summary.minKey()));
+        }
+    }
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(7);
+        StreamSummary summary = new StreamSummary();
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = Integer.toString(random.nextInt(200));
+            switch (random.nextInt(5)) {
+                case 0:
+                    long value = random.nextInt(50);
+                    summary.put(key, value);
+                    expected.put(key, value);
+                    break;
+                case 1:
+                case 2:
+                    long weight = random.nextInt(3) + 1;
+                    assertEquals(expected.containsKey(key), summary.increment(key, weight));
+                    if (expected.containsKey(key)) {
+                        expected.put(key, expected.get(key) + weight);
+                    }
+                    break;
+                case 3:
+                    assertEquals(expected.remove(key) != null, summary.remove(key));
+                    break;
+                default:
+                    String min = summary.minKey();
+                    assertEquals(min, summary.removeMin());
+                    if (min != null) {
+                        expected.remove(min);
+                    }
+                    break;
+            }
+            if ((i % 97) == 0) {
+                verify(expected, summary);
+            }
+        }
+        verify(expected, summary);
+    }
+
+    @Test
+    public void removeMinimum() {
+        StreamSummary summary = new StreamSummary();
+        summary.put("a", 3);
+        summary.put("b", 1);
+        summary.put("c", 2);
+        assertEquals("b", summary.removeMin());
+        assertEquals("c", summary.removeMin());
+        summary.increment("a", 1);
+        assertEquals(Long.valueOf(4), summary.get("a"));
+        assertEquals("a", summary.removeMin());
+        assertNull(summary.removeMin());
+        assertFalse(summary.descendingIterator().hasNext());
+    }
+}
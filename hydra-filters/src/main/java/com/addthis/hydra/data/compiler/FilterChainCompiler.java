@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.compiler;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+
+import java.util.UUID;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.hydra.data.filter.bundle.BundleFilter;
+import com.addthis.hydra.data.filter.value.ValueFilter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates specialized classes for filter chains. The generated class holds
+ * each filter of the chain in a field of the concrete type of the filter and
+ * calls the filters in straight line code. Every call site of the generated
+ * class sees a single filter type, so the JIT can inline the filters, instead
+ * of the single megamorphic call site in the loop of an interpreted chain.
+ * <p/>
+ * Compilation is best effort. If a chain cannot be compiled then null is
+ * returned and the chain is evaluated as before.
+ */
+public final class FilterChainCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(FilterChainCompiler.class);
+
+    /**
+     * Default for the {@code compile} parameter of bundle and value filter chains.
+     */
+    public static final boolean ENABLED = Parameter.boolValue("hydra.filter.chain.compile", false);
+
+    /**
+     * Chains with fewer filters than this are never compiled.
+     */
+    private static final int MIN_LENGTH = Parameter.intValue("hydra.filter.chain.compile.min", 8);
+
+    private FilterChainCompiler() {}
+
+    /**
+     * Returns a bundle filter that is equivalent to a chain of {@code filters} that
+     * returns true when {@code failStop} is false or all of the filters pass, or null
+     * if the chain should not or could not be compiled.
+     */
+    public static BundleFilter compile(BundleFilter[] filters, boolean failStop) {
+        if (filters.length < MIN_LENGTH) {
+            return null;
+        }
+        String className = "BundleFilterChain" + UUID.randomUUID().toString().replaceAll("-", "");
+        StringBuilder source = new StringBuilder();
+        source.append("import com.addthis.bundle.core.Bundle;\n");
+        source.append("import com.addthis.hydra.data.filter.bundle.BundleFilter;\n");
+        source.append("public class ").append(className).append(" implements BundleFilter {\n");
+        appendFields(source, className, filters, BundleFilter.class);
+        source.append("public boolean filter(Bundle row) {\n");
+        for (int i = 0; i < filters.length; i++) {
+            if (failStop) {
+                source.append("if (!f").append(i).append(".filter(row)) { return false; }\n");
+            } else {
+                source.append("f").append(i).append(".filter(row);\n");
+            }
+        }
+        source.append("return true;\n");
+        source.append("}\n");
+        source.append("}\n");
+        return (BundleFilter) instantiate(className, source.toString(), filters, BundleFilter.class);
+    }
+
+    /**
+     * Returns a value filter that applies {@code filters} in order, stopping at the
+     * first null value if {@code nullStop} is true, or null if the chain should not
+     * or could not be compiled.
+     */
+    public static ValueFilter compile(ValueFilter[] filters, boolean nullStop) {
+        if (filters.length < MIN_LENGTH) {
+            return null;
+        }
+        String className = "ValueFilterChain" + UUID.randomUUID().toString().replaceAll("-", "");
+        StringBuilder source = new StringBuilder();
+        source.append("import com.addthis.bundle.core.Bundle;\n");
+        source.append("import com.addthis.bundle.value.ValueObject;\n");
+        source.append("import com.addthis.hydra.data.filter.value.ValueFilter;\n");
+        source.append("public class ").append(className).append(" implements ValueFilter {\n");
+        appendFields(source, className, filters, ValueFilter.class);
+        source.append("public ValueObject filter(ValueObject value) {\n");
+        source.append("return filter(value, null);\n");
+        source.append("}\n");
+        source.append("public ValueObject filter(ValueObject value, Bundle context) {\n");
+        for (int i = 0; i < filters.length; i++) {
+            source.append("value = f").append(i).append(".filter(value, context);\n");
+            if (nullStop) {
+                source.append("if (value == null) { return null; }\n");
+            }
+        }
+        source.append("return value;\n");
+        source.append("}\n");
+        source.append("}\n");
+        return (ValueFilter) instantiate(className, source.toString(), filters, ValueFilter.class);
+    }
+
+    /**
+     * Declare a final field for each filter and a constructor that assigns them.
+     */
+    private static void appendFields(StringBuilder source, String className, Object[] filters, Class<?> type) {
+        String[] typeNames = new String[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            typeNames[i] = typeName(filters[i].getClass(), type);
+            source.append("private final ").append(typeNames[i]).append(" f").append(i).append(";\n");
+        }
+        source.append("public ").append(className).append("(").append(type.getSimpleName())
+              .append("[] filters) {\n");
+        for (int i = 0; i < filters.length; i++) {
+            source.append("f").append(i).append(" = (").append(typeNames[i]).append(") filters[")
+                  .append(i).append("];\n");
+        }
+        source.append("}\n");
+    }
+
+    /**
+     * Returns the name of the concrete filter class if generated code can refer
+     * to it, or the name of the filter interface otherwise.
+     */
+    private static String typeName(Class<?> filterClass, Class<?> type) {
+        String name = filterClass.getCanonicalName();
+        if ((name == null) || filterClass.isSynthetic()) {
+            return type.getCanonicalName();
+        }
+        for (Class<?> current = filterClass; current != null; current = current.getEnclosingClass()) {
+            if (!Modifier.isPublic(current.getModifiers())) {
+                return type.getCanonicalName();
+            }
+        }
+        return name;
+    }
+
+    private static Object instantiate(String className, String source, Object[] filters, Class<?> type) {
+        JavaSimpleCompiler compiler = new JavaSimpleCompiler();
+        try {
+            if (!compiler.compile(className, source)) {
+                log.warn("Unable to compile filter chain, it will be interpreted. Diagnostics: {}\n{}",
+                         compiler.getDiagnostics().getDiagnostics(), source);
+                return null;
+            }
+            Object[] array = (Object[]) Array.newInstance(type, filters.length);
+            System.arraycopy(filters, 0, array, 0, filters.length);
+            return compiler.loadClass(className, type).getConstructor(array.getClass()).newInstance((Object) array);
+        } catch (Exception | LinkageError ex) {
+            log.warn("Unable to compile filter chain, it will be interpreted", ex);
+            return null;
+        } finally {
+            compiler.cleanupFiles(className);
+        }
+    }
+}
@@ -69,6 +69,15 @@ public class JavaSimpleCompiler {
     public Object getDefaultInstance(String className, Class<?> parentClass)
             throws ClassNotFoundException, InstantiationException, IllegalAccessException,
                    MalformedURLException {
+        return (loadClass(className, parentClass).newInstance());
+    }
+
+    /**
+     * Load a compiled class in a new class loader whose parent is the
+     * class loader of {@code parentClass}, if it is not null.
+     */
+    public Class<?> loadClass(String className, Class<?> parentClass)
+            throws ClassNotFoundException, MalformedURLException {
         File classpath = new File("/tmp");
         URL[] urlPath = {classpath.toURI().toURL()};
         URLClassLoader loader;
@@ -77,7 +86,7 @@ public class JavaSimpleCompiler {
         } else {
             loader = new URLClassLoader(urlPath);
         }
-        return (loader.loadClass(className).newInstance());
+        return loader.loadClass(className);
     }
 
     public void cleanupFiles(String className) {
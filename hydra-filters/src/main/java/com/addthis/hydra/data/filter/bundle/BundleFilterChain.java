@@ -18,7 +18,11 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.core.BundlePrinter;
 import com.addthis.codec.annotations.FieldConfig;
+import com.addthis.codec.codables.SuperCodable;
 import com.addthis.codec.json.CodecJSON;
+import com.addthis.hydra.data.compiler.FilterChainCompiler;
+
+import com.google.common.annotations.VisibleForTesting;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +33,7 @@ import org.slf4j.LoggerFactory;
  *
  * @user-reference
  */
-public class BundleFilterChain implements BundleFilter {
+public class BundleFilterChain implements BundleFilter, SuperCodable {
 
     private static final Logger log = LoggerFactory.getLogger(BundleFilterChain.class);
 
@@ -64,10 +68,25 @@ public class BundleFilterChain implements BundleFilter {
     @FieldConfig(codable = true)
     private long debugMaxBundles = 100;
 
+    /**
+     * If true then generate a class that calls the filters of the chain
+     * in straight line code. Chains that are shorter than
+     * {@code hydra.filter.chain.compile.min} or that have {@link #debug}
+     * enabled are never compiled. Default is the value of the
+     * {@code hydra.filter.chain.compile} system property or false.
+     */
+    @FieldConfig(codable = true)
+    private boolean compile = FilterChainCompiler.ENABLED;
+
     private final AtomicLong bundleCounter = new AtomicLong();
 
+    private BundleFilter compiled;
+
     @Override
     public boolean filter(Bundle row) {
+        if (compiled != null) {
+            return compiled.filter(row) || failReturn;
+        }
         for (BundleFilter f : filter) {
             if (!f.filter(row) && failStop) {
                 if (debug && bundleCounter.getAndIncrement() < debugMaxBundles) {
@@ -79,4 +98,46 @@ public class BundleFilterChain implements BundleFilter {
         }
         return true;
     }
+
+    /**
+     * Returns the filters of the chain.
+     */
+    public BundleFilter[] filters() {
+        return filter;
+    }
+
+    /**
+     * Same as {@link #filter(Bundle)} but always runs the filters one at a
+     * time and stores the nanoseconds spent in each filter in the matching
+     * element of {@code nanos}. Elements of filters that were not reached
+     * are left unchanged.
+     */
+    public boolean filter(Bundle row, long[] nanos) {
+        for (int i = 0; i < filter.length; i++) {
+            long start = System.nanoTime();
+            boolean result = filter[i].filter(row);
+            nanos[i] = System.nanoTime() - start;
+            if (!result && failStop) {
+                if (debug && bundleCounter.getAndIncrement() < debugMaxBundles) {
+                    log.warn("fail @ " + CodecJSON.tryEncodeString(filter[i], "UNKNOWN") + " with " +
+                             BundlePrinter.printBundle(row));
+                }
+                return failReturn;
+            }
+        }
+        return true;
+    }
+
+    @Override public void postDecode() {
+        if (compile && !debug) {
+            compiled = FilterChainCompiler.compile(filter, failStop);
+        }
+    }
+
+    @Override public void preEncode() {}
+
+    @VisibleForTesting
+    boolean isCompiled() {
+        return compiled != null;
+    }
 }
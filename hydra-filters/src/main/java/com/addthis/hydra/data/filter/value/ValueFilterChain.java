@@ -15,6 +15,10 @@ package com.addthis.hydra.data.filter.value;
 
 import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.value.ValueObject;
+import com.addthis.codec.codables.SuperCodable;
+import com.addthis.hydra.data.compiler.FilterChainCompiler;
+
+import com.google.common.annotations.VisibleForTesting;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -32,7 +36,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *
  * @user-reference
  */
-public class ValueFilterChain extends AbstractValueFilterContextual {
+public class ValueFilterChain extends AbstractValueFilterContextual implements SuperCodable {
 
     /** The value filters to be performed in a chain. */
     @JsonProperty(required = true) private ValueFilter[] filter;
@@ -40,8 +44,21 @@ public class ValueFilterChain extends AbstractValueFilterContextual {
     /** If true, then terminate chain on first null output. Default is true. */
     @JsonProperty private boolean nullStop = true;
 
+    /**
+     * If true then generate a class that calls the filters of the chain in straight
+     * line code. Chains shorter than {@code hydra.filter.chain.compile.min} are never
+     * compiled. Default is the value of the {@code hydra.filter.chain.compile}
+     * system property or false.
+     */
+    @JsonProperty private boolean compile = FilterChainCompiler.ENABLED;
+
+    private ValueFilter compiled;
+
     @Override
     public ValueObject filterValue(ValueObject value, Bundle context) {
+        if (compiled != null) {
+            return compiled.filter(value, context);
+        }
         for (ValueFilter f : filter) {
             value = f.filter(value, context);
             if ((value == null) && nullStop) {
@@ -50,4 +67,17 @@ public class ValueFilterChain extends AbstractValueFilterContextual {
         }
         return value;
     }
+
+    @Override public void postDecode() {
+        if (compile) {
+            compiled = FilterChainCompiler.compile(filter, nullStop);
+        }
+    }
+
+    @Override public void preEncode() {}
+
+    @VisibleForTesting
+    boolean isCompiled() {
+        return compiled != null;
+    }
 }
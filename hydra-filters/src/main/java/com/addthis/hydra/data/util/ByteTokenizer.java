@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+/**
+ * Splits encoded lines into the same tokens as {@link Tokenizer#tokenize(String)}
+ * without decoding the line or the tokens that are not requested. Tokens that
+ * contain no escapes or groups are decoded straight from the line, others are
+ * first copied into a reusable buffer.
+ * <p/>
+ * This only works when the separators, group characters and escape character
+ * are ASCII and the charset never uses ASCII bytes inside multi-byte characters,
+ * see {@link #supports(Tokenizer, Charset)}. Instances are not thread safe.
+ */
+public final class ByteTokenizer {
+
+    private final Charset charset;
+    private final boolean pack;
+    private final byte escape;
+    private final boolean[] separators = new boolean[128];
+    /** index of the group opened by an ASCII byte or -1 */
+    private final int[] opens = new int[128];
+    private final byte[] closes;
+
+    private byte[] scratch = new byte[256];
+
+    /* the current token is line[start, end) or scratch[0, copied) */
+    private int start;
+    private int end;
+    private int copied;
+    private boolean copying;
+
+    public ByteTokenizer(Tokenizer tokenizer, Charset charset) {
+        if (!supports(tokenizer, charset)) {
+            throw new IllegalArgumentException("tokenizer can not split " + charset + " bytes");
+        }
+        this.charset = charset;
+        this.pack = tokenizer.isPacked();
+        this.escape = (byte) tokenizer.getEscapeChar();
+        for (char ch : tokenizer.getSeparator().toCharArray()) {
+            separators[ch] = true;
+        }
+        Arrays.fill(opens, -1);
+        String quoteOpen = tokenizer.getQuoteOpen();
+        String quoteClose = tokenizer.getQuoteClose();
+        if (quoteOpen != null) {
+            closes = new byte[quoteClose.length()];
+            for (int i = 0; i < quoteOpen.length(); i++) {
+                char ch = quoteOpen.charAt(i);
+                if (opens[ch] < 0) {
+                    opens[ch] = i;
+                }
+                closes[i] = (byte) quoteClose.charAt(i);
+            }
+        } else {
+            closes = null;
+        }
+    }
+
+    /**
+     * Returns true if lines in the given charset can be split by a byte tokenizer
+     * for {@code tokenizer}. Subclasses of {@link Tokenizer} may filter lines and
+     * values and are never supported.
+     */
+    public static boolean supports(Tokenizer tokenizer, Charset charset) {
+        if (tokenizer.getClass() != Tokenizer.class) {
+            return false;
+        }
+        if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII) &&
+            !charset.equals(StandardCharsets.ISO_8859_1)) {
+            return false;
+        }
+        String quoteOpen = tokenizer.getQuoteOpen();
+        String quoteClose = tokenizer.getQuoteClose();
+        return isAscii(tokenizer.getSeparator()) && isAscii(String.valueOf(tokenizer.getEscapeChar())) &&
+               ((quoteOpen == null) || (isAscii(quoteOpen) && isAscii(quoteClose)));
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits {@code line[offset, offset + length)} into tokens. Only the first
+     * {@code tokens.length} tokens are decoded and stored in {@code tokens}.
+     *
+     * @return the number of tokens in the line or -1 if the line is blank
+     */
+    public int tokenize(byte[] line, int offset, int length, String[] tokens) {
+        int limit = offset + length;
+        boolean blank = true;
+        for (int i = offset; i < limit; i++) {
+            if ((line[i] & 0xff) > ' ') {
+                blank = false;
+                break;
+            }
+        }
+        if (blank) {
+            return -1;
+        }
+        int count = 0;
+        int inGroup = -1;
+        boolean isEscaped = false;
+        boolean isSep = false;
+        int pos = offset;
+        resetToken();
+        while (true) {
+            boolean eol = pos == limit;
+            if ((isSep && inGroup < 0) || eol) {
+                if ((tokenLength() > 0) || !pack) {
+                    if (count < tokens.length) {
+                        tokens[count] = token(line);
+                    }
+                    count++;
+                    resetToken();
+                    if (isSep && eol && !pack) {
+                        if (count < tokens.length) {
+                            tokens[count] = "";
+                        }
+                        count++;
+                    }
+                }
+            }
+            if (eol) {
+                break;
+            }
+            int index = pos++;
+            byte ch = line[index];
+            if (isEscaped) {
+                append(line, index);
+                isEscaped = false;
+                continue;
+            }
+            if (ch == escape) {
+                isEscaped = true;
+                isSep = false;
+                continue;
+            }
+            // check for group close
+            if (inGroup >= 0) {
+                if (ch == closes[inGroup]) {
+                    inGroup = -1;
+                } else {
+                    append(line, index);
+                }
+                continue;
+            } else if ((closes != null) && (ch >= 0)) {
+                // check for group open
+                int group = opens[ch];
+                if (group >= 0) {
+                    isSep = false;
+                    inGroup = group;
+                    continue;
+                }
+            }
+            // check for separator
+            if (isSep = ((ch >= 0) && separators[ch])) {
+                continue;
+            }
+            append(line, index);
+        }
+        return count;
+    }
+
+    private void resetToken() {
+        start = -1;
+        end = -1;
+        copied = 0;
+        copying = false;
+    }
+
+    private int tokenLength() {
+        if (copying) {
+            return copied;
+        }
+        return (start < 0) ? 0 : (end - start);
+    }
+
+    /**
+     * Adds {@code line[index]} to the current token. The token stays a range of
+     * the line until a byte of the line has been left out of it.
+     */
+    private void append(byte[] line, int index) {
+        if (copying) {
+            if (copied == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[copied++] = line[index];
+        } else if (start < 0) {
+            start = index;
+            end = index + 1;
+        } else if (end == index) {
+            end++;
+        } else {
+            copied = end - start;
+            if (scratch.length <= copied) {
+                scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, copied + 1));
+            }
+            System.arraycopy(line, start, scratch, 0, copied);
+            scratch[copied++] = line[index];
+            copying = true;
+        }
+    }
+
+    private String token(byte[] line) {
+        if (copying) {
+            return new String(scratch, 0, copied, charset);
+        }
+        return (start < 0) ? "" : new String(line, start, end - start, charset);
+    }
+}
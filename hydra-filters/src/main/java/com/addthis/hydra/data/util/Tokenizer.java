@@ -143,6 +143,33 @@ public class Tokenizer implements Codable {
         return pack;
     }
 
+    /**
+     * @return the characters that open a group or null if there are no groups
+     */
+    String getQuoteOpen() {
+        if (!isInitialized) {
+            initialize();
+        }
+        return quoteOpen;
+    }
+
+    /**
+     * @return the characters that close the group opened by the character at the same position
+     */
+    String getQuoteClose() {
+        if (!isInitialized) {
+            initialize();
+        }
+        return quoteClose;
+    }
+
+    char getEscapeChar() {
+        if (!isInitialized) {
+            initialize();
+        }
+        return esc;
+    }
+
     /**
      * @return filtered line
      */
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.filter.bundle;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+
+import com.addthis.bundle.util.map.MapBundle;
+import com.addthis.codec.config.Configs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BundleFilterChainTest {
+
+    private static final String FILTERS = "[{from: a, to: b}, {from: b, to: c}, {from: c, to: d}, {from: d, to: e}," +
+                                          " {from: e, to: f}, {from: missing}, {from: f, to: g}, {from: g, to: h}]";
+
+    private static BundleFilterChain chain(String options) throws IOException {
+        return (BundleFilterChain) Configs.decodeObject(BundleFilter.class, "chain {filter: " + FILTERS + ", " + options + "}");
+    }
+
+    @Test
+    public void compiledFailStop() throws IOException {
+        for (boolean compile : new boolean[]{false, true}) {
+            BundleFilterChain chain = chain("compile: " + compile);
+            assertEquals(compile, chain.isCompiled());
+            MapBundle bundle = MapBundle.createBundle(new String[]{"a", "foo"});
+            assertFalse(chain.filter(bundle));
+            assertEquals("foo", bundle.get("f"));
+            assertNull(bundle.get("g"));
+        }
+    }
+
+    @Test
+    public void compiledFailReturn() throws IOException {
+        for (boolean compile : new boolean[]{false, true}) {
+            BundleFilterChain chain = chain("compile: " + compile + ", failReturn: true");
+            assertTrue(chain.filter(MapBundle.createBundle(new String[]{"a", "foo"})));
+            chain = chain("compile: " + compile + ", failStop: false");
+            MapBundle bundle = MapBundle.createBundle(new String[]{"a", "foo"});
+            assertTrue(chain.filter(bundle));
+            assertEquals("foo", bundle.get("h"));
+        }
+    }
+
+    @Test
+    public void timedFailStop() throws IOException {
+        BundleFilterChain chain = chain("compile: true");
+        long[] nanos = new long[chain.filters().length];
+        Arrays.fill(nanos, -1);
+        MapBundle bundle = MapBundle.createBundle(new String[]{"a", "foo"});
+        assertFalse(chain.filter(bundle, nanos));
+        assertEquals("foo", bundle.get("f"));
+        for (int i = 0; i < nanos.length; i++) {
+            assertEquals(i <= 5, nanos[i] >= 0);
+        }
+    }
+
+    @Test
+    public void debugIsInterpreted() throws IOException {
+        assertFalse(chain("compile: true, debug: true").isCompiled());
+    }
+}
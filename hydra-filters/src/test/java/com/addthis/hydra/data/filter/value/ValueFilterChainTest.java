@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.data.filter.value;
+
+import java.io.IOException;
+
+import com.addthis.bundle.value.ValueFactory;
+import com.addthis.bundle.value.ValueObject;
+import com.addthis.codec.config.Configs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ValueFilterChainTest {
+
+    private static ValueFilterChain chain(boolean compile) throws IOException {
+        return (ValueFilterChain) Configs.decodeObject(ValueFilter.class,
+                "chain {compile: " + compile + ", filter: [{case.upper: true}, {split: \",\"}, {index: 1}," +
+                " {case.lower: true}, {case.upper: true}, {case.lower: true}, {trim {}}, {case.upper: true}]}");
+    }
+
+    @Test
+    public void compiled() throws IOException {
+        for (boolean compile : new boolean[]{false, true}) {
+            ValueFilterChain chain = chain(compile);
+            assertEquals(compile, chain.isCompiled());
+            assertEquals(ValueFactory.create("BAR"), chain.filter(ValueFactory.create("foo, bar ")));
+            assertNull(chain.filter((ValueObject) null));
+        }
+    }
+
+    @Test
+    public void shortChainIsInterpreted() throws IOException {
+        ValueFilterChain chain = (ValueFilterChain) Configs.decodeObject(
+                ValueFilter.class, "chain {compile: true, filter: [{case.upper: true}, {trim {}}]}");
+        assertFalse(chain.isCompiled());
+    }
+}
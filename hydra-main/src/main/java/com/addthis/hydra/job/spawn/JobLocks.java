@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.job.spawn;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.addthis.basis.util.Parameter;
+
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Locks that guard the job state of {@link Spawn}. Operations that only
+ * touch a single job hold that job's lock, which is one of a fixed number of
+ * striped locks, together with the shared side of a read-write lock.
+ * Operations that add or remove jobs or that need a consistent view of
+ * all jobs hold the exclusive side, which excludes every job lock.
+ * <p/>
+ * The exclusive lock may acquire job locks but a thread that holds a job lock
+ * must not acquire the exclusive lock or the lock of another job.
+ */
+final class JobLocks {
+
+    private static final int STRIPES = Parameter.intValue("spawn.job.lock.stripes", 64);
+
+    private final ReentrantReadWriteLock global = new ReentrantReadWriteLock();
+
+    private final Striped<Lock> stripes = Striped.lock(STRIPES);
+
+    /**
+     * Returns the lock that excludes all job locks.
+     */
+    Lock allJobs() {
+        return global.writeLock();
+    }
+
+    void lockJob(String jobId) {
+        global.readLock().lock();
+        try {
+            stripes.get(jobId).lock();
+        } catch (Throwable t) {
+            global.readLock().unlock();
+            throw t;
+        }
+    }
+
+    void unlockJob(String jobId) {
+        try {
+            stripes.get(jobId).unlock();
+        } finally {
+            global.readLock().unlock();
+        }
+    }
+}
@@ -40,14 +40,7 @@ class JobRekickTask implements Runnable {
              */
             try {
                 if (!spawn.getSystemManager().isQuiesced()) {
-                    String[] jobids = null;
-                    spawn.jobLock.lock();
-                    try {
-                        jobids = new String[spawn.spawnState.jobs.size()];
-                        jobids = spawn.spawnState.jobs.keySet().toArray(jobids);
-                    } finally {
-                        spawn.jobLock.unlock();
-                    }
+                    String[] jobids = spawn.spawnState.jobs.keySet().toArray(new String[0]);
                     long clock = System.currentTimeMillis();
                     for (String jobid : jobids) {
                         Job job = spawn.getJob(jobid);
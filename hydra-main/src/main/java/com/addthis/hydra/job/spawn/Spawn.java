@@ -46,7 +46,6 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import java.text.ParseException;
 
@@ -189,7 +188,12 @@ public class Spawn implements Codable, AutoCloseable {
 
     @Nonnull public final HostManager hostManager;
 
+    /**
+     * Exclusive lock over all jobs. Operations on a single job
+     * should prefer {@link #lockJob(String)}.
+     */
     @Nonnull final Lock jobLock;
+    @Nonnull final JobLocks jobLocks;
     @Nonnull final SpawnState spawnState;
     @Nonnull final ConcurrentMap<String, ClientEventListener> listeners;
     @Nonnull final SpawnFormattedLogger spawnFormattedLogger;
@@ -248,7 +252,8 @@ public class Spawn implements Codable, AutoCloseable {
                                                       required = true) PermissionsManager permissionsManager,
                                @Nonnull @JsonProperty(value = "jobDefaults",
                                                       required = true) JobDefaults jobDefaults) throws Exception {
-        this.jobLock = new ReentrantLock();
+        this.jobLocks = new JobLocks();
+        this.jobLock = jobLocks.allJobs();
         this.shuttingDown = new AtomicBoolean(false);
         this.jobUpdateQueue = new LinkedBlockingQueue<>();
         this.listeners = new ConcurrentHashMap<>();
@@ -403,6 +408,18 @@ public class Spawn implements Codable, AutoCloseable {
         jobLock.unlock();
     }
 
+    /**
+     * Acquire the lock for a single job. The holder must not acquire
+     * the lock of another job or the exclusive job lock.
+     */
+    void lockJob(String jobUUID) {
+        jobLocks.lockJob(jobUUID);
+    }
+
+    void unlockJob(String jobUUID) {
+        jobLocks.unlockJob(jobUUID);
+    }
+
     public String getUuid() {
         return spawnState.uuid;
     }
@@ -721,23 +738,18 @@ public class Spawn implements Codable, AutoCloseable {
         if (jobUUID == null) {
             return null;
         }
-        jobLock.lock();
-        try {
-            return spawnState.jobs.get(jobUUID);
-        } finally {
-            jobLock.unlock();
-        }
+        return spawnState.jobs.get(jobUUID);
     }
 
     @Nullable public String getJobConfig(String jobUUID) {
         if (jobUUID == null) {
             return null;
         }
-        jobLock.lock();
+        lockJob(jobUUID);
         try {
             return jobConfigManager.getConfig(jobUUID);
         } finally {
-            jobLock.unlock();
+            unlockJob(jobUUID);
         }
     }
 
@@ -768,16 +780,7 @@ public class Spawn implements Codable, AutoCloseable {
     @Nonnull public PermissionsManager getPermissionsManager() { return permissionsManager; }
 
     public Collection<Job> listJobs() {
-        List<Job> clones = new ArrayList<>(spawnState.jobs.size());
-        jobLock.lock();
-        try {
-            for (Job job : spawnState.jobs.values()) {
-                clones.add(job);
-            }
-            return clones;
-        } finally {
-            jobLock.unlock();
-        }
+        return new ArrayList<>(spawnState.jobs.values());
     }
 
     private Response synchronizeSingleJob(String jobUUID, String user, String token, String sudo) {
@@ -1089,7 +1092,7 @@ public class Spawn implements Codable, AutoCloseable {
             return false;
         }
         Job job;
-        jobLock.lock();
+        lockJob(task.getJobUUID());
         try {
             job = getJob(task.getJobUUID());
             if (job == null) {
@@ -1100,7 +1103,7 @@ public class Spawn implements Codable, AutoCloseable {
             task.setHostUUID(replicaHostID);
             queueJobTaskUpdateEvent(job);
         } finally {
-            jobLock.unlock();
+            unlockJob(task.getJobUUID());
         }
         if (kickOnComplete) {
             try {
@@ -1216,11 +1219,11 @@ public class Spawn implements Codable, AutoCloseable {
      * @return True if the task is successfully removed
      */
     public boolean deleteTask(String jobUUID, String hostUuid, Integer node, boolean isReplica) {
-        jobLock.lock();
+        if ((jobUUID == null) || (node == null)) {
+            return false;
+        }
+        lockJob(jobUUID);
         try {
-            if ((jobUUID == null) || (node == null)) {
-                return false;
-            }
             log.warn("[job.delete.host] {}/{} >> {}", hostUuid, jobUUID, node);
             spawnMQ.sendControlMessage(new CommandTaskDelete(hostUuid, jobUUID, node, 0));
             Job job = getJob(jobUUID);
@@ -1233,7 +1236,7 @@ public class Spawn implements Codable, AutoCloseable {
             }
             return true;
         } finally {
-            jobLock.unlock();
+            unlockJob(jobUUID);
         }
     }
 
@@ -1269,12 +1272,7 @@ public class Spawn implements Codable, AutoCloseable {
     }
 
     public void queueJobTaskUpdateEvent(IJob job) {
-        jobLock.lock();
-        try {
-            jobUpdateQueue.add(job.getId());
-        } finally {
-            jobLock.unlock();
-        }
+        jobUpdateQueue.add(job.getId());
     }
 
     /**
@@ -1508,7 +1506,10 @@ public class Spawn implements Codable, AutoCloseable {
 
     public JSONArray checkTaskDirJSON(String jobId, int node) {
         JSONArray resultList = new JSONArray();
-        jobLock.lock();
+        if (jobId == null) {
+            return resultList;
+        }
+        lockJob(jobId);
         try {
             Job job = getJob(jobId);
             if (job == null) {
@@ -1527,7 +1528,7 @@ public class Spawn implements Codable, AutoCloseable {
         } catch (Exception ex) {
             log.warn("Error: checking dirs for job: {}, node: {}", jobId, node, ex);
         } finally {
-            jobLock.unlock();
+            unlockJob(jobId);
         }
         return resultList;
     }
@@ -1612,7 +1613,7 @@ public class Spawn implements Codable, AutoCloseable {
     }
 
     public boolean prepareTaskStatesForRebalance(Job job, JobTask task, boolean isMigration) {
-        jobLock.lock();
+        lockJob(job.getId());
         try {
             if (!SpawnBalancer.isInMovableState(task)) {
                 log.warn("[task.mover] decided not to move non-idle task {}", task);
@@ -1623,12 +1624,15 @@ public class Spawn implements Codable, AutoCloseable {
             queueJobTaskUpdateEvent(job);
             return true;
         } finally {
-            jobLock.unlock();
+            unlockJob(job.getId());
         }
     }
 
     public DeleteStatus forceDeleteJob(String jobUUID) throws Exception {
-        jobLock.lock();
+        if (jobUUID == null) {
+            return DeleteStatus.JOB_MISSING;
+        }
+        lockJob(jobUUID);
         Job job;
         try {
             job = getJob(jobUUID);
@@ -1641,7 +1645,7 @@ public class Spawn implements Codable, AutoCloseable {
             job.setEnabled(false);
             jobAlertManager.removeAlertsForJob(jobUUID);
         } finally {
-            jobLock.unlock();
+            unlockJob(jobUUID);
         }
         while ((job != null) && (job.getCountActiveTasks() > 0)) {
             stopJob(jobUUID);
@@ -2062,7 +2066,7 @@ public class Spawn implements Codable, AutoCloseable {
     public JobMacro createJobHostMacro(String job, int port) {
         String sPort = Integer.valueOf(port).toString();
         Set<String> jobHosts = new TreeSet<>();// best set?
-        jobLock.lock();
+        lockJob(job);
         try {
             Collection<HostState> hosts = hostManager.listHostStatus(null);
             Map<String, String> uuid2Host = new HashMap<>();
@@ -2086,7 +2090,7 @@ public class Spawn implements Codable, AutoCloseable {
                 }
             }
         } finally {
-            jobLock.unlock();
+            unlockJob(job);
         }
 
         List<String> hostStrings = new ArrayList<>();
@@ -2120,11 +2124,11 @@ public class Spawn implements Codable, AutoCloseable {
      * send job update event to registered listeners (usually http clients)
      */
     private void sendJobUpdateEvent(Job job) {
-        jobLock.lock();
+        lockJob(job.getId());
         try {
             jobConfigManager.updateJob(job);
         } finally {
-            jobLock.unlock();
+            unlockJob(job.getId());
         }
         sendJobUpdateEvent("job.update", job);
     }
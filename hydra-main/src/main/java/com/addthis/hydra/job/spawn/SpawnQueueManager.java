@@ -18,11 +18,13 @@ import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -76,23 +78,22 @@ public class SpawnQueueManager {
         return ENABLE_TASK_MIGRATION;
     }
 
-    private long lastAvailSlotsUpdate = 0;
+    private volatile long lastAvailSlotsUpdate = 0;
 
     private final Lock queueLock = new ReentrantLock();
-    /* Internal map used to record outgoing task kicks that will not immediately be visible in the HostState */
-    private final HashMap<String, Integer> hostAvailSlots = new HashMap<>();
+    /* Internal map used to record outgoing task kicks that will not immediately be visible in the HostState.
+    Updates are atomic per host so that task end messages do not contend with the queue iteration. */
+    private final ConcurrentHashMap<String, Integer> hostAvailSlots = new ConcurrentHashMap<>();
     // When tasks are stopped, track this behavior so that the queue can be modified as soon as possible
     private final Cache<String, Boolean> migrateHosts;
     // Use cache ttl to mark hosts that have recently performed or received a migration
     private final AtomicBoolean stoppedJob = new AtomicBoolean(false);
 
-    /* This comparator should only be used within a block that is synchronized on hostAvailSlots.
-    It does not internally synchronize to save a bunch of extra lock operations.*/
+    /* The slot counts may change while a comparison is in progress. This comparator
+    is only used to select a minimum so an inconsistent ordering is harmless. */
     private final Comparator<HostState> hostStateComparator = (o1, o2) -> {
-        int hostAvailSlots1 = this.hostAvailSlots.containsKey(o1.getHostUuid()) ?
-                              this.hostAvailSlots.get(o1.getHostUuid()) : 0;
-        int hostAvailSlots2 = this.hostAvailSlots.containsKey(o2.getHostUuid()) ?
-                              this.hostAvailSlots.get(o2.getHostUuid()) : 0;
+        int hostAvailSlots1 = this.getHostAvailSlots(o1.getHostUuid());
+        int hostAvailSlots2 = this.getHostAvailSlots(o2.getHostUuid());
         if (hostAvailSlots1 != hostAvailSlots2) {
             return Integer.compare(-hostAvailSlots1, -hostAvailSlots2); // Return hosts with large number of slots first
         } else {
@@ -184,13 +185,15 @@ public class SpawnQueueManager {
         if (hostID == null) {
             return;
         }
-        synchronized (this.hostAvailSlots) {
-            if (this.hostAvailSlots.containsKey(hostID)) {
-                this.hostAvailSlots.put(hostID, this.hostAvailSlots.get(hostID) + 1);
-            } else {
-                this.hostAvailSlots.put(hostID, 1);
-            }
+        this.hostAvailSlots.merge(hostID, 1, Integer::sum);
+    }
+
+    private int getHostAvailSlots(String hostID) {
+        if (hostID == null) {
+            return 0;
         }
+        Integer slots = this.hostAvailSlots.get(hostID);
+        return (slots != null) ? slots : 0;
     }
 
     /**
@@ -204,17 +207,13 @@ public class SpawnQueueManager {
         if ((inputHosts == null) || inputHosts.isEmpty()) {
             return null;
         }
-        synchronized (this.hostAvailSlots) {
-            HostState bestHost = Collections.min(inputHosts, this.hostStateComparator);
-            if (bestHost != null) {
-                if (!requireAvailableSlot
-                    || (this.hostAvailSlots.containsKey(bestHost.getHostUuid())
-                        && (this.hostAvailSlots.get(bestHost.getHostUuid()) > 0))) {
-                    return bestHost;
-                }
+        HostState bestHost = Collections.min(inputHosts, this.hostStateComparator);
+        if (bestHost != null) {
+            if (!requireAvailableSlot || (this.getHostAvailSlots(bestHost.getHostUuid()) > 0)) {
+                return bestHost;
             }
-            return null;
         }
+        return null;
     }
 
     /**
@@ -223,15 +222,19 @@ public class SpawnQueueManager {
      * @param hosts The hosts to input
      */
     public void updateAllHostAvailSlots(List<HostState> hosts) {
-        synchronized (this.hostAvailSlots) {
-            if ((JitterClock.globalTime() - this.lastAvailSlotsUpdate) < SPAWN_QUEUE_AVAIL_REFRESH) {
-                return;
-            }
-            this.hostAvailSlots.clear();
-            for (HostState host : hosts) {
+        if ((JitterClock.globalTime() - this.lastAvailSlotsUpdate) < SPAWN_QUEUE_AVAIL_REFRESH) {
+            return;
+        }
+        // replace the counts in place instead of clearing the map so that concurrent readers
+        // never observe a host with a temporarily missing count
+        Set<String> hostIds = new HashSet<>();
+        for (HostState host : hosts) {
+            if ((host != null) && (host.getHostUuid() != null)) {
+                hostIds.add(host.getHostUuid());
                 this.updateHostAvailSlots(host);
             }
         }
+        this.hostAvailSlots.keySet().retainAll(hostIds);
         this.lastAvailSlotsUpdate = JitterClock.globalTime();
         log.trace("[SpawnQueueManager] Host Avail Slots: {}", this.hostAvailSlots);
     }
@@ -252,10 +255,10 @@ public class SpawnQueueManager {
      * @param hostID The host UUID to update
      */
     public void markHostTaskActive(String hostID) {
-        synchronized (this.hostAvailSlots) {
-            int curr = this.hostAvailSlots.containsKey(hostID) ? this.hostAvailSlots.get(hostID) : 0;
-            this.hostAvailSlots.put(hostID, Math.max(curr - 1, 0));
+        if (hostID == null) {
+            return;
         }
+        this.hostAvailSlots.compute(hostID, (id, curr) -> (curr == null) ? 0 : Math.max(curr - 1, 0));
     }
 
     /**
@@ -285,9 +288,7 @@ public class SpawnQueueManager {
      * @return True if a new task should kick
      */
     public boolean shouldKickTaskOnHost(String hostID) {
-        synchronized (this.hostAvailSlots) {
-            return this.hostAvailSlots.containsKey(hostID) && (this.hostAvailSlots.get(hostID) > 0);
-        }
+        return this.getHostAvailSlots(hostID) > 0;
     }
 
     /**
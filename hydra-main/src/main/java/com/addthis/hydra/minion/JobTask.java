@@ -376,7 +376,8 @@ public class JobTask implements Codable {
         return true;
     }
 
-    private List<String> assembleReplicateCommandAndInformSpawn(ReplicaTarget replica, boolean replicateAllBackups) throws IOException {
+    private List<String> assembleReplicateCommandAndInformSpawn(ReplicaTarget replica, boolean replicateAllBackups,
+                                                                ReplicationManifest snapshot) throws IOException {
         List<String> rv = new ArrayList<>();
         if (replica == null || !shouldExecuteReplica(replica)) {
             return null;
@@ -409,10 +410,15 @@ public class JobTask implements Codable {
                 sb.append("\n" + createTouchCommand(false, userAT, target + "/live/replicate.complete", false));
                 rv.add(sb.toString());
             } else {
-                rv.add(createDeleteCommand(false, userAT, target + "/replicate.complete") +
-                                "\n" + createRsyncCommand(userAT, jobDir.getAbsolutePath() + "/", target) +
-                                "\n" + createTouchCommand(false, userAT, target + "/replicate.complete", false)
-                );
+                String source = jobDir.getAbsolutePath() + "/";
+                if (snapshot != null) {
+                    rv.add(createIncrementalReplicateCommand(replica, userAT, source, target, snapshot));
+                } else {
+                    rv.add(createDeleteCommand(false, userAT, target + "/replicate.complete") +
+                           "\n" + createRsyncCommand(userAT, source, target) +
+                           "\n" + createTouchCommand(false, userAT, target + "/replicate.complete", false)
+                    );
+                }
             }
         } catch (Exception ex) {
             log.warn("failed to replicate {} to {}", this.getJobKey(), replica.getHost(), ex);
@@ -452,7 +458,52 @@ public class JobTask implements Codable {
     }
 
     private String createRsyncCommand(String userAT, String source, String target) throws Exception {
-        return "retry " + Minion.rsyncCommand + (Minion.copyBandwidthLimit > 0 ? " --bwlimit " + Minion.copyBandwidthLimit : "") + " -Hqa --exclude config --exclude gold --exclude replicate.complete --exclude backup.complete --delete-after -e \\'" + Minion.remoteConnectMethod + "\\' " + source + " " + userAT + ":" + target;
+        int bandwidthLimit = minion.copyBandwidthLimit(this);
+        return "retry " + Minion.rsyncCommand + (bandwidthLimit > 0 ? " --bwlimit " + bandwidthLimit : "") + " -Hqa --exclude config --exclude gold --exclude replicate.complete --exclude backup.complete --exclude replicate.manifest --delete-after -e \\'" + Minion.remoteConnectMethod + "\\' " + source + " " + userAT + ":" + target;
+    }
+
+    /**
+     * Copy only the files that changed since the last successful replication to the replica.
+     * The list of changed files is passed to rsync, which deletes the files that no longer
+     * exist locally. Falls back to a full rsync if there is no manifest for the replica,
+     * if the replica does not hold the identifier of that manifest, or if
+     * {@code minion.replicate.full.interval} incremental replications have been made.
+     */
+    private String createIncrementalReplicateCommand(ReplicaTarget replica, String userAT, String source,
+                                                     String target, ReplicationManifest snapshot) throws Exception {
+        File configDir = getConfigDir();
+        String prefix = "replicate-" + replica.getHostUuid();
+        File manifestFile = new File(configDir, prefix + ".manifest");
+        File pendingFile = new File(configDir, prefix + ".manifest.pending");
+        ReplicationManifest previous = ReplicationManifest.load(manifestFile);
+        if ((previous != null) && (previous.getDeltas() >= Minion.replicateFullInterval)) {
+            previous = null;
+        }
+        ReplicationManifest next = snapshot.successorOf(previous);
+        next.save(pendingFile);
+        String fullCopy = createRsyncCommand(userAT, source, target);
+        String copy;
+        if (previous == null) {
+            copy = fullCopy;
+        } else {
+            List<String> changed = next.changedSince(previous);
+            log.info("[replicate] {} incremental copy of {}/{} files to {}", getJobKey(), changed.size(),
+                     next.size(), replica.getHost());
+            File filesFrom = new File(configDir, prefix + ".files");
+            LessFiles.write(filesFrom, LessBytes.toBytes(LessStrings.join(changed.toArray(), "\n")), false);
+            int bandwidthLimit = minion.copyBandwidthLimit(this);
+            String deltaCopy = "retry " + Minion.rsyncCommand + (bandwidthLimit > 0 ? " --bwlimit " + bandwidthLimit : "") +
+                               " -Hqa --delete-missing-args --files-from=" + filesFrom.getCanonicalPath() +
+                               " -e \\'" + Minion.remoteConnectMethod + "\\' " + source + " " + userAT + ":" + target;
+            copy = "if [ \"$(" + Minion.remoteConnectMethod + " " + userAT + " cat " + target +
+                   "/replicate.manifest 2>/dev/null)\" == \"" + previous.getId() + "\" ]; then " + deltaCopy +
+                   "; else " + fullCopy + "; fi";
+        }
+        return createDeleteCommand(false, userAT, target + "/replicate.complete") +
+               "\n" + copy +
+               "\n" + wrapCommandWithRetries(false, userAT, "echo " + next.getId() + " > " + target + "/replicate.manifest") +
+               "\n" + createTouchCommand(false, userAT, target + "/replicate.complete", false) +
+               "\n" + MacUtils.mvcmd + " -f " + pendingFile.getCanonicalPath() + " " + manifestFile.getCanonicalPath();
     }
 
     private String createBackupCommand(boolean local, String userAT, String baseDir, String source, String name) {
@@ -978,13 +1029,18 @@ public class JobTask implements Codable {
         bash.append(Minion.echoWithDate_cmd + "Deleting environment lock files in preparation for replication\n");
         bash.append("find " + jobDir.getCanonicalPath() + " -name je.lck -print -exec rm {} \\;\n");
         bash.append("find " + jobDir.getCanonicalPath() + " -name je.info.0 -print -exec rm {} \\;\n");
-        appendReplicas(bash, failureRecoveryReplicas, true); // Add commands for any the failure-recovery replicas that definitely need full rsyncs
-        appendReplicas(bash, replicas, replicateAllBackups); // Add commands for the existing replicas
+        appendReplicas(bash, failureRecoveryReplicas, true, null); // Add commands for any the failure-recovery replicas that definitely need full rsyncs
+        ReplicationManifest snapshot = null;
+        if (Minion.incrementalReplication && !replicateAllBackups) {
+            snapshot = ReplicationManifest.scan(jobDir);
+        }
+        appendReplicas(bash, replicas, replicateAllBackups, snapshot); // Add commands for the existing replicas
         bash.append(Minion.echoWithDate_cmd + "Finished replicating successfully\n");
         return bash.toString();
     }
 
-    private void appendReplicas(StringBuilder bash, ReplicaTarget[] replicas, boolean replicateAllBackups) throws IOException {
+    private void appendReplicas(StringBuilder bash, ReplicaTarget[] replicas, boolean replicateAllBackups,
+                                ReplicationManifest snapshot) throws IOException {
         if (replicas == null) {
             return;
         }
@@ -992,7 +1048,7 @@ public class JobTask implements Codable {
             if (replica.getHostUuid() == null || replica.getHostUuid().equals(minion.uuid)) {
                 return;
             }
-            List<String> replicateCommands = assembleReplicateCommandAndInformSpawn(replica, replicateAllBackups);
+            List<String> replicateCommands = assembleReplicateCommandAndInformSpawn(replica, replicateAllBackups, snapshot);
             if (replicateCommands == null || replicateCommands.isEmpty()) {
                 return;
             }
@@ -1149,6 +1205,14 @@ public class JobTask implements Codable {
         return !isRunning() && replicateStartTime > 0 && !replicateDone.exists() && isProcessRunning(replicatePid);
     }
 
+    /**
+     * Returns true if a replicate script has been started and has not finished.
+     * Unlike {@link #isReplicating()} this does not check that the process is alive.
+     */
+    boolean isReplicateInProgress() {
+        return (replicateDone != null) && (replicateStartTime > 0) && !replicateDone.exists();
+    }
+
     public boolean isBackingUp() {
         if (backupDone == null) {
             return false;
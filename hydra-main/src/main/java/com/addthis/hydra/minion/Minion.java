@@ -140,6 +140,13 @@ public class Minion implements MessageListener<CoreMessage>, Codable, AutoClosea
     static final int copyRetryDelaySeconds = Parameter.intValue("minion.copy.retry.delay", 10);
     /* If the following var is positive, it is passed as the bwlimit arg to rsync. If <= 0, it is ignored. */
     static final int copyBandwidthLimit = Parameter.intValue("minion.copy.bwlimit", -1);
+    /* If positive, the bandwidth in KB/s that is shared by all of the replications from this host.
+       Takes precedence over minion.copy.bwlimit. */
+    static final int hostCopyBandwidthLimit = Parameter.intValue("minion.copy.bwlimit.host", -1);
+    /* Ship only the files that changed since the last successful replication to each replica */
+    static final boolean incrementalReplication = Parameter.boolValue("minion.replicate.incremental", false);
+    /* Number of incremental replications to a replica before a full copy is made again */
+    static final int replicateFullInterval = Parameter.intValue("minion.replicate.full.interval", 24);
     static final ReentrantLock revertLock = new ReentrantLock();
     static final ReentrantLock capacityLock = new ReentrantLock();
 
@@ -572,6 +579,25 @@ public class Minion implements MessageListener<CoreMessage>, Codable, AutoClosea
         }
     }
 
+    /**
+     * Returns the bandwidth limit in KB/s for a replication of {@code task} that is about
+     * to start, or a non-positive value if replication bandwidth is not limited. When a
+     * host wide limit is configured it is divided evenly among the replications that
+     * are in progress on this host, including the new replication.
+     */
+    int copyBandwidthLimit(JobTask starting) {
+        if (hostCopyBandwidthLimit <= 0) {
+            return copyBandwidthLimit;
+        }
+        int replications = 1;
+        for (JobTask task : tasks.values()) {
+            if ((task != starting) && task.isReplicateInProgress()) {
+                replications++;
+            }
+        }
+        return Math.max(1, hostCopyBandwidthLimit / replications);
+    }
+
     void writeState() {
         minionStateLock.lock();
         try {
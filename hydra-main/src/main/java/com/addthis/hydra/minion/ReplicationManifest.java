@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.minion;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.LessFiles;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The size and modification time of every file in a task directory at the
+ * time of a replication. The manifest of the last successful replication to
+ * a replica is compared against the current contents of the task directory
+ * to find the files that must be shipped to bring the replica up to date.
+ * Stores that only append to their log files and delete whole files, such as
+ * JE, typically change a handful of files per run.
+ * <p/>
+ * Every manifest has a random identifier that is also written to the replica
+ * once the replication has completed. A replica that does not hold the
+ * identifier of the local manifest is brought up to date with a full copy.
+ */
+final class ReplicationManifest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationManifest.class);
+
+    /**
+     * Files that are never replicated or that are handled separately from the task data.
+     */
+    private static final Set<String> excluded = ImmutableSet.of("config", "gold", "replicate.complete",
+                                                                "backup.complete", "replicate.manifest",
+                                                                "je.lck", "je.info.0");
+
+    private static final class Entry {
+
+        final long size;
+        final long modified;
+
+        Entry(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean matches(Entry other) {
+            return (other != null) && (size == other.size) && (modified == other.modified);
+        }
+    }
+
+    private final String id;
+
+    /**
+     * Number of incremental replications since the last full copy.
+     */
+    private final int deltas;
+
+    private final Map<String, Entry> files;
+
+    private ReplicationManifest(String id, int deltas, Map<String, Entry> files) {
+        this.id = id;
+        this.deltas = deltas;
+        this.files = files;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getDeltas() {
+        return deltas;
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * Record the current contents of {@code dir}.
+     */
+    static ReplicationManifest scan(File dir) throws IOException {
+        Map<String, Entry> files = new TreeMap<>();
+        Path root = dir.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                Path name = path.getFileName();
+                if (!path.equals(root) && (name != null) && excluded.contains(name.toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !excluded.contains(path.getFileName().toString())) {
+                    // rsync preserves modification times with a resolution of one second
+                    files.put(root.relativize(path).toString(),
+                              new Entry(attrs.size(), attrs.lastModifiedTime().toMillis() / 1000));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override public FileVisitResult visitFileFailed(Path path, IOException ex) {
+                // files may be deleted by the task while the directory is being scanned
+                log.debug("unable to scan {}", path, ex);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new ReplicationManifest(UUID.randomUUID().toString(), 0, files);
+    }
+
+    /**
+     * Returns a manifest of the same files with a new identifier that
+     * follows {@code previous}, or starts a new lineage if previous is null.
+     */
+    ReplicationManifest successorOf(ReplicationManifest previous) {
+        int next = (previous == null) ? 0 : (previous.deltas + 1);
+        return new ReplicationManifest(UUID.randomUUID().toString(), next, files);
+    }
+
+    /**
+     * Returns the relative paths of the files that were created or modified since
+     * {@code previous} followed by the paths of the files that were deleted.
+     */
+    List<String> changedSince(ReplicationManifest previous) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Entry> file : files.entrySet()) {
+            if (!file.getValue().matches(previous.files.get(file.getKey()))) {
+                changed.add(file.getKey());
+            }
+        }
+        for (String path : previous.files.keySet()) {
+            if (!files.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    void save(File file) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(id).append('\n').append(deltas).append('\n');
+        for (Map.Entry<String, Entry> entry : files.entrySet()) {
+            builder.append(entry.getValue().size).append('\t')
+                   .append(entry.getValue().modified).append('\t')
+                   .append(entry.getKey()).append('\n');
+        }
+        LessFiles.write(file, LessBytes.toBytes(builder.toString()), false);
+    }
+
+    /**
+     * Returns the manifest stored in {@code file} or null if it does not exist or cannot be read.
+     */
+    static ReplicationManifest load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String[] lines = LessBytes.toString(LessFiles.read(file)).split("\n");
+            Map<String, Entry> files = new TreeMap<>();
+            for (int i = 2; i < lines.length; i++) {
+                String[] fields = lines[i].split("\t", 3);
+                files.put(fields[2], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+            }
+            return new ReplicationManifest(lines[0], Integer.parseInt(lines[1]), files);
+        } catch (Exception ex) {
+            log.warn("ignoring unreadable replication manifest {}", file, ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query;
+
+import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.hydra.data.util.BundleUtils;
+import com.addthis.hydra.query.aggregate.DetailedStatusTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelProgressivePromise;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Takes the place of the mesh source aggregator for a query that is answered
+ * from the {@link QueryResultCache}. The query tracker hands it the output of
+ * the query as it would to the aggregator, so cached queries are tracked,
+ * logged and can be cancelled like any other query.
+ */
+public class CachedResultSource extends ChannelOutboundHandlerAdapter implements ChannelFutureListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedResultSource.class);
+
+    private final QueryResultCache.Entry entry;
+
+    private DataChannelOutput consumer;
+
+    public CachedResultSource(QueryResultCache.Entry entry) {
+        this.entry = entry;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof DataChannelOutput) {
+            ChannelProgressivePromise queryPromise = (ChannelProgressivePromise) promise;
+            consumer = (DataChannelOutput) msg;
+            queryPromise.addListener(this);
+            ctx.executor().execute(() -> replay(queryPromise));
+        } else if (msg instanceof DetailedStatusTask) {
+            ((DetailedStatusTask) msg).runWithoutSources();
+        } else {
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    private void replay(ChannelProgressivePromise queryPromise) {
+        if (queryPromise.isDone()) {
+            return;
+        }
+        try {
+            entry.replay(consumer);
+            queryPromise.tryProgress(0, entry.getRows());
+            queryPromise.trySuccess();
+        } catch (Exception e) {
+            log.warn("Error while sending a cached query result", e);
+            queryPromise.tryFailure(e);
+        }
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) throws Exception {
+        if (future.isSuccess()) {
+            consumer.sendComplete();
+        } else {
+            consumer.sourceError(BundleUtils.promoteHackForThrowables(future.cause()));
+        }
+    }
+}
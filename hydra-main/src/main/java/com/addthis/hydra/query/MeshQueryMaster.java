@@ -101,6 +101,9 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
     private final WorkerTracker worky;
     private final DefaultTaskAllocators allocators;
 
+    /** Final query results keyed by normalized query. Null unless qmaster.resultcache.enabled is set. */
+    @Nullable private final QueryResultCache resultCache;
+
     public MeshQueryMaster(QueryTracker tracker) throws Exception {
         this.tracker = tracker;
 
@@ -118,6 +121,11 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
         } catch (Exception e) {
             log.warn("Error while cleaning / locating the temp directory (for disk sorts).", e);
         }
+        if (QueryResultCache.enabled) {
+            resultCache = new QueryResultCache(new File(tempDir, "resultcache"));
+        } else {
+            resultCache = null;
+        }
 
         if (enableZooKeeper) {
             spawnDataStoreHandler = new SpawnDataStoreHandler();
@@ -175,6 +183,9 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
         String job = query.getJob();
         if (job != null) {
             cachey.invalidate(job);
+            if (resultCache != null) {
+                resultCache.invalidate(job);
+            }
         }
     }
 
@@ -210,13 +221,15 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
     protected void writeQuery(ChannelHandlerContext ctx, Query query, ChannelPromise promise) throws Exception {
         // log rops prior to mutating query
         String[] opsLog = query.getOps();
+        Set<Integer> tasks = parseTasks(query.getParameter("tasks"));
+        String cacheKey = (resultCache != null) ? QueryResultCache.key(query, tasks) : null;
         // creates query for worker and updates local query ops (!mutates query!)
         Query remoteQuery = query.createPipelinedQuery();
 
 
         boolean allowPartial = Boolean.valueOf(query.getParameter("allowPartial"));
-        Set<Integer> tasks = parseTasks(query.getParameter("tasks"));
         List<QueryTaskSource[]> sourcesPerDir = new ArrayList<>(2);
+        StringBuilder jobVersion = new StringBuilder();
         for (String combinedUnresolved : JOB_SPLITTER.split(query.getJob())) {
             String jobIdOrAlias = getJobWithoutSubdirectory(combinedUnresolved);
             String subdirectory = getJobSubdirectory(combinedUnresolved);
@@ -230,6 +243,10 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
                 }
 
                 sourcesPerDir.add(getSourcesById(resolvedJobId, resolvedSubdirectory, allowPartial, tasks));
+                if ((cacheKey != null) && (spawnDataStoreHandler != null)) {
+                    jobVersion.append(resolvedJobId).append('@')
+                              .append(spawnDataStoreHandler.getJobVersion(resolvedJobId)).append('\u0000');
+                }
             }
         }
         QueryTaskSource[] sourcesByTaskID;
@@ -239,8 +256,24 @@ public class MeshQueryMaster extends ChannelOutboundHandlerAdapter {
             sourcesByTaskID = sourcesPerDir.get(0);
         }
 
-        MeshSourceAggregator aggregator = new MeshSourceAggregator(sourcesByTaskID, meshy, this, remoteQuery);
-        ctx.pipeline().addLast(ctx.executor(), "query aggregator", aggregator);
+        QueryResultCache.Entry cached = null;
+        if (cacheKey != null) {
+            String version = QueryResultCache.version(sourcesByTaskID) + jobVersion;
+            cached = resultCache.get(cacheKey, version);
+            if (cached == null) {
+                QueryResultCache.Capture capture = resultCache.capture(cacheKey, query.getJob(), version);
+                ctx.pipeline().addLast(ctx.executor(), "query result cache", new ResultCaptureHandler(capture, promise));
+            }
+        }
+        if (cached != null) {
+            log.debug("Serving {} rows for query {} from the result cache", cached.getRows(), query.uuid());
+            ctx.pipeline().addLast(ctx.executor(), "query result cache", new CachedResultSource(cached));
+            // the cached rows have already been processed by the query ops
+            query = query.withoutOps();
+        } else {
+            MeshSourceAggregator aggregator = new MeshSourceAggregator(sourcesByTaskID, meshy, this, remoteQuery);
+            ctx.pipeline().addLast(ctx.executor(), "query aggregator", aggregator);
+        }
         TrackerHandler trackerHandler = new TrackerHandler(tracker, opsLog);
         ctx.pipeline().addLast(ctx.executor(), "query tracker", trackerHandler);
         ctx.pipeline().remove(this);
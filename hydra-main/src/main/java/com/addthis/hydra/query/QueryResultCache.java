@@ -0,0 +1,447 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.io.DataChannelReader;
+import com.addthis.bundle.io.DataChannelWriter;
+import com.addthis.hydra.data.query.Query;
+import com.addthis.hydra.query.aggregate.QueryTaskSource;
+import com.addthis.hydra.query.aggregate.QueryTaskSourceOption;
+import com.addthis.meshy.service.file.FileReference;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the final results of queries in the query master. Entries are keyed
+ * by the normalized query (job, paths, ops, requested tasks and every query
+ * parameter that can change the result) and carry the
+ * version of the job data that produced them, which lists the file references
+ * of every queried task and the job run information in spawn. A cached result is
+ * only returned while the version of the job data is exactly the same, so a job
+ * that has run or replicated since the result was stored is queried again.
+ * <p/>
+ * Results are stored in the bundle channel encoding. Results up to
+ * {@code qmaster.resultcache.memoryBytes} bytes are held on the heap and larger
+ * results are spilled to a file in the query temp directory. The heap entries are
+ * bounded by {@code qmaster.resultcache.maxBytes}, the spilled entries by
+ * {@code qmaster.resultcache.maxDiskBytes}, and every entry expires
+ * {@code qmaster.resultcache.ttl} seconds after it was stored.
+ */
+public class QueryResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    public static final boolean enabled = Parameter.boolValue("qmaster.resultcache.enabled", false);
+
+    private static final long maxBytes = Parameter.longValue("qmaster.resultcache.maxBytes", 256L * 1024 * 1024);
+
+    private static final long maxDiskBytes = Parameter.longValue("qmaster.resultcache.maxDiskBytes",
+                                                                 4L * 1024 * 1024 * 1024);
+
+    /**
+     * Results that encode to more bytes than this are written to disk.
+     */
+    private static final int defaultMemoryBytes = Parameter.intValue("qmaster.resultcache.memoryBytes", 1024 * 1024);
+
+    /**
+     * Results that encode to more bytes than this are not cached.
+     */
+    private static final long maxEntryBytes = Parameter.longValue("qmaster.resultcache.maxEntryBytes",
+                                                                  256L * 1024 * 1024);
+
+    private static final int ttlSeconds = Parameter.intValue("qmaster.resultcache.ttl", 600);
+
+    private static final Counter cacheHits = Metrics.newCounter(QueryResultCache.class, "cacheHits");
+    private static final Counter cacheMisses = Metrics.newCounter(QueryResultCache.class, "cacheMisses");
+    private static final Counter cacheStale = Metrics.newCounter(QueryResultCache.class, "cacheStale");
+    private static final Counter cacheStores = Metrics.newCounter(QueryResultCache.class, "cacheStores");
+    private static final Counter cacheSpills = Metrics.newCounter(QueryResultCache.class, "cacheSpills");
+
+    /**
+     * Query parameters that do not change the result of a query. The
+     * requested tasks are part of the key in their normalized form.
+     */
+    private static final Set<String> ignoredParameters = new TreeSet<>(Arrays.asList(
+            "sender", "remoteip", "timeout", "originalrequest", "cache", "allocator", "tasks"));
+
+    private final File spillDir;
+
+    private final Cache<String, Entry> cache;
+
+    private final int memoryBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    public QueryResultCache(File spillDir) {
+        this(spillDir, maxBytes, defaultMemoryBytes, ttlSeconds);
+    }
+
+    QueryResultCache(File spillDir, long maxBytes, int memoryBytes, int ttlSeconds) {
+        this.spillDir = spillDir;
+        this.memoryBytes = memoryBytes;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumWeight(maxBytes)
+                                 .weigher((String key, Entry entry) -> entry.weight())
+                                 .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                                 .removalListener(notification -> ((Entry) notification.getValue()).release())
+                                 .build();
+        Metrics.newGauge(QueryResultCache.class, "cacheEntries", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return cache.size();
+            }
+        });
+        Metrics.newGauge(QueryResultCache.class, "cacheDiskBytes", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return diskBytes.get();
+            }
+        });
+    }
+
+    /**
+     * Returns the cache key of the query, or null if the query must not be
+     * served from the cache. Must be called before the query ops are split
+     * with {@link Query#createPipelinedQuery()}.
+     */
+    @Nullable
+    public static String key(Query query, Set<Integer> tasks) {
+        if (query.isTraced() || "false".equals(query.getParameter("cache"))) {
+            return null;
+        }
+        Map<String, String> parameters = new TreeMap<>(query.getParameters());
+        parameters.keySet().removeAll(ignoredParameters);
+        return query.getJob() + '\u0000' +
+               Arrays.toString(query.getPaths()) + '\u0000' +
+               Arrays.toString(query.getOps()) + '\u0000' +
+               new TreeSet<>(tasks) + '\u0000' +
+               parameters;
+    }
+
+    /**
+     * Returns the version of the data behind the task sources. The version
+     * changes whenever a task directory of any replica is replaced or resized.
+     * It lists the name, modification time and size of every replica, so two
+     * different versions never compare equal.
+     */
+    public static String version(QueryTaskSource[] sources) {
+        StringBuilder version = new StringBuilder();
+        Set<String> replicas = new TreeSet<>();
+        for (QueryTaskSource source : sources) {
+            replicas.clear();
+            for (QueryTaskSourceOption option : source.getOptions()) {
+                FileReference reference = option.queryReference;
+                // sort so that the order of the replicas does not matter
+                replicas.add(reference.name + '\u0000' + reference.lastModified + '\u0000' + reference.size);
+            }
+            version.append(replicas).append('\u0000');
+        }
+        return version.toString();
+    }
+
+    /**
+     * Returns the cached result for the key if it was produced from data of
+     * the given version. Stale results are removed.
+     */
+    @Nullable
+    public Entry get(String key, String version) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            cacheMisses.inc();
+            return null;
+        } else if (!entry.version.equals(version)) {
+            cache.asMap().remove(key, entry);
+            cacheStale.inc();
+            cacheMisses.inc();
+            return null;
+        }
+        cacheHits.inc();
+        return entry;
+    }
+
+    /**
+     * Begin recording the result of a query that missed the cache.
+     */
+    public Capture capture(String key, String job, String version) {
+        return new Capture(key, job, version);
+    }
+
+    /**
+     * Remove all results of the job. The job is matched against
+     * each comma separated job of the cached queries.
+     */
+    public void invalidate(String job) {
+        cache.asMap().values().removeIf(entry -> entry.jobs.contains(job));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public final class Entry {
+
+        private final String version;
+        private final Set<String> jobs;
+        private final int rows;
+        @Nullable private final byte[] data;
+        @Nullable private final File file;
+        private final long length;
+
+        private Entry(String version, String job, int rows, byte[] data, File file, long length) {
+            this.version = version;
+            this.jobs = new TreeSet<>(Arrays.asList(job.split(",")));
+            this.rows = rows;
+            this.data = data;
+            this.file = file;
+            this.length = length;
+        }
+
+        int weight() {
+            return (data != null) ? Math.max(data.length, 1) : 1;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Send the cached bundles to the output. Does not complete the output.
+         */
+        public void replay(DataChannelOutput output) throws IOException {
+            InputStream input;
+            if (data != null) {
+                input = new ByteArrayInputStream(data);
+            } else {
+                input = new BufferedInputStream(new FileInputStream(file));
+            }
+            try {
+                DataChannelReader reader = new DataChannelReader(new ListBundle(), input);
+                for (int i = 0; i < rows; i++) {
+                    output.send(reader.read());
+                }
+            } catch (EOFException ex) {
+                throw new IOException("cached query result is truncated", ex);
+            } finally {
+                input.close();
+            }
+        }
+
+        private void release() {
+            if (file != null) {
+                diskBytes.addAndGet(-length);
+                if (!file.delete()) {
+                    log.warn("Unable to delete cached query result {}", file);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                          .add("version", version)
+                          .add("jobs", jobs)
+                          .add("rows", rows)
+                          .add("length", length)
+                          .add("file", file)
+                          .toString();
+        }
+    }
+
+    /**
+     * Records the bundles of a single query result. The result is
+     * added to the cache by {@link #commit()}. Results that exceed
+     * the entry size limit are silently discarded.
+     */
+    public final class Capture {
+
+        private final String key;
+        private final String job;
+        private final String version;
+        private final SpillOutputStream output = new SpillOutputStream();
+        private final DataChannelWriter writer = new DataChannelWriter(output);
+
+        private int rows;
+        private boolean failed;
+        private boolean done;
+
+        private Capture(String key, String job, String version) {
+            this.key = key;
+            this.job = job;
+            this.version = version;
+        }
+
+        public synchronized void add(Bundle bundle) {
+            if (failed || done) {
+                return;
+            }
+            try {
+                writer.write(bundle);
+                rows++;
+            } catch (Exception ex) {
+                log.debug("Not caching result of {}: {}", job, ex.getMessage());
+                abandon();
+            }
+        }
+
+        public synchronized void commit() {
+            if (failed || done) {
+                return;
+            }
+            done = true;
+            try {
+                writer.close();
+            } catch (Exception ex) {
+                log.warn("Unable to store the result of a query on {}", job, ex);
+                output.discard();
+                return;
+            }
+            Entry entry;
+            if (output.file == null) {
+                entry = new Entry(version, job, rows, output.memory.toByteArray(), null, output.written);
+            } else {
+                if (diskBytes.addAndGet(output.written) > maxDiskBytes) {
+                    diskBytes.addAndGet(-output.written);
+                    output.discard();
+                    return;
+                }
+                entry = new Entry(version, job, rows, null, output.file, output.written);
+                cacheSpills.inc();
+            }
+            cache.put(key, entry);
+            cacheStores.inc();
+        }
+
+        public synchronized void abandon() {
+            if (failed || done) {
+                return;
+            }
+            failed = true;
+            try {
+                writer.close();
+            } catch (Exception ignored) {
+            }
+            output.discard();
+        }
+    }
+
+    /**
+     * Buffers on the heap until {@code memoryBytes} have been written
+     * and then moves the content to a file in the spill directory.
+     */
+    private final class SpillOutputStream extends OutputStream {
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream fileOutput;
+        private long written;
+
+        @Override
+        public void write(int b) throws IOException {
+            reserve(1);
+            if (fileOutput != null) {
+                fileOutput.write(b);
+            } else {
+                memory.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            if (fileOutput != null) {
+                fileOutput.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        private void reserve(int len) throws IOException {
+            if (written + len > maxEntryBytes) {
+                throw new IOException("result exceeds " + maxEntryBytes + " bytes");
+            }
+            written += len;
+            if (fileOutput == null && written > memoryBytes) {
+                spillDir.mkdirs();
+                file = File.createTempFile("result-", ".bundles", spillDir);
+                fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+                memory.writeTo(fileOutput);
+                memory = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileOutput != null) {
+                fileOutput.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOutput != null) {
+                fileOutput.close();
+            }
+        }
+
+        void discard() {
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+            if (file != null && !file.delete()) {
+                log.warn("Unable to delete discarded query result {}", file);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query;
+
+import com.addthis.bundle.core.Bundle;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * Sits between the query tracker and the response encoder and copies the
+ * final result bundles of a query into the {@link QueryResultCache}. The result
+ * is committed when the last http content is written for a successful query
+ * and discarded if the query fails or is cancelled.
+ */
+public class ResultCaptureHandler extends ChannelOutboundHandlerAdapter implements ChannelFutureListener {
+
+    private final QueryResultCache.Capture capture;
+    private final ChannelPromise queryPromise;
+
+    public ResultCaptureHandler(QueryResultCache.Capture capture, ChannelPromise queryPromise) {
+        this.capture = capture;
+        this.queryPromise = queryPromise;
+        queryPromise.addListener(this);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof Bundle) {
+            capture.add((Bundle) msg);
+        } else if (msg instanceof LastHttpContent) {
+            if (queryPromise.isSuccess()) {
+                capture.commit();
+            } else {
+                capture.abandon();
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) throws Exception {
+        if (!future.isSuccess()) {
+            capture.abandon();
+        }
+    }
+}
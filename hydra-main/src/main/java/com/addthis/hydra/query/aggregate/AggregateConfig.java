@@ -27,6 +27,10 @@ public class AggregateConfig {
     public static final int FRAME_READER_READS = Parameter.intValue("meshSourceAggregator.frameReader.reads", 10000);
     // Milliseconds to wait while polling various task sources
     public static final int FRAME_READER_POLL = Parameter.intValue("meshSourceAggregator.frameReader.poll", 0);
+    // Ask workers to batch results into columnar frames
+    static final boolean COLUMNAR_FRAMES = Parameter.boolValue("meshSourceAggregator.frames.columnar", false);
+    // Ask workers to compress columnar frames with lz4
+    static final boolean COLUMNAR_FRAMES_LZ4 = Parameter.boolValue("meshSourceAggregator.frames.lz4", false);
 
     static final boolean enableStragglerCheck = Parameter.boolValue("meshSourceAggregator.enableStragglerCheck", false);
 
@@ -46,4 +46,11 @@ public class DetailedStatusTask implements Runnable {
         this.sourceAggregator = sourceAggregator;
         run();
     }
+
+    /**
+     * Complete the task for a query that is answered without task sources.
+     */
+    public void runWithoutSources() {
+        promise.trySuccess(new TaskSourceInfo[0]);
+    }
 }
@@ -22,6 +22,7 @@ import com.addthis.basis.util.JitterClock;
 
 import com.addthis.bundle.channel.DataChannelOutput;
 import com.addthis.codec.json.CodecJSON;
+import com.addthis.hydra.data.query.ColumnarFrameWriter;
 import com.addthis.hydra.data.query.Query;
 import com.addthis.hydra.query.MeshQueryMaster;
 import com.addthis.hydra.data.util.BundleUtils;
@@ -88,6 +89,12 @@ public class MeshSourceAggregator extends ChannelDuplexHandler implements Channe
 
         queryOptions = new HashMap<>();
         queryOptions.put("query", CodecJSON.encodeString(query));
+        if (AggregateConfig.COLUMNAR_FRAMES) {
+            // workers that do not understand the option keep sending row frames
+            queryOptions.put(ColumnarFrameWriter.OPTION, AggregateConfig.COLUMNAR_FRAMES_LZ4 ?
+                                                         ColumnarFrameWriter.COLUMNAR_LZ4 :
+                                                         ColumnarFrameWriter.COLUMNAR);
+        }
     }
 
     @Override
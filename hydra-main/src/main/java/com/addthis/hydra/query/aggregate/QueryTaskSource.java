@@ -34,6 +34,10 @@ public class QueryTaskSource {
         this.options = options;
     }
 
+    public QueryTaskSourceOption[] getOptions() {
+        return options;
+    }
+
     public boolean oneHasResponded() {
         return dataChannelReader != null;
     }
@@ -123,4 +123,22 @@ public class SpawnDataStoreHandler {
         return new Job(zkJob).getTaskCount();
     }
 
+    /**
+     * Returns a value that changes when the job completes another run. The job
+     * configuration is cached so the value may lag behind spawn by several minutes.
+     */
+    public long getJobVersion(String job) {
+        IJob zkJob;
+        try {
+            zkJob = jobConfigurationCache.get(job);
+        } catch (ExecutionException ignored) {
+            throw new QueryException("unable to retrieve job configuration for job: " + job);
+        }
+        if (zkJob == null) {
+            return 0;
+        }
+        Long endTime = zkJob.getEndTime();
+        return (zkJob.getRunCount() * 31L) + ((endTime != null) ? endTime : 0);
+    }
+
 }
@@ -11,21 +11,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.addthis.hydra.query.web;
 
-import java.nio.CharBuffer;
-
 import com.addthis.basis.util.Parameter;
 
 import com.addthis.bundle.core.Bundle;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
@@ -35,22 +27,35 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.util.CharsetUtil;
 
 /**
  * parent of all streaming response classes
+ * <p/>
+ * Rows are encoded directly into a pooled buffer that is sent as a single
+ * http chunk once it reaches the batch size. While the channel is not writable
+ * the chunks are allowed to grow up to the maximum batch size so that fewer and
+ * larger chunks are queued behind a slow client. Subclasses override the
+ * {@code ByteBuf} methods to write UTF-8 bytes directly, or the
+ * {@code StringBuilder} methods which are encoded into the buffer.
  */
 abstract class AbstractBufferingHttpBundleEncoder extends ChannelOutboundHandlerAdapter {
 
-    private static final Logger log = LoggerFactory.getLogger(AbstractBufferingHttpBundleEncoder.class);
-
     private static final int DEFAULT_INITIAL_BUFFER_SIZE = Parameter.intValue("qmaster.http.buffer.initial", 100);
     private static final int DEFAULT_BATCH_BUFFER_SIZE = Parameter.intValue("qmaster.http.buffer.batch", 100000);
+    private static final int DEFAULT_MAX_BATCH_BUFFER_SIZE =
+            Parameter.intValue("qmaster.http.buffer.batch.max", 4 * DEFAULT_BATCH_BUFFER_SIZE);
 
     protected final HttpResponse responseStart = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
 
-    private final StringBuilder sendBuffer;
+    /**
+     * Scratch space for subclasses that build their output as strings.
+     */
+    private final StringBuilder stringBuffer;
+    private final int bufferCapacity;
     private final int batchBufferSize;
+    private final int maxBatchBufferSize;
+
+    private ByteBuf sendBuffer;
 
     private boolean writeStarted = false;
     private boolean responseWritten = false;
@@ -58,18 +63,16 @@ abstract class AbstractBufferingHttpBundleEncoder extends ChannelOutboundHandler
 
     AbstractBufferingHttpBundleEncoder(int initialBufferSize, int batchBufferSize) {
         this.batchBufferSize = batchBufferSize;
+        this.maxBatchBufferSize = Math.max(batchBufferSize, DEFAULT_MAX_BATCH_BUFFER_SIZE);
+        this.bufferCapacity = Math.max(initialBufferSize, batchBufferSize);
         HttpHeaders.setTransferEncodingChunked(responseStart);
-        sendBuffer = new StringBuilder(initialBufferSize);
+        stringBuffer = new StringBuilder(initialBufferSize);
     }
 
     AbstractBufferingHttpBundleEncoder() {
         this(DEFAULT_INITIAL_BUFFER_SIZE, DEFAULT_BATCH_BUFFER_SIZE);
     }
 
-    private static ByteBuf encodeString(ByteBufAllocator alloc, CharSequence msg) {
-        return ByteBufUtil.encodeString(alloc, CharBuffer.wrap(msg), CharsetUtil.UTF_8);
-    }
-
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
         if (msg instanceof Bundle) {
@@ -84,18 +87,34 @@ abstract class AbstractBufferingHttpBundleEncoder extends ChannelOutboundHandler
 
     @Override
     public void flush(ChannelHandlerContext ctx) {
-        if (sendBuffer.length() > 0) {
+        if ((sendBuffer != null) && sendBuffer.isReadable()) {
             flushStringBuilder(ctx);
         } else {
             ctx.flush();
         }
     }
 
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (sendBuffer != null) {
+            sendBuffer.release();
+            sendBuffer = null;
+        }
+    }
+
+    private ByteBuf buffer(ChannelHandlerContext ctx) {
+        if (sendBuffer == null) {
+            sendBuffer = ctx.alloc().ioBuffer(bufferCapacity);
+        }
+        return sendBuffer;
+    }
+
     private boolean maybeWriteStart(ChannelHandlerContext ctx, Bundle row) {
         if (!writeStarted) {
-            appendResponseStartToString(sendBuffer);
+            ByteBuf out = buffer(ctx);
+            appendResponseStart(out);
             if (row != null) {
-                appendInitialBundleToString(row, sendBuffer);
+                appendInitialBundle(row, out);
             }
             writeStarted = true;
             return true;
@@ -129,11 +148,51 @@ abstract class AbstractBufferingHttpBundleEncoder extends ChannelOutboundHandler
         // override in subclasses if desired
     }
 
+    /**
+     * Byte level equivalent of {@link #appendResponseStartToString(StringBuilder)}.
+     */
+    protected void appendResponseStart(ByteBuf out) {
+        appendResponseStartToString(stringBuffer);
+        drainStringBuffer(out);
+    }
+
+    /**
+     * Byte level equivalent of {@link #appendBundleToString(Bundle, StringBuilder)}.
+     */
+    protected void appendBundle(Bundle row, ByteBuf out) {
+        appendBundleToString(row, stringBuffer);
+        drainStringBuffer(out);
+    }
+
+    /**
+     * Byte level equivalent of {@link #appendInitialBundleToString(Bundle, StringBuilder)}.
+     */
+    protected void appendInitialBundle(Bundle firstRow, ByteBuf out) {
+        appendInitialBundleToString(firstRow, stringBuffer);
+        drainStringBuffer(out);
+    }
+
+    /**
+     * Byte level equivalent of {@link #appendResponseEndToString(StringBuilder)}.
+     */
+    protected void appendResponseEnd(ByteBuf out) {
+        appendResponseEndToString(stringBuffer);
+        drainStringBuffer(out);
+    }
+
+    private void drainStringBuffer(ByteBuf out) {
+        if (stringBuffer.length() > 0) {
+            Utf8Output.write(out, stringBuffer);
+            stringBuffer.setLength(0);
+        }
+    }
+
     public void send(ChannelHandlerContext ctx, Bundle row) {
         if (!maybeWriteStart(ctx, row)) {
-            appendBundleToString(row, sendBuffer);
+            appendBundle(row, buffer(ctx));
         }
-        if (sendBuffer.length() >= batchBufferSize) {
+        int threshold = ctx.channel().isWritable() ? batchBufferSize : maxBatchBufferSize;
+        if (sendBuffer.readableBytes() >= threshold) {
             flushStringBuilder(ctx);
         }
     }
@@ -141,17 +200,18 @@ abstract class AbstractBufferingHttpBundleEncoder extends ChannelOutboundHandler
     protected void flushStringBuilder(ChannelHandlerContext ctx) {
         if (!responseWritten) {
             ctx.write(responseStart);
+            responseWritten = true;
         }
-        if (sendBuffer.length() > 0) {
-            ByteBuf msg = encodeString(ctx.alloc(), sendBuffer);
-            sendBuffer.setLength(0);
+        if ((sendBuffer != null) && sendBuffer.isReadable()) {
+            ByteBuf msg = sendBuffer;
+            sendBuffer = null;
             ctx.writeAndFlush(new DefaultHttpContent(msg), ctx.voidPromise());
         }
     }
 
     public void sendComplete(ChannelHandlerContext ctx) {
         maybeWriteStart(ctx, null);
-        appendResponseEndToString(sendBuffer);
+        appendResponseEnd(buffer(ctx));
         flushStringBuilder(ctx);
     }
-}
\ No newline at end of file
+}
@@ -19,15 +19,21 @@ import com.addthis.bundle.core.BundleField;
 import com.addthis.bundle.value.ValueObject;
 import com.addthis.hydra.data.query.QueryException;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
 import static com.addthis.hydra.query.web.HttpUtils.setContentTypeHeader;
 
 public class DelimitedBundleEncoder extends AbstractBufferingHttpBundleEncoder {
 
     String delimiter;
 
+    private final byte[] delimiterBytes;
+
     DelimitedBundleEncoder(String filename, String delimiter) {
         super();
         this.delimiter = delimiter;
+        this.delimiterBytes = delimiter.getBytes(CharsetUtil.UTF_8);
         setContentTypeHeader(responseStart, "application/csv; charset=utf-8");
         responseStart.headers().set("Access-Control-Allow-Origin", "*");
         responseStart.headers().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
@@ -91,8 +97,69 @@ public class DelimitedBundleEncoder extends AbstractBufferingHttpBundleEncoder {
         stringBuilder.append("\n");
     }
 
+    /**
+     * Byte level equivalent of {@link #buildRow(Bundle, String, StringBuilder)}.
+     */
+    static void writeRow(Bundle row, byte[] delimiter, ByteBuf out) {
+        int count = 0;
+        for (BundleField field : row.getFormat()) {
+            ValueObject o = row.getValue(field);
+            if (count++ > 0) {
+                out.writeBytes(delimiter);
+            }
+            if (o != null) {
+                ValueObject.TYPE type = o.getObjectType();
+                if (type == ValueObject.TYPE.CUSTOM) {
+                    o = o.asCustom().asSimple();
+                    type = o.getObjectType();
+                }
+                switch (type) {
+                    case INT:
+                    case FLOAT:
+                        Utf8Output.write(out, o.toString());
+                        break;
+                    case STRING:
+                        writeString(o.toString(), out);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        out.writeByte('\n');
+    }
+
+    private static void writeString(String value, ByteBuf out) {
+        out.writeByte('"');
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.writeByte('\'');
+                i++;
+            } else if ((c == '\n') || (c == '\r')) {
+                out.writeByte(' ');
+                i++;
+            } else {
+                i = Utf8Output.write(out, value, i);
+            }
+        }
+        out.writeByte('"');
+    }
+
     @Override
     public void appendBundleToString(Bundle row, StringBuilder stringBuilder) {
         buildRow(row, delimiter, stringBuilder);
     }
+
+    @Override
+    protected void appendBundle(Bundle row, ByteBuf out) {
+        writeRow(row, delimiterBytes, out);
+    }
+
+    @Override
+    protected void appendInitialBundle(Bundle firstRow, ByteBuf out) {
+        writeRow(firstRow, delimiterBytes, out);
+    }
 }
@@ -23,17 +23,23 @@ import com.addthis.hydra.data.query.QueryException;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
 import static com.addthis.hydra.query.web.HttpUtils.setContentTypeHeader;
 
 public class DelimitedEscapedBundleEncoder extends AbstractBufferingHttpBundleEncoder {
 
     private final String delimiter;
 
+    private final byte[] delimiterBytes;
+
     private final static Pattern ESCAPE_CHARACTERS = Pattern.compile("([\\\\\\\"])");
 
     DelimitedEscapedBundleEncoder(String filename, String delimiter) {
         super();
         this.delimiter = delimiter;
+        this.delimiterBytes = delimiter.getBytes(CharsetUtil.UTF_8);
         setContentTypeHeader(responseStart, "application/csv; charset=utf-8");
         responseStart.headers().set("Access-Control-Allow-Origin", "*");
         responseStart.headers().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
@@ -109,8 +115,75 @@ public class DelimitedEscapedBundleEncoder extends AbstractBufferingHttpBundleEn
         }
     }
 
+    /**
+     * Byte level equivalent of {@link #buildRow(Bundle, String, StringBuilder)}.
+     */
+    static void writeRow(Bundle row, byte[] delimiter, ByteBuf out) {
+        int count = 0;
+        for (BundleField field : row.getFormat()) {
+            ValueObject o = row.getValue(field);
+            if (count++ > 0) {
+                out.writeBytes(delimiter);
+            }
+            if (o != null) {
+                writeValue(out, o);
+            }
+        }
+        out.writeByte('\n');
+    }
+
+    @VisibleForTesting
+    static void writeValue(ByteBuf out, ValueObject value) {
+        ValueObject.TYPE type = value.getObjectType();
+        if (type == ValueObject.TYPE.CUSTOM) {
+            value = value.asCustom().asSimple();
+            type = value.getObjectType();
+        }
+        switch (type) {
+            case INT:
+            case FLOAT:
+                Utf8Output.write(out, value.toString());
+                break;
+            case STRING:
+                writeString(value.toString(), out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeString(String value, ByteBuf out) {
+        out.writeByte('"');
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                out.writeByte('\\');
+                out.writeByte(c);
+                i++;
+            } else if ((c == '\n') || (c == '\r')) {
+                out.writeByte(' ');
+                i++;
+            } else {
+                i = Utf8Output.write(out, value, i);
+            }
+        }
+        out.writeByte('"');
+    }
+
     @Override
     public void appendBundleToString(Bundle row, StringBuilder stringBuilder) {
         buildRow(row, delimiter, stringBuilder);
     }
+
+    @Override
+    protected void appendBundle(Bundle row, ByteBuf out) {
+        writeRow(row, delimiterBytes, out);
+    }
+
+    @Override
+    protected void appendInitialBundle(Bundle firstRow, ByteBuf out) {
+        writeRow(firstRow, delimiterBytes, out);
+    }
 }
@@ -23,10 +23,14 @@ import com.addthis.codec.jackson.Jackson;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import io.netty.buffer.ByteBuf;
+
 import static com.addthis.hydra.query.web.HttpUtils.setContentTypeHeader;
 
 public class JsonBundleEncoder extends AbstractBufferingHttpBundleEncoder {
 
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
     public JsonBundleEncoder() {
         super();
         setContentTypeHeader(responseStart, "application/json; charset=utf-8");
@@ -74,4 +78,116 @@ public class JsonBundleEncoder extends AbstractBufferingHttpBundleEncoder {
     protected void appendResponseEndToString(StringBuilder sendBuffer) {
         sendBuffer.append("]");
     }
+
+    @Override
+    protected void appendResponseStart(ByteBuf out) {
+        out.writeByte('[');
+    }
+
+    @Override
+    protected void appendBundle(Bundle row, ByteBuf out) {
+        out.writeByte(',');
+        appendInitialBundle(row, out);
+    }
+
+    @Override
+    protected void appendInitialBundle(Bundle firstRow, ByteBuf out) {
+        out.writeByte('[');
+        int count = 0;
+        for (BundleField field : firstRow.getFormat()) {
+            ValueObject o = firstRow.getValue(field);
+            if (count++ > 0) {
+                out.writeByte(',');
+            }
+            if (o == null) {
+                continue;
+            }
+            if (o.getObjectType() == ValueObject.TYPE.CUSTOM) {
+                o = o.asCustom().asSimple();
+            }
+            writeValue(o, out);
+        }
+        out.writeByte(']');
+    }
+
+    @Override
+    protected void appendResponseEnd(ByteBuf out) {
+        out.writeByte(']');
+    }
+
+    /**
+     * Strings and finite numbers are written directly. Other values are
+     * serialized by jackson into bytes without an intermediate string.
+     */
+    private static void writeValue(ValueObject o, ByteBuf out) {
+        switch (o.getObjectType()) {
+            case STRING:
+                writeString(o.toString(), out);
+                return;
+            case INT:
+                Utf8Output.write(out, Long.toString(o.asLong().getLong()));
+                return;
+            case FLOAT:
+                double value = o.asDouble().getDouble();
+                if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                    Utf8Output.write(out, Double.toString(value));
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        try {
+            out.writeBytes(Jackson.defaultMapper().writeValueAsBytes(o.asNative()));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quote and escape a string the same way as the default jackson generator.
+     */
+    static void writeString(String value, ByteBuf out) {
+        out.writeByte('"');
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.writeByte('\\');
+                out.writeByte(c);
+                i++;
+            } else if (c < 0x20) {
+                out.writeByte('\\');
+                switch (c) {
+                    case '\b':
+                        out.writeByte('b');
+                        break;
+                    case '\t':
+                        out.writeByte('t');
+                        break;
+                    case '\n':
+                        out.writeByte('n');
+                        break;
+                    case '\f':
+                        out.writeByte('f');
+                        break;
+                    case '\r':
+                        out.writeByte('r');
+                        break;
+                    default:
+                        out.writeByte('u');
+                        out.writeByte('0');
+                        out.writeByte('0');
+                        out.writeByte(HEX[c >> 4]);
+                        out.writeByte(HEX[c & 0xf]);
+                        break;
+                }
+                i++;
+            } else {
+                i = Utf8Output.write(out, value, i);
+            }
+        }
+        out.writeByte('"');
+    }
 }
@@ -24,6 +24,7 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
@@ -37,6 +38,13 @@ public class QueryServerInitializer extends ChannelInitializer<SocketChannel> {
     private static final int maxChunkSize = Parameter.intValue("queryServerInitializer.maxChunkSize", 327680);
     private static final int maxContentLength = Parameter.intValue("queryServerInitializer.maxContentSize", 10485760);
 
+    /**
+     * If true then responses are compressed with gzip or deflate when the
+     * client sends an Accept-Encoding header that allows it.
+     */
+    private static final boolean compress = Parameter.boolValue("qmaster.http.compress", false);
+    private static final int compressionLevel = Parameter.intValue("qmaster.http.compress.level", 6);
+
     private final HttpQueryHandler httpQueryHandler;
 
     public QueryServerInitializer(HttpQueryHandler httpQueryHandler) {
@@ -53,8 +61,10 @@ public class QueryServerInitializer extends ChannelInitializer<SocketChannel> {
         pipeline.addLast("decoder", new HttpRequestDecoder(maxInitialLineLength,maxHeaderSize,maxChunkSize));
         pipeline.addLast("encoder", new HttpResponseEncoder());
         pipeline.addLast("aggregator", new HttpObjectAggregator(maxContentLength));
-        // compression is neat, but a little buggy
-//        pipeline.addLast(ImmediateEventExecutor.INSTANCE, "compressor", new HttpContentCompressor());
+        if (compress) {
+            // runs on the channel event loop so that it sees the responses in the order they are written
+            pipeline.addLast("compressor", new HttpContentCompressor(compressionLevel));
+        }
         pipeline.addLast("query", httpQueryHandler);
 
     }
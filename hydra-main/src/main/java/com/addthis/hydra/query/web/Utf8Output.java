@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query.web;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes characters directly into a {@link ByteBuf} as UTF-8 without
+ * an intermediate byte or char array. Unpaired surrogates are replaced
+ * with '?' to match the behavior of the UTF-8 charset encoder.
+ */
+final class Utf8Output {
+
+    private Utf8Output() {}
+
+    static void write(ByteBuf out, CharSequence value) {
+        int length = value.length();
+        out.ensureWritable(length);
+        int i = 0;
+        // ascii fast path
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            out.writeByte(c);
+            i++;
+        }
+        while (i < length) {
+            i = write(out, value, i);
+        }
+    }
+
+    /**
+     * Write the character at {@code index}, or the surrogate pair that
+     * starts at {@code index}, and return the index of the next character.
+     */
+    static int write(ByteBuf out, CharSequence value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            out.writeByte(c);
+        } else if (c < 0x800) {
+            out.writeByte(0xc0 | (c >> 6));
+            out.writeByte(0x80 | (c & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && ((index + 1) < value.length())
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+                out.writeByte(0xf0 | (codePoint >> 18));
+                out.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                out.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                out.writeByte(0x80 | (codePoint & 0x3f));
+                return index + 2;
+            }
+            out.writeByte('?');
+        } else {
+            out.writeByte(0xe0 | (c >> 12));
+            out.writeByte(0x80 | ((c >> 6) & 0x3f));
+            out.writeByte(0x80 | (c & 0x3f));
+        }
+        return index + 1;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.job.spawn;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JobLocksTest {
+
+    @Test
+    public void jobExcludesExclusive() {
+        JobLocks locks = new JobLocks();
+        locks.lockJob("a");
+        try {
+            assertFalse(locks.allJobs().tryLock());
+        } finally {
+            locks.unlockJob("a");
+        }
+        assertTrue(locks.allJobs().tryLock());
+        locks.allJobs().unlock();
+    }
+
+    @Test
+    public void exclusiveExcludesJobs() throws Exception {
+        JobLocks locks = new JobLocks();
+        AtomicBoolean entered = new AtomicBoolean();
+        locks.allJobs().lock();
+        Thread other;
+        try {
+            // the exclusive holder may still acquire job locks
+            locks.lockJob("a");
+            locks.unlockJob("a");
+            other = new Thread(() -> {
+                locks.lockJob("a");
+                entered.set(true);
+                locks.unlockJob("a");
+            });
+            other.start();
+            other.join(100);
+            assertFalse(entered.get());
+        } finally {
+            locks.allJobs().unlock();
+        }
+        other.join(10_000);
+        assertTrue(entered.get());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.minion;
+
+import java.io.File;
+
+import java.util.Arrays;
+
+import com.addthis.basis.util.LessBytes;
+import com.addthis.basis.util.LessFiles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationManifestTest {
+
+    private static void write(File dir, String path, String contents) throws Exception {
+        File file = new File(dir, path);
+        LessFiles.initDirectory(file.getParentFile());
+        LessFiles.write(file, LessBytes.toBytes(contents), false);
+    }
+
+    @Test
+    public void changedSince() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            File live = new File(tempDir, "live");
+            write(live, "data/00000000.jdb", "first");
+            write(live, "data/00000001.jdb", "second");
+            write(live, "data/je.lck", "");
+            write(live, "gold/data/00000000.jdb", "first");
+            write(live, "replicate.complete", "");
+            ReplicationManifest first = ReplicationManifest.scan(live).successorOf(null);
+            assertEquals(2, first.size());
+            assertEquals(0, first.getDeltas());
+
+            File manifestFile = new File(tempDir, "replicate.manifest");
+            first.save(manifestFile);
+            ReplicationManifest previous = ReplicationManifest.load(manifestFile);
+            assertEquals(first.getId(), previous.getId());
+            assertTrue(ReplicationManifest.scan(live).changedSince(previous).isEmpty());
+
+            write(live, "data/00000001.jdb", "second and more");
+            write(live, "data/00000002.jdb", "third");
+            assertTrue(new File(live, "data/00000000.jdb").delete());
+            ReplicationManifest next = ReplicationManifest.scan(live).successorOf(previous);
+            assertEquals(1, next.getDeltas());
+            assertNotEquals(previous.getId(), next.getId());
+            assertEquals(Arrays.asList("data/00000001.jdb", "data/00000002.jdb", "data/00000000.jdb"),
+                         next.changedSince(previous));
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+
+    @Test
+    public void missingManifest() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            assertNull(ReplicationManifest.load(new File(tempDir, "missing")));
+            File corrupt = new File(tempDir, "corrupt");
+            LessFiles.write(corrupt, LessBytes.toBytes("id\nnot a number\n"), false);
+            assertNull(ReplicationManifest.load(corrupt));
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
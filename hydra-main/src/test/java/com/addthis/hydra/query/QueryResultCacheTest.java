@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.bundle.channel.DataChannelOutput;
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueFactory;
+import com.addthis.hydra.data.query.Query;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class QueryResultCacheTest {
+
+    private static class CollectingOutput implements DataChannelOutput {
+
+        final ListBundleFormat format = new ListBundleFormat();
+        final List<String> rows = new ArrayList<>();
+
+        @Override
+        public void send(Bundle row) {
+            StringBuilder builder = new StringBuilder();
+            for (BundleField field : row) {
+                builder.append(field.getName()).append('=').append(row.getValue(field)).append('/');
+            }
+            rows.add(builder.toString());
+        }
+
+        @Override
+        public void send(List<Bundle> bundles) {
+            bundles.forEach(this::send);
+        }
+
+        @Override
+        public void sendComplete() {
+        }
+
+        @Override
+        public void sourceError(Throwable er) {
+        }
+
+        @Override
+        public Bundle createBundle() {
+            return new ListBundle(format);
+        }
+    }
+
+    private static void store(QueryResultCache cache, String key, String version, int rows) {
+        QueryResultCache.Capture capture = cache.capture(key, "job", version);
+        ListBundleFormat format = new ListBundleFormat();
+        for (int i = 0; i < rows; i++) {
+            Bundle bundle = new ListBundle(format);
+            bundle.setValue(format.getField("key"), ValueFactory.create("row-" + i));
+            bundle.setValue(format.getField("count"), ValueFactory.create(i));
+            capture.add(bundle);
+        }
+        capture.commit();
+    }
+
+    private static List<String> replay(QueryResultCache.Entry entry) throws Exception {
+        CollectingOutput output = new CollectingOutput();
+        entry.replay(output);
+        return output.rows;
+    }
+
+    @Test
+    public void key() {
+        Query query = new Query("job", new String[]{"+:+hits"}, new String[]{"sort=0", null});
+        String key = QueryResultCache.key(query, Collections.emptySet());
+        assertNotNull(key);
+        assertEquals(key, QueryResultCache.key(query, Collections.emptySet()));
+        assertNotEquals(key, QueryResultCache.key(query, Collections.singleton(1)));
+        query.setParameter("cache", "false");
+        assertNull(QueryResultCache.key(query, Collections.emptySet()));
+    }
+
+    @Test
+    public void keyParameters() {
+        Query query = new Query("job", new String[]{"+:+hits"}, new String[]{"sort=0"});
+        query.setParameter("sender", "a");
+        String key = QueryResultCache.key(query, Collections.emptySet());
+        // parameters that do not change the result share the entry
+        query.setParameter("sender", "b");
+        query.setParameter("timeout", "100");
+        assertEquals(key, QueryResultCache.key(query, Collections.emptySet()));
+        // the injected source field changes every row
+        query.setParameter("injectSource", "source");
+        String injected = QueryResultCache.key(query, Collections.emptySet());
+        assertNotNull(injected);
+        assertNotEquals(key, injected);
+        query.setParameter("injectSource", null);
+        assertEquals(key, QueryResultCache.key(query, Collections.emptySet()));
+    }
+
+    @Test
+    public void versionInvalidation() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            QueryResultCache cache = new QueryResultCache(tempDir, 1024 * 1024, 64 * 1024, 600);
+            store(cache, "a", "1", 10);
+            assertNull(cache.get("b", "1"));
+            QueryResultCache.Entry entry = cache.get("a", "1");
+            assertNotNull(entry);
+            List<String> rows = replay(entry);
+            assertEquals(10, rows.size());
+            assertEquals("key=row-3/count=3/", rows.get(3));
+            assertNull(cache.get("a", "2"));
+            assertNull(cache.get("a", "1"));
+            assertEquals(0, cache.size());
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+
+    @Test
+    public void spillToDisk() throws Exception {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            QueryResultCache cache = new QueryResultCache(tempDir, 1024 * 1024, 256, 600);
+            store(cache, "a", "1", 1000);
+            assertEquals(1, tempDir.listFiles().length);
+            QueryResultCache.Entry entry = cache.get("a", "1");
+            assertNotNull(entry);
+            List<String> rows = replay(entry);
+            assertEquals(1000, rows.size());
+            assertEquals("key=row-999/count=999/", rows.get(999));
+            cache.invalidate("job");
+            assertEquals(0, cache.size());
+            assertEquals(0, tempDir.listFiles().length);
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
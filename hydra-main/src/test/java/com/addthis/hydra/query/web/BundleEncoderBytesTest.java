@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.query.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.core.list.ListBundleFormat;
+import com.addthis.bundle.value.ValueArray;
+import com.addthis.bundle.value.ValueFactory;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.CharsetUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BundleEncoderBytesTest {
+
+    private static final String[] STRINGS = {
+            "plain", "quote\"d", "back\\slash", "new\nline\r", "tab\tcontrol\u0001\u001f",
+            "caf\u00e9", "\u6f22\u5b57", "emoji \ud83d\ude00", "lone \ud83d surrogate", ""
+    };
+
+    private static List<Bundle> rows() {
+        ListBundleFormat format = new ListBundleFormat();
+        BundleField str = format.getField("str");
+        BundleField num = format.getField("num");
+        BundleField dbl = format.getField("dbl");
+        BundleField arr = format.getField("arr");
+        List<Bundle> rows = new ArrayList<>();
+        for (int i = 0; i < STRINGS.length; i++) {
+            Bundle row = new ListBundle(format);
+            row.setValue(str, ValueFactory.create(STRINGS[i]));
+            row.setValue(num, ValueFactory.create((i * 1_000_003L) - 7));
+            row.setValue(dbl, (i == 3) ? ValueFactory.create(Double.NaN) : ValueFactory.create(i / 3.0));
+            if ((i % 2) == 0) {
+                ValueArray array = ValueFactory.createArray(2);
+                array.add(ValueFactory.create(STRINGS[i]));
+                array.add(ValueFactory.create(i));
+                row.setValue(arr, array);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String viaStrings(AbstractBufferingHttpBundleEncoder encoder, List<Bundle> rows) {
+        StringBuilder builder = new StringBuilder();
+        encoder.appendResponseStartToString(builder);
+        encoder.appendInitialBundleToString(rows.get(0), builder);
+        for (Bundle row : rows.subList(1, rows.size())) {
+            encoder.appendBundleToString(row, builder);
+        }
+        encoder.appendResponseEndToString(builder);
+        return new String(builder.toString().getBytes(CharsetUtil.UTF_8), CharsetUtil.UTF_8);
+    }
+
+    private static String viaBytes(AbstractBufferingHttpBundleEncoder encoder, List<Bundle> rows) {
+        ByteBuf out = Unpooled.buffer();
+        encoder.appendResponseStart(out);
+        encoder.appendInitialBundle(rows.get(0), out);
+        for (Bundle row : rows.subList(1, rows.size())) {
+            encoder.appendBundle(row, out);
+        }
+        encoder.appendResponseEnd(out);
+        return out.toString(CharsetUtil.UTF_8);
+    }
+
+    @Test
+    public void json() {
+        assertEquals(viaStrings(new JsonBundleEncoder(), rows()), viaBytes(new JsonBundleEncoder(), rows()));
+    }
+
+    @Test
+    public void delimited() {
+        for (String format : new String[]{"csv", "tsv", "psv"}) {
+            assertEquals(viaStrings(DelimitedBundleEncoder.create("test", format), rows()),
+                         viaBytes(DelimitedBundleEncoder.create("test", format), rows()));
+        }
+        for (String format : new String[]{"csv2", "tsv2", "psv2"}) {
+            assertEquals(viaStrings(DelimitedEscapedBundleEncoder.create("test", format), rows()),
+                         viaBytes(DelimitedEscapedBundleEncoder.create("test", format), rows()));
+        }
+    }
+
+    @Test
+    public void html() {
+        assertEquals(viaStrings(new HtmlBundleEncoder(), rows()), viaBytes(new HtmlBundleEncoder(), rows()));
+    }
+
+    @Test
+    public void chunkedResponse() {
+        List<Bundle> rows = rows();
+        EmbeddedChannel channel = new EmbeddedChannel(new JsonBundleEncoder());
+        for (Bundle row : rows) {
+            channel.writeOutbound(row);
+        }
+        channel.writeOutbound(DataChannelOutputToNettyBridge.SEND_COMPLETE);
+        assertTrue(channel.readOutbound() instanceof HttpResponse);
+        StringBuilder body = new StringBuilder();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            HttpContent content = (HttpContent) message;
+            body.append(content.content().toString(CharsetUtil.UTF_8));
+            content.release();
+        }
+        assertEquals(viaStrings(new JsonBundleEncoder(), rows), body.toString());
+        channel.finish();
+    }
+}
@@ -1,45 +1,39 @@
 package com.addthis.hydra.store.common;
 
-import com.addthis.basis.io.GZOut;
 import com.addthis.basis.util.MemoryCounter;
 import com.addthis.basis.util.Parameter;
 import com.addthis.basis.util.Varint;
 import com.addthis.codec.codables.BytesCodable;
+import com.addthis.hydra.store.compress.PageCodec;
+import com.addthis.hydra.store.compress.StandardPageCodec;
 import com.addthis.hydra.store.kv.KeyCoder;
 import com.addthis.hydra.store.kv.PageEncodeType;
 import com.addthis.hydra.store.skiplist.LockMode;
 import com.addthis.hydra.store.skiplist.SkipListCache;
 import com.google.common.base.Throwables;
-import com.jcraft.jzlib.Deflater;
-import com.jcraft.jzlib.DeflaterOutputStream;
-import com.jcraft.jzlib.InflaterInputStream;
-import com.ning.compress.lzf.LZFInputStream;
-import com.ning.compress.lzf.LZFOutputStream;
 import com.yammer.metrics.core.Histogram;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
-import org.xerial.snappy.SnappyInputStream;
-import org.xerial.snappy.SnappyOutputStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.zip.GZIPInputStream;
 
 public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K, V> {
 
-    public static final int gzlevel = Parameter.intValue("eps.gz.level", 1);
-    public static final int gztype = Parameter.intValue("eps.gz.type", 1);
-    public static final int gzbuf = Parameter.intValue("eps.gz.buffer", 1024);
+    public static final int gzlevel = StandardPageCodec.gzlevel;
+    public static final int gztype = StandardPageCodec.gztype;
+    public static final int gzbuf = StandardPageCodec.gzbuf;
     public static final int estimateMissingFactor = Parameter.intValue("eps.mem.estimate.missing.factor", 8);
     public static final int memEstimationStrategy = Parameter.intValue("eps.mem.estimate.method", 1);
     public static final int estimateRollMin = Parameter.intValue("eps.mem.estimate.roll.min", 1000);
@@ -67,6 +61,21 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
     @Nullable
     private ArrayList<byte[]> rawValues;
 
+    /**
+     * When the page has been decoded off-heap the encoded values are stored
+     * in this pooled direct buffer and the corresponding {@link #rawValues}
+     * entries are null. The value at position i is stored in the
+     * range [directOffsets[i], directOffsets[i + 1]). The buffer is released
+     * as soon as the page is modified, see {@link #materializeDirect()}.
+     */
+    @Nullable
+    private ByteBuf directValues;
+
+    @Nullable
+    private int[] directOffsets;
+
+    private int directKeyBytes;
+
     @Nonnull
     private ExternalMode state;
 
@@ -207,6 +216,7 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
      */
     @Override
     public void initialize() {
+        releaseDirect();
         keys = new ArrayList<>();
         values = new ArrayList<>();
         rawValues = new ArrayList<>();
@@ -234,29 +244,12 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
         PageCacheMetrics<K, V> metrics = parent.metrics;
         parent.numPagesEncoded.getAndIncrement();
         PageEncodeType upgradeType = PageEncodeType.defaultType();
+        PageCodec codec = parent.pageCodecs.encoder();
+        ByteBuf body = PooledByteBufAllocator.DEFAULT.buffer();
         try {
-            OutputStream os = out;
-            out.write(gztype | FLAGS_HAS_ESTIMATES | (upgradeType.ordinal() << TYPE_BIT_OFFSET));
-            switch (gztype) {
-                case 0:
-                    break;
-                case 1:
-                    os = new DeflaterOutputStream(out, new Deflater(gzlevel));
-                    break;
-                case 2:
-                    os = new GZOut(out, gzbuf, gzlevel);
-                    break;
-                case 3:
-                    os = new LZFOutputStream(out);
-                    break;
-                case 4:
-                    os = new SnappyOutputStream(out);
-                    break;
-                default:
-                    throw new RuntimeException("invalid gztype: " + gztype);
-            }
+            out.write(codec.id() | FLAGS_HAS_ESTIMATES | (upgradeType.ordinal() << TYPE_BIT_OFFSET));
 
-            DataOutputStream dos = new DataOutputStream(os);
+            DataOutputStream dos = new DataOutputStream(new ByteBufOutputStream(body));
             byte[] firstKeyEncoded = keyCoder.keyEncode(firstKey);
             byte[] nextFirstKeyEncoded = keyCoder.keyEncode(nextFirstKey);
 
@@ -273,6 +266,18 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
                 byte[] keyEncoded = keyCoder.keyEncode(keys.get(i), firstKey, upgradeType);
                 byte[] rawVal = rawValues.get(i);
 
+                if (rawVal == null && directValues != null && upgradeType == encodeType) {
+                    int directLength = directOffsets[i + 1] - directOffsets[i];
+                    updateHistogram(metrics.encodeKeySize, keyEncoded.length, record);
+                    updateHistogram(metrics.encodeValueSize, directLength, record);
+
+                    Varint.writeUnsignedVarInt(keyEncoded.length, dos);
+                    dos.write(keyEncoded);
+                    Varint.writeUnsignedVarInt(directLength, dos);
+                    directValues.getBytes(directOffsets[i], dos, directLength);
+                    continue;
+                }
+
                 if (rawVal == null || upgradeType != encodeType) {
                     fetchValue(i);
                     rawVal = keyCoder.valueEncode(values.get(i), upgradeType);
@@ -289,20 +294,12 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
 
             Varint.writeUnsignedVarInt((estimateTotal > 0 ? estimateTotal : 1), dos);
             Varint.writeUnsignedVarInt((estimates > 0 ? estimates : 1), dos);
-            switch (gztype) {
-                case 1:
-                    ((DeflaterOutputStream) os).finish();
-                    break;
-                case 2:
-                    ((GZOut) os).finish();
-                    break;
-            }
-            os.flush(); // flush should be called by dos.close(), but better safe than sorry
-            dos.close();
+            dos.flush();
 
             ByteBuf buffer = out.buffer();
+            codec.encode(body, buffer);
 
-            byte[] returnValue = new byte[out.writtenBytes()];
+            byte[] returnValue = new byte[buffer.readableBytes()];
 
             buffer.readBytes(returnValue);
             buffer.clear();
@@ -311,33 +308,27 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
             return returnValue;
         } catch (Exception ex) {
             throw Throwables.propagate(ex);
+        } finally {
+            body.release();
         }
     }
 
 
     public void decode(byte[] page) {
+        decode(page, false);
+    }
+
+    @Override
+    public void decode(byte[] page, boolean offHeap) {
         parent.numPagesDecoded.getAndIncrement();
         ByteBuf buffer = Unpooled.wrappedBuffer(page);
         try {
             InputStream in = new ByteBufInputStream(buffer);
             int flags = in.read() & 0xff;
-            int gztype = flags & 0x0f;
+            int codecId = flags & 0x0f;
             int pageType = flags >>> TYPE_BIT_OFFSET;
             boolean hasEstimates = (flags & FLAGS_HAS_ESTIMATES) != 0;
-            switch (gztype) {
-                case 1:
-                    in = new InflaterInputStream(in);
-                    break;
-                case 2:
-                    in = new GZIPInputStream(in);
-                    break;
-                case 3:
-                    in = new LZFInputStream(in);
-                    break;
-                case 4:
-                    in = new SnappyInputStream(in);
-                    break;
-            }
+            in = parent.pageCodecs.decoder(codecId).decode(in);
             DataInputStream dis = null;
             switch (pageType) {
                 case 0:
@@ -352,7 +343,11 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
                     dis = new DataInputStream(in);
                     break;
             }
-            decodeKeysAndValues(encodeType, in, dis, hasEstimates);
+            if (offHeap && dis != null) {
+                decodeKeysAndDirectValues(encodeType, in, dis, hasEstimates);
+            } else {
+                decodeKeysAndValues(encodeType, in, dis, hasEstimates);
+            }
             in.close();
         } catch (Exception ex) {
             throw Throwables.propagate(ex);
@@ -370,6 +365,7 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
      */
     private void decodeKeysAndValues(PageEncodeType encodeType, InputStream in,
                                      DataInputStream dis, boolean hasEstimates) throws IOException {
+        releaseDirect();
         K firstKey;
         byte[] nextFirstKeyBytes;
         int readEstimateTotal;
@@ -409,6 +405,111 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
         updateMemoryEstimate();
     }
 
+    /**
+     * Variant of {@link #decodeKeysAndValues(PageEncodeType, InputStream, DataInputStream, boolean)}
+     * that transfers the encoded values into a pooled direct buffer instead of
+     * allocating a byte array per value on the heap. Only the varint based
+     * encodings are supported.
+     */
+    private void decodeKeysAndDirectValues(PageEncodeType encodeType, InputStream in,
+                                           DataInputStream dis, boolean hasEstimates) throws IOException {
+        releaseDirect();
+        int entries = encodeType.readInt(in, dis);
+
+        K firstKey = keyCoder.keyDecode(encodeType.readBytes(in, dis));
+        nextFirstKey = keyCoder.keyDecode(encodeType.nextFirstKey(in, dis));
+        assert (this.firstKey.equals(firstKey));
+
+        size = entries;
+        keys = new ArrayList<>(size);
+        values = new ArrayList<>(size);
+        rawValues = new ArrayList<>(size);
+
+        ByteBuf direct = PooledByteBufAllocator.DEFAULT.directBuffer();
+        int[] offsets = new int[entries + 1];
+        int keyBytes = 0;
+        try {
+            for (int i = 0; i < entries; i++) {
+                byte[] kb = encodeType.readBytes(in, dis);
+                keyBytes += kb.length;
+                keys.add(keyCoder.keyDecode(kb, firstKey, encodeType));
+                values.add(null);
+                rawValues.add(null);
+                offsets[i] = direct.writerIndex();
+                transfer(in, direct, Varint.readUnsignedVarInt(dis));
+            }
+            offsets[entries] = direct.writerIndex();
+        } catch (IOException | RuntimeException ex) {
+            direct.release();
+            throw ex;
+        }
+        if (entries > 0) {
+            directValues = direct;
+            directOffsets = offsets;
+            directKeyBytes = keyBytes;
+            parent.offHeapMemory.addAndGet(direct.capacity());
+        } else {
+            direct.release();
+        }
+
+        if (hasEstimates) {
+            setAverage(encodeType.readInt(in, dis), encodeType.readInt(in, dis));
+        } else {
+            setAverage((keyBytes + offsets[entries]) * estimateMissingFactor, entries);
+        }
+
+        updateMemoryEstimate();
+    }
+
+    private static void transfer(InputStream in, ByteBuf target, int length) throws IOException {
+        while (length > 0) {
+            int read = target.writeBytes(in, length);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            length -= read;
+        }
+    }
+
+    private byte[] directValue(int position) {
+        int offset = directOffsets[position];
+        byte[] result = new byte[directOffsets[position + 1] - offset];
+        directValues.getBytes(offset, result);
+        return result;
+    }
+
+    /**
+     * Copy the off-heap values back onto the heap and release the direct buffer.
+     * The parallel lists can only be modified once this has happened, so it is
+     * invoked by {@link #values()} and {@link #rawValues()}.
+     */
+    private void materializeDirect() {
+        if (directValues == null) {
+            return;
+        }
+        for (int i = 0; i < rawValues.size(); i++) {
+            if (rawValues.get(i) == null) {
+                rawValues.set(i, directValue(i));
+            }
+        }
+        releaseDirect();
+    }
+
+    private void releaseDirect() {
+        if (directValues != null) {
+            parent.offHeapMemory.addAndGet(-directValues.capacity());
+            directValues.release();
+            directValues = null;
+            directOffsets = null;
+            directKeyBytes = 0;
+        }
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return directValues != null;
+    }
+
     private int estimatedMem() {
         /**
          * We want to account for the three pointers that point
@@ -419,6 +520,11 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
          * (3 pointers * 4 bytes) = 12 bytes.
          */
 
+        if (directValues != null) {
+            // off-heap values are accounted for exactly, the decoded keys remain on the heap
+            return directValues.capacity() + (directKeyBytes * estimateMissingFactor) + (12 * size);
+        }
+
         int weightedAvg = avgEntrySize + 12;
 
         return (weightedAvg * size);
@@ -495,16 +601,37 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
 
     /**
      * Given a integer position if {@link #values} is storing a null entry
-     * and {@link #rawValues} is storing the representation of a
-     * non-null entry then populate {@link #values} with the decoded
-     * result of {@link #rawValues}.
+     * and {@link #rawValues} or the off-heap buffer is storing the representation
+     * of a non-null entry then populate {@link #values} with the decoded
+     * result. Returns the value at the position.
      */
-    public void fetchValue(int position) {
+    public V fetchValue(int position) {
         V value = values.get(position);
-        byte[] rawValue = rawValues.get(position);
         if (value == null) {
-            values.set(position, keyCoder.valueDecode(rawValue, encodeType));
+            byte[] rawValue = rawValues.get(position);
+            if (rawValue == null && directValues != null) {
+                rawValue = directValue(position);
+            }
+            value = keyCoder.valueDecode(rawValue, encodeType);
+            values.set(position, value);
         }
+        return value;
+    }
+
+    @Override
+    public boolean hasValue(int position) {
+        return values.get(position) != null || rawValues.get(position) != null || directValues != null;
+    }
+
+    @Override
+    public void release() {
+        releaseDirect();
+        keys.clear();
+        values.clear();
+        rawValues.clear();
+        keys = null;
+        values = null;
+        rawValues = null;
     }
 
     public boolean splitCondition() {
@@ -579,16 +706,19 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
 
     @Override
     public void setKeys(ArrayList<K> keys) {
+        materializeDirect();
         this.keys = keys;
     }
 
     @Override
     public void setValues(ArrayList<V> values) {
+        materializeDirect();
         this.values = values;
     }
 
     @Override
     public void setRawValues(ArrayList<byte[]> rawValues) {
+        materializeDirect();
         this.rawValues = rawValues;
     }
 
@@ -624,11 +754,13 @@ public abstract class AbstractPage<K, V extends BytesCodable> implements Page<K,
 
     @Override
     public ArrayList<V> values() {
+        materializeDirect();
         return values;
     }
 
     @Override
     public ArrayList<byte[]> rawValues() {
+        materializeDirect();
         return rawValues;
     }
 
@@ -1,8 +1,10 @@
 package com.addthis.hydra.store.common;
 
+import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.MemoryCounter;
 import com.addthis.basis.util.Parameter;
 import com.addthis.codec.codables.BytesCodable;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.KeyCoder;
 import com.addthis.hydra.store.kv.PageEncodeType;
@@ -24,9 +26,8 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -51,6 +52,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     public static final int defaultMaxPageEntries = Parameter.intValue("eps.cache.page.entries", 50);
     public static final int expirationDelta = Parameter.intValue("cache.expire.delta", 1000);
     public static final boolean trackEncodingByteUsage = Parameter.boolValue("eps.cache.track.encoding", false);
+    public static final boolean defaultOffHeapPages = Parameter.boolValue("eps.cache.offheap", false);
 
     public final AtomicLong memoryEstimate = new AtomicLong();
     public final KeyCoder<K, V> keyCoder;
@@ -62,8 +64,21 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     public final AtomicLong numPagesDecoded = new AtomicLong();
     public final AtomicLong numPagesSplit = new AtomicLong();
 
+    /**
+     * Exact number of bytes held in pooled direct buffers by pages
+     * that were decoded off-heap. Included in {@link #memoryEstimate}.
+     */
+    public final AtomicLong offHeapMemory = new AtomicLong();
+
+    /**
+     * Pages that were located in memory and pages that had to be read
+     * from the external store.
+     */
+    public final AtomicLong pageHits = new AtomicLong();
+    public final AtomicLong pageMisses = new AtomicLong();
+
     private final ConcurrentSkipListMap<K, Page<K, V>> cache;
-    private final BlockingQueue<Page<K, V>> evictionQueue;
+    private final PageEvictionPolicy<K, V> evictionQueue;
 
     protected final ByteStore externalStore;
 
@@ -76,6 +91,8 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
 
     public final PageFactory<K, V> pageFactory;
 
+    public final PageCodecs pageCodecs;
+
     public final PageCacheMetrics<K, V> metrics = new PageCacheMetrics<>(this);
 
     public final AtomicLong estimateCounter = new AtomicLong();
@@ -91,6 +108,13 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     public static final int shouldEvictDelta = Parameter.intValue("eps.cache.evict.delta", 20);
     public static final int fixedNumberEvictions = Parameter.intValue("cache.batch.evictions", 100);
 
+    /**
+     * Pages that were accessed within this many nanoseconds are skipped
+     * by the first pass over the eviction queue.
+     */
+    public static final long evictRecentNanos = Parameter.longValue("eps.cache.evict.recent",
+                                                                    TimeUnit.MILLISECONDS.toNanos(10));
+
     public final Comparator comparator;
 
     private static long globalMaxTotalMem;
@@ -106,6 +130,8 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     private int estimateInterval;
     private int maxPageSize;
     private int maxPages;
+    private boolean offHeapPages = defaultOffHeapPages;
+    private int prefetchDepth = PageReadAhead.defaultDepth;
 
     @SuppressWarnings("unchecked")
     protected static <K> int binarySearch(ArrayList<K> arrayList, K key, Comparator comparator) {
@@ -133,7 +159,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         return cache;
     }
 
-    public BlockingQueue<Page<K, V>> getEvictionQueue() {
+    public PageEvictionPolicy<K, V> getEvictionQueue() {
         return evictionQueue;
     }
 
@@ -184,6 +210,20 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     public AbstractPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore,
                              PageFactory<K, V> pageFactory, int maxPageSize, int maxPages,
                              boolean useLocks) {
+        this(keyCoder, externalStore, pageFactory, PageCodecs.DEFAULT, maxPageSize, maxPages, useLocks);
+    }
+
+    public AbstractPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore,
+                             PageFactory<K, V> pageFactory, PageCodecs pageCodecs,
+                             int maxPageSize, int maxPages, boolean useLocks) {
+        this(keyCoder, externalStore, pageFactory, pageCodecs, EvictionPolicyType.defaultType(),
+             maxPageSize, maxPages, useLocks);
+    }
+
+    public AbstractPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore,
+                             PageFactory<K, V> pageFactory, PageCodecs pageCodecs,
+                             EvictionPolicyType evictionPolicy,
+                             int maxPageSize, int maxPages, boolean useLocks) {
         if (externalStore == null) {
             throw new NullPointerException("externalStore must be non-null");
         }
@@ -191,6 +231,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         scope = this.getClass().getSimpleName() + Integer.toString(scopeGenerator.getAndIncrement());
         this.mem_page = (int) MemoryCounter.estimateSize(pageFactory.measureMemoryEmptyPage(PageEncodeType.defaultType()));
         this.pageFactory = pageFactory;
+        this.pageCodecs = pageCodecs;
 
         this.negInf = keyCoder.negInfinity();
         this.cache = new ConcurrentSkipListMap<>();
@@ -198,10 +239,10 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         this.maxPageSize = maxPageSize;
         this.maxPages = maxPages;
         this.shutdownGuard = new AtomicBoolean(false);
-        this.evictionQueue = new LinkedBlockingQueue<>();
+        this.evictionQueue = evictionPolicy.create();
         this.comparator = null;
-        // if we are using locks then we will have eviction threads that need to be shutdown
-        this.shutdownEvictionThreads = new AtomicBoolean(useLocks);
+        // set to true when the background eviction threads (if any) should stop
+        this.shutdownEvictionThreads = new AtomicBoolean(false);
         this.useLocks = useLocks;
         loadFromExternalStore();
 
@@ -253,6 +294,16 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         this.estimateInterval = interval;
     }
 
+    @Override
+    public void setOffHeapPages(boolean offHeapPages) {
+        this.offHeapPages = offHeapPages;
+    }
+
+    @Override
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * Close the external store.
      *
@@ -320,6 +371,25 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     }
 
 
+    /**
+     * Returns the number of pages that can be evicted before {@link #shouldEvictPage()}
+     * is expected to become false. When the cache is bounded by memory this is only
+     * an upper bound.
+     */
+    public int evictablePages() {
+        int numPages = getNumPagesInMemory();
+
+        if (maxTotalMem > 0) {
+            return Math.max(numPages - 5, 0);
+        } else if (maxPages > 0) {
+            return Math.max(numPages - Math.max(maxPages - shouldEvictDelta, 5), 0);
+        } else if (!overrideDefaultMaxPages) {
+            return Math.max(numPages - Math.max(defaultMaxPages - shouldEvictDelta, 5), 0);
+        } else {
+            return numPages;
+        }
+    }
+
     public boolean mustEvictPage() {
         int numPages = getNumPagesInMemory();
 
@@ -352,13 +422,17 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
             current.setState(ExternalMode.DISK_MEMORY_IDENTICAL);
         }
 
+        releasePage(current);
+    }
+
+    /**
+     * Discard the in-memory contents of a page. The caller is responsible
+     * for ensuring that the external store holds the current version of the page.
+     */
+    protected void releasePage(Page<K, V> current) {
+        assert (!useLocks || current.isWriteLockedByCurrentThread());
         updateMemoryEstimate(-current.getMemoryEstimate());
-        current.keys().clear();
-        current.values().clear();
-        current.rawValues().clear();
-        current.setKeys(null);
-        current.setValues(null);
-        current.setRawValues(null);
+        current.release();
         numPagesInMemory.getAndDecrement();
     }
 
@@ -369,7 +443,8 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
 
     protected void pullPageHelper(Page<K, V> current, byte[] page) {
         assert (!useLocks || current.isWriteLockedByCurrentThread());
-        current.decode(page);
+        current.decode(page, offHeapPages);
+        pageMisses.getAndIncrement();
         getEvictionQueue().offer(current);
         updateMemoryEstimate(current.getMemoryEstimate());
         numPagesInMemory.getAndIncrement();
@@ -483,7 +558,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
      */
     protected boolean doEvictPage(ByteBufOutputStream byteStream) {
         long referenceTime = generateTimestamp();
-        int timeout = 10;
+        long timeout = evictRecentNanos;
 
         Page<K, V> current = getEvictionQueue().poll();
 
@@ -820,8 +895,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
             }
             int offset = binarySearch(page.keys(), key, comparator);
             if (offset >= 0) {
-                page.fetchValue(offset);
-                return page.values().get(offset);
+                return page.fetchValue(offset);
             } else {
                 return null;
             }
@@ -881,6 +955,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         while (current.inTransientState());
 
         boolean pageLoad = false;
+        boolean resident = true;
 
         while (true) {
             assert (!current.inTransientState());
@@ -890,6 +965,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
             assert (ckey.compareTo(currentFirstKey) >= 0);
 
             if (current.keys() == null) {
+                resident = false;
                 pullPageFromDisk(current, currentMode);
                 // If currentMode is LockMode.READMODE then the lock was dropped and re-acquired.
                 // We could be in a transient state.
@@ -912,6 +988,10 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
                 }
                 if (returnPage) {
                     current.setTimeStamp(generateTimestamp());
+                    if (resident) {
+                        pageHits.getAndIncrement();
+                    }
+                    getEvictionQueue().recordAccess(current);
 
                     if (useLocks && (currentMode == LockMode.WRITEMODE && returnMode == LockMode.READMODE)) {
                         current.downgradeLock();
@@ -925,6 +1005,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
              * The key was not found in a page on memory.
              * We must load a page from external storage.
              */
+            resident = false;
             if (!current.inTransientState() && (!useLocks || currentMode == LockMode.WRITEMODE)) {
                 current = loadPage(key, current);
             } else {
@@ -1053,7 +1134,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
     protected Page<K, V> constructNewPage(Page<K, V> current, Page<K, V> next,
                                           K externalKey, byte[] floorPageEncoded, boolean lock) {
         Page<K, V> newPage = pageFactory.generateEmptyPage(this, externalKey, null);
-        newPage.decode(floorPageEncoded);
+        newPage.decode(floorPageEncoded, offHeapPages);
         if (lock) {
             newPage.writeLock();
         }
@@ -1070,6 +1151,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         updateMemoryEstimate(newPage.getMemoryEstimate());
         cacheSize.getAndIncrement();
         numPagesInMemory.getAndIncrement();
+        pageMisses.getAndIncrement();
         getEvictionQueue().offer(newPage);
         return newPage;
     }
@@ -1364,7 +1446,21 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
 
     }
 
-    private class PageCacheIterator implements Iterator<Map.Entry<K, V>> {
+    /**
+     * Load the page with the given encoded first key into the cache
+     * if it is not already in memory. Used by {@link PageReadAhead}.
+     */
+    private void prefetchPage(byte[] encodedKey) {
+        if (shutdownGuard.get()) {
+            return;
+        }
+        Page<K, V> prefetched = locatePage(keyCoder.keyDecode(encodedKey), LockMode.READMODE, true);
+        if (prefetched != null) {
+            prefetched.readUnlock();
+        }
+    }
+
+    private class PageCacheIterator implements ClosableIterator<Map.Entry<K, V>> {
 
         Page<K, V> page;
         int position;
@@ -1372,12 +1468,21 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
         K prevKey;
         K nextKey;
         V nextValue;
+        final PageReadAhead readAhead;
 
         PageCacheIterator(K from) {
             this.page = locatePage(from, LockMode.READMODE);
             this.prevKey = null;
             this.stamp = -1;
 
+            // read-ahead loads pages from a background thread which requires page locks
+            if (useLocks && prefetchDepth > 0) {
+                readAhead = new PageReadAhead(externalStore, prefetchDepth, AbstractPageCache.this::prefetchPage);
+                readAhead.onPage(keyCoder.keyEncode(page.getFirstKey()));
+            } else {
+                readAhead = null;
+            }
+
             nextHelper(from, true, false);
 
         }
@@ -1409,6 +1514,13 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
             }
         }
 
+        @Override
+        public void close() {
+            if (readAhead != null) {
+                readAhead.close();
+            }
+        }
+
         private void nextHelper(K target, boolean inclusive, boolean acquireLock) {
             if (useLocks && acquireLock) {
                 page.readLock();
@@ -1443,8 +1555,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
                     position++;
                 }
 
-                while (position < page.size() && page.values().get(position) == null
-                        && nullRawValue(page.rawValues().get(position))) {
+                while (position < page.size() && !page.hasValue(position)) {
                     position++;
                 }
 
@@ -1453,10 +1564,8 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
                     return;
                 }
 
-                page.fetchValue(position);
-
                 nextKey = page.keys().get(position);
-                nextValue = page.values().get(position);
+                nextValue = page.fetchValue(position);
             } finally {
                 unlockAndNull(page, LockMode.READMODE);
             }
@@ -1479,6 +1588,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
                 if (higherKeyEncoded == null) {
                     nextKey = null;
                     nextValue = null;
+                    close();
                     return false;
                 }
 
@@ -1502,6 +1612,10 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
 
                 page = higherPage;
 
+                if (readAhead != null) {
+                    readAhead.onPage(higherKeyEncoded);
+                }
+
                 assert (page.keys() != null);
 
                 position = binarySearch(page.keys(), targetKey, comparator);
@@ -1512,8 +1626,7 @@ public abstract class AbstractPageCache<K, V extends BytesCodable> implements Pa
                     position = position + 1;
                 }
 
-                while (position < page.size() && page.values().get(position) == null
-                        && nullRawValue(page.rawValues().get(position))) {
+                while (position < page.size() && !page.hasValue(position)) {
                     position++;
                 }
 
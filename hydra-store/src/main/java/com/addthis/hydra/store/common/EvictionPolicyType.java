@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import com.addthis.basis.util.Parameter;
+import com.addthis.codec.codables.BytesCodable;
+
+/**
+ * The eviction policies that can be selected for a page cache.
+ */
+public enum EvictionPolicyType {
+
+    /**
+     * Evict pages in the order they were loaded. See {@link FifoEvictionPolicy}.
+     */
+    FIFO {
+        @Override
+        public <K, V extends BytesCodable> PageEvictionPolicy<K, V> create() {
+            return new FifoEvictionPolicy<>();
+        }
+    },
+
+    /**
+     * Segmented LRU with a frequency based admission filter. See {@link TinyLfuEvictionPolicy}.
+     */
+    TINYLFU {
+        @Override
+        public <K, V extends BytesCodable> PageEvictionPolicy<K, V> create() {
+            return new TinyLfuEvictionPolicy<>();
+        }
+    };
+
+    private static final String defaultPolicy = Parameter.value("eps.cache.eviction.policy", "fifo");
+
+    public abstract <K, V extends BytesCodable> PageEvictionPolicy<K, V> create();
+
+    /**
+     * Returns the policy selected with {@code eps.cache.eviction.policy}.
+     */
+    public static EvictionPolicyType defaultType() {
+        return forName(defaultPolicy);
+    }
+
+    /**
+     * Returns the policy with the given case insensitive name,
+     * or the default policy if the name is null.
+     */
+    public static EvictionPolicyType forName(String name) {
+        if (name == null) {
+            return defaultType();
+        }
+        return valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.addthis.codec.codables.BytesCodable;
+
+/**
+ * Evicts pages in the order in which they were loaded into memory.
+ * This is the historical behavior of the page cache.
+ */
+public class FifoEvictionPolicy<K, V extends BytesCodable> implements PageEvictionPolicy<K, V> {
+
+    private final BlockingQueue<Page<K, V>> queue = new LinkedBlockingQueue<>();
+
+    @Override
+    public boolean offer(Page<K, V> page) {
+        return queue.offer(page);
+    }
+
+    @Override
+    public Page<K, V> poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public void recordAccess(Page<K, V> page) {
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public long admitted() {
+        return 0;
+    }
+
+    @Override
+    public long rejected() {
+        return 0;
+    }
+
+    @Override
+    public Iterator<Page<K, V>> iterator() {
+        return queue.iterator();
+    }
+}
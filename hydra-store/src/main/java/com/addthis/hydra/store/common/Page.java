@@ -16,13 +16,21 @@ public interface Page<K, V extends BytesCodable> {
 
     void decode(byte[] page);
 
+    void decode(byte[] page, boolean offHeap);
+
+    boolean isOffHeap();
+
+    void release();
+
     int getMemoryEstimate();
 
     void updateMemoryEstimate();
 
     boolean interval(Comparable<? super K> ckey);
 
-    void fetchValue(int position);
+    V fetchValue(int position);
+
+    boolean hasValue(int position);
 
     boolean splitCondition();
 
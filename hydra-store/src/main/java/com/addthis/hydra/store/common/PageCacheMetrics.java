@@ -34,6 +34,14 @@ public class PageCacheMetrics<K, V extends BytesCodable> {
 
     @SuppressWarnings("unused")
     public final Gauge<Long> pagesDeletedGauge;
+    public final Gauge<Long> offHeapMemoryGauge;
+
+    public final Gauge<Long> pageHitsGauge;
+    public final Gauge<Long> pageMissesGauge;
+
+    // candidate pages admitted or rejected by the eviction policy
+    public final Gauge<Long> admissionAcceptedGauge;
+    public final Gauge<Long> admissionRejectedGauge;
 
     public final Histogram encodeFirstKeySize;
 
@@ -87,6 +95,51 @@ public class PageCacheMetrics<K, V extends BytesCodable> {
                     }
                 });
 
+        offHeapMemoryGauge = Metrics.newGauge(cache.getClass(),
+                "offHeapMemory", parent.scope,
+                new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        return parent.offHeapMemory.get();
+                    }
+                });
+
+        pageHitsGauge = Metrics.newGauge(cache.getClass(),
+                "pageHits", parent.scope,
+                new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        return parent.pageHits.get();
+                    }
+                });
+
+        pageMissesGauge = Metrics.newGauge(cache.getClass(),
+                "pageMisses", parent.scope,
+                new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        return parent.pageMisses.get();
+                    }
+                });
+
+        admissionAcceptedGauge = Metrics.newGauge(cache.getClass(),
+                "admissionAccepted", parent.scope,
+                new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        return parent.getEvictionQueue().admitted();
+                    }
+                });
+
+        admissionRejectedGauge = Metrics.newGauge(cache.getClass(),
+                "admissionRejected", parent.scope,
+                new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        return parent.getEvictionQueue().rejected();
+                    }
+                });
+
         encodeFirstKeySize = NonConcurrentPageCache.trackEncodingByteUsage ?
                 Metrics.newHistogram(cache.getClass(), "encodeFirstKeySize", parent.scope) :
                              null;
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import com.addthis.codec.codables.BytesCodable;
+
+/**
+ * Orders the in-memory pages of a page cache for eviction. Pages are
+ * offered to the policy when they are loaded into memory and polled by the
+ * cache when it needs to evict a page. A page that could not be evicted is
+ * offered again. The cache determines how many pages are evicted, the policy
+ * only determines which pages are evicted first.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface PageEvictionPolicy<K, V extends BytesCodable> extends Iterable<Page<K, V>> {
+
+    /**
+     * Track a page that has been loaded into memory or that
+     * could not be evicted after it was returned by {@link #poll()}.
+     */
+    public boolean offer(Page<K, V> page);
+
+    /**
+     * Remove and return the next page to evict, or null if no pages are tracked.
+     */
+    public Page<K, V> poll();
+
+    /**
+     * Record an access to a page. May be called concurrently from
+     * many threads and must not block.
+     */
+    public void recordAccess(Page<K, V> page);
+
+    public int size();
+
+    /**
+     * Number of candidate pages that were admitted into the main region.
+     */
+    public long admitted();
+
+    /**
+     * Number of candidate pages that were rejected by the admission filter.
+     */
+    public long rejected();
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.hydra.store.kv.ByteStore;
+import com.addthis.hydra.store.util.NamedThreadFactory;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead for a single range iterator over a paged store. The iterator
+ * reports every page that it moves onto with {@link #onPage(byte[])}. Once
+ * {@code eps.prefetch.threshold} consecutive pages have been visited in ascending
+ * order the following pages are located with {@link ByteStore#higherKey(byte[])}
+ * and handed to the loader on a shared background pool, keeping at most
+ * {@code depth} pages ahead of the iterator.
+ * <p/>
+ * Instances are not thread safe with respect to {@link #onPage(byte[])}, which
+ * must only be called by the thread that owns the iterator. The iterator must
+ * call {@link #close()} when it is exhausted or abandoned.
+ */
+public class PageReadAhead {
+
+    private static final Logger log = LoggerFactory.getLogger(PageReadAhead.class);
+
+    /**
+     * Maximum number of pages to load ahead of an iterator. Zero disables read-ahead.
+     */
+    public static final int defaultDepth = Parameter.intValue("eps.prefetch.depth", 0);
+
+    /**
+     * Number of consecutive ascending pages that must be visited before read-ahead begins.
+     */
+    private static final int threshold = Parameter.intValue("eps.prefetch.threshold", 2);
+
+    private static final int numThreads = Parameter.intValue("eps.prefetch.threads", 4);
+
+    private static final ExecutorService prefetchThreadPool = Executors.newFixedThreadPool(numThreads,
+            new NamedThreadFactory("page-prefetch-", true));
+
+    private static final Comparator<byte[]> comparator = UnsignedBytes.lexicographicalComparator();
+
+    /**
+     * Pages that were loaded before the iterator reached them.
+     */
+    static final Counter prefetchHits = Metrics.newCounter(PageReadAhead.class, "prefetchHits");
+
+    /**
+     * Pages that had been requested but were still loading when the iterator reached them.
+     */
+    static final Counter prefetchLate = Metrics.newCounter(PageReadAhead.class, "prefetchLate");
+
+    /**
+     * Pages of a sequential scan that were not requested ahead of the iterator.
+     */
+    static final Counter prefetchMisses = Metrics.newCounter(PageReadAhead.class, "prefetchMisses");
+
+    /**
+     * Pages that were loaded ahead of an iterator.
+     */
+    static final Counter prefetchLoads = Metrics.newCounter(PageReadAhead.class, "prefetchLoads");
+
+    static {
+        Metrics.newGauge(PageReadAhead.class, "prefetchHitRate", new Gauge<Double>() {
+            @Override
+            public Double value() {
+                long hits = prefetchHits.count();
+                long total = hits + prefetchLate.count() + prefetchMisses.count();
+                return (total == 0) ? 0.0 : ((double) hits) / total;
+            }
+        });
+    }
+
+    private final ByteStore store;
+
+    private final Consumer<byte[]> loader;
+
+    private final int depth;
+
+    /**
+     * Pages that have been located ahead of the iterator. The value
+     * is true once the page has been loaded.
+     */
+    private final ConcurrentSkipListMap<byte[], Boolean> pending = new ConcurrentSkipListMap<>(comparator);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * Greatest page key that has been located by the read-ahead or visited by the iterator.
+     * The read-ahead task only moves the frontier with a compare-and-set so that it never
+     * overwrites a position that the iterator has published in the meantime.
+     */
+    private final AtomicReference<byte[]> frontier = new AtomicReference<>();
+
+    private byte[] lastPage;
+
+    private int sequential;
+
+    /**
+     * @param store  external store that is used to locate the next pages
+     * @param depth  maximum number of pages to load ahead of the iterator
+     * @param loader loads the page with the given encoded key into the cache
+     */
+    public PageReadAhead(ByteStore store, int depth, Consumer<byte[]> loader) {
+        this.store = store;
+        this.depth = depth;
+        this.loader = loader;
+    }
+
+    /**
+     * Notify the read-ahead that the iterator has moved onto the page with the given encoded key.
+     */
+    public void onPage(byte[] pageKey) {
+        if (closed || pageKey == null) {
+            return;
+        }
+        Boolean loaded = pending.remove(pageKey);
+        if (loaded == null) {
+            if (sequential >= threshold) {
+                prefetchMisses.inc();
+            }
+        } else if (loaded) {
+            prefetchHits.inc();
+        } else {
+            prefetchLate.inc();
+        }
+        if (lastPage != null && comparator.compare(pageKey, lastPage) > 0) {
+            sequential++;
+            advanceFrontier(pageKey);
+        } else {
+            // publish the new position before discarding the pages located from the old one
+            sequential = 0;
+            frontier.set(pageKey);
+            pending.clear();
+        }
+        lastPage = pageKey;
+
+        // discard pages that the iterator skipped over
+        pending.headMap(pageKey).clear();
+        if (sequential >= threshold && pending.size() < depth) {
+            schedule();
+        }
+    }
+
+    /**
+     * Move the frontier forward to the page of the iterator unless
+     * the read-ahead has already located pages beyond it.
+     */
+    private void advanceFrontier(byte[] pageKey) {
+        while (true) {
+            byte[] current = frontier.get();
+            if ((current != null && comparator.compare(pageKey, current) <= 0) ||
+                frontier.compareAndSet(current, pageKey)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop loading pages for this iterator. Pages that are being loaded are not interrupted.
+     * Safe to call more than once.
+     */
+    public void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    private void schedule() {
+        if (running.compareAndSet(false, true)) {
+            try {
+                prefetchThreadPool.execute(this::readAhead);
+            } catch (RejectedExecutionException ex) {
+                running.set(false);
+            }
+        }
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed && pending.size() < depth) {
+                byte[] start = frontier.get();
+                byte[] next = store.higherKey(start);
+                if (next == null) {
+                    return;
+                }
+                if (!frontier.compareAndSet(start, next)) {
+                    // the iterator has moved, continue from its position
+                    continue;
+                }
+                pending.put(next, Boolean.FALSE);
+                if (closed || frontier.get() != next) {
+                    // the iterator has moved or closed and may have discarded
+                    // the pending pages before this page was added
+                    pending.remove(next);
+                    continue;
+                }
+                loader.accept(next);
+                prefetchLoads.inc();
+                pending.replace(next, Boolean.FALSE, Boolean.TRUE);
+            }
+        } catch (Exception ex) {
+            log.warn("Page read-ahead failed", ex);
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.codec.codables.BytesCodable;
+
+import com.google.common.base.Objects;
+
+/**
+ * Window TinyLFU eviction policy. New pages enter a small LRU admission
+ * window. When the window is full its least recently used page is compared
+ * against the next victim of the main region using the approximate access
+ * frequency from a {@link FrequencySketch}, and only the more popular of the
+ * two is retained. The main region is a segmented LRU: pages that are accessed
+ * while on probation are promoted to the protected segment.
+ * <p/>
+ * A long range scan therefore flows through the window without displacing the
+ * frequently used pages of the tree, which is the failure mode of the default
+ * {@link FifoEvictionPolicy}.
+ * <p/>
+ * Accesses are recorded into a lossy buffer and applied when pages are offered
+ * or polled, so that readers never contend on the policy lock.
+ */
+public class TinyLfuEvictionPolicy<K, V extends BytesCodable> implements PageEvictionPolicy<K, V> {
+
+    /**
+     * Percentage of the tracked pages that are held in the admission window.
+     */
+    private static final int windowPercent = Parameter.intValue("eps.cache.tinylfu.window", 1);
+
+    /**
+     * Percentage of the main region that is held in the protected segment.
+     */
+    private static final int protectedPercent = Parameter.intValue("eps.cache.tinylfu.protected", 80);
+
+    /**
+     * Number of distinct pages the frequency sketch is sized for.
+     */
+    private static final int sketchSize = Parameter.intValue("eps.cache.tinylfu.size", 65536);
+
+    private static final int accessBufferSize = Parameter.intValue("eps.cache.tinylfu.buffer", 4096);
+
+    private final LinkedHashSet<Page<K, V>> window = new LinkedHashSet<>();
+
+    private final LinkedHashSet<Page<K, V>> probation = new LinkedHashSet<>();
+
+    private final LinkedHashSet<Page<K, V>> protectedSegment = new LinkedHashSet<>();
+
+    private final FrequencySketch sketch;
+
+    private final ConcurrentLinkedQueue<Page<K, V>> accessBuffer = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger accessBufferCount = new AtomicInteger();
+
+    /**
+     * Set once the cache has requested its first victim. Until then
+     * every page is admitted into the main region.
+     */
+    private boolean filled;
+
+    private long admitted;
+
+    private long rejected;
+
+    public TinyLfuEvictionPolicy() {
+        this(sketchSize);
+    }
+
+    TinyLfuEvictionPolicy(int sketchSize) {
+        this.sketch = new FrequencySketch(sketchSize);
+    }
+
+    @Override
+    public synchronized boolean offer(Page<K, V> page) {
+        drainAccessBuffer();
+        if (probation.contains(page) || protectedSegment.contains(page)) {
+            return true;
+        }
+        window.remove(page);
+        window.add(page);
+        sketch.increment(page);
+        if (!filled) {
+            int maxWindow = maxWindow();
+            while (window.size() > maxWindow) {
+                Page<K, V> overflow = first(window);
+                window.remove(overflow);
+                probation.add(overflow);
+            }
+        }
+        return true;
+    }
+
+    private int maxWindow() {
+        int total = window.size() + probation.size() + protectedSegment.size();
+        return Math.max(1, (int) (((long) total) * windowPercent / 100));
+    }
+
+    @Override
+    public synchronized Page<K, V> poll() {
+        drainAccessBuffer();
+        filled = true;
+        int maxWindow = maxWindow();
+        while (!window.isEmpty() && window.size() >= maxWindow) {
+            Page<K, V> candidate = first(window);
+            Page<K, V> victim = first(probation.isEmpty() ? protectedSegment : probation);
+            if (victim == null) {
+                window.remove(candidate);
+                probation.add(candidate);
+                continue;
+            }
+            if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+                admitted++;
+                window.remove(candidate);
+                probation.add(candidate);
+                if (!probation.remove(victim)) {
+                    protectedSegment.remove(victim);
+                }
+                return victim;
+            } else {
+                rejected++;
+                window.remove(candidate);
+                return candidate;
+            }
+        }
+        Page<K, V> victim = first(probation);
+        if (victim == null) {
+            victim = first(window);
+        }
+        if (victim == null) {
+            victim = first(protectedSegment);
+        }
+        if (victim != null) {
+            window.remove(victim);
+            probation.remove(victim);
+            protectedSegment.remove(victim);
+        }
+        return victim;
+    }
+
+    @Override
+    public void recordAccess(Page<K, V> page) {
+        if (accessBufferCount.incrementAndGet() > accessBufferSize) {
+            accessBufferCount.decrementAndGet();
+            return;
+        }
+        accessBuffer.offer(page);
+    }
+
+    private void drainAccessBuffer() {
+        Page<K, V> page;
+        while ((page = accessBuffer.poll()) != null) {
+            accessBufferCount.decrementAndGet();
+            onAccess(page);
+        }
+    }
+
+    private void onAccess(Page<K, V> page) {
+        sketch.increment(page);
+        if (window.remove(page)) {
+            window.add(page);
+        } else if (probation.remove(page)) {
+            protectedSegment.add(page);
+            int maxProtected = (int) (((long) (probation.size() + protectedSegment.size())) * protectedPercent / 100);
+            while (protectedSegment.size() > Math.max(1, maxProtected)) {
+                Page<K, V> demoted = first(protectedSegment);
+                protectedSegment.remove(demoted);
+                probation.add(demoted);
+            }
+        } else if (protectedSegment.remove(page)) {
+            protectedSegment.add(page);
+        }
+    }
+
+    private static <T> T first(LinkedHashSet<T> set) {
+        Iterator<T> iterator = set.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    @Override
+    public synchronized long admitted() {
+        return admitted;
+    }
+
+    @Override
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns a snapshot of the tracked pages.
+     */
+    @Override
+    public synchronized Iterator<Page<K, V>> iterator() {
+        List<Page<K, V>> snapshot = new ArrayList<>(size());
+        snapshot.addAll(window);
+        snapshot.addAll(probation);
+        snapshot.addAll(protectedSegment);
+        return snapshot.iterator();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this)
+                      .add("window", window.size())
+                      .add("probation", probation.size())
+                      .add("protected", protectedSegment.size())
+                      .add("admitted", admitted)
+                      .add("rejected", rejected)
+                      .toString();
+    }
+}
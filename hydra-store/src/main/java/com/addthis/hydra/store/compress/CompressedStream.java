@@ -40,24 +40,44 @@ public class CompressedStream {
 
     private static final int BUFFER_SIZE = 4096;
 
+    /**
+     * Wraps the input with the decompressor selected by the suffix of {@code name}.
+     * Gzip, bzip2 and xz inputs are decompressed in parallel when
+     * {@code hydra.decompress.parallel.threads} is greater than zero.
+     */
     public static @Nonnull InputStream decompressInputStream(@Nonnull InputStream in,
                                                              @Nonnull String name) throws IOException {
-        if (name.endsWith(CompressionType.GZIP.suffix)) {
-            in = new GZIPInputStreamX(in, BUFFER_SIZE);
-        } else if (name.endsWith(CompressionType.LZF.suffix)) {
-            in = new LZFInputStream(in);
-        } else if (name.endsWith(CompressionType.SNAPPY.suffix)) {
-            in = new SnappyInputStream(in);
-        } else if (name.endsWith(CompressionType.BZIP2.suffix)) {
-            in = new BZip2CompressorInputStream(in, true);
-        } else if (name.endsWith(CompressionType.LZMA.suffix)) {
-            in = new LZMAInputStream(in);
-        } else if (name.endsWith(CompressionType.XZ.suffix)) {
-            in = new XZInputStream(in);
+        for (CompressionType type : CompressionType.values()) {
+            if (name.endsWith(type.suffix)) {
+                if ((ParallelDecompressingInputStream.THREADS > 0) && ParallelDecompressingInputStream.supports(type)) {
+                    return new ParallelDecompressingInputStream(in, type);
+                }
+                return decompressInputStream(in, type);
+            }
         }
         return in;
     }
 
+    public static @Nonnull InputStream decompressInputStream(@Nonnull InputStream in,
+                                                             @Nonnull CompressionType type) throws IOException {
+        switch (type) {
+            case GZIP:
+                return new GZIPInputStreamX(in, BUFFER_SIZE);
+            case LZF:
+                return new LZFInputStream(in);
+            case SNAPPY:
+                return new SnappyInputStream(in);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            case LZMA:
+                return new LZMAInputStream(in);
+            case XZ:
+                return new XZInputStream(in);
+            default:
+                throw new IllegalStateException("Unknown compression type " + type);
+        }
+    }
+
     public static @Nonnull OutputStream compressOutputStream(@Nonnull OutputStream out,
                                                              @Nonnull CompressionType type) throws IOException {
         switch (type) {
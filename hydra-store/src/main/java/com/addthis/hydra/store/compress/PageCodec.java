@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Compression applied to the body of an encoded page. The first byte
+ * of every encoded page stores the codec {@link #id()} in its lower four bits
+ * so that pages written with different codecs can coexist in one store.
+ * <p/>
+ * Implementations must be thread safe. Codecs that need native or otherwise
+ * expensive contexts are expected to keep them per thread rather than
+ * allocating a fresh context for every page.
+ */
+public interface PageCodec {
+
+    /**
+     * Identifier written into the page header. Must be in the range [0, 15].
+     */
+    int id();
+
+    /**
+     * Compress the readable bytes of {@code source} and append the result to {@code target}.
+     * The reader index of {@code source} is advanced past the consumed bytes.
+     */
+    void encode(ByteBuf source, ByteBuf target) throws IOException;
+
+    /**
+     * Wrap an input stream that is positioned immediately after the page header
+     * byte and return a stream of the uncompressed page body.
+     */
+    InputStream decode(InputStream source) throws IOException;
+}
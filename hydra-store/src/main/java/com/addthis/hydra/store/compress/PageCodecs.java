@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.addthis.hydra.store.kv.ByteStore;
+
+import com.google.common.base.Objects;
+
+/**
+ * The set of page codecs available to a single page store. New pages are
+ * written with the {@link #encoder()} and existing pages are read with the
+ * codec that is identified in their header.
+ */
+public final class PageCodecs {
+
+    public static final PageCodecs DEFAULT = new PageCodecs(StandardPageCodec.defaultCodec(), null);
+
+    @Nonnull
+    private final PageCodec encoder;
+
+    @Nullable
+    private final ZstdDictionaryPageCodec dictionary;
+
+    public PageCodecs(@Nonnull PageCodec encoder, @Nullable ZstdDictionaryPageCodec dictionary) {
+        if (encoder.id() < 0 || encoder.id() > 0x0f) {
+            throw new IllegalArgumentException("page codec identifier must fit in four bits: " + encoder.id());
+        }
+        this.encoder = encoder;
+        this.dictionary = dictionary;
+    }
+
+    @Nonnull
+    public PageCodec encoder() {
+        return encoder;
+    }
+
+    @Nonnull
+    public PageCodec decoder(int id) {
+        if (id == encoder.id()) {
+            return encoder;
+        } else if (id == ZstdDictionaryPageCodec.ID) {
+            if (dictionary == null) {
+                throw new IllegalStateException("page was compressed with a dictionary that could not be loaded");
+            }
+            return dictionary;
+        } else {
+            return StandardPageCodec.fromId(id);
+        }
+    }
+
+    /**
+     * Returns the standard codec with the given case insensitive name,
+     * or the codec selected by {@code eps.gz.type} if the name is null.
+     */
+    @Nonnull
+    public static PageCodec forName(@Nullable String name) {
+        if (name == null) {
+            return StandardPageCodec.defaultCodec();
+        }
+        return StandardPageCodec.valueOf(name.toUpperCase());
+    }
+
+    /**
+     * Construct the codecs for the database in {@code dir}. Any dictionaries
+     * that exist in the directory are always loaded so that their pages can be
+     * decoded. If {@code useDictionary} is true and no dictionary exists yet then
+     * one is trained from the pages in {@code store}. When no dictionary is
+     * available the pages are written with the codec named {@code codecName}.
+     */
+    @Nonnull
+    public static PageCodecs open(@Nonnull File dir, @Nonnull ByteStore store,
+                                  @Nullable String codecName, boolean useDictionary) throws IOException {
+        ZstdDictionaryPageCodec dictionary = ZstdDictionaryPageCodec.load(dir);
+        if (useDictionary && dictionary == null && !store.isReadOnly()) {
+            dictionary = ZstdDictionaryPageCodec.train(dir, store);
+        }
+        PageCodec encoder = (useDictionary && dictionary != null) ? dictionary : forName(codecName);
+        return new PageCodecs(encoder, dictionary);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                      .add("encoder", encoder)
+                      .add("dictionary", dictionary != null ? dictionary.getGeneration() : null)
+                      .toString();
+    }
+}
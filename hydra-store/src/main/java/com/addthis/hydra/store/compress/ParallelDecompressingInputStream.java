@@ -0,0 +1,701 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.hydra.store.util.NamedThreadFactory;
+
+import com.google.common.io.ByteStreams;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Meter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses a stream that is a concatenation of independent gzip members,
+ * bzip2 streams or xz streams on a shared thread pool while returning the
+ * output in order. Such files are produced by appending compressed files to
+ * each other and by the parallel compressors (pigz --independent, pbzip2).
+ * <p/>
+ * The compressed input is cut into slices of at least {@code hydra.decompress.parallel.slice}
+ * bytes at offsets that look like the start of a member. A candidate offset can be
+ * a false positive, so each slice is decoded strictly: it must consist of complete
+ * members that end exactly at the end of the slice. When a slice fails it is merged
+ * once with the slice that follows it and decoded again. If no boundary can be found,
+ * or the merged slice still fails, the rest of the stream starting with the merged
+ * slice is handed to the ordinary sequential decompressor, which behaves exactly as
+ * it did without this class. The buffered compressed bytes are released as soon as
+ * the sequential decompressor has consumed them.
+ */
+public class ParallelDecompressingInputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelDecompressingInputStream.class);
+
+    /**
+     * Number of threads used to decompress slices. Zero disables parallel decompression.
+     */
+    static final int THREADS = Parameter.intValue("hydra.decompress.parallel.threads", 0);
+
+    /**
+     * Minimum size in bytes of the compressed slices that are decoded by one task.
+     */
+    private static final int SLICE_SIZE = Parameter.intValue("hydra.decompress.parallel.slice", 4 * 1024 * 1024);
+
+    /**
+     * Number of compressed bytes to buffer while looking for the end of a member.
+     * Streams with larger members are decompressed sequentially from that member on.
+     */
+    private static final int MAX_MEMBER = Parameter.intValue("hydra.decompress.parallel.member",
+                                                             64 * 1024 * 1024);
+
+    /**
+     * Number of compressed bytes to buffer while looking for the end of the first member.
+     * Most streams are a single member and are decompressed sequentially once this is exceeded.
+     */
+    private static final int FIRST_MEMBER = Parameter.intValue("hydra.decompress.parallel.first",
+                                                               2 * SLICE_SIZE);
+
+    /**
+     * Maximum number of slices per stream that are decoded or waiting to be read.
+     */
+    private static final int MAX_PENDING = Parameter.intValue("hydra.decompress.parallel.pending",
+                                                              Math.max(THREADS, 1) * 2);
+
+    /* gzip header flags */
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    static final Meter compressedBytes = Metrics.newMeter(ParallelDecompressingInputStream.class,
+                                                          "compressedBytes", "bytes", TimeUnit.SECONDS);
+
+    static final Meter decompressedBytes = Metrics.newMeter(ParallelDecompressingInputStream.class,
+                                                            "decompressedBytes", "bytes", TimeUnit.SECONDS);
+
+    /**
+     * Streams, or remainders of streams, that were handed to the sequential decompressor.
+     */
+    static final Counter sequentialFallbacks = Metrics.newCounter(ParallelDecompressingInputStream.class,
+                                                                  "sequentialFallbacks");
+
+    private static final class PoolHolder {
+
+        static final ExecutorService pool = Executors.newFixedThreadPool(Math.max(THREADS, 1),
+                new NamedThreadFactory("parallel-decompress-", true));
+    }
+
+    private static final class Slice {
+
+        final byte[] compressed;
+        final Future<byte[]> decoded;
+
+        Slice(byte[] compressed, Future<byte[]> decoded) {
+            this.compressed = compressed;
+            this.decoded = decoded;
+        }
+    }
+
+    /**
+     * @return true if the compression type can be decompressed by this class
+     */
+    public static boolean supports(@Nonnull CompressionType type) {
+        return (type == CompressionType.GZIP) || (type == CompressionType.BZIP2) || (type == CompressionType.XZ);
+    }
+
+    @Nonnull
+    private final InputStream source;
+
+    @Nonnull
+    private final CompressionType type;
+
+    private final int sliceSize;
+
+    private final int maxMember;
+
+    private final int firstMember;
+
+    private final int maxPending;
+
+    private final ExecutorService pool;
+
+    private final Deque<Slice> pending = new ArrayDeque<>();
+
+    /**
+     * Compressed bytes that have been read from the source but are not part of a slice yet.
+     * The first byte is always at a (candidate) member boundary.
+     */
+    private byte[] carry;
+
+    private int carryLength;
+
+    /**
+     * Offset in the carry from which member boundaries have not been searched for.
+     */
+    private int scanned;
+
+    private boolean sourceDone;
+
+    private boolean startChecked;
+
+    /**
+     * Set once a slice has been cut at a (candidate) member boundary.
+     */
+    private boolean boundaryFound;
+
+    /**
+     * Set once the remainder of the stream must be decoded sequentially.
+     */
+    private boolean sequential;
+
+    @Nullable
+    private InputStream fallback;
+
+    @Nullable
+    private Remainder remainder;
+
+    @Nullable
+    private byte[] current;
+
+    private int currentPosition;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private long compressedCount;
+
+    private long decompressedCount;
+
+    public ParallelDecompressingInputStream(@Nonnull InputStream source, @Nonnull CompressionType type) {
+        this(source, type, SLICE_SIZE, MAX_MEMBER, FIRST_MEMBER, MAX_PENDING, PoolHolder.pool);
+    }
+
+    ParallelDecompressingInputStream(@Nonnull InputStream source, @Nonnull CompressionType type, int sliceSize,
+                                     int maxMember, int firstMember, int maxPending, ExecutorService pool) {
+        if (!supports(type)) {
+            throw new IllegalArgumentException("parallel decompression is not supported for " + type);
+        }
+        this.source = source;
+        this.type = type;
+        this.sliceSize = sliceSize;
+        this.maxMember = maxMember;
+        this.firstMember = Math.min(firstMember, maxMember);
+        this.maxPending = maxPending;
+        this.pool = pool;
+        this.carry = new byte[Math.min(sliceSize * 2, sliceSize + this.firstMember)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((current != null) && (currentPosition < current.length)) {
+            return current[currentPosition++] & 0xff;
+        }
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return (read < 0) ? -1 : (single[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if ((current != null) && (currentPosition < current.length)) {
+                int count = Math.min(len, current.length - currentPosition);
+                System.arraycopy(current, currentPosition, b, off, count);
+                currentPosition += count;
+                return count;
+            }
+            if (fallback != null) {
+                int count = fallback.read(b, off, len);
+                if (count > 0) {
+                    decompressedCount += count;
+                    decompressedBytes.mark(count);
+                }
+                return count;
+            }
+            if (!nextSlice()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if ((current != null) && (currentPosition < current.length)) {
+            return current.length - currentPosition;
+        }
+        return (fallback != null) ? fallback.available() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Slice slice : pending) {
+            slice.decoded.cancel(false);
+        }
+        pending.clear();
+        current = null;
+        if (log.isDebugEnabled()) {
+            double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+            log.debug("closing {} stream: {} compressed bytes/sec, {} decompressed bytes/sec", type,
+                      (long) (compressedCount / seconds), (long) (decompressedCount / seconds));
+        }
+        if (fallback != null) {
+            fallback.close();
+        }
+        source.close();
+    }
+
+    /**
+     * @return the number of compressed bytes held in memory by this stream
+     */
+    long retainedBytes() {
+        long bytes = (carry != null) ? carry.length : 0;
+        for (Slice slice : pending) {
+            bytes += slice.compressed.length;
+        }
+        if (remainder != null) {
+            bytes += remainder.retainedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Makes the decoded output of the next slice current or starts
+     * the sequential decompressor.
+     *
+     * @return false if the end of the stream has been reached
+     */
+    private boolean nextSlice() throws IOException {
+        fillPending();
+        Slice slice = pending.poll();
+        if (slice == null) {
+            if (sequential) {
+                startFallback(null);
+                return true;
+            }
+            return false;
+        }
+        byte[] output = await(slice);
+        if (output == null) {
+            // the end of the slice was not a member boundary
+            fillPending();
+            Slice next = pending.poll();
+            if (next == null) {
+                startFallback(slice.compressed);
+                return true;
+            }
+            next.decoded.cancel(false);
+            byte[] merged = Arrays.copyOf(slice.compressed, slice.compressed.length + next.compressed.length);
+            System.arraycopy(next.compressed, 0, merged, slice.compressed.length, next.compressed.length);
+            output = decode(type, merged);
+            if (output == null) {
+                // two false boundaries in a row are practically impossible so the input
+                // is corrupt or unusual. Let the sequential decompressor deal with it.
+                startFallback(merged);
+                return true;
+            }
+        }
+        current = output;
+        currentPosition = 0;
+        decompressedCount += output.length;
+        decompressedBytes.mark(output.length);
+        return true;
+    }
+
+    @Nullable
+    private static byte[] await(Slice slice) throws IOException {
+        try {
+            return slice.decoded.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads compressed input and submits slices until enough slices are
+     * pending, the source is exhausted, or no boundary can be found.
+     */
+    private void fillPending() throws IOException {
+        while (!sourceDone && !sequential && (pending.size() < maxPending)) {
+            // a stream without boundaries near its start is most likely a single member
+            int limit = sliceSize + (boundaryFound ? maxMember : firstMember);
+            if (((carry.length - carryLength) < sliceSize) && (carry.length < limit)) {
+                carry = Arrays.copyOf(carry, Math.min(Math.max(carry.length * 2, carryLength + sliceSize), limit));
+            }
+            int length = Math.min(sliceSize, carry.length - carryLength);
+            int read = ByteStreams.read(source, carry, carryLength, length);
+            if (read < length) {
+                sourceDone = true;
+            }
+            compressedCount += read;
+            compressedBytes.mark(read);
+            carryLength += read;
+            if (!startChecked && (sourceDone || (carryLength >= signatureLength(type)))) {
+                startChecked = true;
+                if (!isMemberStart(type, carry, 0, carryLength)) {
+                    sequential = true;
+                    break;
+                }
+            }
+            cutSlices();
+            if (sourceDone) {
+                if (carryLength > 0) {
+                    submit(Arrays.copyOf(carry, carryLength));
+                    carryLength = 0;
+                }
+            } else if (carryLength >= limit) {
+                // no member boundary in sight
+                sequential = true;
+            }
+        }
+    }
+
+    private void cutSlices() {
+        int start = 0;
+        int position = Math.max(scanned, sliceSize);
+        int signature = signatureLength(type);
+        while ((position + signature) <= carryLength) {
+            if (isMemberStart(type, carry, position, carryLength)) {
+                submit(Arrays.copyOfRange(carry, start, position));
+                boundaryFound = true;
+                start = position;
+                position += sliceSize;
+            } else {
+                position++;
+            }
+        }
+        if (start > 0) {
+            System.arraycopy(carry, start, carry, 0, carryLength - start);
+            carryLength -= start;
+        }
+        scanned = position - start;
+    }
+
+    private void submit(byte[] compressed) {
+        pending.add(new Slice(compressed, pool.submit(() -> {
+            byte[] output = decode(type, compressed);
+            if (output == null) {
+                throw new IOException("slice is not a sequence of complete members");
+            }
+            return output;
+        })));
+    }
+
+    /**
+     * Decode the rest of the stream with the sequential decompressor starting
+     * with the given compressed bytes, the pending slices, the carry and the
+     * unread source.
+     */
+    private void startFallback(@Nullable byte[] head) throws IOException {
+        sequentialFallbacks.inc();
+        log.debug("decompressing the remainder of a {} stream sequentially", type);
+        Deque<ByteBuffer> buffers = new ArrayDeque<>(pending.size() + 2);
+        if (head != null) {
+            buffers.add(ByteBuffer.wrap(head));
+        }
+        for (Slice slice : pending) {
+            slice.decoded.cancel(false);
+            buffers.add(ByteBuffer.wrap(slice.compressed));
+        }
+        pending.clear();
+        if (carryLength > 0) {
+            buffers.add(ByteBuffer.wrap(carry, 0, carryLength));
+        }
+        remainder = new Remainder(buffers, sourceDone ? null : new CountingSource());
+        carry = null;
+        carryLength = 0;
+        current = null;
+        fallback = CompressedStream.decompressInputStream(remainder, type);
+    }
+
+    /**
+     * Compressed input of the sequential decompressor. Each buffer
+     * is dropped as soon as it has been read.
+     */
+    private static final class Remainder extends InputStream {
+
+        private final Deque<ByteBuffer> buffers;
+
+        @Nullable
+        private final InputStream tail;
+
+        Remainder(Deque<ByteBuffer> buffers, @Nullable InputStream tail) {
+            this.buffers = buffers;
+            this.tail = tail;
+        }
+
+        long retainedBytes() {
+            long bytes = 0;
+            for (ByteBuffer buffer : buffers) {
+                bytes += buffer.capacity();
+            }
+            return bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = buffers.peek();
+            if (buffer == null) {
+                return (tail != null) ? tail.read() : -1;
+            }
+            int value = buffer.get() & 0xff;
+            if (!buffer.hasRemaining()) {
+                buffers.poll();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = buffers.peek();
+            if (buffer == null) {
+                return (tail != null) ? tail.read(b, off, len) : -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            if (!buffer.hasRemaining()) {
+                buffers.poll();
+            }
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ByteBuffer buffer = buffers.peek();
+            if (buffer == null) {
+                return (tail != null) ? tail.available() : 0;
+            }
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffers.clear();
+            if (tail != null) {
+                tail.close();
+            }
+        }
+    }
+
+    /**
+     * Source that keeps counting the compressed bytes consumed by the fallback decompressor.
+     */
+    private final class CountingSource extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            int value = source.read();
+            if (value >= 0) {
+                compressedCount++;
+                compressedBytes.mark();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = source.read(b, off, len);
+            if (count > 0) {
+                compressedCount += count;
+                compressedBytes.mark(count);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    static int signatureLength(CompressionType type) {
+        switch (type) {
+            case GZIP:
+                return 4;
+            case BZIP2:
+                return 10;
+            case XZ:
+                return 6;
+            default:
+                throw new IllegalStateException("Unsupported compression type " + type);
+        }
+    }
+
+    /**
+     * Returns true if the bytes at {@code offset} look like the start of a
+     * gzip member, a bzip2 stream beginning with a block, or an xz stream.
+     */
+    static boolean isMemberStart(CompressionType type, byte[] b, int offset, int limit) {
+        if ((limit - offset) < signatureLength(type)) {
+            return false;
+        }
+        switch (type) {
+            case GZIP:
+                // magic, deflate method and no reserved flags
+                return (b[offset] == (byte) 0x1f) && (b[offset + 1] == (byte) 0x8b) &&
+                       (b[offset + 2] == 8) && ((b[offset + 3] & 0xe0) == 0);
+            case BZIP2:
+                return (b[offset] == 'B') && (b[offset + 1] == 'Z') && (b[offset + 2] == 'h') &&
+                       (b[offset + 3] >= '1') && (b[offset + 3] <= '9') &&
+                       (b[offset + 4] == 0x31) && (b[offset + 5] == 0x41) && (b[offset + 6] == 0x59) &&
+                       (b[offset + 7] == 0x26) && (b[offset + 8] == 0x53) && (b[offset + 9] == 0x59);
+            case XZ:
+                return (b[offset] == (byte) 0xfd) && (b[offset + 1] == '7') && (b[offset + 2] == 'z') &&
+                       (b[offset + 3] == 'X') && (b[offset + 4] == 'Z') && (b[offset + 5] == 0);
+            default:
+                throw new IllegalStateException("Unsupported compression type " + type);
+        }
+    }
+
+    /**
+     * Decode a slice that must consist of complete members.
+     *
+     * @return the decompressed bytes or null if the slice is not a sequence of complete members
+     */
+    @Nullable
+    static byte[] decode(CompressionType type, byte[] compressed) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+        try {
+            if (type == CompressionType.GZIP) {
+                inflateMembers(compressed, output);
+            } else {
+                // the bzip2 and xz decoders reject trailing bytes that do not form another stream
+                try (InputStream input = CompressedStream.decompressInputStream(
+                        new ByteArrayInputStream(compressed), type)) {
+                    ByteStreams.copy(input, output);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Inflate a sequence of gzip members that must end exactly at the end of the input.
+     * Unlike {@link java.util.zip.GZIPInputStream} trailing bytes are an error.
+     */
+    static void inflateMembers(byte[] b, ByteArrayOutputStream output) throws IOException {
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        int position = 0;
+        try {
+            while (position < b.length) {
+                if (!isMemberStart(CompressionType.GZIP, b, position, b.length) || ((b.length - position) < 10)) {
+                    throw new IOException("not a gzip member header");
+                }
+                int flags = b[position + 3];
+                position += 10;
+                if ((flags & FEXTRA) != 0) {
+                    checkAvailable(b, position, 2);
+                    position += 2 + ((b[position] & 0xff) | ((b[position + 1] & 0xff) << 8));
+                }
+                if ((flags & FNAME) != 0) {
+                    position = skipString(b, position);
+                }
+                if ((flags & FCOMMENT) != 0) {
+                    position = skipString(b, position);
+                }
+                if ((flags & FHCRC) != 0) {
+                    position += 2;
+                }
+                checkAvailable(b, position, 0);
+                inflater.reset();
+                inflater.setInput(b, position, b.length - position);
+                crc.reset();
+                long size = 0;
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(buffer);
+                    if (count > 0) {
+                        crc.update(buffer, 0, count);
+                        output.write(buffer, 0, count);
+                        size += count;
+                    } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new EOFException("truncated gzip member");
+                    }
+                }
+                position = b.length - inflater.getRemaining();
+                checkAvailable(b, position, 8);
+                if ((readInt(b, position) != (int) crc.getValue()) || (readInt(b, position + 4) != (int) size)) {
+                    throw new IOException("corrupt gzip trailer");
+                }
+                position += 8;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void checkAvailable(byte[] b, int position, int count) throws EOFException {
+        if ((position + count) > b.length) {
+            throw new EOFException("truncated gzip member");
+        }
+    }
+
+    private static int skipString(byte[] b, int position) throws EOFException {
+        while (position < b.length) {
+            if (b[position++] == 0) {
+                return position;
+            }
+        }
+        throw new EOFException("truncated gzip header");
+    }
+
+    private static int readInt(byte[] b, int position) {
+        return (b[position] & 0xff) | ((b[position + 1] & 0xff) << 8) |
+               ((b[position + 2] & 0xff) << 16) | ((b[position + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.addthis.basis.io.GZOut;
+import com.addthis.basis.util.Parameter;
+import com.addthis.basis.util.Varint;
+
+import com.google.common.io.ByteStreams;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Page codecs that do not depend on any per-store state. The ordinal
+ * of each codec is its page header identifier so the order of these
+ * constants must never change. Identifiers 0 through 4 are the values
+ * historically selected with {@code eps.gz.type}.
+ */
+public enum StandardPageCodec implements PageCodec {
+
+    NONE {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) {
+            target.writeBytes(source);
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            return source;
+        }
+    },
+
+    DEFLATE {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) throws IOException {
+            Deflater deflater = deflaters.get();
+            deflater.reset();
+            DeflaterOutputStream os = new DeflaterOutputStream(new ByteBufOutputStream(target), deflater, gzbuf);
+            source.readBytes(os, source.readableBytes());
+            os.finish();
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            return new InflaterInputStream(source, inflater, gzbuf);
+        }
+    },
+
+    GZIP {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) throws IOException {
+            GZOut os = new GZOut(new ByteBufOutputStream(target), gzbuf, gzlevel);
+            source.readBytes(os, source.readableBytes());
+            os.finish();
+        }
+
+        @Override
+        public InputStream decode(InputStream source) throws IOException {
+            return new GZIPInputStream(source);
+        }
+    },
+
+    LZF {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) throws IOException {
+            OutputStream os = new LZFOutputStream(new ByteBufOutputStream(target));
+            source.readBytes(os, source.readableBytes());
+            os.close();
+        }
+
+        @Override
+        public InputStream decode(InputStream source) throws IOException {
+            return new LZFInputStream(source);
+        }
+    },
+
+    SNAPPY {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) throws IOException {
+            OutputStream os = new SnappyOutputStream(new ByteBufOutputStream(target));
+            source.readBytes(os, source.readableBytes());
+            os.close();
+        }
+
+        @Override
+        public InputStream decode(InputStream source) throws IOException {
+            return new SnappyInputStream(source);
+        }
+    },
+
+    /**
+     * LZ4 block format. The body is prefixed with its uncompressed length.
+     */
+    LZ4 {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) {
+            int length = source.readableBytes();
+            byte[] raw = readableArray(source, length);
+            int offset = source.hasArray() ? source.arrayOffset() + source.readerIndex() : 0;
+            byte[] output = scratchArray(lz4Compressor.maxCompressedLength(length));
+            int compressed = lz4Compressor.compress(raw, offset, length, output, 0, output.length);
+            source.skipBytes(length);
+            Varint.writeUnsignedVarInt(length, target);
+            target.writeBytes(output, 0, compressed);
+        }
+
+        @Override
+        public InputStream decode(InputStream source) throws IOException {
+            int length = Varint.readUnsignedVarInt(new DataInputStream(source));
+            byte[] compressed = ByteStreams.toByteArray(source);
+            byte[] raw = new byte[length];
+            lz4Decompressor.decompress(compressed, 0, raw, 0, length);
+            return new ByteArrayInputStream(raw);
+        }
+    },
+
+    /**
+     * Zstandard frames without a dictionary. See {@link ZstdDictionaryPageCodec}
+     * for the dictionary variant. The body is prefixed with its uncompressed length.
+     */
+    ZSTD {
+        @Override
+        public void encode(ByteBuf source, ByteBuf target) {
+            int length = source.readableBytes();
+            byte[] raw = new byte[length];
+            source.readBytes(raw);
+            Varint.writeUnsignedVarInt(length, target);
+            target.writeBytes(zstdCompressors.get().compress(raw));
+        }
+
+        @Override
+        public InputStream decode(InputStream source) throws IOException {
+            int length = Varint.readUnsignedVarInt(new DataInputStream(source));
+            byte[] compressed = ByteStreams.toByteArray(source);
+            return new ByteArrayInputStream(zstdDecompressors.get().decompress(compressed, length));
+        }
+    };
+
+    public static final int gztype = Parameter.intValue("eps.gz.type", 1);
+    public static final int gzlevel = Parameter.intValue("eps.gz.level", 1);
+    public static final int gzbuf = Parameter.intValue("eps.gz.buffer", 1024);
+    public static final int zstdlevel = Parameter.intValue("eps.zstd.level", 3);
+
+    private static final StandardPageCodec[] values = values();
+
+    private static final LZ4Compressor lz4Compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor lz4Decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * Per thread compression contexts. The deflate and zstd contexts hold
+     * native memory that is expensive to allocate for every page.
+     */
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(gzlevel));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<ZstdCompressCtx> zstdCompressors = ThreadLocal.withInitial(() -> {
+        ZstdCompressCtx context = new ZstdCompressCtx();
+        context.setLevel(zstdlevel);
+        return context;
+    });
+    private static final ThreadLocal<ZstdDecompressCtx> zstdDecompressors = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[gzbuf]);
+
+    @Override
+    public int id() {
+        return ordinal();
+    }
+
+    /**
+     * Returns the codec that was selected with the legacy {@code eps.gz.type} parameter.
+     */
+    public static StandardPageCodec defaultCodec() {
+        return fromId(gztype);
+    }
+
+    public static StandardPageCodec fromId(int id) {
+        if (id < 0 || id >= values.length) {
+            throw new IllegalArgumentException("invalid page codec identifier: " + id);
+        }
+        return values[id];
+    }
+
+    /**
+     * Returns a per-thread array of at least {@code length} bytes.
+     */
+    static byte[] scratchArray(int length) {
+        byte[] array = scratch.get();
+        if (array.length < length) {
+            array = new byte[Math.max(length, array.length * 2)];
+            scratch.set(array);
+        }
+        return array;
+    }
+
+    /**
+     * Returns the backing array of the buffer if it has one, otherwise
+     * a copy of the readable bytes. Does not move the reader index.
+     */
+    private static byte[] readableArray(ByteBuf source, int length) {
+        if (source.hasArray()) {
+            return source.array();
+        }
+        byte[] copy = new byte[length];
+        source.getBytes(source.readerIndex(), copy);
+        return copy;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.addthis.basis.util.LessFiles;
+import com.addthis.basis.util.Parameter;
+import com.addthis.basis.util.Varint;
+
+import com.addthis.hydra.store.kv.ByteStore;
+
+import com.google.common.io.ByteStreams;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Zstandard page codec that compresses against a dictionary trained from
+ * a sample of the pages already stored in a {@link ByteStore}. Trees are
+ * dominated by small pages with very similar contents so a shared dictionary
+ * recovers most of the redundancy that is lost by compressing each page on its own.
+ * <p/>
+ * Dictionaries are stored next to the database as {@code page-dictionary.<n>}.
+ * Every encoded page records the generation {@code n} of the dictionary it was
+ * compressed with. New pages always use the most recent generation and older
+ * generations are retained so that previously written pages remain readable.
+ */
+public final class ZstdDictionaryPageCodec implements PageCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(ZstdDictionaryPageCodec.class);
+
+    public static final int ID = 7;
+
+    static final String DICTIONARY_PREFIX = "page-dictionary.";
+
+    private static final int dictionarySize = Parameter.intValue("eps.dictionary.size", 64 * 1024);
+    private static final int dictionarySamples = Parameter.intValue("eps.dictionary.samples", 2000);
+    private static final int dictionaryMinSamples = Parameter.intValue("eps.dictionary.samples.min", 100);
+    private static final int dictionarySampleBytes = Parameter.intValue("eps.dictionary.samples.bytes", 32 * 1024 * 1024);
+
+    private final int generation;
+
+    private final ZstdDictCompress compressDictionary;
+
+    private final Map<Integer, ZstdDictDecompress> decompressDictionaries;
+
+    private final ThreadLocal<ZstdCompressCtx> compressors;
+
+    private final ThreadLocal<ZstdDecompressCtx> decompressors = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+
+    ZstdDictionaryPageCodec(TreeMap<Integer, byte[]> dictionaries) {
+        this.generation = dictionaries.lastKey();
+        this.compressDictionary = new ZstdDictCompress(dictionaries.lastEntry().getValue(),
+                                                       StandardPageCodec.zstdlevel);
+        this.decompressDictionaries = new TreeMap<>();
+        for (Map.Entry<Integer, byte[]> entry : dictionaries.entrySet()) {
+            decompressDictionaries.put(entry.getKey(), new ZstdDictDecompress(entry.getValue()));
+        }
+        this.compressors = ThreadLocal.withInitial(() -> {
+            ZstdCompressCtx context = new ZstdCompressCtx();
+            context.loadDict(compressDictionary);
+            return context;
+        });
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void encode(ByteBuf source, ByteBuf target) {
+        int length = source.readableBytes();
+        byte[] raw = new byte[length];
+        source.readBytes(raw);
+        Varint.writeUnsignedVarInt(generation, target);
+        Varint.writeUnsignedVarInt(length, target);
+        target.writeBytes(compressors.get().compress(raw));
+    }
+
+    @Override
+    public InputStream decode(InputStream source) throws IOException {
+        DataInputStream dis = new DataInputStream(source);
+        int pageGeneration = Varint.readUnsignedVarInt(dis);
+        int length = Varint.readUnsignedVarInt(dis);
+        ZstdDictDecompress dictionary = decompressDictionaries.get(pageGeneration);
+        if (dictionary == null) {
+            throw new IllegalStateException("page was compressed with missing dictionary " +
+                                            DICTIONARY_PREFIX + pageGeneration);
+        }
+        byte[] compressed = ByteStreams.toByteArray(source);
+        ZstdDecompressCtx context = decompressors.get();
+        context.loadDict(dictionary);
+        return new ByteArrayInputStream(context.decompress(compressed, length));
+    }
+
+    /**
+     * Load all dictionaries that have been trained for the database in {@code dir}.
+     *
+     * @return the codec or null if no dictionary has been trained
+     */
+    @Nullable
+    public static ZstdDictionaryPageCodec load(File dir) throws IOException {
+        TreeMap<Integer, byte[]> dictionaries = new TreeMap<>();
+        File[] files = dir.listFiles((parent, name) -> name.startsWith(DICTIONARY_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    int fileGeneration = Integer.parseInt(file.getName().substring(DICTIONARY_PREFIX.length()));
+                    dictionaries.put(fileGeneration, LessFiles.read(file));
+                } catch (NumberFormatException ex) {
+                    log.warn("Ignoring unrecognized dictionary file {}", file);
+                }
+            }
+        }
+        if (dictionaries.isEmpty()) {
+            return null;
+        }
+        return new ZstdDictionaryPageCodec(dictionaries);
+    }
+
+    /**
+     * Train a new dictionary generation from a uniform sample of the pages in {@code store}
+     * and write it into {@code dir}. Pages that were compressed with a dictionary are
+     * skipped so that retraining never depends on the previous generation.
+     *
+     * @return the codec with the new dictionary, or null if the store does not hold
+     * enough pages to train a useful dictionary
+     */
+    @Nullable
+    public static ZstdDictionaryPageCodec train(File dir, ByteStore store) throws IOException {
+        List<byte[]> sampleKeys = sampleKeys(store);
+        if (sampleKeys.size() < dictionaryMinSamples) {
+            log.info("Skipping dictionary training for {}: {} pages available, {} required",
+                     dir, sampleKeys.size(), dictionaryMinSamples);
+            return null;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer(dictionarySampleBytes, dictionarySize);
+        int samples = 0;
+        for (byte[] key : sampleKeys) {
+            byte[] page = store.get(key);
+            if (page == null || page.length < 2) {
+                continue;
+            }
+            int codecId = page[0] & 0x0f;
+            if (codecId == ID) {
+                continue;
+            }
+            InputStream body = StandardPageCodec.fromId(codecId)
+                                                .decode(new ByteArrayInputStream(page, 1, page.length - 1));
+            if (!trainer.addSample(ByteStreams.toByteArray(body))) {
+                break;
+            }
+            samples++;
+        }
+        if (samples < dictionaryMinSamples) {
+            return null;
+        }
+        byte[] dictionary = trainer.trainSamples();
+        ZstdDictionaryPageCodec previous = load(dir);
+        int nextGeneration = (previous == null) ? 0 : previous.getGeneration() + 1;
+        File output = new File(dir, DICTIONARY_PREFIX + nextGeneration);
+        LessFiles.write(output, dictionary, false);
+        log.info("Trained page dictionary {} of {} bytes from {} pages", output, dictionary.length, samples);
+        return load(dir);
+    }
+
+    /**
+     * Reservoir sample of the keys in the store. The left sentinel page is
+     * included like any other page.
+     */
+    private static List<byte[]> sampleKeys(ByteStore store) {
+        List<byte[]> reservoir = new ArrayList<>(dictionarySamples);
+        byte[] first = store.firstKey();
+        if (first == null) {
+            return reservoir;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Iterator<byte[]> keys = store.keyIterator(first);
+        long seen = 0;
+        while (keys.hasNext()) {
+            byte[] key = keys.next();
+            if (reservoir.size() < dictionarySamples) {
+                reservoir.add(key);
+            } else {
+                long index = random.nextLong(seen + 1);
+                if (index < dictionarySamples) {
+                    reservoir.set((int) index, key);
+                }
+            }
+            seen++;
+        }
+        return reservoir;
+    }
+}
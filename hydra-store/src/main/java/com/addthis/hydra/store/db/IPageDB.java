@@ -75,4 +75,8 @@ public interface IPageDB<K extends Key, V extends BytesCodable> extends AutoClos
     public void setPageMem(int maxmem);
 
     public void setMemSampleInterval(int sample);
+
+    public void setOffHeapPages(boolean offHeapPages);
+
+    public void setPrefetchDepth(int prefetchDepth);
 }
@@ -23,17 +23,22 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
+import java.nio.file.Files;
+
 import com.addthis.basis.util.LessBytes;
 import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.LessFiles;
 import com.addthis.basis.util.Parameter;
 
 import com.addthis.codec.codables.BytesCodable;
+import com.addthis.hydra.store.common.EvictionPolicyType;
 import com.addthis.hydra.store.common.PageFactory;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.ConcurrentByteStoreBDB;
 import com.addthis.hydra.store.kv.MapDbByteStore;
 import com.addthis.hydra.store.kv.PagedKeyValueStore;
+import com.addthis.hydra.store.kv.SnapshotByteStore;
 
 import com.addthis.hydra.store.nonconcurrent.NonConcurrentPageCache;
 import com.addthis.hydra.store.skiplist.ConcurrentPage;
@@ -71,6 +76,9 @@ public class PageDB<V extends BytesCodable> implements IPageDB<DBKey, V> {
         // Optional parameters - initialized to default values;
         protected String dbname = defaultDbName;
         protected PageFactory<DBKey, V> pageFactory = ConcurrentPage.ConcurrentPageFactory.singleton;
+        protected String pageCodec = null;
+        protected boolean pageDictionary = false;
+        protected String evictionPolicy = null;
 
         public Builder(File dir, Class<? extends V> clazz, int maxPageSize, int maxPages) {
             this.dir = dir;
@@ -89,8 +97,35 @@ public class PageDB<V extends BytesCodable> implements IPageDB<DBKey, V> {
             return this;
         }
 
+        /**
+         * Name of the {@link com.addthis.hydra.store.compress.StandardPageCodec} used
+         * to write pages. If null then {@code eps.gz.type} selects the codec.
+         */
+        public Builder<V> pageCodec(String value) {
+            this.pageCodec = value;
+            return this;
+        }
+
+        /**
+         * If true then write pages with a zstd dictionary trained from the existing pages.
+         */
+        public Builder<V> pageDictionary(boolean value) {
+            this.pageDictionary = value;
+            return this;
+        }
+
+        /**
+         * Name of the {@link EvictionPolicyType} of the page cache.
+         * If null then {@code eps.cache.eviction.policy} selects the policy.
+         */
+        public Builder<V> evictionPolicy(String value) {
+            this.evictionPolicy = value;
+            return this;
+        }
+
         public PageDB<V> build() throws IOException {
-            return new PageDB<>(dir, clazz, dbname, maxPageSize, maxPages, pageFactory);
+            return new PageDB<>(dir, clazz, dbname, maxPageSize, maxPages, pageFactory, pageCodec, pageDictionary,
+                                evictionPolicy);
         }
     }
 
@@ -104,9 +139,17 @@ public class PageDB<V extends BytesCodable> implements IPageDB<DBKey, V> {
 
     public PageDB(File dir, Class<? extends V> clazz, String dbname, int maxPageSize,
                   int maxPages, PageFactory<DBKey, V> factory) throws IOException {
+        this(dir, clazz, dbname, maxPageSize, maxPages, factory, null, false, null);
+    }
+
+    public PageDB(File dir, Class<? extends V> clazz, String dbname, int maxPageSize,
+                  int maxPages, PageFactory<DBKey, V> factory, String pageCodec,
+                  boolean pageDictionary, String evictionPolicy) throws IOException {
         String dbType = getByteStoreNameForFile(dir);
         this.keyCoder = new DBKeyCoder<>(clazz);
         LessFiles.initDirectory(dir);
+        // the database may change once it is opened for writing so any snapshot of it is stale
+        Files.deleteIfExists(SnapshotByteStore.fileFor(dir, dbname).toPath());
         ByteStore store;
         switch (dbType) {
             case PAGED_MAP_DB:
@@ -118,16 +161,20 @@ public class PageDB<V extends BytesCodable> implements IPageDB<DBKey, V> {
                 store = new ConcurrentByteStoreBDB(dir, dbname);
                 break;
         }
+        PageCodecs pageCodecs = PageCodecs.open(dir, store, pageCodec, pageDictionary);
+        EvictionPolicyType policy = EvictionPolicyType.forName(evictionPolicy);
 
         switch (factory.getType()) {
             case NON_CONCURRENT:
                 this.eps =  new NonConcurrentPageCache.Builder<>(keyCoder, store, maxPageSize)
-                        .maxPages(maxPages).pageFactory(factory).build();
+                        .maxPages(maxPages).pageFactory(factory).pageCodecs(pageCodecs)
+                        .evictionPolicy(policy).build();
                 break;
             case CONCURRENT:
             default:
                 this.eps =  new SkipListCache.Builder<>(keyCoder, store, maxPageSize)
-                        .maxPages(maxPages).pageFactory(factory).build();
+                        .maxPages(maxPages).pageFactory(factory).pageCodecs(pageCodecs)
+                        .evictionPolicy(policy).build();
                 break;
         }
 
@@ -249,6 +296,16 @@ public class PageDB<V extends BytesCodable> implements IPageDB<DBKey, V> {
         eps.setMemEstimateInterval(sample);
     }
 
+    @Override
+    public void setOffHeapPages(boolean offHeapPages) {
+        eps.setOffHeapPages(offHeapPages);
+    }
+
+    @Override
+    public void setPrefetchDepth(int prefetchDepth) {
+        eps.setPrefetchDepth(prefetchDepth);
+    }
+
     private class DR implements IPageDB.Range<DBKey, V>, Iterator<Entry<DBKey, V>> {
 
         private final Iterator<Entry<DBKey, V>> iter;
@@ -21,16 +21,21 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
+import java.nio.file.Files;
+
+import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.Parameter;
 
 import com.addthis.codec.Codec;
 import com.addthis.codec.binary.CodecBin2;
 import com.addthis.codec.codables.BytesCodable;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.ByteStoreBDB;
 import com.addthis.hydra.store.kv.MapDbByteStore;
 import com.addthis.hydra.store.kv.PagedKeyValueStore;
 import com.addthis.hydra.store.kv.ReadExternalPagedStore;
+import com.addthis.hydra.store.kv.SnapshotByteStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +55,11 @@ public class ReadPageDB<V extends IReadWeighable & BytesCodable> implements IPag
 
     static final String defaultDbName = Parameter.value("pagedb.dbname", "db.key");
 
+    /**
+     * Serve from the memory mapped snapshot of the database if one has been written.
+     */
+    private static final boolean readSnapshot = Parameter.boolValue("pagedb.snapshot.read", true);
+
     private static final Codec codec = CodecBin2.INSTANCE;
     private final Class<? extends V>               clazz;
     private final ReadExternalPagedStore<DBKey, V> eps;
@@ -62,21 +72,48 @@ public class ReadPageDB<V extends IReadWeighable & BytesCodable> implements IPag
     public ReadPageDB(File dir, Class<? extends V> clazz, int maxSize,
                       int maxWeight, boolean metrics) throws IOException {
         this.clazz = clazz;
-        String dbType = PageDB.getByteStoreNameForFile(dir);
+        File snapshot = SnapshotByteStore.fileFor(dir, defaultDbName);
         ByteStore store;
+        if (readSnapshot && snapshot.exists()) {
+            store = new SnapshotByteStore(snapshot);
+        } else {
+            store = openByteStore(dir);
+        }
+        PageCodecs pageCodecs = PageCodecs.open(dir, store, null, false);
+        this.eps = new ReadExternalPagedStore<>(new ReadDBKeyCoder<>(codec, clazz), store, pageCodecs,
+                                                maxSize, maxWeight, metrics);
+    }
+
+    private static ByteStore openByteStore(File dir) throws IOException {
+        String dbType = PageDB.getByteStoreNameForFile(dir);
         switch (dbType) {
             case PageDB.PAGED_MAP_DB:
-                store = new MapDbByteStore(dir, defaultDbName, true);
-                break;
+                return new MapDbByteStore(dir, defaultDbName, true);
             case PageDB.PAGED_BERK_DB:
                 // fall through -- the previous dbType was always something like 'pagedb' so this
                 // is expected
             default:
-                store = new ByteStoreBDB(dir, defaultDbName, true);
-                break;
+                return new ByteStoreBDB(dir, defaultDbName, true);
+        }
+    }
+
+    /**
+     * Write a memory mapped snapshot of the database in {@code dir} that is
+     * used by subsequent instances of this class instead of the database.
+     * The snapshot is deleted when the database is next opened for writing.
+     * If the snapshot cannot be written then no snapshot is left behind.
+     */
+    public static void writeSnapshot(File dir) throws IOException {
+        File snapshot = SnapshotByteStore.fileFor(dir, defaultDbName);
+        ByteStore store = openByteStore(dir);
+        try {
+            SnapshotByteStore.write(store, snapshot);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(snapshot.toPath());
+            throw ex;
+        } finally {
+            store.close();
         }
-        this.eps = new ReadExternalPagedStore<>(new ReadDBKeyCoder<>(codec, clazz), store, maxSize,
-                                                maxWeight, metrics);
     }
 
     public String toString() {
@@ -161,6 +198,9 @@ public class ReadPageDB<V extends IReadWeighable & BytesCodable> implements IPag
 
         @Override
         public void close() {
+            if (iter instanceof ClosableIterator) {
+                ((ClosableIterator) iter).close();
+            }
         }
 
         @Override
@@ -206,6 +246,14 @@ public class ReadPageDB<V extends IReadWeighable & BytesCodable> implements IPag
         throw new UnsupportedOperationException();
     }
 
+    @Override public void setOffHeapPages(boolean offHeapPages) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void setPrefetchDepth(int prefetchDepth) {
+        eps.setPrefetchDepth(prefetchDepth);
+    }
+
     @Override public V put(DBKey key, V value) {
         throw new UnsupportedOperationException();
     }
@@ -34,6 +34,13 @@ public interface ByteStore {
 
     public void put(byte[] key, byte[] val);
 
+    /**
+     * Store a batch of entries. Entries are written in the iteration order
+     * of the map, so callers should supply the keys in sorted order to make
+     * the best use of locality in the underlying store.
+     */
+    public void putAll(Map<byte[], byte[]> entries);
+
     public byte[] get(byte[] key);
 
     /**
@@ -140,6 +140,26 @@ public class ConcurrentByteStoreBDB implements ByteStore {
         puts.incrementAndGet();
     }
 
+    @Override
+    public void putAll(Map<byte[], byte[]> entries) {
+        long bytes = 0;
+        Cursor cursor = bdb.openCursor(null, cursorConfig);
+        try {
+            for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                byte[] key = entry.getKey();
+                byte[] val = entry.getValue();
+                if (cursor.put(new DatabaseEntry(key), new DatabaseEntry(val)) != opSuccess) {
+                    throw new RuntimeException("put fail");
+                }
+                bytes += key.length + val.length;
+            }
+        } finally {
+            cursor.close();
+        }
+        bytesOut.addAndGet(bytes);
+        puts.addAndGet(entries.size());
+    }
+
     @Override
     public byte[] get(byte[] key) {
         final DatabaseEntry dv = new DatabaseEntry();
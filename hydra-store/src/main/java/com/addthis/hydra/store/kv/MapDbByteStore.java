@@ -95,6 +95,11 @@ public class MapDbByteStore implements ByteStore {
         btree.put(key, val);
     }
 
+    @Override
+    public void putAll(Map<byte[], byte[]> entries) {
+        btree.putAll(entries);
+    }
+
     @Override
     public byte[] get(byte[] key) {
         return btree.get(key);
@@ -36,6 +36,18 @@ public interface PagedKeyValueStore<K, V extends BytesCodable> extends KeyValueS
 
     public void setMemEstimateInterval(int interval);
 
+    /**
+     * If true then the values of pages that are read from the external store
+     * are held in pooled direct buffers until the page is modified.
+     */
+    public void setOffHeapPages(boolean offHeapPages);
+
+    /**
+     * Maximum number of pages that range iterators load ahead of their
+     * current position once a sequential scan is detected. Zero disables read-ahead.
+     */
+    public void setPrefetchDepth(int prefetchDepth);
+
     public void close();
 
     /**
@@ -24,12 +24,13 @@ import java.util.NoSuchElementException;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.GZIPInputStream;
 
 import com.addthis.basis.util.ClosableIterator;
 import com.addthis.basis.util.Parameter;
 
 import com.addthis.codec.codables.BytesCodable;
+import com.addthis.hydra.store.common.PageReadAhead;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.db.IReadWeighable;
 import com.addthis.hydra.store.db.ReadDBKeyCoder;
 import com.addthis.hydra.store.kv.metrics.ExternalPagedStoreMetrics;
@@ -39,12 +40,8 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.Weigher;
 
-import com.jcraft.jzlib.InflaterInputStream;
-import com.ning.compress.lzf.LZFInputStream;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xerial.snappy.SnappyInputStream;
 
 /**
  * read only caching page store intended to play nice with the query system
@@ -90,6 +87,10 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
 
     final KeyCoder<K, V> keyCoder;
 
+    private final PageCodecs pageCodecs;
+
+    private volatile int prefetchDepth = PageReadAhead.defaultDepth;
+
     public ReadExternalPagedStore(KeyCoder<K, V> keyCoder, final ByteStore pages,
                                   int maxSize, int maxWeight) {
         this(keyCoder, pages, maxSize, maxWeight, false);
@@ -97,8 +98,14 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
 
     public ReadExternalPagedStore(final KeyCoder<K, V> keyCoder, final ByteStore pages,
                                   int maxSize, int maxWeight, boolean collect) {
+        this(keyCoder, pages, PageCodecs.DEFAULT, maxSize, maxWeight, collect);
+    }
+
+    public ReadExternalPagedStore(final KeyCoder<K, V> keyCoder, final ByteStore pages, PageCodecs pageCodecs,
+                                  int maxSize, int maxWeight, boolean collect) {
         this.keyCoder = keyCoder;
         this.pages = pages;
+        this.pageCodecs = pageCodecs;
         log.info("[init] maxSize=" + maxSize + " maxWeight=" + maxWeight);
 
         collectMetrics = collectMetricsParameter || collect;
@@ -185,27 +192,33 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
         pages.close();
     }
 
+    /**
+     * Maximum number of pages that range iterators load ahead of their
+     * current position once a sequential scan is detected. Zero disables read-ahead.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Load the page with the given encoded key into the page cache. Used by {@link PageReadAhead}.
+     */
+    private void prefetchPage(byte[] encodedKey) {
+        try {
+            loadingPageCache.get(keyCoder.keyDecode(encodedKey));
+        } catch (ExecutionException ignored) {
+            // the iterator reports the failure if it reaches this page
+        }
+    }
+
     //decode pages. Called on the bytes returned by store.get()
     private TreePage pageDecode(byte[] page) {
         try {
             InputStream in = new ByteArrayInputStream(page);
             int flags = in.read() & 0xff;
-            int gztype = flags & 0x0f;
+            int codecId = flags & 0x0f;
             int pageType = flags >>> TYPE_BIT_OFFSET;
-            switch (gztype) {
-                case 1:
-                    in = new InflaterInputStream(in);
-                    break;
-                case 2:
-                    in = new GZIPInputStream(in);
-                    break;
-                case 3:
-                    in = new LZFInputStream(in);
-                    break;
-                case 4:
-                    in = new SnappyInputStream(in);
-                    break;
-            }
+            in = pageCodecs.decoder(codecId).decode(in);
             PageEncodeType pageEncodeType;
             DataInputStream dis = null;
             switch (pageType) {
@@ -498,19 +511,28 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
      * <p/>
      * Handles decoding and interacting with the page cache.
      * <p/>
-     * TODO: optionally(?) prebuffer the next page or delegate that to a sub-iterator
+     * Pages are loaded ahead of the iterator by a {@link PageReadAhead}
+     * if a prefetch depth has been configured. The read-ahead stops when
+     * the iterator is exhausted or closed.
+     * <p/>
      * TODO: keep pointer to page and next key instead of two pages
      */
-    private final class PageIterator implements Iterator<KeyValuePage<K, V>> {
+    private final class PageIterator implements ClosableIterator<KeyValuePage<K, V>> {
 
         private KeyValuePage<K, V> nextPage;
         private KeyValuePage<K, V> page;
+        private final PageReadAhead readAhead;
 
         public PageIterator(K start) {
             if (start == null) {
                 start = getFirstKey();
             }
+            int depth = prefetchDepth;
+            readAhead = (depth > 0) ? new PageReadAhead(pages, depth, ReadExternalPagedStore.this::prefetchPage) : null;
             nextPage = getOrLoadPageForKey(start);
+            if (readAhead != null && nextPage != null) {
+                readAhead.onPage(keyCoder.keyEncode(nextPage.getFirstKey()));
+            }
         }
 
         @Override
@@ -529,10 +551,23 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
                 K nextPageKey = page.getNextFirstKey();
                 if (nextPageKey != null) {
                     nextPage = getOrLoadPageForKey(nextPageKey);
+                    if (readAhead != null && nextPage != null) {
+                        readAhead.onPage(keyCoder.keyEncode(nextPage.getFirstKey()));
+                    }
+                }
+                if (nextPage == null) {
+                    close();
                 }
             }
         }
 
+        @Override
+        public void close() {
+            if (readAhead != null) {
+                readAhead.close();
+            }
+        }
+
         @Override
         public KeyValuePage<K, V> next() {
             if (hasNext()) {
@@ -612,6 +647,9 @@ public class ReadExternalPagedStore<K extends Comparable<K>, V extends IReadWeig
 
         @Override
         public void close() {
+            if (pageIterator instanceof ClosableIterator) {
+                ((ClosableIterator) pageIterator).close();
+            }
         }
 
         @Override
@@ -0,0 +1,530 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.kv;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable byte store that is served from a memory mapped snapshot of
+ * another store. The snapshot holds the entries of the source store in key
+ * order followed by an index with the file offset of every entry. Lookups
+ * are binary searches over the index that compare the search key against
+ * the mapped keys in place, so opening the store reads only the header and
+ * lookups do not allocate until a key or value is returned.
+ * <p/>
+ * The entries of a page store are compressed pages, so the snapshot does not
+ * compress them again. Files larger than 2GB are mapped in segments and no
+ * entry crosses a segment boundary. Closing the store unmaps the file right
+ * away, so that a deleted snapshot does not hold on to disk space until the
+ * next garbage collection, and any later read fails.
+ */
+public class SnapshotByteStore implements ByteStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotByteStore.class);
+
+    public static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x48534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final Comparator<byte[]> comparator = UnsignedBytes.lexicographicalComparator();
+
+    @Nullable private static final Unmapper unmapper = createUnmapper();
+
+    private final File file;
+    private final ByteBuffer[] segments;
+    private final ByteBuffer indexBuffer;
+    private final LongBuffer index;
+    private final long segmentSize;
+    private final int count;
+
+    /**
+     * Reads hold the read lock so that the segments are not unmapped underneath them.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public SnapshotByteStore(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            long indexOffset;
+            try {
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("not a version " + VERSION + " snapshot: " + file);
+                }
+                segmentSize = header.getInt(8);
+                count = header.getInt(12);
+                indexOffset = header.getLong(16);
+            } finally {
+                unmap(header);
+            }
+            int numSegments = (int) ((indexOffset + segmentSize - 1) / segmentSize);
+            segments = new ByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                long start = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                          Math.min(segmentSize, indexOffset - start));
+            }
+            indexBuffer = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, count * 8L);
+            index = indexBuffer.asLongBuffer();
+        }
+    }
+
+    private interface Unmapper {
+
+        void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    /**
+     * Mapped buffers are only released by garbage collection unless their cleaner
+     * is run explicitly. As in Lucene's MMapDirectory this uses Unsafe#invokeCleaner
+     * on Java 9 and later and the cleaner of the direct buffer on Java 8.
+     *
+     * @return null if the running JVM does not allow unmapping
+     */
+    @Nullable
+    private static Unmapper createUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // not available before Java 9
+        }
+        try {
+            Method cleanerMethod = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Method cleanMethod = cleanerMethod.getReturnType().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.warn("snapshots will be unmapped by garbage collection: {}", ex.toString());
+            return null;
+        }
+    }
+
+    private static void unmap(ByteBuffer buffer) {
+        if (unmapper != null) {
+            try {
+                unmapper.unmap(buffer);
+            } catch (ReflectiveOperationException ex) {
+                log.warn("unable to unmap a snapshot buffer", ex);
+            }
+        }
+    }
+
+    private void acquire() {
+        lock.readLock().lock();
+        if (closed) {
+            lock.readLock().unlock();
+            throw new IllegalStateException(this + " is closed");
+        }
+    }
+
+    private void release() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Returns the snapshot file of the database {@code dbname} in {@code dir}.
+     */
+    public static File fileFor(File dir, String dbname) {
+        return new File(dir, dbname + SUFFIX);
+    }
+
+    /**
+     * Write every entry of {@code source} into a snapshot at {@code file}. The snapshot
+     * is written to a temporary file that is renamed into place once it is complete.
+     */
+    public static void write(ByteStore source, File file) throws IOException {
+        write(source, file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static void write(ByteStore source, File file, int segmentSize) throws IOException {
+        long start = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
+        long[] offsets = new long[1024];
+        int entries = 0;
+        long position = HEADER_SIZE;
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+            out.write(new byte[HEADER_SIZE]);
+            byte[] key = source.firstKey();
+            Iterator<byte[]> keys = (key != null) ? source.keyIterator(key) : null;
+            byte[] previous = null;
+            while (key != null) {
+                if (previous != null && comparator.compare(previous, key) >= 0) {
+                    throw new IOException("source keys are not in ascending order");
+                }
+                byte[] value = source.get(key);
+                long size = 8L + key.length + value.length;
+                if (size > segmentSize) {
+                    throw new IOException("entry of " + size + " bytes does not fit in a snapshot segment");
+                }
+                long remaining = segmentSize - (position % segmentSize);
+                if (size > remaining) {
+                    out.write(new byte[(int) remaining]);
+                    position += remaining;
+                }
+                if (entries == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, entries * 2);
+                }
+                offsets[entries++] = position;
+                out.writeInt(key.length);
+                out.writeInt(value.length);
+                out.write(key);
+                out.write(value);
+                position += size;
+                previous = key;
+                key = nextKey(keys, key);
+            }
+            for (int i = 0; i < entries; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(segmentSize).putInt(entries).putLong(position);
+            header.flip();
+            fileOut.getChannel().write(header, 0);
+            fileOut.getChannel().force(true);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp.toPath());
+            throw ex;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp.toPath());
+            throw ex;
+        }
+        log.info("wrote snapshot {} with {} entries and {} bytes in {} ms", file, entries,
+                 position + entries * 8L, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Stores do not agree on whether the key iterator includes the start key, so skip it if present.
+     */
+    private static byte[] nextKey(Iterator<byte[]> keys, byte[] current) {
+        while (keys.hasNext()) {
+            byte[] next = keys.next();
+            if (comparator.compare(next, current) > 0) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments[(int) (offset / segmentSize)];
+    }
+
+    /**
+     * Compare the key of the entry at {@code position} in the index against {@code key}.
+     */
+    private int compare(int position, byte[] key) {
+        long offset = index.get(position);
+        ByteBuffer segment = segment(offset);
+        int start = (int) (offset % segmentSize);
+        int length = segment.getInt(start);
+        int base = start + 8;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (segment.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Returns the position of the key in the index if it exists, otherwise
+     * {@code -(insertion point) - 1} as in {@link Arrays#binarySearch(long[], long)}.
+     */
+    private int search(byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int floorPosition(byte[] key) {
+        int position = search(key);
+        return (position >= 0) ? position : (-position - 2);
+    }
+
+    private byte[] keyAt(int position) {
+        if (position < 0 || position >= count) {
+            return null;
+        }
+        long offset = index.get(position);
+        ByteBuffer segment = segment(offset).duplicate();
+        int start = (int) (offset % segmentSize);
+        byte[] key = new byte[segment.getInt(start)];
+        segment.position(start + 8);
+        segment.get(key);
+        return key;
+    }
+
+    private byte[] valueAt(int position) {
+        long offset = index.get(position);
+        ByteBuffer segment = segment(offset).duplicate();
+        int start = (int) (offset % segmentSize);
+        byte[] value = new byte[segment.getInt(start + 4)];
+        segment.position(start + 8 + segment.getInt(start));
+        segment.get(value);
+        return value;
+    }
+
+    @Override
+    public boolean hasKey(byte[] key) {
+        acquire();
+        try {
+            return search(key) >= 0;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public byte[] firstKey() {
+        acquire();
+        try {
+            return keyAt(0);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] lastKey() {
+        acquire();
+        try {
+            return keyAt(count - 1);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] delete(byte[] key) {
+        throw new UnsupportedOperationException("snapshot stores are read only");
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        throw new UnsupportedOperationException("snapshot stores are read only");
+    }
+
+    @Override
+    public void putAll(Map<byte[], byte[]> entries) {
+        throw new UnsupportedOperationException("snapshot stores are read only");
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        acquire();
+        try {
+            int position = search(key);
+            return (position >= 0) ? valueAt(position) : null;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] higherKey(byte[] key) {
+        acquire();
+        try {
+            int position = search(key);
+            return keyAt((position >= 0) ? (position + 1) : (-position - 1));
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] lowerKey(byte[] key) {
+        acquire();
+        try {
+            int position = search(key);
+            return keyAt((position >= 0) ? (position - 1) : (-position - 2));
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] floorKey(byte[] key) {
+        acquire();
+        try {
+            return keyAt(floorPosition(key));
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public Map.Entry<byte[], byte[]> floorEntry(byte[] key) {
+        acquire();
+        try {
+            int position = floorPosition(key);
+            if (position < 0) {
+                return null;
+            }
+            return new AbstractMap.SimpleImmutableEntry<>(keyAt(position), valueAt(position));
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public byte[] firstEntry() {
+        acquire();
+        try {
+            return (count > 0) ? valueAt(0) : null;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Iterate over the keys starting at the greatest key less than or equal
+     * to {@code start}, or at the first key if there is no such key.
+     */
+    @Override
+    public Iterator<byte[]> keyIterator(byte[] start) {
+        int first;
+        acquire();
+        try {
+            first = Math.max(0, floorPosition(start));
+        } finally {
+            release();
+        }
+        return new Iterator<byte[]>() {
+            private int next = first;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                acquire();
+                try {
+                    return keyAt(next++);
+                } finally {
+                    release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Unmaps the snapshot once the reads in progress have completed.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            log.debug("closing {}", this);
+            for (ByteBuffer segment : segments) {
+                unmap(segment);
+            }
+            unmap(indexBuffer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close(boolean cleanLog) {
+        close();
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotByteStore[" + file + "," + count + "]";
+    }
+}
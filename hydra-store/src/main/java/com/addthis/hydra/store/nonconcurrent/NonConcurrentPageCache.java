@@ -15,9 +15,11 @@ package com.addthis.hydra.store.nonconcurrent;
 
 import com.addthis.codec.codables.BytesCodable;
 import com.addthis.hydra.store.common.AbstractPageCache;
+import com.addthis.hydra.store.common.EvictionPolicyType;
 import com.addthis.hydra.store.common.ExternalMode;
 import com.addthis.hydra.store.common.Page;
 import com.addthis.hydra.store.common.PageFactory;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.db.CloseOperation;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.KeyCoder;
@@ -60,6 +62,8 @@ public class NonConcurrentPageCache<K, V extends BytesCodable> extends AbstractP
         // Optional parameters - initialized to default values;
         protected int maxPages = defaultMaxPages;
         protected PageFactory<K, V> pageFactory = NonConcurrentPage.NonConcurrentPageFactory.singleton;
+        protected PageCodecs pageCodecs = PageCodecs.DEFAULT;
+        protected EvictionPolicyType evictionPolicy = EvictionPolicyType.defaultType();
 
         public Builder(KeyCoder<K, V> keyCoder, ByteStore store, int maxPageSize) {
             this.externalStore = store;
@@ -79,19 +83,43 @@ public class NonConcurrentPageCache<K, V extends BytesCodable> extends AbstractP
             return this;
         }
 
+        @SuppressWarnings("unused")
+        public Builder<K, V> pageCodecs(PageCodecs codecs) {
+            pageCodecs = codecs;
+            return this;
+        }
+
+        @SuppressWarnings("unused")
+        public Builder<K, V> evictionPolicy(EvictionPolicyType policy) {
+            evictionPolicy = policy;
+            return this;
+        }
+
         public NonConcurrentPageCache<K, V> build() {
             return new NonConcurrentPageCache<>(keyCoder, externalStore, maxPageSize,
-                    maxPages, pageFactory);
+                    maxPages, pageFactory, pageCodecs, evictionPolicy);
         }
 
     }
 
     public NonConcurrentPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
                                   int maxPages, PageFactory<K, V> pageFactory) {
-        super(keyCoder, externalStore, pageFactory, maxPageSize, maxPages, false);
+        this(keyCoder, externalStore, maxPageSize, maxPages, pageFactory, PageCodecs.DEFAULT);
+    }
+
+    public NonConcurrentPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
+                                  int maxPages, PageFactory<K, V> pageFactory, PageCodecs pageCodecs) {
+        this(keyCoder, externalStore, maxPageSize, maxPages, pageFactory, pageCodecs,
+             EvictionPolicyType.defaultType());
+    }
+
+    public NonConcurrentPageCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
+                                  int maxPages, PageFactory<K, V> pageFactory, PageCodecs pageCodecs,
+                                  EvictionPolicyType evictionPolicy) {
+        super(keyCoder, externalStore, pageFactory, pageCodecs, evictionPolicy, maxPageSize, maxPages, false);
 
         log.info("[init] ro=" + isReadOnly() + " maxPageSize=" + maxPageSize +
-                " maxPages=" + maxPages + " gztype=" + NonConcurrentPage.gztype + " gzlevel=" +
+                " maxPages=" + maxPages + " codecs=" + pageCodecs + " eviction=" + evictionPolicy + " gzlevel=" +
                 NonConcurrentPage.gzlevel + " gzbuf=" + NonConcurrentPage.gzbuf + " mem[page=" + mem_page + " type=NonConcurrentPageCache]");
 
     }
@@ -17,25 +17,35 @@ import com.addthis.basis.util.Parameter;
 import com.addthis.codec.codables.BytesCodable;
 import com.addthis.hydra.store.common.AbstractPage;
 import com.addthis.hydra.store.common.AbstractPageCache;
+import com.addthis.hydra.store.common.EvictionPolicyType;
 import com.addthis.hydra.store.common.ExternalMode;
 import com.addthis.hydra.store.common.Page;
 import com.addthis.hydra.store.common.PageFactory;
+import com.addthis.hydra.store.compress.PageCodecs;
 import com.addthis.hydra.store.db.CloseOperation;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.KeyCoder;
 import com.addthis.hydra.store.util.MetricsUtil;
 import com.addthis.hydra.store.util.NamedThreadFactory;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.PooledByteBufAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -77,6 +87,18 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
 
     private static final int defaultEvictionThreads = Parameter.intValue("cache.threadcount.eviction", 1);
 
+    /**
+     * Maximum number of pages that are written to the external store
+     * in a single batch by the write-behind eviction.
+     */
+    private static final int defaultEvictionBatchSize = Parameter.intValue("cache.batch.writebehind", 32);
+
+    /**
+     * Number of threads that encode the pages of a write-behind batch.
+     * If this value is 1 then pages are encoded by the evicting thread.
+     */
+    private static final int defaultEncodeThreads = Parameter.intValue("cache.threadcount.encode", 1);
+
     /**
      * Used as an absolute delta from maxPages when using that upper bound.
      * Otherwise it's treated as a percentage of maxTotalMemory.
@@ -84,9 +106,6 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
     private static final int shouldEvictDelta = Parameter.intValue("eps.cache.evict.delta", 20);
 
 
-
-    final BlockingQueue<Page<K, V>> evictionQueue;
-
     final ConcurrentSkipListSet<K> purgeSet;
 
     final AtomicInteger purgeSetSize = new AtomicInteger(0);
@@ -100,6 +119,10 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
 
     private final ScheduledExecutorService evictionThreadPool, purgeThreadPool;
 
+    private final ExecutorService encodeThreadPool;
+
+    private final int evictionBatchSize;
+
 
     private static final int evictionThreadSleepMillis = 10;
     private static final int threadPoolWaitShutdownSeconds = 10;
@@ -119,9 +142,13 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
 
         // Optional parameters - initialized to default values;
         protected int numEvictionThreads = defaultEvictionThreads;
+        protected int numEncodeThreads = defaultEncodeThreads;
+        protected int evictionBatchSize = defaultEvictionBatchSize;
         protected int maxPages = defaultMaxPages;
         @SuppressWarnings("unchecked")
         protected PageFactory<K, V> pageFactory = ConcurrentPage.ConcurrentPageFactory.singleton;
+        protected PageCodecs pageCodecs = PageCodecs.DEFAULT;
+        protected EvictionPolicyType evictionPolicy = EvictionPolicyType.defaultType();
 
         public Builder(KeyCoder<K, V> keyCoder, ByteStore store, int maxPageSize) {
             this.externalStore = store;
@@ -135,6 +162,18 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
             return this;
         }
 
+        @SuppressWarnings("unused")
+        public Builder<K, V> numEncodeThreads(int val) {
+            numEncodeThreads = val;
+            return this;
+        }
+
+        @SuppressWarnings("unused")
+        public Builder<K, V> evictionBatchSize(int val) {
+            evictionBatchSize = val;
+            return this;
+        }
+
         @SuppressWarnings("unused")
         public Builder<K, V> maxPages(int val) {
             maxPages = val;
@@ -146,9 +185,22 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
             return this;
         }
 
+        @SuppressWarnings("unused")
+        public Builder<K, V> pageCodecs(PageCodecs codecs) {
+            pageCodecs = codecs;
+            return this;
+        }
+
+        @SuppressWarnings("unused")
+        public Builder<K, V> evictionPolicy(EvictionPolicyType policy) {
+            evictionPolicy = policy;
+            return this;
+        }
+
         public SkipListCache<K, V> build() {
             return new SkipListCache<>(keyCoder, externalStore, maxPageSize,
-                    maxPages, numEvictionThreads, pageFactory);
+                    maxPages, numEvictionThreads, numEncodeThreads, evictionBatchSize, pageFactory, pageCodecs,
+                    evictionPolicy);
         }
 
     }
@@ -156,19 +208,39 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
 
     public SkipListCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
                          int maxPages, int numEvictionThreads, PageFactory<K, V> pageFactory) {
-        super(keyCoder, externalStore, pageFactory, maxPageSize, maxPages, true);
+        this(keyCoder, externalStore, maxPageSize, maxPages, numEvictionThreads, pageFactory, PageCodecs.DEFAULT);
+    }
+
+    public SkipListCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
+                         int maxPages, int numEvictionThreads, PageFactory<K, V> pageFactory,
+                         PageCodecs pageCodecs) {
+        this(keyCoder, externalStore, maxPageSize, maxPages, numEvictionThreads, defaultEncodeThreads,
+             defaultEvictionBatchSize, pageFactory, pageCodecs, EvictionPolicyType.defaultType());
+    }
+
+    public SkipListCache(KeyCoder<K, V> keyCoder, ByteStore externalStore, int maxPageSize,
+                         int maxPages, int numEvictionThreads, int numEncodeThreads, int evictionBatchSize,
+                         PageFactory<K, V> pageFactory, PageCodecs pageCodecs, EvictionPolicyType evictionPolicy) {
+        super(keyCoder, externalStore, pageFactory, pageCodecs, evictionPolicy, maxPageSize, maxPages, true);
+
+        this.evictionBatchSize = Math.max(evictionBatchSize, 1);
 
         this.evictionTaskQueue = new LinkedBlockingQueue<>();
         this.purgeSet = new ConcurrentSkipListSet<>();
 
-        this.evictionQueue = new LinkedBlockingQueue<>();
-
         evictionThreadPool = Executors.newScheduledThreadPool(numEvictionThreads,
                 new NamedThreadFactory(scope + "-eviction-", true));
 
         purgeThreadPool = Executors.newScheduledThreadPool(numEvictionThreads,
                 new NamedThreadFactory(scope + "-purge-", true));
 
+        if (numEncodeThreads > 1) {
+            encodeThreadPool = Executors.newFixedThreadPool(numEncodeThreads,
+                    new NamedThreadFactory(scope + "-encode-", true));
+        } else {
+            encodeThreadPool = null;
+        }
+
         for (int i = 0; i < numEvictionThreads; i++) {
             purgeThreadPool.scheduleAtFixedRate(new BackgroundPurgeTask(),
                     i,
@@ -182,7 +254,8 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
         }
 
         log.info("[init] ro=" + isReadOnly() + " maxPageSize=" + maxPageSize +
-                " maxPages=" + maxPages + " gztype=" + AbstractPage.gztype + " gzlevel=" +
+                " maxPages=" + maxPages + " evictionBatch=" + this.evictionBatchSize +
+                " encodeThreads=" + numEncodeThreads + " codecs=" + pageCodecs + " eviction=" + evictionPolicy + " gzlevel=" +
                 AbstractPage.gzlevel + " gzbuf=" + AbstractPage.gzbuf + " mem[page=" + mem_page + " type=SkipListCache]");
 
     }
@@ -783,17 +856,190 @@ public class SkipListCache<K, V extends BytesCodable> extends AbstractPageCache<
             evictionThreadPool.awaitTermination(threadPoolWaitShutdownSeconds, TimeUnit.SECONDS);
         } catch (InterruptedException ignored) {
         }
+
+        if (encodeThreadPool != null) {
+            encodeThreadPool.shutdown();
+        }
     }
 
     public void backgroundEviction() {
         ByteBufOutputStream byteStream = new ByteBufOutputStream(PooledByteBufAllocator.DEFAULT.buffer());
         try {
-            while (shutdownEvictionThreads.get() && shouldEvictPage() && doEvictPage(byteStream)) ;
+            while (!shutdownEvictionThreads.get() && shouldEvictPage()) {
+                int batchSize = Math.max(Math.min(evictionBatchSize, evictablePages()), 1);
+                if (writeBehindEviction(batchSize, byteStream) == 0) {
+                    break;
+                }
+            }
+        } finally {
+            byteStream.buffer().release();
+        }
+    }
+
+    /**
+     * Evicts pages in batches of at most {@link #evictionBatchSize} pages.
+     * Falls back to {@link #doEvictPage(ByteBufOutputStream)} when a batch
+     * cannot be assembled so that the caller is guaranteed the same progress
+     * as the single page eviction.
+     */
+    @Override
+    public void fixedNumberEviction(int numEvictions) {
+        ByteBufOutputStream byteStream = new ByteBufOutputStream(PooledByteBufAllocator.DEFAULT.buffer());
+        try {
+            int attempts = 0;
+            while (attempts < numEvictions) {
+                int evictions = writeBehindEviction(Math.min(evictionBatchSize, numEvictions - attempts), byteStream);
+                attempts += Math.max(evictions, 1);
+            }
         } finally {
             byteStream.buffer().release();
         }
     }
 
+    private int writeBehindEviction(int maxEvictions, ByteBufOutputStream byteStream) {
+        int evictions = evictBatch(maxEvictions);
+        if (evictions == 0 && doEvictPage(byteStream)) {
+            evictions = 1;
+        }
+        return evictions;
+    }
+
+    /**
+     * Write-behind eviction of up to {@code maxEvictions} pages. Candidate pages
+     * are taken from the eviction queue and write locked, the dirty candidates are
+     * encoded (in parallel if there are encoding threads) and the encoded pages are
+     * stored with a single {@link ByteStore#putAll(Map)}. Candidates are released from
+     * memory only after the batch has been stored so that other threads can never load
+     * a stale copy of a page from the external store.
+     *
+     * @return number of pages that were evicted
+     */
+    @VisibleForTesting
+    int evictBatch(int maxEvictions) {
+        List<Page<K, V>> candidates = lockEvictionCandidates(maxEvictions);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        boolean success = false;
+        try {
+            List<Page<K, V>> dirtyPages = new ArrayList<>(candidates.size());
+            for (Page<K, V> page : candidates) {
+                if (page.getState() == ExternalMode.DISK_MEMORY_DIRTY) {
+                    dirtyPages.add(page);
+                }
+            }
+            if (!dirtyPages.isEmpty()) {
+                List<byte[]> encodedPages = encodePages(dirtyPages);
+                Map<byte[], byte[]> batch = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+                for (int i = 0; i < dirtyPages.size(); i++) {
+                    batch.put(keyCoder.keyEncode(dirtyPages.get(i).getFirstKey()), encodedPages.get(i));
+                }
+                externalStore.putAll(batch);
+                for (Page<K, V> page : dirtyPages) {
+                    page.setState(ExternalMode.DISK_MEMORY_IDENTICAL);
+                }
+            }
+            for (Page<K, V> page : candidates) {
+                releasePage(page);
+                addToPurgeSet(page);
+            }
+            success = true;
+            return candidates.size();
+        } finally {
+            for (Page<K, V> page : candidates) {
+                if (!success) {
+                    getEvictionQueue().offer(page);
+                }
+                page.writeUnlock();
+            }
+        }
+    }
+
+    /**
+     * Poll at most one pass over the eviction queue and write lock up to
+     * {@code maxEvictions} pages that can be evicted. Pages that were accessed
+     * within {@link #evictRecentNanos}, that are locked by other threads or that
+     * are scheduled for deletion are returned to the queue. The checks mirror the
+     * optimistic pass of {@link #doEvictPage(ByteBufOutputStream)}, which remains
+     * the fallback when every page in the queue is in use.
+     */
+    private List<Page<K, V>> lockEvictionCandidates(int maxEvictions) {
+        List<Page<K, V>> candidates = new ArrayList<>(maxEvictions);
+        int numPages = getNumPagesInMemory();
+        long referenceTime = generateTimestamp();
+        for (int counter = 0; counter < numPages && candidates.size() < maxEvictions; counter++) {
+            Page<K, V> page = getEvictionQueue().poll();
+            if (page == null) {
+                break;
+            }
+            if ((referenceTime - page.getTimeStamp()) < evictRecentNanos) {
+                getEvictionQueue().offer(page);
+                continue;
+            }
+            // never evict a page that is held by the calling thread, see constructNewPage()
+            if (page.isWriteLockedByCurrentThread() || !page.writeTryLock()) {
+                getEvictionQueue().offer(page);
+                continue;
+            }
+            if (page.inTransientState()) {
+                page.writeUnlock();
+                continue;
+            }
+            assert (!page.splitCondition());
+            if (page.size() == 0 && !page.getFirstKey().equals(negInf)) {
+                page.writeUnlock();
+                getEvictionQueue().offer(page);
+                continue;
+            }
+            if (page.keys() == null) {
+                addToPurgeSet(page);
+                page.writeUnlock();
+                continue;
+            }
+            candidates.add(page);
+        }
+        return candidates;
+    }
+
+    private List<byte[]> encodePages(List<Page<K, V>> pages) {
+        List<byte[]> encoded = new ArrayList<>(pages.size());
+        if ((encodeThreadPool == null) || (pages.size() == 1)) {
+            ByteBufOutputStream byteStream = new ByteBufOutputStream(PooledByteBufAllocator.DEFAULT.buffer());
+            try {
+                for (Page<K, V> page : pages) {
+                    encoded.add(page.encode(byteStream));
+                }
+            } finally {
+                byteStream.buffer().release();
+            }
+            return encoded;
+        }
+        List<Future<byte[]>> futures = new ArrayList<>(pages.size());
+        for (Page<K, V> page : pages) {
+            futures.add(encodeThreadPool.submit(() -> {
+                ByteBufOutputStream byteStream = new ByteBufOutputStream(PooledByteBufAllocator.DEFAULT.buffer());
+                try {
+                    return page.encode(byteStream);
+                } finally {
+                    byteStream.buffer().release();
+                }
+            }));
+        }
+        // wait for every task so that no page is still being encoded when the locks are released
+        Throwable failure = null;
+        for (Future<byte[]> future : futures) {
+            try {
+                encoded.add(Uninterruptibles.getUninterruptibly(future));
+            } catch (ExecutionException ex) {
+                failure = ex.getCause();
+            }
+        }
+        if (failure != null) {
+            throw Throwables.propagate(failure);
+        }
+        return encoded;
+    }
+
     public class BackgroundEvictionTask implements Runnable {
 
         private final int id;
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.store.kv.ByteStore;
+import com.addthis.hydra.store.kv.MapDbByteStore;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageReadAheadTest {
+
+    private static byte[] createBytes(int input) {
+        return String.format("%05d", input).getBytes();
+    }
+
+    @Test
+    public void sequentialScan() throws IOException, InterruptedException {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            ByteStore store = new MapDbByteStore(tempDir, "test");
+            for (int i = 0; i < 100; i++) {
+                store.put(createBytes(i), createBytes(i));
+            }
+            Set<byte[]> loaded = new ConcurrentSkipListSet<>(UnsignedBytes.lexicographicalComparator());
+            PageReadAhead readAhead = new PageReadAhead(store, 4, loaded::add);
+
+            readAhead.onPage(createBytes(0));
+            readAhead.onPage(createBytes(1));
+            assertTrue(loaded.isEmpty());
+
+            long hits = PageReadAhead.prefetchHits.count() + PageReadAhead.prefetchLate.count();
+            readAhead.onPage(createBytes(2));
+            for (int i = 0; i < 100 && loaded.size() < 4; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, loaded.size());
+            assertTrue(loaded.contains(createBytes(3)));
+            assertTrue(loaded.contains(createBytes(6)));
+            assertFalse(loaded.contains(createBytes(7)));
+
+            readAhead.onPage(createBytes(3));
+            assertEquals(hits + 1, PageReadAhead.prefetchHits.count() + PageReadAhead.prefetchLate.count());
+
+            readAhead.close();
+            store.close();
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+
+    @Test
+    public void restartAndClose() throws IOException, InterruptedException {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            ByteStore store = new MapDbByteStore(tempDir, "test");
+            for (int i = 0; i < 100; i++) {
+                store.put(createBytes(i), createBytes(i));
+            }
+            Set<byte[]> loaded = new ConcurrentSkipListSet<>(UnsignedBytes.lexicographicalComparator());
+            PageReadAhead readAhead = new PageReadAhead(store, 4, loaded::add);
+
+            for (int i = 50; i <= 52; i++) {
+                readAhead.onPage(createBytes(i));
+            }
+            for (int i = 0; i < 100 && loaded.size() < 4; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, loaded.size());
+
+            // moving backwards restarts the read-ahead from the new position
+            loaded.clear();
+            for (int i = 10; i <= 12; i++) {
+                readAhead.onPage(createBytes(i));
+            }
+            for (int i = 0; i < 100 && !loaded.contains(createBytes(16)); i++) {
+                Thread.sleep(10);
+            }
+            for (int i = 13; i <= 16; i++) {
+                assertTrue(loaded.contains(createBytes(i)));
+            }
+
+            // a closed read-ahead ignores the iterator
+            readAhead.close();
+            Thread.sleep(50);
+            loaded.clear();
+            for (int i = 17; i <= 30; i++) {
+                readAhead.onPage(createBytes(i));
+            }
+            Thread.sleep(50);
+            assertTrue(loaded.isEmpty());
+
+            store.close();
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.common;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.store.DBIntValue;
+import com.addthis.hydra.store.kv.ByteStore;
+import com.addthis.hydra.store.kv.MapDbByteStore;
+import com.addthis.hydra.store.kv.PageEncodeType;
+import com.addthis.hydra.store.nonconcurrent.NonConcurrentPageCache;
+import com.addthis.hydra.store.skiplist.SimpleIntKeyCoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuEvictionPolicyTest {
+
+    @Test
+    public void frequencySketch() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        Integer hot = 42;
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(hot);
+        }
+        assertEquals(15, sketch.frequency(hot));
+        sketch.increment(7);
+        assertTrue(sketch.frequency(7) >= 1);
+        // aging halves all counters
+        for (int i = 0; i < 10 * 512; i++) {
+            sketch.increment(1000 + i);
+        }
+        assertTrue(sketch.frequency(hot) < 15);
+    }
+
+    @Test
+    public void scanResistance() throws IOException {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            ByteStore store = new MapDbByteStore(tempDir, "test");
+            NonConcurrentPageCache<Integer, DBIntValue> cache =
+                    new NonConcurrentPageCache.Builder<>(new SimpleIntKeyCoder(), store, 25).build();
+            TinyLfuEvictionPolicy<Integer, DBIntValue> policy = new TinyLfuEvictionPolicy<>(1024);
+            List<Page<Integer, DBIntValue>> hot = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Page<Integer, DBIntValue> page = cache.pageFactory.generateEmptyPage(cache, i, PageEncodeType.defaultType());
+                hot.add(page);
+                policy.offer(page);
+            }
+            for (int round = 0; round < 5; round++) {
+                hot.forEach(policy::recordAccess);
+                // apply the buffered accesses
+                policy.offer(hot.get(0));
+            }
+            Set<Page<Integer, DBIntValue>> evicted = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                Page<Integer, DBIntValue> page = cache.pageFactory.generateEmptyPage(cache, 1000 + i,
+                                                                                    PageEncodeType.defaultType());
+                policy.offer(page);
+                evicted.add(policy.poll());
+            }
+            for (Page<Integer, DBIntValue> page : hot) {
+                assertTrue(!evicted.contains(page));
+            }
+            assertEquals(50, policy.size());
+            assertTrue(policy.rejected() > 0);
+            for (int i = 0; i < 50; i++) {
+                assertTrue(policy.poll() != null);
+            }
+            assertNull(policy.poll());
+            cache.close();
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
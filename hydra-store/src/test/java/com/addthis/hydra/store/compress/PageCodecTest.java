@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.hydra.store.kv.ByteStore;
+import com.addthis.hydra.store.kv.MapDbByteStore;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PageCodecTest {
+
+    private static byte[] createBody(int seed) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.append("key-").append(seed % 7).append('-').append(i).append("=value-").append(seed * i);
+        }
+        return builder.toString().getBytes();
+    }
+
+    private static byte[] roundTrip(PageCodec codec, byte[] body) throws IOException {
+        ByteBuf target = Unpooled.buffer();
+        target.writeByte(codec.id());
+        codec.encode(Unpooled.wrappedBuffer(body), target);
+        byte[] page = new byte[target.readableBytes()];
+        target.readBytes(page);
+        assertEquals(codec.id(), page[0] & 0x0f);
+        return ByteStreams.toByteArray(codec.decode(new ByteArrayInputStream(page, 1, page.length - 1)));
+    }
+
+    @Test
+    public void standardCodecs() throws IOException {
+        for (StandardPageCodec codec : StandardPageCodec.values()) {
+            assertEquals(codec, StandardPageCodec.fromId(codec.id()));
+            for (int i = 0; i < 10; i++) {
+                byte[] body = createBody(i);
+                assertArrayEquals(codec.toString(), body, roundTrip(codec, body));
+            }
+            assertArrayEquals(new byte[0], roundTrip(codec, new byte[0]));
+        }
+    }
+
+    @Test
+    public void forName() {
+        assertEquals(StandardPageCodec.LZ4, PageCodecs.forName("lz4"));
+        assertEquals(StandardPageCodec.ZSTD, PageCodecs.forName("ZSTD"));
+        assertEquals(StandardPageCodec.defaultCodec(), PageCodecs.forName(null));
+    }
+
+    @Test
+    public void dictionary() throws IOException {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            ByteStore store = new MapDbByteStore(tempDir, "test");
+            assertNull(ZstdDictionaryPageCodec.train(tempDir, store));
+            ByteBuf target = Unpooled.buffer();
+            for (int i = 0; i < 500; i++) {
+                target.writeByte(StandardPageCodec.DEFLATE.id());
+                StandardPageCodec.DEFLATE.encode(Unpooled.wrappedBuffer(createBody(i)), target);
+                byte[] page = new byte[target.readableBytes()];
+                target.readBytes(page);
+                target.clear();
+                store.put(String.format("%05d", i).getBytes(), page);
+            }
+            PageCodecs codecs = PageCodecs.open(tempDir, store, "deflate", true);
+            assertEquals(ZstdDictionaryPageCodec.ID, codecs.encoder().id());
+            for (int i = 0; i < 10; i++) {
+                byte[] body = createBody(i + 1000);
+                assertArrayEquals(body, roundTrip(codecs.encoder(), body));
+            }
+            store.close();
+            ZstdDictionaryPageCodec reloaded = ZstdDictionaryPageCodec.load(tempDir);
+            assertNotNull(reloaded);
+            assertEquals(0, reloaded.getGeneration());
+            assertEquals(StandardPageCodec.DEFLATE, codecs.decoder(StandardPageCodec.DEFLATE.id()));
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.addthis.basis.io.GZIPInputStreamX;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelDecompressingInputStreamTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static byte[] createLines(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(i).append('\t').append(random.nextInt(1000)).append("\tline\n");
+        }
+        return builder.toString().getBytes();
+    }
+
+    private static byte[] compress(CompressionType type, byte[] body) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (OutputStream output = CompressedStream.compressOutputStream(target, type)) {
+            output.write(body);
+        }
+        return target.toByteArray();
+    }
+
+    /**
+     * A gzip member that stores its body uncompressed so that the
+     * body can contain something that looks like a member header.
+     */
+    private static byte[] storedGzip(byte[] body) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(target) {
+            {
+                def.setLevel(Deflater.NO_COMPRESSION);
+            }
+        }) {
+            output.write(body);
+        }
+        return target.toByteArray();
+    }
+
+    private byte[] decompress(CompressionType type, byte[] compressed, int sliceSize) throws IOException {
+        try (InputStream input = new ParallelDecompressingInputStream(
+                new ByteArrayInputStream(compressed), type, sliceSize, 10000, 10000, 3, pool)) {
+            return ByteStreams.toByteArray(input);
+        }
+    }
+
+    private void concatenatedMembers(CompressionType type) throws IOException {
+        Random random = new Random(type.ordinal());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            byte[] body = createLines(random, random.nextInt(500));
+            expected.write(body);
+            compressed.write(compress(type, body));
+        }
+        long fallbacks = ParallelDecompressingInputStream.sequentialFallbacks.count();
+        for (int sliceSize : new int[]{1, 100, 1000, 100000}) {
+            assertArrayEquals(expected.toByteArray(), decompress(type, compressed.toByteArray(), sliceSize));
+        }
+        assertEquals(fallbacks, ParallelDecompressingInputStream.sequentialFallbacks.count());
+    }
+
+    @Test
+    public void gzipMembers() throws IOException {
+        concatenatedMembers(CompressionType.GZIP);
+    }
+
+    @Test
+    public void bzip2Streams() throws IOException {
+        concatenatedMembers(CompressionType.BZIP2);
+    }
+
+    @Test
+    public void xzStreams() throws IOException {
+        concatenatedMembers(CompressionType.XZ);
+    }
+
+    @Test
+    public void falseBoundary() throws IOException {
+        Random random = new Random(0);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            byte[] body = createLines(random, 50);
+            byte[] member = (i % 2 == 0) ? storedGzip(compress(CompressionType.GZIP, body)) :
+                            compress(CompressionType.GZIP, body);
+            expected.write((i % 2 == 0) ? compress(CompressionType.GZIP, body) : body);
+            compressed.write(member);
+        }
+        for (int sliceSize : new int[]{1, 100, 1000}) {
+            assertArrayEquals(expected.toByteArray(), decompress(CompressionType.GZIP, compressed.toByteArray(), sliceSize));
+        }
+    }
+
+    @Test
+    public void singleMember() throws IOException {
+        byte[] body = createLines(new Random(0), 10000);
+        long fallbacks = ParallelDecompressingInputStream.sequentialFallbacks.count();
+        assertArrayEquals(body, decompress(CompressionType.GZIP, compress(CompressionType.GZIP, body), 100));
+        assertEquals(fallbacks + 1, ParallelDecompressingInputStream.sequentialFallbacks.count());
+    }
+
+    @Test
+    public void releaseAfterFallback() throws IOException {
+        byte[] body = createLines(new Random(0), 20000);
+        byte[] compressed = compress(CompressionType.GZIP, body);
+        long fallbacks = ParallelDecompressingInputStream.sequentialFallbacks.count();
+        try (ParallelDecompressingInputStream input = new ParallelDecompressingInputStream(
+                new ByteArrayInputStream(compressed), CompressionType.GZIP, 1000, compressed.length, 2000, 3, pool)) {
+            byte[] output = new byte[body.length];
+            ByteStreams.readFully(input, output, 0, 1);
+            assertEquals(fallbacks + 1, ParallelDecompressingInputStream.sequentialFallbacks.count());
+            // no boundary after the first slice or two so the whole member was not buffered
+            assertTrue(input.retainedBytes() <= 3000);
+            ByteStreams.readFully(input, output, 1, body.length / 2);
+            // the sequential decompressor has consumed the buffered input
+            assertEquals(0, input.retainedBytes());
+            ByteStreams.readFully(input, output, 1 + (body.length / 2), body.length - 1 - (body.length / 2));
+            assertEquals(-1, input.read());
+            assertArrayEquals(body, output);
+        }
+    }
+
+    /**
+     * Read the stream until the end or the first error.
+     *
+     * @return the error or null if the end of the stream was reached
+     */
+    private static IOException readUntilError(InputStream input, ByteArrayOutputStream output) {
+        byte[] buffer = new byte[4096];
+        try {
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, count);
+            }
+            return null;
+        } catch (IOException ex) {
+            return ex;
+        }
+    }
+
+    @Test
+    public void corruptMember() throws IOException {
+        Random random = new Random(0);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            byte[] member = compress(CompressionType.GZIP, createLines(random, 50));
+            if (i == 10) {
+                // break the crc in the trailer of a member in the middle of the stream
+                member[member.length - 8] ^= 0xff;
+            }
+            compressed.write(member);
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        IOException expectedError = readUntilError(
+                new GZIPInputStreamX(new ByteArrayInputStream(compressed.toByteArray()), 4096), expected);
+        assertNotNull(expectedError);
+        for (int sliceSize : new int[]{1, 100, 1000}) {
+            long fallbacks = ParallelDecompressingInputStream.sequentialFallbacks.count();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (InputStream input = new ParallelDecompressingInputStream(
+                    new ByteArrayInputStream(compressed.toByteArray()), CompressionType.GZIP,
+                    sliceSize, 10000, 10000, 3, pool)) {
+                IOException actualError = readUntilError(input, actual);
+                assertNotNull(actualError);
+                assertEquals(expectedError.getClass(), actualError.getClass());
+                assertEquals(expectedError.getMessage(), actualError.getMessage());
+            }
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            assertEquals(fallbacks + 1, ParallelDecompressingInputStream.sequentialFallbacks.count());
+        }
+    }
+
+    @Test
+    public void strictMembers() throws IOException {
+        byte[] member = compress(CompressionType.GZIP, createLines(new Random(0), 100));
+        byte[] trailing = new byte[member.length + 3];
+        System.arraycopy(member, 0, trailing, 0, member.length);
+        assertNull(ParallelDecompressingInputStream.decode(CompressionType.GZIP, trailing));
+        byte[] truncated = new byte[member.length - 1];
+        System.arraycopy(member, 0, truncated, 0, truncated.length);
+        assertNull(ParallelDecompressingInputStream.decode(CompressionType.GZIP, truncated));
+    }
+}
@@ -17,8 +17,13 @@ package com.addthis.hydra.store.kv;
 import java.io.File;
 import java.io.IOException;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 import com.addthis.basis.util.LessFiles;
 
+import com.google.common.primitives.UnsignedBytes;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -92,4 +97,29 @@ public abstract class AbstractByteStoreTest {
         }
     }
 
+    @Test
+    public void testPutAll() {
+        File tempDir = null;
+        try {
+            tempDir = LessFiles.createTempDir();
+            ByteStore store = createByteStore(tempDir, "test");
+            store.put(createBytes(0), createBytes(0));
+            Map<byte[], byte[]> batch = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+            for (int i = 0; i < 10; i++) {
+                batch.put(createBytes(i), createBytes(10 - i));
+            }
+            store.putAll(batch);
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(createBytes(10 - i), store.get(createBytes(i)));
+            }
+            assertNull(store.get(createBytes(10)));
+        } catch (IOException ex) {
+            fail(ex.getMessage());
+        } finally {
+            if (tempDir != null) {
+                LessFiles.deleteDir(tempDir);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.store.kv;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.addthis.basis.util.LessFiles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SnapshotByteStoreTest {
+
+    private static byte[] createKey(int input) {
+        return String.format("%05d", input).getBytes();
+    }
+
+    private static byte[] createValue(int input) {
+        byte[] value = new byte[input % 100];
+        Arrays.fill(value, (byte) input);
+        return value;
+    }
+
+    @Test
+    public void snapshot() throws IOException {
+        File tempDir = LessFiles.createTempDir();
+        try {
+            ByteStore source = new MapDbByteStore(tempDir, "test");
+            for (int i = 0; i < 1000; i += 2) {
+                source.put(createKey(i), createValue(i));
+            }
+            File file = SnapshotByteStore.fileFor(tempDir, "test");
+            // small segments so that entries are spread across many mappings
+            SnapshotByteStore.write(source, file, 512);
+            SnapshotByteStore snapshot = new SnapshotByteStore(file);
+            assertEquals(500, snapshot.count());
+            assertTrue(snapshot.isReadOnly());
+            assertArrayEquals(createKey(0), snapshot.firstKey());
+            assertArrayEquals(createKey(998), snapshot.lastKey());
+            assertArrayEquals(createValue(0), snapshot.firstEntry());
+            for (int i = 0; i < 1000; i++) {
+                byte[] key = createKey(i);
+                assertEquals(source.hasKey(key), snapshot.hasKey(key));
+                assertArrayEquals(source.get(key), snapshot.get(key));
+                assertArrayEquals(source.floorKey(key), snapshot.floorKey(key));
+                assertArrayEquals(source.higherKey(key), snapshot.higherKey(key));
+                assertArrayEquals(source.lowerKey(key), snapshot.lowerKey(key));
+                Map.Entry<byte[], byte[]> floor = snapshot.floorEntry(key);
+                assertArrayEquals(source.floorKey(key), floor.getKey());
+                assertArrayEquals(source.get(floor.getKey()), floor.getValue());
+            }
+            assertNull(snapshot.floorEntry("0".getBytes()));
+            assertNull(snapshot.higherKey(createKey(998)));
+            assertFalse(snapshot.hasKey("99999".getBytes()));
+
+            Iterator<byte[]> keys = snapshot.keyIterator(createKey(501));
+            assertArrayEquals(createKey(500), keys.next());
+            assertArrayEquals(createKey(502), keys.next());
+
+            // closing unmaps the snapshot and later reads fail
+            snapshot.close();
+            snapshot.close();
+            try {
+                snapshot.get(createKey(0));
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                keys.next();
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            source.close();
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}
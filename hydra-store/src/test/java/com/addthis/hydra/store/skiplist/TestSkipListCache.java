@@ -23,11 +23,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import com.addthis.basis.test.SlowTest;
 import com.addthis.basis.util.LessFiles;
 
 import com.addthis.hydra.store.DBIntValue;
+import com.addthis.hydra.store.common.AbstractPageCache;
 import com.addthis.hydra.store.kv.ByteStore;
 import com.addthis.hydra.store.kv.ConcurrentByteStoreBDB;
 
@@ -782,6 +784,206 @@ public class TestSkipListCache {
         doTestExternalStorePersistance(4);
     }
 
+    @Test
+    public void testReadAheadIterator() {
+        File directory = null;
+        int numElements = fastNumElements;
+
+        try {
+            directory = makeTemporaryDirectory();
+            ByteStore externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            SkipListCache<Integer, DBIntValue> cache =
+                    new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore, 8).maxPages(50).build();
+            cache.setPrefetchDepth(8);
+
+            for (int i = 0; i < numElements; i++) {
+                cache.put(i, new DBIntValue(numElements - i));
+            }
+
+            cache.fixedNumberEviction(cache.getNumPagesInMemory());
+
+            Iterator<Map.Entry<Integer, DBIntValue>> iterator = cache.range(0);
+            for (int i = 0; i < numElements; i++) {
+                assertTrue(iterator.hasNext());
+                Map.Entry<Integer, DBIntValue> entry = iterator.next();
+                assertEquals(new Integer(i), entry.getKey());
+                assertEquals(new Integer(numElements - i), entry.getValue().getVal());
+            }
+            assertFalse(iterator.hasNext());
+
+            consistentWaitShutdown(cache);
+        } catch (IOException ex) {
+            fail();
+        } finally {
+            if (directory != null) {
+                LessFiles.deleteDir(directory);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteBehindEviction() throws InterruptedException {
+        File directory = null;
+        int numElements = fastNumElements;
+
+        try {
+            directory = makeTemporaryDirectory();
+            ByteStore externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            SkipListCache<Integer, DBIntValue> cache =
+                    new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore, 8)
+                            .maxPages(Integer.MAX_VALUE).evictionBatchSize(16).numEncodeThreads(4).build();
+
+            for (int i = 0; i < numElements; i++) {
+                cache.put(i, new DBIntValue(numElements - i));
+            }
+
+            int numPages = cache.getNumPagesInMemory();
+            assertTrue(numPages > 16);
+            // wait until no page counts as recently used
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(AbstractPageCache.evictRecentNanos) + 10);
+            assertEquals(16, cache.evictBatch(16));
+            assertEquals(numPages - 16, cache.getNumPagesInMemory());
+
+            // a page that was just used is not part of a batch
+            cache.get(0);
+            int inMemory = cache.getNumPagesInMemory();
+            assertEquals(inMemory - 1, cache.evictBatch(inMemory));
+            assertEquals(1, cache.getNumPagesInMemory());
+
+            cache.fixedNumberEviction(numPages);
+            assertEquals(0, cache.getNumPagesInMemory());
+            assertEquals(0, cache.getMemoryEstimate());
+
+            for (int i = 0; i < numElements; i++) {
+                assertEquals(new Integer(numElements - i), cache.get(i).getVal());
+            }
+
+            consistentWaitShutdown(cache);
+        } catch (IOException ex) {
+            fail();
+        } finally {
+            if (directory != null) {
+                LessFiles.deleteDir(directory);
+            }
+        }
+    }
+
+    @Test
+    public void testBackgroundEviction() throws InterruptedException {
+        File directory = null;
+        int numElements = fastNumElements;
+
+        try {
+            directory = makeTemporaryDirectory();
+            ByteStore externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            SkipListCache<Integer, DBIntValue> cache =
+                    new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore, 8)
+                            .maxPages(Integer.MAX_VALUE).numEvictionThreads(2).evictionBatchSize(16).build();
+
+            for (int i = 0; i < numElements; i++) {
+                cache.put(i, new DBIntValue(numElements - i));
+            }
+
+            assertTrue(cache.getNumPagesInMemory() > 100);
+
+            // lower the limit below the current size and let the eviction threads catch up
+            cache.setMaxPages(100);
+            long deadline = System.currentTimeMillis() + 30000;
+            while (cache.shouldEvictPage() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(cache.shouldEvictPage());
+
+            for (int i = 0; i < numElements; i++) {
+                assertEquals(new Integer(numElements - i), cache.get(i).getVal());
+            }
+
+            consistentWaitShutdown(cache);
+        } catch (IOException ex) {
+            fail();
+        } finally {
+            if (directory != null) {
+                LessFiles.deleteDir(directory);
+            }
+        }
+    }
+
+    @Test
+    public void testOffHeapPages() {
+        File directory = null;
+        int numElements = fastNumElements;
+
+        try {
+            directory = makeTemporaryDirectory();
+            ByteStore externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            SkipListCache<Integer, DBIntValue> cache =
+                    new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore,
+                                                8).maxPages(Integer.MAX_VALUE).build();
+
+            for (int i = 0; i < numElements; i++) {
+                cache.put(i, new DBIntValue(numElements - i));
+            }
+
+            consistentWaitShutdown(cache);
+
+            externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            cache = new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore,
+                                                8).maxPages(Integer.MAX_VALUE).build();
+            cache.setOffHeapPages(true);
+
+            for (int i = 0; i < numElements; i++) {
+                assertEquals(new Integer(numElements - i), cache.get(i).getVal());
+            }
+
+            assertTrue(cache.offHeapMemory.get() > 0);
+            assertTrue(cache.getMemoryEstimate() >= cache.offHeapMemory.get());
+
+            Iterator<Map.Entry<Integer, DBIntValue>> iterator = cache.range(0);
+            for (int i = 0; i < numElements; i++) {
+                assertTrue(iterator.hasNext());
+                Map.Entry<Integer, DBIntValue> entry = iterator.next();
+                assertEquals(new Integer(i), entry.getKey());
+                assertEquals(new Integer(numElements - i), entry.getValue().getVal());
+            }
+            assertFalse(iterator.hasNext());
+
+            for (int i = 0; i < numElements; i += 2) {
+                assertEquals(new Integer(numElements - i), cache.put(i, new DBIntValue(i)).getVal());
+            }
+
+            for (int i = 0; i < numElements; i++) {
+                assertEquals(new Integer((i % 2 == 0) ? i : numElements - i), cache.get(i).getVal());
+            }
+
+            consistentWaitShutdown(cache);
+
+            assertEquals(0, cache.offHeapMemory.get());
+            assertEquals(0, cache.getMemoryEstimate());
+
+            externalStore = new ConcurrentByteStoreBDB(directory, "db");
+
+            cache = new SkipListCache.Builder<>(new SimpleIntKeyCoder(), externalStore,
+                                                8).maxPages(Integer.MAX_VALUE).build();
+
+            for (int i = 0; i < numElements; i++) {
+                assertEquals(new Integer((i % 2 == 0) ? i : numElements - i), cache.get(i).getVal());
+            }
+
+            consistentWaitShutdown(cache);
+        } catch (IOException ex) {
+            fail();
+        } finally {
+            if (directory != null) {
+                LessFiles.deleteDir(directory);
+            }
+        }
+    }
+
     @Test
     public void testMaxPages() {
         doTestMaxPages(fastNumElements, fastNumThreads);
@@ -93,7 +93,7 @@ public class LiveQueryReference extends QueryReference {
             // ideally the channel here would be some kind of meshy construct, but null should
             // be fine for now -- we never call await/sync etc in the worker
             final DataChannelToInputStream bridge = new DataChannelToInputStream(
-                    new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE));
+                    new DefaultChannelProgressivePromise(null, ImmediateEventExecutor.INSTANCE), options);
             if (options == null) {
                 log.warn("Invalid request to getInput.  Options cannot be null");
                 return null;
@@ -144,7 +144,7 @@ public final class MapFeeder implements Runnable {
     private boolean fillBuffer() {
         // iterate over inputs and execute default target
         try {
-            Bundle p = source.next();
+            Bundle p = task.nextInput();
             if (p == null) {
                 log.info("exiting on null bundle from {}", source);
                 return false;
@@ -115,7 +115,7 @@ public final class MapFeederForkJoin implements Runnable {
         boolean status = false;
         try {
             enqueuePermits.acquire();
-            Bundle p = source.next();
+            Bundle p = task.nextInput();
             if (p == null) {
                 log.info("exiting on null bundle from {}", source);
             } else {
@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.map;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.addthis.basis.util.LessStrings;
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.util.AutoField;
+import com.addthis.bundle.util.ValueUtil;
+import com.addthis.hydra.common.hash.PluggableHashFunction;
+import com.addthis.hydra.task.source.TaskDataSource;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Variant of {@link MapFeeder} that hands bundles to the processor threads through
+ * preallocated single-producer single-consumer ring buffers. Each processor thread
+ * removes up to {@code task.queue.batch} queued bundles at a time and processes them
+ * as a batch, so the hand-off costs neither a lock nor an allocation per bundle.
+ * Bundles are sharded onto the processor threads in the same way as {@link MapFeeder}.
+ * <p/>
+ * The occupancy of each buffer, the time the feeder spent waiting for space in it and
+ * the time its processor thread spent waiting for input are reported as metrics
+ * with the scope {@code processor-N}.
+ */
+public final class MapFeederRingBuffer implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(MapFeederRingBuffer.class);
+
+    private static final int QUEUE_DEPTH = Parameter.intValue("task.queue.depth", 100);
+    private static final int BATCH_SIZE = Parameter.intValue("task.queue.batch", 64);
+
+    // state control
+    private final AtomicBoolean errored = new AtomicBoolean(false);
+    private boolean hasClosedStreams = false; // not shared with MapperTasks
+
+    // enclosing task
+    private final StreamMapper task;
+    private final TaskDataSource source;
+
+    // mapper task controls
+    private final int feeders;
+    private final AutoField shardField;
+    private final Thread[] threads;
+    private final SpscRingBuffer<Bundle>[] queues;
+
+    // metrics
+    private final long start = System.currentTimeMillis();
+    private long totalBundles = 0;
+
+    public MapFeederRingBuffer(StreamMapper task, TaskDataSource source, int feeders) {
+        this.source = source;
+        this.task = task;
+        this.feeders = feeders;
+
+        shardField = source.getShardField();
+        threads = new Thread[feeders];
+        queues = new SpscRingBuffer[feeders];
+
+        for (int i = 0; i < threads.length; i++) {
+            queues[i] = new SpscRingBuffer<>(QUEUE_DEPTH);
+            threads[i] = new Thread(new MapperTask(this, i), "MapProcessor #" + i);
+            registerMetrics(i, queues[i]);
+        }
+    }
+
+    private static void registerMetrics(int processorID, SpscRingBuffer<Bundle> queue) {
+        String scope = "processor-" + processorID;
+        Metrics.newGauge(MapFeederRingBuffer.class, "queueOccupancy", scope, new Gauge<Double>() {
+            @Override public Double value() {
+                return ((double) queue.size()) / queue.capacity();
+            }
+        });
+        Metrics.newGauge(MapFeederRingBuffer.class, "feederStallMillis", scope, new Gauge<Long>() {
+            @Override public Long value() {
+                return TimeUnit.NANOSECONDS.toMillis(queue.producerStallNanos());
+            }
+        });
+        Metrics.newGauge(MapFeederRingBuffer.class, "processorIdleMillis", scope, new Gauge<Long>() {
+            @Override public Long value() {
+                return TimeUnit.NANOSECONDS.toMillis(queue.consumerStallNanos());
+            }
+        });
+    }
+
+    @Override public void run() {
+        log.info("starting {} thread(s) for src={}", feeders, source);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            if (source.isEnabled()) {
+                while (fillBuffer()) {
+                    if (Thread.interrupted()) {
+                        closeSourceIfNeeded();
+                    }
+                }
+            }
+            closeSourceIfNeeded();
+            joinProcessors();
+            log.info("all ({}) task threads exited; sending taskComplete", feeders);
+            logBundleThroughput();
+            // run in different threads to isolate them from interrupts. ie. "taskCompleteUninterruptibly"
+            // join awaits completion, is uninterruptible, and will propagate any exception
+            CompletableFuture.runAsync(task::taskComplete).join();
+        } catch (Throwable t) {
+            logBundleThroughput();
+            handleUncaughtThrowable(t);
+        }
+        log.debug("task feeder exited");
+    }
+
+    private void logBundleThroughput() {
+        long elapse = (System.currentTimeMillis() - start) / 1000;
+        log.info("{} bundles processed in {} seconds (avg rate={}/s)", totalBundles, elapse,
+                 (elapse == 0) ? 0 : (totalBundles / elapse));
+        for (int i = 0; i < queues.length; i++) {
+            log.info("processor #{} feeder stalled {} ms, processor idle {} ms", i,
+                     TimeUnit.NANOSECONDS.toMillis(queues[i].producerStallNanos()),
+                     TimeUnit.NANOSECONDS.toMillis(queues[i].consumerStallNanos()));
+        }
+    }
+
+    /**
+     * Immediately halting is the best way we have of ensuring errors are reported without a significantly
+     * more involved system.
+     */
+    private void handleUncaughtThrowable(Throwable t) {
+        if (errored.compareAndSet(false, true)) {
+            log.error("unrecoverable error in task feeder or one of its mapper threads. immediately halting jvm", t);
+            Runtime.getRuntime().halt(1);
+        }
+    }
+
+    private boolean fillBuffer() {
+        // iterate over inputs and execute default target
+        try {
+            Bundle p = task.nextInput();
+            if (p == null) {
+                log.info("exiting on null bundle from {}", source);
+                return false;
+            }
+            totalBundles++;
+            int hash = p.hashCode();
+            if (shardField != null) {
+                String val = ValueUtil.asNativeString(shardField.getValue(p));
+                if (!LessStrings.isEmpty(val)) {
+                    hash = PluggableHashFunction.hash(val);
+                }
+            }
+            int mod = Math.abs(hash % queues.length);
+            queues[mod].put(p);
+            return true;
+        } catch (NoSuchElementException ignored) {
+            log.info("exiting on premature stream termination");
+        }
+        return false;
+    }
+
+    private void joinProcessors() {
+        log.debug("closing queues of {} processors", queues.length);
+        for (SpscRingBuffer<Bundle> queue : queues) {
+            queue.close();
+        }
+        for (Thread thread : threads) {
+            Uninterruptibles.joinUninterruptibly(thread);
+        }
+    }
+
+    private void closeSourceIfNeeded() {
+        if (!hasClosedStreams) {
+            hasClosedStreams = true;
+            log.info("closing stream {}", source.getClass().getSimpleName());
+            // TODO: better API/ force sources to behave more sensibly
+            CompletableFuture.runAsync(source::close).join();
+        }
+    }
+
+    private static class MapperTask implements Runnable {
+        private final int processorID;
+        private final MapFeederRingBuffer mapFeeder;
+        private final Bundle[] batch = new Bundle[BATCH_SIZE];
+
+        public MapperTask(MapFeederRingBuffer mapFeeder, int processorID) {
+            this.processorID = processorID;
+            this.mapFeeder = mapFeeder;
+        }
+
+        @Override
+        public void run() {
+            SpscRingBuffer<Bundle> queue = mapFeeder.queues[processorID];
+            while (true) {
+                try {
+                    int count = queue.drain(batch);
+                    if (count == 0) {
+                        return;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        Bundle next = batch[i];
+                        batch[i] = null;
+                        mapFeeder.task.process(next);
+                    }
+                } catch (Throwable t) {
+                    mapFeeder.handleUncaughtThrowable(t);
+                }
+            }
+        }
+    }
+}
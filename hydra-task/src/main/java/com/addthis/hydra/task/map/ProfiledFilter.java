@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.map;
+
+import java.util.Arrays;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.hydra.data.filter.bundle.BundleFilter;
+import com.addthis.hydra.data.filter.bundle.BundleFilterChain;
+import com.addthis.hydra.task.util.StageProfiler;
+
+/**
+ * Applies one of the filters of a {@link MapDef} to a sampled bundle and
+ * records the time it took. The filters of a {@link BundleFilterChain} are
+ * recorded as separate stages named after their position in the chain.
+ */
+final class ProfiledFilter {
+
+    private final BundleFilter filter;
+
+    private final BundleFilterChain chain;
+
+    private final StageProfiler.Stage[] stages;
+
+    ProfiledFilter(String name, BundleFilter filter) {
+        this.filter = filter;
+        if (filter instanceof BundleFilterChain) {
+            chain = (BundleFilterChain) filter;
+            BundleFilter[] filters = chain.filters();
+            stages = new StageProfiler.Stage[filters.length];
+            for (int i = 0; i < filters.length; i++) {
+                stages[i] = StageProfiler.stage(name + "." + i + "." + filters[i].getClass().getSimpleName());
+            }
+        } else {
+            chain = null;
+            stages = new StageProfiler.Stage[]{
+                    StageProfiler.stage(name + "." + filter.getClass().getSimpleName())};
+        }
+    }
+
+    public boolean filter(Bundle bundle) {
+        if (chain != null) {
+            long[] nanos = new long[stages.length];
+            Arrays.fill(nanos, -1);
+            boolean result = chain.filter(bundle, nanos);
+            for (int i = 0; i < nanos.length; i++) {
+                if (nanos[i] >= 0) {
+                    stages[i].update(nanos[i]);
+                }
+            }
+            return result;
+        }
+        long start = System.nanoTime();
+        boolean result = filter.filter(bundle);
+        stages[0].update(System.nanoTime() - start);
+        return result;
+    }
+}
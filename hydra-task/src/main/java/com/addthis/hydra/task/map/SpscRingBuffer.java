@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.map;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer single-consumer queue over a preallocated array.
+ * The producer and the consumer each own one index and only publish it with
+ * an ordered write, so neither side takes a lock or allocates per element.
+ * The consumer removes every available element at once with {@link #drain(Object[])}.
+ * <p/>
+ * A side that cannot make progress spins briefly and then parks. The other side
+ * unparks it after its next publish. The time each side spends waiting is recorded
+ * and available from {@link #producerStallNanos()} and {@link #consumerStallNanos()}.
+ */
+final class SpscRingBuffer<E> {
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] buffer;
+    private final int mask;
+
+    /** Next index to be read. Written only by the consumer. */
+    private final AtomicLong head = new AtomicLong();
+    /** Next index to be written. Written only by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    private volatile long producerStallNanos;
+    private volatile long consumerStallNanos;
+
+    // producer local copy of head
+    private long headCache;
+    // consumer local copy of tail
+    private long tailCache;
+
+    SpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Append an element unless the buffer is full. Producer only.
+     */
+    public boolean offer(E element) {
+        long t = tail.get();
+        if (t - headCache >= buffer.length) {
+            headCache = head.get();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = element;
+        tail.lazySet(t + 1);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Append an element, waiting for space if the buffer is full. Producer only.
+     */
+    public void put(E element) {
+        if (offer(element)) {
+            return;
+        }
+        long stallStart = System.nanoTime();
+        int spins = 0;
+        while (!offer(element)) {
+            if (spins < SPINS) {
+                spins++;
+            } else if (spins == SPINS) {
+                spins++;
+                Thread.yield();
+            } else {
+                waitingProducer = Thread.currentThread();
+                if (tail.get() - head.get() >= buffer.length) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                waitingProducer = null;
+            }
+        }
+        producerStallNanos += System.nanoTime() - stallStart;
+    }
+
+    /**
+     * No more elements will be added. The consumer drains
+     * the remaining elements before {@link #drain} returns zero.
+     */
+    public void close() {
+        closed = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Move the available elements into {@code batch}, waiting until at least one is available.
+     * Consumer only.
+     *
+     * @return number of elements moved, or zero once the buffer is closed and empty
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(E[] batch) {
+        long h = head.get();
+        if (tailCache == h) {
+            tailCache = tail.get();
+            if (tailCache == h) {
+                tailCache = awaitElements(h);
+                if (tailCache == h) {
+                    return 0;
+                }
+            }
+        }
+        int count = (int) Math.min(tailCache - h, batch.length);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (h + i) & mask;
+            batch[i] = (E) buffer[index];
+            buffer[index] = null;
+        }
+        head.lazySet(h + count);
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return count;
+    }
+
+    private long awaitElements(long h) {
+        long stallStart = System.nanoTime();
+        int spins = 0;
+        long t;
+        // read closed before tail so that elements published before close are never lost
+        boolean done = closed;
+        while ((t = tail.get()) == h && !done) {
+            if (spins < SPINS) {
+                spins++;
+            } else if (spins == SPINS) {
+                spins++;
+                Thread.yield();
+            } else {
+                waitingConsumer = Thread.currentThread();
+                if (tail.get() == h && !closed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                waitingConsumer = null;
+            }
+            done = closed;
+        }
+        consumerStallNanos += System.nanoTime() - stallStart;
+        return t;
+    }
+
+    public long producerStallNanos() {
+        return producerStallNanos;
+    }
+
+    public long consumerStallNanos() {
+        return consumerStallNanos;
+    }
+}
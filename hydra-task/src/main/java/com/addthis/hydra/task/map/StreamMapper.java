@@ -43,6 +43,8 @@ import com.addthis.hydra.task.output.TaskDataOutput;
 import com.addthis.hydra.task.run.TaskExitState;
 import com.addthis.hydra.task.run.TaskRunnable;
 import com.addthis.hydra.task.source.TaskDataSource;
+import com.addthis.hydra.task.util.BundlePool;
+import com.addthis.hydra.task.util.StageProfiler;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
@@ -129,6 +131,23 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
      */
     private final boolean useForkJoinMapFeeder;
 
+    /**
+     * Use MapFeederRingBuffer if true. The bundles are handed to the processor threads
+     * in batches through lock-free ring buffers instead of blocking queues.
+     * Ignored if {@code useForkJoinMapFeeder} is true. Default is false.
+     */
+    private final boolean useRingBufferMapFeeder;
+
+    /**
+     * If true then bundles are reused once they have been processed instead of
+     * allocating new bundles for every record. Output bundles are reused by the
+     * processing thread and input bundles are handed back to the source. Only
+     * takes effect when the output does not retain bundles (eg. a tree output)
+     * and there is no builder or closeable filter that could hold on to them.
+     * Default is false.
+     */
+    private final boolean recycleBundles;
+
     private final int threads;
     private final boolean enableJmx;
     private final boolean emitTaskState;
@@ -136,10 +155,21 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
 
     private final CompletableFuture<Void> completionFuture = new CompletableFuture<>();
 
+    private final BundlePool outputPool = new BundlePool(4);
+    private boolean recycling;
+
     private final AtomicBoolean metricGate = new AtomicBoolean(false);
     private final LongAdder filterTime = new LongAdder();
     private final LongAdder outputTime = new LongAdder();
 
+    // sampled per stage latencies, null when sampling is disabled
+    private StageProfiler.Stage sourceStage;
+    private StageProfiler.Stage mapStage;
+    private StageProfiler.Stage outputStage;
+    private ProfiledFilter filterInProfile;
+    private ProfiledFilter filterOutProfile;
+    private ProfiledFilter cFilterOutProfile;
+
     // metrics
     private static final Meter inputMeter = Metrics.newMeter(StreamMapper.class, "input", "input", TimeUnit.SECONDS);
     private static final Meter outputMeter = Metrics.newMeter(StreamMapper.class, "output", "output", TimeUnit.SECONDS);
@@ -166,7 +196,9 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
             @JsonProperty("dateFormat") SimpleDateFormat dateFormat,
             @JsonProperty("validateDirs") boolean validateDirs,
             @JsonProperty("taskFinishTimeout") @Time(TimeUnit.SECONDS) int taskFinishTimeout,
-            @JsonProperty("useForkJoinMapFeeder") boolean useForkJoinMapFeeder) {
+            @JsonProperty("useForkJoinMapFeeder") boolean useForkJoinMapFeeder,
+            @JsonProperty("useRingBufferMapFeeder") boolean useRingBufferMapFeeder,
+            @JsonProperty("recycleBundles") boolean recycleBundles) {
         this.source = source;
         this.map = map;
         this.output = output;
@@ -180,6 +212,8 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
         this.validateDirs = validateDirs;
         this.taskFinishTimeout = taskFinishTimeout;
         this.useForkJoinMapFeeder = useForkJoinMapFeeder;
+        this.useRingBufferMapFeeder = useRingBufferMapFeeder;
+        this.recycleBundles = recycleBundles;
         validateWritableRootPaths();
     }
 
@@ -192,9 +226,25 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
             builder.init();
         }
         maybeInitJmx();
+        if (recycleBundles) {
+            recycling = (builder == null) && (map.cFilterOut == null) && !output.retainsBundles();
+            if (!recycling) {
+                log.warn("bundle recycling is disabled because the output or builder may retain bundles");
+            }
+        }
+        if (StageProfiler.sampleRate > 0) {
+            sourceStage = StageProfiler.stage("source");
+            mapStage = StageProfiler.stage("mapBundle");
+            outputStage = StageProfiler.stage("output");
+            filterInProfile = (map.filterIn != null) ? new ProfiledFilter("filterIn", map.filterIn) : null;
+            filterOutProfile = (map.filterOut != null) ? new ProfiledFilter("filterOut", map.filterOut) : null;
+            cFilterOutProfile = (map.cFilterOut != null) ? new ProfiledFilter("cFilterOut", map.cFilterOut) : null;
+        }
         log.info("[init]");
         if (useForkJoinMapFeeder) {
             feeder = new Thread(new MapFeederForkJoin(this, source, threads), "MapFeederForkJoin");
+        } else if (useRingBufferMapFeeder) {
+            feeder = new Thread(new MapFeederRingBuffer(this, source, threads), "MapFeederRingBuffer");
         } else {
             feeder = new Thread(new MapFeeder(this, source, threads), "MapFeeder");
         }
@@ -206,12 +256,21 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
         Bundle bundle = inputBundle;
         try {
             log.debug("input: {}", bundle);
+            boolean sampled = StageProfiler.sample();
             long filterBefore = System.nanoTime();
             long filterAfter;
-            if ((map.filterIn == null) || map.filterIn.filter(bundle)) {
-                bundle = mapBundle(bundle);
-                if ((map.filterOut == null) || map.filterOut.filter(bundle)) {
-                    if ((map.cFilterOut == null)  || map.cFilterOut.filter(bundle)) {
+            if ((map.filterIn == null) || (sampled ? filterInProfile.filter(bundle) : map.filterIn.filter(bundle))) {
+                if (sampled) {
+                    long mapBefore = System.nanoTime();
+                    bundle = mapBundle(bundle);
+                    mapStage.update(System.nanoTime() - mapBefore);
+                } else {
+                    bundle = mapBundle(bundle);
+                }
+                if ((map.filterOut == null) ||
+                    (sampled ? filterOutProfile.filter(bundle) : map.filterOut.filter(bundle))) {
+                    if ((map.cFilterOut == null) ||
+                        (sampled ? cFilterOutProfile.filter(bundle) : map.cFilterOut.filter(bundle))) {
                         filterAfter = System.nanoTime();
                         if (builder != null) {
                             builder.process(bundle, this);
@@ -220,7 +279,13 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
                         }
                         long bundleOutputTime = System.nanoTime() - filterAfter;
                         outputTime.add(bundleOutputTime);
+                        if (sampled) {
+                            outputStage.update(bundleOutputTime);
+                        }
                         outputMeter.mark();
+                        if (recycling) {
+                            outputPool.offer(bundle);
+                        }
                     } else {
                         filterAfter = System.nanoTime();
                         log.debug("closeable filterOut dropped bundle : {}", bundle);
@@ -228,6 +293,9 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
                 } else {
                     filterAfter = System.nanoTime();
                     log.debug("filterOut dropped bundle : {}", bundle);
+                    if (recycling) {
+                        outputPool.offer(bundle);
+                    }
                 }
             } else {
                 filterAfter = System.nanoTime();
@@ -238,6 +306,9 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
 
             // inputs are counted after outputs to prevent spurious drop reporting
             inputMeter.mark();
+            if (recycling) {
+                source.recycle(inputBundle);
+            }
 
             // print metrics if it has been long enough
             long time = System.nanoTime();
@@ -263,8 +334,25 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
         }
     }
 
+    /**
+     * Called by the feeders to read the next bundle from the source.
+     * Sampled reads are recorded as the source stage.
+     */
+    Bundle nextInput() {
+        if (!StageProfiler.sample()) {
+            return source.next();
+        }
+        long start = System.nanoTime();
+        Bundle next = source.next();
+        sourceStage.update(System.nanoTime() - start);
+        return next;
+    }
+
     private Bundle mapBundle(Bundle in) {
-        Bundle out = output.createBundle();
+        Bundle out = recycling ? outputPool.poll() : null;
+        if (out == null) {
+            out = output.createBundle();
+        }
         if (map.fields != null) {
             for (FieldFilter fieldFilter : map.fields) {
                 fieldFilter.mapField(in, out);
@@ -353,6 +441,9 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
         }
 
         log.info(fullMetrics.toString());
+        if (emitTaskState) {
+            StageProfiler.writeProfile(new File("job.profile"));
+        }
     }
 
     @Override
@@ -387,6 +478,7 @@ public class StreamMapper implements StreamEmitter, TaskRunnable {
                 exitState.setTotalEmitted(outputMeter.count());
                 exitState.setMeanRate(outputMeter.meanRate());
                 Files.write(CodecJSON.INSTANCE.encode(exitState), new File("job.exit"));
+                StageProfiler.writeProfile(new File("job.profile"));
             } catch (Exception ex) {
                 log.error("", ex);
             }
@@ -56,6 +56,15 @@ public abstract class TaskDataOutput implements DataChannelOutput, WritableRootP
         return format.createBundle();
     }
 
+    /**
+     * Returns false if this output holds no reference to a bundle once
+     * {@link #send(Bundle)} has returned, so that the caller may reuse it.
+     * The default is true.
+     */
+    public boolean retainsBundles() {
+        return true;
+    }
+
     public final void init() {
         open();
     }
@@ -106,6 +106,11 @@ public class TaskDataOutputChain extends DataOutputTypeList {
         }
     }
 
+    /** Child outputs are always sent copies of the bundle. */
+    @Override public boolean retainsBundles() {
+        return false;
+    }
+
     @Override public void send(List<Bundle> bundles) {
         if (bundles != null && !bundles.isEmpty()) {
             for (Bundle bundle : bundles) {
@@ -26,6 +26,7 @@ import com.addthis.hydra.data.filter.bundle.BundleFilter;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.TreeDataParameters;
 import com.addthis.hydra.data.tree.TreeDataParent;
+import com.addthis.hydra.task.util.StageProfiler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -138,6 +139,8 @@ public abstract class PathElement implements Codable, TreeDataParent {
     @FieldConfig(codable = true, writeonly = true)
     private boolean disabled;
 
+    private StageProfiler.Stage profileStage;
+
     public PathElement() {
     }
 
@@ -176,6 +179,22 @@ public abstract class PathElement implements Codable, TreeDataParent {
         profileTime.addAndGet(time);
     }
 
+    /**
+     * Set the name of the stage that the sampled processing times of this
+     * element are recorded in. Elements that are not named share a stage
+     * with the other unnamed elements of the same type.
+     */
+    public void setProfileStage(String stageName) {
+        profileStage = StageProfiler.stage(stageName);
+    }
+
+    public StageProfiler.Stage getProfileStage() {
+        if (profileStage == null) {
+            profileStage = StageProfiler.stage("path." + getClass().getSimpleName());
+        }
+        return profileStage;
+    }
+
     /**
      * resolve one-bind bindings (done post-parsing from Config)
      */
@@ -29,6 +29,18 @@ public final class StoreConfig implements Codable {
     Long    maxCacheMem;
     @FieldConfig(codable = true)
     Integer maxPageMem;
+    /** Page compression codec: none, deflate, gzip, lzf, snappy, lz4 or zstd. */
+    @FieldConfig(codable = true)
+    String  pageCodec;
+    /** If true then compress pages against a zstd dictionary trained from existing pages. */
+    @FieldConfig(codable = true)
+    Boolean pageDictionary;
+    /** If true then hold the values of unmodified pages in pooled direct buffers. */
+    @FieldConfig(codable = true)
+    Boolean offHeapPages;
+    /** Page cache eviction policy: fifo or tinylfu. */
+    @FieldConfig(codable = true)
+    String  evictionPolicy;
 
     public void setStaticFieldsFromMembers() {
         if (maxCacheSize != null)
@@ -41,5 +53,13 @@ public final class StoreConfig implements Codable {
             TreeCommonParameters.setDefaultMaxPageMem(maxPageMem);
         if (memSample != null)
             TreeCommonParameters.setDefaultMemSample(memSample);
+        if (pageCodec != null)
+            TreeCommonParameters.setDefaultPageCodec(pageCodec);
+        if (pageDictionary != null)
+            TreeCommonParameters.setDefaultPageDictionary(pageDictionary);
+        if (offHeapPages != null)
+            TreeCommonParameters.setDefaultOffHeapPages(offHeapPages);
+        if (evictionPolicy != null)
+            TreeCommonParameters.setDefaultEvictionPolicy(evictionPolicy);
     }
 }
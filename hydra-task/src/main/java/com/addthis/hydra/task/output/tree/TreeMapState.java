@@ -29,6 +29,7 @@ import com.addthis.bundle.core.BundleFormatted;
 import com.addthis.hydra.data.tree.DataTreeNode;
 import com.addthis.hydra.data.tree.DataTreeNodeInitializer;
 import com.addthis.hydra.data.tree.DataTreeNodeUpdater;
+import com.addthis.hydra.task.util.StageProfiler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +58,7 @@ public final class TreeMapState implements DataTreeNodeUpdater, DataTreeNodeInit
         this.stack = null;
         this.thread = null;
         this.profiling = false;
+        this.sampled = false;
     }
 
     /** */
@@ -68,6 +70,7 @@ public final class TreeMapState implements DataTreeNodeUpdater, DataTreeNodeInit
         this.stack = new LinkedList<>();
         this.thread = Thread.currentThread();
         this.profiling = processor != null ? processor.isProfiling() : false;
+        this.sampled = (processor != null) && StageProfiler.sample();
         push(rootNode);
     }
 
@@ -77,6 +80,8 @@ public final class TreeMapState implements DataTreeNodeUpdater, DataTreeNodeInit
     private final Bundle bundle;
     private final Thread thread;
     private final boolean profiling;
+    /** record the (inclusive) time of each path element in its profile stage */
+    private final boolean sampled;
 
     private boolean lastWasNew;
     private int touched;
@@ -255,10 +260,16 @@ public final class TreeMapState implements DataTreeNodeUpdater, DataTreeNodeInit
      * PathSplit.processNode()
      */
     public List<DataTreeNode> processPathElement(PathElement pe) {
-        if (profiling) {
+        if (profiling || sampled) {
             long mark = System.nanoTime();
             List<DataTreeNode> list = processPathElementProfiled(pe);
-            processor.updateProfile(pe, System.nanoTime() - mark);
+            long elapsed = System.nanoTime() - mark;
+            if (profiling) {
+                processor.updateProfile(pe, elapsed);
+            }
+            if (sampled) {
+                pe.getProfileStage().update(elapsed);
+            }
             return list;
         } else {
             return processPathElementProfiled(pe);
@@ -58,6 +58,7 @@ import com.addthis.hydra.data.util.TimeField;
 import com.addthis.hydra.store.db.CloseOperation;
 import com.addthis.hydra.task.output.DataOutputTypeList;
 import com.addthis.hydra.task.run.TaskRunConfig;
+import com.addthis.hydra.task.util.StageProfiler;
 import com.addthis.meshy.MeshyServer;
 
 import com.google.common.base.Throwables;
@@ -253,6 +254,7 @@ public final class TreeMapper extends DataOutputTypeList implements Codable {
                 for (PathElement p : pe) {
                     p.resolve(this);
                 }
+                nameProfileStages(me.getKey(), pe);
                 pathIndex.add(me.getKey(), pe);
             }
         }
@@ -260,6 +262,7 @@ public final class TreeMapper extends DataOutputTypeList implements Codable {
             for (PathElement p : root) {
                 p.resolve(this);
             }
+            nameProfileStages("root", root);
         } else if ((paths != null) && !paths.isEmpty()) {
             root = paths.values().iterator().next();
         }
@@ -267,11 +270,13 @@ public final class TreeMapper extends DataOutputTypeList implements Codable {
             for (PathElement p : pre) {
                 p.resolve(this);
             }
+            nameProfileStages("pre", pre);
         }
         if (post != null) {
             for (PathElement p : post) {
                 p.resolve(this);
             }
+            nameProfileStages("post", post);
         }
         if (outputs != null) {
             for (PathOutput out : outputs) {
@@ -280,6 +285,18 @@ public final class TreeMapper extends DataOutputTypeList implements Codable {
         }
     }
 
+    /**
+     * Name the sampled profile stages of the top level elements of a path
+     * after the path and their position in it.
+     */
+    private static void nameProfileStages(String pathName, PathElement[] path) {
+        if (StageProfiler.sampleRate > 0) {
+            for (int i = 0; i < path.length; i++) {
+                path[i].setProfileStage("path." + pathName + "." + i + "." + path[i].getClass().getSimpleName());
+            }
+        }
+    }
+
     public PathElement[] getPath(String path) {
         return paths.get(path);
     }
@@ -505,6 +522,12 @@ public final class TreeMapper extends DataOutputTypeList implements Codable {
         lastBundleTime.set(markAfter);
     }
 
+    /** Bundles are fully processed by {@link #send(Bundle)}. */
+    @Override
+    public boolean retainsBundles() {
+        return false;
+    }
+
     @Override
     public void send(List<Bundle> bundles) {
         if (bundles != null && !bundles.isEmpty()) {
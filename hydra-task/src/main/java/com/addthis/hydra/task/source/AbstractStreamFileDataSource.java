@@ -24,6 +24,7 @@ import java.io.UncheckedIOException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -60,11 +61,13 @@ import com.addthis.hydra.store.skiplist.ConcurrentPage;
 import com.addthis.hydra.task.run.TaskRunConfig;
 import com.addthis.hydra.task.source.bundleizer.Bundleizer;
 import com.addthis.hydra.task.source.bundleizer.BundleizerFactory;
+import com.addthis.hydra.task.source.bundleizer.PositionedBundleizer;
 import com.addthis.hydra.task.stream.PersistentStreamFileSource;
 import com.addthis.hydra.task.stream.StreamFile;
 import com.addthis.hydra.task.stream.StreamFileSource;
 import com.addthis.hydra.task.stream.StreamSourceFiltered;
 import com.addthis.hydra.task.stream.StreamSourceHashed;
+import com.addthis.hydra.task.util.BundlePool;
 import com.addthis.hydra.store.compress.CompressedStream;
 
 import com.google.common.base.Objects;
@@ -150,6 +153,16 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
     /** Enable metrics visible only from jmx */
     @JsonProperty private boolean jmxMetrics;
 
+    /**
+     * If true then a partially consumed file is resumed by skipping straight to
+     * the byte position recorded in its mark instead of re-reading and discarding
+     * the bundles that were already processed. Only formats that track their
+     * position (the newline based formats) record one; other marks are resumed
+     * by index. Compressed files are still decompressed up to the position but
+     * are not bundleized. Default is false.
+     */
+    @JsonProperty private boolean seekMarks;
+
     /** Number of shards in the input source. */
     @JsonProperty protected Integer shardTotal;
 
@@ -230,6 +243,7 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
     private final Counter openNew = Metrics.newCounter(getClass(), "openNew");
     private final Counter openIndex = Metrics.newCounter(getClass(), "openIndex");
     private final Counter openSkip = Metrics.newCounter(getClass(), "openSkip");
+    private final Counter openSeek = Metrics.newCounter(getClass(), "openSeek");
     private final Counter skipping = Metrics.newCounter(getClass(), "skipping");
     private final Counter reading = Metrics.newCounter(getClass(), "reading");
     private final Counter opening = Metrics.newCounter(getClass(), "opening");
@@ -253,6 +267,10 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
     private boolean localInitialized = false;
 
     private BlockingQueue<Bundle> queue;
+
+    /** Bundles handed back by the consumer that the bundleizers may reuse. */
+    private BlockingQueue<Bundle> recycled;
+    private volatile boolean recycling;
     private PageDB<SimpleMark> markDB;
     private File markDirFile;
     private CompletableFuture<Void> aggregateWorkerFuture;
@@ -274,9 +292,26 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
     protected abstract PersistentStreamFileSource getSource();
 
     @Override public Bundle createBundle() {
+        if (recycling) {
+            Bundle bundle = recycled.poll();
+            if (bundle != null) {
+                return bundle;
+            }
+        }
         return new ListBundle(bundleFormat);
     }
 
+    @Override public void recycle(Bundle bundle) {
+        if (bundle.getFormat() != bundleFormat) {
+            return;
+        }
+        BundlePool.clear(bundle);
+        recycled.offer(bundle);
+        if (!recycling) {
+            recycling = true;
+        }
+    }
+
     @Override public void init() {
         if (legacyMode != null) {
             magicMarksNumber = 0;
@@ -343,6 +378,7 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
             throw new RuntimeException(e);
         }
         queue = new LinkedBlockingQueue<>(buffer);
+        recycled = new ArrayBlockingQueue<>(buffer);
 
         List<CompletableFuture<Void>> workerFutures = new ArrayList<>();
         for (int i = 0; i < workers; i++) {
@@ -602,6 +638,9 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
                     }
                 }
                 wrap.mark.setIndex(wrap.mark.getIndex() + 1);
+                if (wrap.positioned != null) {
+                    wrap.mark.setPosition(wrap.positioned.position());
+                }
                 if (jmxMetrics) {
                     queueSizeHisto.update(queue.size());
                 }
@@ -622,6 +661,7 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
         final ValueString sourceName;
         InputStream input;
         Bundleizer bundleizer;
+        PositionedBundleizer positioned;
         boolean closed;
         SimpleMark mark;
 
@@ -672,10 +712,24 @@ public abstract class AbstractStreamFileDataSource extends TaskDataSource implem
                 input = CompressedStream.decompressInputStream(input, stream.name()); // blocks waiting for network (if compressed)
                 opening.dec();
                 bundleizer = format.createBundleizer(input, AbstractStreamFileDataSource.this);
+                if (bundleizer instanceof PositionedBundleizer) {
+                    positioned = (PositionedBundleizer) bundleizer;
+                } else {
+                    // a position from another format would go stale as the index advances
+                    mark.setPosition(0);
+                }
                 long read = mark.getIndex();
                 if (read == 0) {
                     return;
                 }
+                if (seekMarks && (positioned != null) && (mark.getPosition() > 0)) {
+                    openSeek.inc();
+                    if (positioned.seek(mark.getPosition()) < mark.getPosition()) {
+                        close(false);
+                    }
+                    log.debug("mark.seek {} / {}", mark, stream);
+                    return;
+                }
                 int bundlesSkipped = 0;
                 skipping.inc();
                 while (read > 0) {
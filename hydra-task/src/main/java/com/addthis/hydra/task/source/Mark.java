@@ -38,6 +38,7 @@ public class Mark extends SimpleMark {
                 .add("error", getError())
                 .add("index", getIndex())
                 .add("end", isEnd())
+                .add("position", getPosition())
                 .toString();
     }
 
@@ -60,6 +61,9 @@ public class Mark extends SimpleMark {
             Varint.writeUnsignedVarLong(getIndex(), buffer);
             buffer.writeByte(isEnd() ? 1 : 0);
             Varint.writeUnsignedVarInt(error, buffer);
+            if (getPosition() > 0) {
+                Varint.writeUnsignedVarLong(getPosition(), buffer);
+            }
             retBytes = new byte[buffer.readableBytes()];
             buffer.readBytes(retBytes);
         } finally {
@@ -79,6 +83,7 @@ public class Mark extends SimpleMark {
             setIndex(Varint.readUnsignedVarLong(buffer));
             setEnd(buffer.readByte() == 1);
             setError(Varint.readUnsignedVarInt(buffer));
+            setPosition(buffer.isReadable() ? Varint.readUnsignedVarLong(buffer) : 0);
         } finally {
             buffer.release();
         }
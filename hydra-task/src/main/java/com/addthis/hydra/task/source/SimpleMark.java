@@ -36,6 +36,13 @@ public class SimpleMark implements Codable, BytesCodable {
     private long index;
     @FieldConfig(codable = true)
     private boolean end;
+    /**
+     * Number of (decompressed) bytes of the stream consumed by the first
+     * {@code index} bundles, or zero if unknown. Only recorded by
+     * bundleizers that can report their position.
+     */
+    @FieldConfig(codable = true)
+    private long position;
 
     public SimpleMark set(String val, long index) {
         this.setValue(val);
@@ -57,6 +64,7 @@ public class SimpleMark implements Codable, BytesCodable {
                 .add("val", getValue())
                 .add("index", getIndex())
                 .add("end", isEnd())
+                .add("position", getPosition())
                 .toString();
     }
 
@@ -84,6 +92,14 @@ public class SimpleMark implements Codable, BytesCodable {
         this.end = end;
     }
 
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
     // no-op functions
     public int getError() {
         return -1;
@@ -102,6 +118,10 @@ public class SimpleMark implements Codable, BytesCodable {
             buffer.writeBytes(valBytes);
             Varint.writeUnsignedVarLong(index, buffer);
             buffer.writeByte(end ? 1 : 0);
+            // optional trailing field so that marks without a position keep their old encoding
+            if (position > 0) {
+                Varint.writeUnsignedVarLong(position, buffer);
+            }
             retBytes = new byte[buffer.readableBytes()];
             buffer.readBytes(retBytes);
         } finally {
@@ -120,6 +140,7 @@ public class SimpleMark implements Codable, BytesCodable {
             val = new String(valBytes);
             index = Varint.readUnsignedVarLong(buffer);
             end = buffer.readByte() == 1;
+            position = buffer.isReadable() ? Varint.readUnsignedVarLong(buffer) : 0;
         } finally {
             buffer.release();
         }
@@ -13,12 +13,15 @@
  */
 package com.addthis.hydra.task.source.bundleizer;
 
+import java.nio.charset.Charset;
+
 import java.util.List;
 
 import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.value.ValueFactory;
 import com.addthis.bundle.value.ValueObject;
 import com.addthis.hydra.data.filter.value.ValueFilter;
+import com.addthis.hydra.data.util.ByteTokenizer;
 import com.addthis.hydra.data.util.Tokenizer;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -27,7 +30,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * chops strings into columns (no keys)
- *
+ * <p/>
+ * Unless a line filter is configured, lines are split without decoding them
+ * and only the tokens that map to a column are decoded into strings.
  */
 public class ColumnBundleizer extends NewlineBundleizer {
 
@@ -57,13 +62,36 @@ public class ColumnBundleizer extends NewlineBundleizer {
             if (pos >= columns.length) {
                 break;
             }
-            ValueObject val = ValueFactory.create(col);
-            if (tokenFilter != null) {
-                val = tokenFilter.filter(val, next);
-            }
-            next.setValue(next.getFormat().getField(columns[pos++]), val);
+            setColumn(next, pos++, col);
         }
         return next;
     }
+
+    @Override
+    protected LineParser createLineParser(Charset charset) {
+        if (!ByteTokenizer.supports(tokens, charset)) {
+            return null;
+        }
+        final ByteTokenizer byteTokens = new ByteTokenizer(tokens, charset);
+        final String[] row = new String[columns.length];
+        return (next, line, offset, length) -> {
+            int count = byteTokens.tokenize(line, offset, length, row);
+            if (count < 0) {
+                return null;
+            }
+            for (int pos = 0; pos < Math.min(count, columns.length); pos++) {
+                setColumn(next, pos, row[pos]);
+            }
+            return next;
+        };
+    }
+
+    private void setColumn(Bundle next, int pos, String col) {
+        ValueObject val = ValueFactory.create(col);
+        if (tokenFilter != null) {
+            val = tokenFilter.filter(val, next);
+        }
+        next.setValue(next.getFormat().getField(columns[pos]), val);
+    }
 }
 
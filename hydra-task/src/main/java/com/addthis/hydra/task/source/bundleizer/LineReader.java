@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.source.bundleizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.Charset;
+
+import java.util.Arrays;
+
+/**
+ * Splits an input stream into lines the way {@link java.io.BufferedReader#readLine()}
+ * does while keeping track of the number of bytes that have been consumed. Lines
+ * are terminated by '\n', '\r' or "\r\n" and are decoded with the given charset.
+ */
+final class LineReader {
+
+    private final InputStream input;
+    private final Charset charset;
+
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /** number of bytes consumed before buffer[pos] */
+    private long position;
+
+    private int lineOffset;
+    private int lineLength;
+
+    LineReader(InputStream input, Charset charset, int bufferSize) {
+        this.input = input;
+        this.charset = charset;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return the next line without its terminator or null at the end of the input
+     */
+    String readLine() throws IOException {
+        if (!nextLine()) {
+            return null;
+        }
+        return new String(buffer, lineOffset, lineLength, charset);
+    }
+
+    /**
+     * Advances to the next line. Its bytes, without the terminator, are available from
+     * {@link #lineBuffer()} until the next call to this method.
+     *
+     * @return false at the end of the input
+     */
+    boolean nextLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+                if ((b == '\n') || (b == '\r')) {
+                    int next = scan + 1;
+                    if ((b == '\r') && (next == limit) && !eof) {
+                        // look ahead for the '\n' of a "\r\n" terminator
+                        int shift = fill();
+                        scan -= shift;
+                        next -= shift;
+                    }
+                    if ((b == '\r') && (next < limit) && (buffer[next] == '\n')) {
+                        next++;
+                    }
+                    lineOffset = pos;
+                    lineLength = scan - pos;
+                    position += next - pos;
+                    pos = next;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos == limit) {
+                    return false;
+                }
+                lineOffset = pos;
+                lineLength = limit - pos;
+                position += limit - pos;
+                pos = limit;
+                return true;
+            }
+            scan -= fill();
+        }
+    }
+
+    byte[] lineBuffer() {
+        return buffer;
+    }
+
+    int lineOffset() {
+        return lineOffset;
+    }
+
+    int lineLength() {
+        return lineLength;
+    }
+
+    Charset charset() {
+        return charset;
+    }
+
+    long position() {
+        return position;
+    }
+
+    /**
+     * Discards the next {@code count} bytes of input.
+     *
+     * @return the number of bytes skipped, which is less than
+     * {@code count} only if the end of the input was reached
+     */
+    long skip(long count) throws IOException {
+        long skipped = Math.min(count, limit - pos);
+        pos += (int) skipped;
+        while (skipped < count) {
+            long n = input.skip(count - skipped);
+            if (n <= 0) {
+                // skip() may return zero before the end of the input
+                if (input.read() < 0) {
+                    eof = true;
+                    break;
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer, growing it if it is full,
+     * and reads more input.
+     *
+     * @return the distance that the unread bytes were moved
+     */
+    private int fill() throws IOException {
+        int shift = pos;
+        if (shift > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= shift;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+        return shift;
+    }
+}
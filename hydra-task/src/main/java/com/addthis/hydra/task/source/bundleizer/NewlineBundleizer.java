@@ -13,10 +13,10 @@
  */
 package com.addthis.hydra.task.source.bundleizer;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+
+import java.nio.charset.Charset;
 
 import com.addthis.bundle.core.Bundle;
 import com.addthis.bundle.core.BundleFactory;
@@ -31,17 +31,40 @@ import com.addthis.hydra.data.filter.value.ValueFilter;
  */
 public abstract class NewlineBundleizer extends BundleizerFactory {
 
+    /**
+     * Parses lines that are still encoded in the default charset. Instances
+     * are used by a single stream and may keep state between lines.
+     */
+    protected interface LineParser {
+
+        /**
+         * @return the bundle or null to skip the line
+         */
+        public Bundle bundleize(Bundle next, byte[] line, int offset, int length);
+    }
+
     @FieldConfig(codable = true)
     private ValueFilter lineFilter;
 
     @Override
     public Bundleizer createBundleizer(final InputStream inputArg, final BundleFactory factoryArg) {
-        return new Bundleizer() {
-            private final BufferedReader reader = new BufferedReader(new InputStreamReader(inputArg), 65535);
+        return new PositionedBundleizer() {
+            private final LineReader reader = new LineReader(inputArg, Charset.defaultCharset(), 65536);
             private final BundleFactory factory = factoryArg;
+            private final LineParser parser = (lineFilter == null) ? createLineParser(reader.charset()) : null;
 
             @Override
             public Bundle next() throws IOException {
+                if (parser != null) {
+                    while (reader.nextLine()) {
+                        Bundle next = parser.bundleize(factory.createBundle(), reader.lineBuffer(),
+                                                       reader.lineOffset(), reader.lineLength());
+                        if (next != null) {
+                            return next;
+                        }
+                    }
+                    return null;
+                }
                 while (true) {
                     String line = reader.readLine();
                     if (line == null) {
@@ -59,8 +82,27 @@ public abstract class NewlineBundleizer extends BundleizerFactory {
                     }
                 }
             }
+
+            @Override
+            public long position() {
+                return reader.position();
+            }
+
+            @Override
+            public long seek(long position) throws IOException {
+                return reader.skip(position);
+            }
         };
     }
 
+    /**
+     * Override to parse lines without decoding them into strings first. Only
+     * used when there is no line filter. The default returns null, which
+     * parses lines with {@link #bundleize(Bundle, String)}.
+     */
+    protected LineParser createLineParser(Charset charset) {
+        return null;
+    }
+
     public abstract Bundle bundleize(Bundle next, String line);
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.source.bundleizer;
+
+import java.io.IOException;
+
+/**
+ * A bundleizer that knows how many bytes of its input stream
+ * have been consumed by the bundles it has returned.
+ */
+public interface PositionedBundleizer extends Bundleizer {
+
+    /**
+     * Returns the number of input bytes consumed by the bundles
+     * returned so far, ie. the offset at which the next bundle begins.
+     */
+    public long position();
+
+    /**
+     * Discards input up to the given offset. Must be called before
+     * the first call to {@link #next()}.
+     *
+     * @return the number of bytes skipped, which is less than
+     * {@code position} only if the end of the input was reached
+     */
+    public long seek(long position) throws IOException;
+}
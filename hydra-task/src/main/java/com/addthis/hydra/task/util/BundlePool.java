@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.util;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+
+/**
+ * Per-thread pool of bundles that are no longer referenced by anyone. Bundles
+ * are cleared when they are returned to the pool so that their values can be
+ * collected, but keep their field storage for the next user. A bundle must only
+ * be offered by a thread that is done with it, and it is only handed out again
+ * to the same thread.
+ */
+public final class BundlePool {
+
+    private final int capacity;
+
+    private final ThreadLocal<ArrayDeque<Bundle>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * @param capacity maximum number of bundles kept for each thread
+     */
+    public BundlePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return an empty bundle or null if the pool of this thread is empty
+     */
+    @Nullable
+    public Bundle poll() {
+        return pool.get().pollFirst();
+    }
+
+    /**
+     * Clears the bundle and keeps it for reuse by this thread unless the pool is full.
+     */
+    public void offer(Bundle bundle) {
+        ArrayDeque<Bundle> bundles = pool.get();
+        if (bundles.size() < capacity) {
+            clear(bundle);
+            bundles.addFirst(bundle);
+        }
+    }
+
+    /**
+     * Removes all values from the bundle.
+     */
+    public static void clear(Bundle bundle) {
+        for (BundleField field : bundle.getFormat()) {
+            if (bundle.getValue(field) != null) {
+                bundle.removeValue(field);
+            }
+        }
+    }
+}
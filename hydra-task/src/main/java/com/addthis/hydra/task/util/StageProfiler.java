@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.addthis.basis.util.Parameter;
+
+import com.addthis.codec.jackson.Jackson;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.stats.Snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sampled latency profile of the stages of a task pipeline. One in
+ * {@code hydra.task.profile.sample} bundles is timed at every stage it passes
+ * through and the elapsed nanoseconds are recorded in a biased histogram for
+ * the stage. The histograms are registered with the default metrics registry
+ * so that they are published over JMX, and {@link #writeProfile(File)} writes
+ * the summary that minion serves as the profile of the task.
+ * <p/>
+ * Stages are shared by everything in the process that uses the same name
+ * and are created on first use.
+ */
+public final class StageProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(StageProfiler.class);
+
+    /**
+     * Time one in this many bundles. Zero disables sampling.
+     */
+    public static final int sampleRate = Parameter.intValue("hydra.task.profile.sample", 1000);
+
+    private static final ConcurrentMap<String, Stage> stages = new ConcurrentHashMap<>();
+
+    private StageProfiler() {}
+
+    /**
+     * Returns true if the current bundle should be timed.
+     */
+    public static boolean sample() {
+        return (sampleRate > 0) && (ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+
+    public static Stage stage(String name) {
+        return stages.computeIfAbsent(name, Stage::new);
+    }
+
+    /**
+     * Returns the number of samples and the mean, median, 99th percentile
+     * and maximum latency in microseconds of every stage, ordered by name.
+     */
+    public static SortedMap<String, Map<String, Object>> summary() {
+        SortedMap<String, Map<String, Object>> result = new TreeMap<>();
+        for (Stage stage : stages.values()) {
+            Histogram histogram = stage.histogram;
+            Snapshot snapshot = histogram.getSnapshot();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("samples", histogram.count());
+            values.put("mean", micros(histogram.mean()));
+            values.put("p50", micros(snapshot.getMedian()));
+            values.put("p99", micros(snapshot.get99thPercentile()));
+            values.put("max", micros(histogram.max()));
+            result.put(stage.name, values);
+        }
+        return result;
+    }
+
+    /**
+     * Write the {@link #summary()} as json. Nothing is written if no stage has been created.
+     */
+    public static void writeProfile(File file) {
+        if (stages.isEmpty()) {
+            return;
+        }
+        try {
+            Jackson.defaultMapper().writerWithDefaultPrettyPrinter().writeValue(file, summary());
+        } catch (IOException ex) {
+            log.warn("unable to write stage profile to {}", file, ex);
+        }
+    }
+
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    public static final class Stage {
+
+        private final String name;
+
+        private final Histogram histogram;
+
+        private Stage(String name) {
+            this.name = name;
+            this.histogram = Metrics.newHistogram(StageProfiler.class, name, true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void update(long nanos) {
+            histogram.update(nanos);
+        }
+
+        public Histogram getHistogram() {
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void offerAndDrain() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        Integer[] batch = new Integer[3];
+        assertEquals(3, buffer.drain(batch));
+        assertEquals(Integer.valueOf(2), batch[2]);
+        assertEquals(1, buffer.size());
+        buffer.close();
+        assertEquals(1, buffer.drain(batch));
+        assertEquals(Integer.valueOf(3), batch[0]);
+        assertEquals(0, buffer.drain(batch));
+    }
+
+    @Test
+    public void handoff() throws InterruptedException {
+        int count = 200000;
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(16);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                buffer.put(i);
+            }
+            buffer.close();
+        });
+        producer.start();
+        Integer[] batch = new Integer[8];
+        int expected = 0;
+        int drained;
+        while ((drained = buffer.drain(batch)) > 0) {
+            for (int i = 0; i < drained; i++) {
+                assertEquals(expected++, batch[i].intValue());
+            }
+        }
+        producer.join();
+        assertEquals(count, expected);
+    }
+}
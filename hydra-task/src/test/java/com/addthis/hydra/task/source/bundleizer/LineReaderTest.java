@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.source.bundleizer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LineReaderTest {
+
+    private static final String INPUT = "first\nsecond\r\nthird\r\rfifth\n\nseventh \u00e9\u4e2d\nlast";
+
+    private static List<String> expectedLines(String input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void matchesBufferedReader() throws IOException {
+        // small buffers exercise growing the buffer and "\r\n" split across reads
+        byte[] bytes = INPUT.getBytes(StandardCharsets.UTF_8);
+        for (int bufferSize = 1; bufferSize < 20; bufferSize++) {
+            LineReader reader = new LineReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, bufferSize);
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            assertEquals(expectedLines(INPUT), lines);
+            assertEquals(bytes.length, reader.position());
+        }
+    }
+
+    @Test
+    public void seekToPosition() throws IOException {
+        byte[] bytes = INPUT.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = expectedLines(INPUT);
+        LineReader reader = new LineReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, 4);
+        for (int i = 0; i < expected.size(); i++) {
+            long position = reader.position();
+            LineReader resumed = new LineReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, 4);
+            assertEquals(position, resumed.skip(position));
+            for (int j = i; j < expected.size(); j++) {
+                assertEquals(expected.get(j), resumed.readLine());
+            }
+            assertNull(resumed.readLine());
+            assertEquals(expected.get(i), reader.readLine());
+        }
+        LineReader past = new LineReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, 4);
+        assertEquals(bytes.length, past.skip(bytes.length + 10));
+        assertNull(past.readLine());
+    }
+}
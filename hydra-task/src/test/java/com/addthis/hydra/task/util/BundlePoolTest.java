@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.util;
+
+import com.addthis.bundle.core.Bundle;
+import com.addthis.bundle.core.BundleField;
+import com.addthis.bundle.core.list.ListBundle;
+import com.addthis.bundle.value.ValueFactory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BundlePoolTest {
+
+    @Test
+    public void reuseClearedBundles() throws InterruptedException {
+        BundlePool pool = new BundlePool(1);
+        assertNull(pool.poll());
+        Bundle bundle = new ListBundle();
+        BundleField a = bundle.getFormat().getField("a");
+        BundleField b = bundle.getFormat().getField("b");
+        bundle.setValue(a, ValueFactory.create("x"));
+        bundle.setValue(b, ValueFactory.create(1));
+        pool.offer(bundle);
+        pool.offer(new ListBundle());
+
+        // bundles are only handed out to the thread that returned them
+        Bundle[] other = new Bundle[1];
+        Thread thread = new Thread(() -> other[0] = pool.poll());
+        thread.start();
+        thread.join();
+        assertNull(other[0]);
+
+        Bundle reused = pool.poll();
+        assertSame(bundle, reused);
+        assertNull(reused.getValue(a));
+        assertNull(reused.getValue(b));
+        assertNull(pool.poll());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.addthis.hydra.task.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Map;
+
+import com.addthis.basis.util.LessFiles;
+
+import com.addthis.codec.jackson.Jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StageProfilerTest {
+
+    @Test
+    public void recordStages() throws IOException {
+        StageProfiler.Stage stage = StageProfiler.stage("test.recordStages");
+        assertSame(stage, StageProfiler.stage("test.recordStages"));
+        for (int i = 1; i <= 100; i++) {
+            stage.update(i * 1000L);
+        }
+        Map<String, Object> values = StageProfiler.summary().get("test.recordStages");
+        assertEquals(100L, values.get("samples"));
+        assertEquals(50.5, (Double) values.get("mean"), 0.01);
+        assertEquals(100.0, (Double) values.get("max"), 0.01);
+        assertTrue((Double) values.get("p99") >= (Double) values.get("p50"));
+
+        File tempDir = LessFiles.createTempDir();
+        try {
+            File profile = new File(tempDir, "job.profile");
+            StageProfiler.writeProfile(profile);
+            JsonNode json = Jackson.defaultMapper().readTree(profile);
+            assertEquals(100, json.get("test.recordStages").get("samples").asInt());
+        } finally {
+            LessFiles.deleteDir(tempDir);
+        }
+    }
+}